@@ -0,0 +1,413 @@
+package com.yaplab.archive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yaplab.message.MessageResponseDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Archive of old messages kept in compressed, append-only segment files on the local disk.
+ * Every chatroom has its own directory. Each archival run appends a new segment file to it, files are never changed afterwards.
+ * A segment is a sequence of deflate-compressed blocks of messages in timestamp order,
+ * followed by a sparse index with the timestamp range and file position of every block,
+ * so a page of history only decompresses the few blocks it overlaps.
+ */
+@Component
+public class MessageArchive {
+
+    /**
+     * Logger for MessageArchive
+     * This logger is used to log various events and errors in the MessageArchive class.
+     * It helps in debugging and tracking the flow of operations related to the message archive.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MessageArchive.class);
+
+    /**
+     * Number of messages in one compressed block, and so the granularity of the sparse index.
+     */
+    private static final int BLOCK_SIZE = 128;
+
+    /**
+     * Marks the end of a complete segment file. Files without it are ignored.
+     */
+    private static final int SEGMENT_MAGIC = 0x594C4153;
+
+    /**
+     * Size of the segment trailer: block count, index position and magic number.
+     */
+    private static final int TRAILER_SIZE = Integer.BYTES + Long.BYTES + Integer.BYTES;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    /**
+     * Chatroom IDs are used as directory names, so only safe characters are accepted.
+     */
+    private static final Pattern CHATROOM_ID = Pattern.compile("[A-Za-z0-9_-]+");
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final ObjectMapper objectMapper;
+    private final Path archiveDir;
+
+    /**
+     * Sparse indexes of the segments of every chatroom, loaded from disk on first access.
+     */
+    private final Map<String, List<Segment>> segmentsByChatroom = new ConcurrentHashMap<>();
+
+    public MessageArchive(ObjectMapper objectMapper,
+                          @Value("${message.archive.dir:message-archive}") String archiveDir) {
+        this.objectMapper = objectMapper;
+        this.archiveDir = Paths.get(archiveDir);
+    }
+
+    /**
+     * Appends a new segment with the given messages of one chatroom.
+     * The segment is written to a temporary file, synced and then renamed, so readers never see a partial segment.
+     * @param chatroomId ID of the chatroom of the messages
+     * @param messages the messages to archive, all from the same chatroom
+     */
+    public void append(String chatroomId, List<MessageResponseDTO> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        List<MessageResponseDTO> ordered = messages.stream()
+                .sorted(Comparator.comparing(MessageResponseDTO::timestamp).thenComparing(MessageResponseDTO::id))
+                .toList();
+        Path chatroomDir = chatroomDir(chatroomId);
+        List<Segment> segments = segments(chatroomId);
+        try {
+            Files.createDirectories(chatroomDir);
+            String name = String.format("%019d-%019d%s",
+                    ordered.getFirst().id(), ordered.getLast().id(), SEGMENT_SUFFIX);
+            Path target = chatroomDir.resolve(name);
+            Path temp = chatroomDir.resolve(name + ".tmp");
+            List<Block> blocks = new ArrayList<>();
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long position = 0;
+                for (int from = 0; from < ordered.size(); from += BLOCK_SIZE) {
+                    List<MessageResponseDTO> blockMessages = ordered.subList(from, Math.min(from + BLOCK_SIZE, ordered.size()));
+                    byte[] compressed = compress(blockMessages);
+                    writeFully(channel, ByteBuffer.wrap(compressed));
+                    blocks.add(new Block(
+                            blockMessages.getFirst().timestamp().toEpochMilli(),
+                            blockMessages.getLast().timestamp().toEpochMilli(),
+                            position,
+                            compressed.length));
+                    position += compressed.length;
+                }
+                writeFully(channel, ByteBuffer.wrap(encodeIndex(blocks, position)));
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+            segments.add(new Segment(target, List.copyOf(blocks)));
+            logger.debug("Archived {} messages of chatroom {} in {} blocks to {}", ordered.size(), chatroomId, blocks.size(), target);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to archive messages of chatroom " + chatroomId, e);
+        }
+    }
+
+    /**
+     * Reads the newest archived messages of a chatroom older than the given position, ordered by send time and then ID.
+     * Blocks are visited from the newest to the oldest across all segments and reading stops
+     * as soon as no remaining block can hold a message newer than the ones already found.
+     * @param chatroomId ID of the chatroom
+     * @param before send time of the position, null for the newest messages
+     * @param beforeId ID of the message at the position, messages sent at the before time with a lower ID are returned,
+     *                 null for none of them
+     * @param limit maximum number of messages
+     * @return the archived messages, newest first
+     */
+    public List<MessageResponseDTO> readBefore(String chatroomId, Instant before, Long beforeId, int limit) {
+        long beforeMillis = before != null ? before.toEpochMilli() : Long.MAX_VALUE;
+        List<BlockRef> candidates = new ArrayList<>();
+        for (Segment segment : segments(chatroomId)) {
+            for (Block block : segment.blocks()) {
+                if (block.firstMillis() <= beforeMillis) {
+                    candidates.add(new BlockRef(segment, block));
+                }
+            }
+        }
+        candidates.sort(Comparator.comparingLong((BlockRef ref) -> ref.block().lastMillis()).reversed());
+
+        List<MessageResponseDTO> found = new ArrayList<>();
+        Set<Long> seenIds = new HashSet<>();
+        for (BlockRef ref : candidates) {
+            if (found.size() >= limit) {
+                found.sort(Comparator.comparing(MessageResponseDTO::timestamp).reversed());
+                if (ref.block().lastMillis() < found.get(limit - 1).timestamp().toEpochMilli()) {
+                    break;
+                }
+            }
+            for (MessageResponseDTO message : readBlock(ref)) {
+                if (isBefore(message, before, beforeId) && seenIds.add(message.id())) {
+                    found.add(message);
+                }
+            }
+        }
+        return found.stream()
+                .sorted(Comparator.comparing(MessageResponseDTO::timestamp).thenComparing(MessageResponseDTO::id).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    /**
+     * Reads archived messages of a chatroom by ID, for search hits that are no longer in the database.
+     * The send time of every message narrows the read to the blocks that can hold it.
+     * @param chatroomId ID of the chatroom
+     * @param timestamps send time of every wanted message by ID
+     * @return the messages found, in no particular order
+     */
+    public List<MessageResponseDTO> readByIds(String chatroomId, Map<Long, Instant> timestamps) {
+        List<MessageResponseDTO> found = new ArrayList<>();
+        if (timestamps.isEmpty()) {
+            return found;
+        }
+        Set<Long> wanted = new HashSet<>(timestamps.keySet());
+        for (Segment segment : segments(chatroomId)) {
+            for (Block block : segment.blocks()) {
+                boolean overlaps = timestamps.values().stream()
+                        .mapToLong(Instant::toEpochMilli)
+                        .anyMatch(millis -> millis >= block.firstMillis() && millis <= block.lastMillis());
+                if (!overlaps) {
+                    continue;
+                }
+                for (MessageResponseDTO message : readBlock(new BlockRef(segment, block))) {
+                    if (wanted.remove(message.id())) {
+                        found.add(message);
+                    }
+                }
+                if (wanted.isEmpty()) {
+                    return found;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Reads every archived message, one block at a time. Used to add the archive to a rebuilt search index.
+     * @param consumer receives the messages of every block
+     */
+    public void forEachBlock(Consumer<List<MessageResponseDTO>> consumer) {
+        if (!Files.isDirectory(archiveDir)) {
+            return;
+        }
+        try (Stream<Path> chatroomDirs = Files.list(archiveDir)) {
+            for (Path chatroomDir : chatroomDirs.filter(Files::isDirectory).sorted().toList()) {
+                String chatroomId = chatroomDir.getFileName().toString();
+                if (!CHATROOM_ID.matcher(chatroomId).matches()) {
+                    continue;
+                }
+                for (Segment segment : segments(chatroomId)) {
+                    for (Block block : segment.blocks()) {
+                        consumer.accept(readBlock(new BlockRef(segment, block)));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list the archived chatrooms", e);
+        }
+    }
+
+    /**
+     * Returns the send time of the newest archived message of a chatroom, or null if nothing is archived.
+     * Used to skip the archive entirely when a page of history is served from the database alone.
+     * @param chatroomId ID of the chatroom
+     */
+    public Instant newestTimestamp(String chatroomId) {
+        OptionalLong newest = segments(chatroomId).stream()
+                .flatMap(segment -> segment.blocks().stream())
+                .mapToLong(Block::lastMillis)
+                .max();
+        return newest.isPresent() ? Instant.ofEpochMilli(newest.getAsLong()) : null;
+    }
+
+    /**
+     * Gets the segments of a chatroom, loading their sparse indexes from disk on first access.
+     */
+    private List<Segment> segments(String chatroomId) {
+        return segmentsByChatroom.computeIfAbsent(chatroomId, id -> {
+            List<Segment> segments = new CopyOnWriteArrayList<>();
+            Path chatroomDir = chatroomDir(id);
+            if (!Files.isDirectory(chatroomDir)) {
+                return segments;
+            }
+            try (Stream<Path> files = Files.list(chatroomDir)) {
+                for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList()) {
+                    try {
+                        segments.add(new Segment(file, readIndex(file)));
+                    } catch (IOException | IllegalStateException e) {
+                        logger.error("Skipping unreadable archive segment {}", file, e);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to list archive segments of chatroom " + id, e);
+            }
+            return segments;
+        });
+    }
+
+    private static boolean isBefore(MessageResponseDTO message, Instant before, Long beforeId) {
+        if (before == null) {
+            return true;
+        }
+        int byTime = message.timestamp().compareTo(before);
+        return byTime < 0 || (byTime == 0 && beforeId != null && message.id() < beforeId);
+    }
+
+    private Path chatroomDir(String chatroomId) {
+        if (chatroomId == null || !CHATROOM_ID.matcher(chatroomId).matches()) {
+            throw new IllegalArgumentException("Invalid chatroom ID for the archive: " + chatroomId);
+        }
+        return archiveDir.resolve(chatroomId);
+    }
+
+    /**
+     * Serializes the messages of a block as JSON lines and compresses them.
+     */
+    private byte[] compress(List<MessageResponseDTO> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DeflaterOutputStream deflater = new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_COMPRESSION))) {
+            for (MessageResponseDTO message : messages) {
+                deflater.write(objectMapper.writeValueAsBytes(message));
+                deflater.write('\n');
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private List<MessageResponseDTO> readBlock(BlockRef ref) {
+        Block block = ref.block();
+        try (FileChannel channel = FileChannel.open(ref.segment().file(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(block.length());
+            readFully(channel, buffer, block.position());
+            List<MessageResponseDTO> messages = new ArrayList<>(BLOCK_SIZE);
+            try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(buffer.array()))) {
+                String[] lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n");
+                for (String line : lines) {
+                    if (!line.isEmpty()) {
+                        messages.add(objectMapper.readValue(line, MessageResponseDTO.class));
+                    }
+                }
+            }
+            return messages;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read archive segment " + ref.segment().file(), e);
+        }
+    }
+
+    /**
+     * Encodes the sparse index and the trailer written at the end of a segment.
+     */
+    private static byte[] encodeIndex(List<Block> blocks, long indexPosition) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Block block : blocks) {
+                out.writeLong(block.firstMillis());
+                out.writeLong(block.lastMillis());
+                out.writeLong(block.position());
+                out.writeInt(block.length());
+            }
+            out.writeInt(blocks.size());
+            out.writeLong(indexPosition);
+            out.writeInt(SEGMENT_MAGIC);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the sparse index of a segment from its trailer.
+     */
+    private static List<Block> readIndex(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < TRAILER_SIZE) {
+                throw new IllegalStateException("Archive segment is too small: " + file);
+            }
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_SIZE);
+            readFully(channel, trailer, size - TRAILER_SIZE);
+            trailer.flip();
+            int blockCount = trailer.getInt();
+            long indexPosition = trailer.getLong();
+            if (trailer.getInt() != SEGMENT_MAGIC) {
+                throw new IllegalStateException("Archive segment is incomplete: " + file);
+            }
+            ByteBuffer index = ByteBuffer.allocate((int) (size - TRAILER_SIZE - indexPosition));
+            readFully(channel, index, indexPosition);
+            List<Block> blocks = new ArrayList<>(blockCount);
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(index.array()))) {
+                for (int i = 0; i < blockCount; i++) {
+                    blocks.add(new Block(in.readLong(), in.readLong(), in.readLong(), in.readInt()));
+                }
+            }
+            return List.copyOf(blocks);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of archive segment");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Sparse index entry of one compressed block.
+     * @param firstMillis send time of the oldest message in the block
+     * @param lastMillis send time of the newest message in the block
+     * @param position position of the block in the segment file
+     * @param length compressed length of the block
+     */
+    private record Block(long firstMillis, long lastMillis, long position, int length) {
+    }
+
+    private record Segment(Path file, List<Block> blocks) {
+    }
+
+    private record BlockRef(Segment segment, Block block) {
+    }
+}
@@ -0,0 +1,91 @@
+package com.yaplab.archive;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Background job moving messages older than message.archive.max-age into the archive.
+ * Disabled unless message.archive.enabled is set. Every chatroom is archived in bounded batches,
+ * one segment per batch, and each batch runs in its own transaction so the job never holds long locks.
+ */
+@Component
+public class MessageArchiveJob {
+
+    /**
+     * Logger for MessageArchiveJob
+     * This logger is used to log the progress of message archival.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MessageArchiveJob.class);
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final MessageArchiveService messageArchiveService;
+    private final boolean enabled;
+    private final Duration maxAge;
+    private final int batchSize;
+
+    /**
+     * Prevents two archival runs at the same time.
+     */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public MessageArchiveJob(MessageArchiveService messageArchiveService,
+                             @Value("${message.archive.enabled:false}") boolean enabled,
+                             @Value("${message.archive.max-age:P90D}") Duration maxAge,
+                             @Value("${message.archive.batch-size:5000}") int batchSize) {
+        this.messageArchiveService = messageArchiveService;
+        this.enabled = enabled;
+        this.maxAge = maxAge;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Runs archival on the configured interval.
+     */
+    @Scheduled(fixedDelayString = "${message.archive.interval-ms:3600000}", initialDelayString = "${message.archive.initial-delay-ms:60000}")
+    public void scheduledRun() {
+        if (enabled) {
+            archiveOldMessages();
+        }
+    }
+
+    /**
+     * Archives every message older than the configured age.
+     * A chatroom that fails is logged and skipped, so one bad chatroom does not stop the others.
+     * @return the number of archived messages, or -1 if a run was already in progress
+     */
+    public long archiveOldMessages() {
+        if (!running.compareAndSet(false, true)) {
+            logger.warn("Archival requested while another run is in progress");
+            return -1;
+        }
+        try {
+            long started = System.currentTimeMillis();
+            Instant cutoff = Instant.now().minus(maxAge);
+            long archived = 0;
+            for (String chatroomId : messageArchiveService.findChatroomsToArchive(cutoff)) {
+                try {
+                    int batch;
+                    do {
+                        batch = messageArchiveService.archiveBatch(chatroomId, cutoff, batchSize);
+                        archived += batch;
+                    } while (batch == batchSize);
+                } catch (RuntimeException e) {
+                    logger.error("Failed to archive messages of chatroom {}", chatroomId, e);
+                }
+            }
+            logger.info("Archived {} messages older than {} in {} ms", archived, cutoff, System.currentTimeMillis() - started);
+            return archived;
+        } finally {
+            running.set(false);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.yaplab.archive;
+
+import com.yaplab.message.MessageHistoryRow;
+import com.yaplab.message.MessageMapper;
+import com.yaplab.message.MessageRepository;
+import com.yaplab.message.MessageResponseDTO;
+import com.yaplab.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Service layer moving old messages from the message table into the archive.
+ */
+@Service
+public class MessageArchiveService {
+
+    /**
+     * Logger for MessageArchiveService
+     * This logger is used to log various events and errors in the MessageArchiveService class.
+     * It helps in debugging and tracking the flow of operations related to message archival.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MessageArchiveService.class);
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final MessageRepository messageRepository;
+    private final MessageMapper messageMapper;
+    private final MessageArchive messageArchive;
+    private final ShardRouter shardRouter;
+
+    public MessageArchiveService(MessageRepository messageRepository, MessageMapper messageMapper, MessageArchive messageArchive, ShardRouter shardRouter) {
+        this.messageRepository = messageRepository;
+        this.messageMapper = messageMapper;
+        this.messageArchive = messageArchive;
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Gets the chatrooms having messages old enough to be archived, from every message shard.
+     * @param cutoff messages sent before this time are archived
+     * @return IDs of the chatrooms
+     */
+    @Transactional(readOnly = true)
+    public List<String> findChatroomsToArchive(Instant cutoff) {
+        return shardRouter.readOnEveryShard(() -> messageRepository.findChatroomIdsWithMessagesBefore(cutoff));
+    }
+
+    /**
+     * Moves one batch of old messages of a chatroom into a new archive segment.
+     * The segment is written and synced before the rows are deleted. If the delete is rolled back
+     * the messages exist in both places until the next run, and history reads skip the duplicates.
+     * Archived messages stay in the search index, search reads the hits missing from the database from the archive.
+     * Runs on the message shard of the chatroom.
+     * @param chatroomId ID of the chatroom
+     * @param cutoff messages sent before this time are archived
+     * @param batchSize maximum number of messages in the batch
+     * @return the number of archived messages
+     */
+    @Transactional
+    public int archiveBatch(String chatroomId, Instant cutoff, int batchSize) {
+        return shardRouter.onChatroom(chatroomId, () -> {
+            List<MessageHistoryRow> rows = messageRepository.findArchivableRows(chatroomId, cutoff, Limit.of(batchSize));
+            if (rows.isEmpty()) {
+                return 0;
+            }
+            List<MessageResponseDTO> archived = rows.stream()
+                    .map(messageMapper::fromHistoryRow)
+                    .toList();
+            List<Long> ids = rows.stream().map(MessageHistoryRow::id).toList();
+            messageArchive.append(chatroomId, archived);
+            messageRepository.deleteAllByIdIn(ids);
+            logger.debug("Archived {} messages of chatroom {}", rows.size(), chatroomId);
+            return rows.size();
+        });
+    }
+}
@@ -0,0 +1,390 @@
+package com.yaplab.cache;
+
+import com.yaplab.message.MessageResponseDTO;
+import com.yaplab.transaction.AfterCommit;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * In-memory cache of the latest messages of active chatrooms, so opening a busy chat does not query the database.
+ * Every cached chatroom keeps its newest messages in a fixed-size ring buffer. A chatroom is cached when its latest page
+ * is read from the database, after that sent messages are appended and edits, status changes and deletions are applied,
+ * always after their transaction commits. Chatrooms are evicted as a whole, least recently used first,
+ * once the estimated size of all buffers exceeds the memory budget.
+ * The cache only sees the changes made by this instance, like the in-memory broker and the sequence numbers.
+ */
+@Component
+public class RecentMessageCache {
+
+    /**
+     * Estimated bytes of a message without its strings, and of a chatroom without its messages.
+     */
+    private static final long MESSAGE_OVERHEAD_BYTES = 200;
+    private static final long ROOM_OVERHEAD_BYTES = 128;
+
+    private static final Comparator<MessageResponseDTO> SEND_ORDER =
+            Comparator.comparing(MessageResponseDTO::timestamp).thenComparing(MessageResponseDTO::id);
+
+    private final boolean enabled;
+    private final int messagesPerRoom;
+    private final long maxBytes;
+
+    /**
+     * Cached chatrooms in access order, the first one is evicted first. Guarded by this.
+     */
+    private final LinkedHashMap<String, RoomBuffer> rooms = new LinkedHashMap<>(256, 0.75f, true);
+
+    /**
+     * Loads of chatrooms that are not cached yet, by chatroom ID. Guarded by this.
+     */
+    private final Map<String, Load> loads = new HashMap<>();
+
+    private long totalBytes = 0;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    public RecentMessageCache(MeterRegistry registry,
+                              @Value("${cache.recent-messages.enabled:true}") boolean enabled,
+                              @Value("${cache.recent-messages.per-room:50}") int messagesPerRoom,
+                              @Value("${cache.recent-messages.max-size:64MB}") DataSize maxSize) {
+        this.enabled = enabled;
+        this.messagesPerRoom = messagesPerRoom;
+        this.maxBytes = maxSize.toBytes();
+        this.hits = Counter.builder("yaplab.cache.recent-messages.requests").tag("result", "hit").register(registry);
+        this.misses = Counter.builder("yaplab.cache.recent-messages.requests").tag("result", "miss").register(registry);
+        this.evictions = Counter.builder("yaplab.cache.recent-messages.evictions")
+                .description("Chatrooms evicted to stay within the memory budget")
+                .register(registry);
+        Gauge.builder("yaplab.cache.recent-messages.size", this, RecentMessageCache::estimatedBytes)
+                .description("Estimated size of the cached messages")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+
+    /**
+     * Returns the latest messages of a chatroom if the cache holds enough of them.
+     * @param chatroomId ID of the chatroom
+     * @param limit number of messages wanted
+     * @return the latest messages, oldest first, or null if the chatroom has to be read from the database
+     */
+    public synchronized List<MessageResponseDTO> latest(String chatroomId, int limit) {
+        RoomBuffer room = enabled ? rooms.get(chatroomId) : null;
+        if (room == null || (limit > room.count && !room.complete)) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return room.newest(limit);
+    }
+
+    /**
+     * Announces that the latest page of a chatroom is about to be read from the database.
+     * Changes to the chatroom committed from now on make the page outdated, then it is not cached.
+     * @param chatroomId ID of the chatroom
+     * @return the load to pass to install
+     */
+    public synchronized Load beginLoad(String chatroomId) {
+        Load load = new Load(chatroomId);
+        if (enabled) {
+            loads.put(chatroomId, load);
+        }
+        return load;
+    }
+
+    /**
+     * Caches the latest page of a chatroom read from the database, unless the chatroom changed during the read.
+     * Replaces what is cached for the chatroom, which may have too few messages left after deletions.
+     * @param load the load returned by beginLoad before the read
+     * @param page the latest messages, oldest first
+     * @param complete true if the chatroom has no messages older than the page
+     */
+    public synchronized void install(Load load, List<MessageResponseDTO> page, boolean complete) {
+        if (loads.get(load.chatroomId) != load) {
+            return;
+        }
+        loads.remove(load.chatroomId);
+        if (load.outdated) {
+            return;
+        }
+        RoomBuffer replaced = rooms.remove(load.chatroomId);
+        if (replaced != null) {
+            totalBytes -= replaced.bytes;
+        }
+        RoomBuffer room = new RoomBuffer(messagesPerRoom);
+        int from = Math.max(0, page.size() - messagesPerRoom);
+        for (int i = from; i < page.size(); i++) {
+            room.add(page.get(i));
+        }
+        room.complete = complete && from == 0;
+        rooms.put(load.chatroomId, room);
+        totalBytes += room.bytes;
+        evictOverBudget();
+    }
+
+    /**
+     * Adds a sent message once the surrounding transaction commits.
+     * @param message the sent message
+     */
+    public void addAfterCommit(MessageResponseDTO message) {
+        if (enabled) {
+            AfterCommit.run(() -> change(message.chatRoomId(), room -> room.add(message)));
+        }
+    }
+
+    /**
+     * Replaces a changed message and the previews of the replies to it once the surrounding transaction commits.
+     * @param message the message in its new state
+     */
+    public void replaceAfterCommit(MessageResponseDTO message) {
+        if (enabled) {
+            AfterCommit.run(() -> change(message.chatRoomId(), room -> room.replace(message)));
+        }
+    }
+
+    /**
+     * Changes a message in place once the surrounding transaction commits, for changes that only touch a field.
+     * @param chatroomId ID of the chatroom of the message
+     * @param messageId ID of the message
+     * @param patch returns the message in its new state
+     */
+    public void patchAfterCommit(String chatroomId, Long messageId, UnaryOperator<MessageResponseDTO> patch) {
+        if (enabled) {
+            AfterCommit.run(() -> change(chatroomId, room -> room.patch(messageId, patch)));
+        }
+    }
+
+    /**
+     * Removes a deleted message and shows the replies to it as replies to a deleted message once the surrounding transaction commits.
+     * @param chatroomId ID of the chatroom of the message
+     * @param messageId ID of the message
+     */
+    public void removeAfterCommit(String chatroomId, Long messageId) {
+        if (enabled) {
+            AfterCommit.run(() -> change(chatroomId, room -> room.remove(messageId)));
+        }
+    }
+
+    /**
+     * Checks once the surrounding transaction commits that a message written to the database is cached,
+     * for messages added when they were journaled and inserted later. A page read between the two missed the message,
+     * then the chatroom is evicted and read again by the next reader.
+     * @param chatroomId ID of the chatroom of the message
+     * @param messageId ID of the message
+     */
+    public void confirmAfterCommit(String chatroomId, Long messageId) {
+        if (enabled) {
+            AfterCommit.run(() -> confirm(chatroomId, messageId));
+        }
+    }
+
+    private synchronized void confirm(String chatroomId, Long messageId) {
+        Load load = loads.get(chatroomId);
+        if (load != null) {
+            load.outdated = true;
+        }
+        RoomBuffer room = rooms.get(chatroomId);
+        if (room != null && room.indexOf(messageId) < 0) {
+            rooms.remove(chatroomId);
+            totalBytes -= room.bytes;
+        }
+    }
+
+    /**
+     * Applies a change to a cached chatroom, or marks a running load of the chatroom as outdated.
+     */
+    private synchronized void change(String chatroomId, Consumer<RoomBuffer> action) {
+        Load load = loads.get(chatroomId);
+        if (load != null) {
+            load.outdated = true;
+        }
+        RoomBuffer room = rooms.get(chatroomId);
+        if (room == null) {
+            return;
+        }
+        long before = room.bytes;
+        action.accept(room);
+        totalBytes += room.bytes - before;
+        evictOverBudget();
+    }
+
+    private void evictOverBudget() {
+        Iterator<RoomBuffer> eldest = rooms.values().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            totalBytes -= eldest.next().bytes;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private synchronized double estimatedBytes() {
+        return totalBytes;
+    }
+
+    private static long sizeOf(MessageResponseDTO message) {
+        long chars = length(message.content()) + length(message.senderName()) + length(message.fileUrl())
+                + length(message.fileName()) + length(message.uploadedByUserName()) + length(message.fileType());
+        MessageResponseDTO.RepliedToMessageDTO reply = message.repliedToMessage();
+        if (reply != null) {
+            chars += length(reply.content()) + length(reply.senderName()) + 32;
+        }
+        return MESSAGE_OVERHEAD_BYTES + 2 * chars;
+    }
+
+    private static int length(String value) {
+        return value != null ? value.length() : 0;
+    }
+
+    /**
+     * A read of the latest page of a chatroom that is not cached yet.
+     */
+    public static final class Load {
+
+        private final String chatroomId;
+        private boolean outdated = false;
+
+        private Load(String chatroomId) {
+            this.chatroomId = chatroomId;
+        }
+    }
+
+    /**
+     * The newest messages of one chatroom in send order, in a ring buffer that drops the oldest message when full.
+     */
+    private static final class RoomBuffer {
+
+        private final MessageResponseDTO[] messages;
+        private int start = 0;
+        private int count = 0;
+        private long bytes = ROOM_OVERHEAD_BYTES;
+
+        /**
+         * True if the chatroom has no messages older than the buffer, so a page of any size can be served.
+         */
+        private boolean complete = false;
+
+        RoomBuffer(int capacity) {
+            this.messages = new MessageResponseDTO[capacity];
+        }
+
+        private MessageResponseDTO get(int index) {
+            return messages[(start + index) % messages.length];
+        }
+
+        private void set(int index, MessageResponseDTO message) {
+            messages[(start + index) % messages.length] = message;
+        }
+
+        /**
+         * Returns the newest messages, oldest first.
+         */
+        List<MessageResponseDTO> newest(int limit) {
+            int size = Math.min(limit, count);
+            List<MessageResponseDTO> page = new ArrayList<>(size);
+            for (int i = count - size; i < count; i++) {
+                page.add(get(i));
+            }
+            return page;
+        }
+
+        /**
+         * Adds a message at its place in send order. Messages usually arrive in order and go to the end,
+         * a message committed late is moved in, or dropped if it is older than everything in a full buffer.
+         */
+        void add(MessageResponseDTO message) {
+            if (indexOf(message.id()) >= 0) {
+                replace(message);
+                return;
+            }
+            int position = count;
+            while (position > 0 && SEND_ORDER.compare(get(position - 1), message) > 0) {
+                position--;
+            }
+            if (count == messages.length) {
+                if (position == 0) {
+                    complete = false;
+                    return;
+                }
+                bytes -= sizeOf(get(0));
+                set(0, null);
+                start = (start + 1) % messages.length;
+                count--;
+                position--;
+                complete = false;
+            }
+            for (int i = count; i > position; i--) {
+                set(i, get(i - 1));
+            }
+            set(position, message);
+            count++;
+            bytes += sizeOf(message);
+        }
+
+        void replace(MessageResponseDTO message) {
+            patch(message.id(), current -> message);
+            MessageResponseDTO.RepliedToMessageDTO preview =
+                    new MessageResponseDTO.RepliedToMessageDTO(message.id(), message.senderName(), message.content());
+            updateReplyPreviews(message.id(), preview);
+        }
+
+        void patch(Long messageId, UnaryOperator<MessageResponseDTO> patch) {
+            int index = indexOf(messageId);
+            if (index >= 0) {
+                MessageResponseDTO patched = patch.apply(get(index));
+                bytes += sizeOf(patched) - sizeOf(get(index));
+                set(index, patched);
+            }
+        }
+
+        void remove(Long messageId) {
+            int index = indexOf(messageId);
+            if (index >= 0) {
+                bytes -= sizeOf(get(index));
+                for (int i = index; i < count - 1; i++) {
+                    set(i, get(i + 1));
+                }
+                set(count - 1, null);
+                count--;
+            }
+            updateReplyPreviews(messageId, new MessageResponseDTO.RepliedToMessageDTO(messageId, null, null));
+        }
+
+        /**
+         * Updates the previews of the replies to a message. Forwards keep the copy they were made with.
+         */
+        private void updateReplyPreviews(Long messageId, MessageResponseDTO.RepliedToMessageDTO preview) {
+            for (int i = 0; i < count; i++) {
+                MessageResponseDTO reply = get(i);
+                if (!reply.forwarded() && reply.repliedToMessage() != null && messageId.equals(reply.repliedToMessage().id())) {
+                    MessageResponseDTO updated = reply.withRepliedToMessage(preview);
+                    bytes += sizeOf(updated) - sizeOf(reply);
+                    set(i, updated);
+                }
+            }
+        }
+
+        private int indexOf(Long messageId) {
+            for (int i = count - 1; i >= 0; i--) {
+                if (get(i).id().equals(messageId)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.yaplab.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key into one.
+ * The first caller of a key runs the load, callers that arrive while it runs wait for it and get the same result,
+ * or the same exception, instead of sending the same query again. Nothing is kept once the load is done,
+ * the next caller loads again.
+ * A caller that joins a running load can get a result that misses a write committed just before it called,
+ * so only reads that tolerate being one query behind should go through here.
+ * The results are shared between threads, so they must not be entities or be modified by the callers.
+ * @param <K> type of the keys, with equals and hashCode
+ * @param <V> type of the loaded values
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter loads;
+    private final Counter collapsed;
+
+    /**
+     * @param name name of the loads, used as tag of the metrics
+     * @param registry registry of the metrics
+     */
+    public SingleFlight(String name, MeterRegistry registry) {
+        this.loads = Counter.builder("yaplab.cache.single-flight.loads")
+                .description("Loads run and loads collapsed into a running load of the same key")
+                .tag("name", name)
+                .tag("result", "loaded")
+                .register(registry);
+        this.collapsed = Counter.builder("yaplab.cache.single-flight.loads")
+                .description("Loads run and loads collapsed into a running load of the same key")
+                .tag("name", name)
+                .tag("result", "collapsed")
+                .register(registry);
+    }
+
+    /**
+     * Loads the value of a key, or waits for the load of the key that is already running.
+     * @param key the key to load
+     * @param loader loads the value when no load of the key is running
+     * @return the loaded value
+     */
+    public V load(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            collapsed.increment();
+            return await(running);
+        }
+        loads.increment();
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Waits for a running load and rethrows its exception as it was thrown to the caller that ran it.
+     */
+    private V await(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
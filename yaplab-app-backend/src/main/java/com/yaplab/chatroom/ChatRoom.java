@@ -50,6 +50,14 @@ public class ChatRoom {
     @Column(nullable = false)
     private Instant lastActivity;
 
+    /**
+     * Highest sequence number given to a message of this chatroom.
+     * Kept with the chatroom so numbers are never reused after messages are archived or purged.
+     * Only raised by ChatRoomRepository.recordMessage, saving the entity never overwrites it with a stale value.
+     */
+    @Column(name = "last_seq", updatable = false)
+    private Long lastSeq;
+
     /**
      * One chatroom can belong to many users and one user can belong many chatrooms.
      * A hash set ensures unique elements and easy traversal. A chatroom will not have duplicate members.
@@ -147,6 +155,14 @@ public class ChatRoom {
         this.lastActivity = lastActivity;
     }
 
+    public Long getLastSeq() {
+        return lastSeq;
+    }
+
+    public void setLastSeq(Long lastSeq) {
+        this.lastSeq = lastSeq;
+    }
+
     public Set<User> getParticipants() {
         return participants;
     }
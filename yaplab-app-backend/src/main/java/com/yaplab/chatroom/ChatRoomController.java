@@ -4,6 +4,7 @@ import com.yaplab.message.MessageResponseDTO;
 import com.yaplab.user.User;
 import com.yaplab.user.UserDTO;
 import com.yaplab.user.UserService;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.*;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -11,6 +12,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
 import java.security.Principal;
+import java.time.Instant;
 import java.util.List;
 
 /**
@@ -66,14 +68,41 @@ public class ChatRoomController {
     }
 
     /**
-     * Returns the list of messages of the particular chatroom
+     * Returns one page of messages of the particular chatroom, oldest first
+     * The next older page is requested with the timestamp of the first message as before and its ID as beforeId
      * @param chatroomId ID of the chatroom
+     * @param before Only messages sent before this time, latest messages if absent
+     * @param beforeId Also messages sent at the before time with a lower ID, none if absent
+     * @param limit Maximum number of messages
      */
     @GetMapping("/{chatroomId}/messages")
     public ResponseEntity<List<MessageResponseDTO>> getMessagesFromChatroom(
-            @PathVariable String chatroomId
+            @PathVariable String chatroomId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant before,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(defaultValue = "50") int limit
     ){
-        return ResponseEntity.ok(chatRoomService.getMessagesFromChatRoom(chatroomId));
+        return ResponseEntity.ok(chatRoomService.getMessagesFromChatRoom(chatroomId, before, beforeId, limit));
+    }
+
+    /**
+     * Returns the messages of the chatroom with a sequence number in the range, oldest first
+     * Clients call this when the sequence numbers they received skip a number, to fetch only the missing messages
+     * @param chatroomId ID of the chatroom
+     * @param fromSeq First missing sequence number
+     * @param toSeq Last missing sequence number, at most 200 numbers after fromSeq
+     */
+    @GetMapping("/{chatroomId}/messages/range")
+    public ResponseEntity<List<MessageResponseDTO>> getMessagesBySeqRange(
+            @PathVariable String chatroomId,
+            @RequestParam long fromSeq,
+            @RequestParam long toSeq
+    ){
+        try {
+            return ResponseEntity.ok(chatRoomService.getMessagesBySeqRange(chatroomId, fromSeq, toSeq));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
@@ -4,8 +4,13 @@ import com.yaplab.enums.ChatRoomType;
 import com.yaplab.group.Group;
 import com.yaplab.user.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -39,4 +44,46 @@ public interface ChatRoomRepository extends JpaRepository<ChatRoom, String> {
      * @return list of chatrooms
      */
     List<ChatRoom> findAllByParticipantsContaining(User user);
+
+    /**
+     * Find the IDs of all chatrooms of a user without loading the chatrooms
+     * @param userId ID of the user
+     * @return list of chatroom IDs
+     */
+    @Query("select c.chatroomId from ChatRoom c join c.participants p where p.id = :userId")
+    List<String> findChatroomIdsByParticipantId(@Param("userId") Long userId);
+
+    /**
+     * Find which of the given chatrooms a user takes part in
+     * @param userId ID of the user
+     * @param chatroomIds IDs of the chatrooms to look at
+     * @return list of the IDs of the chatrooms the user takes part in
+     */
+    @Query("select c.chatroomId from ChatRoom c join c.participants p where p.id = :userId and c.chatroomId in :chatroomIds")
+    List<String> findChatroomIdsByParticipantIdAndChatroomIdIn(@Param("userId") Long userId, @Param("chatroomIds") Collection<String> chatroomIds);
+
+    /**
+     * Finds the highest sequence number given to a message of a chatroom
+     * @param chatroomId ID of the chatroom
+     * @return the highest sequence number, null if no message of the chatroom has one
+     */
+    @Query("select c.lastSeq from ChatRoom c where c.chatroomId = :chatroomId")
+    Long findLastSeq(@Param("chatroomId") String chatroomId);
+
+    /**
+     * Records a new message of a chatroom by updating its last activity and raising its highest sequence number.
+     * The sequence number is only ever raised, so senders committing out of order cannot move it back.
+     * @param chatroomId ID of the chatroom
+     * @param seq sequence number of the new message
+     * @param now time of the message
+     * @return number of updated chatrooms
+     */
+    @Modifying
+    @Query("""
+            update ChatRoom c
+            set c.lastActivity = :now,
+                c.lastSeq = case when c.lastSeq is null or c.lastSeq < :seq then :seq else c.lastSeq end
+            where c.chatroomId = :chatroomId
+            """)
+    int recordMessage(@Param("chatroomId") String chatroomId, @Param("seq") long seq, @Param("now") Instant now);
 }
@@ -0,0 +1,74 @@
+package com.yaplab.chatroom;
+
+import com.yaplab.message.MessageRepository;
+import com.yaplab.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allocates the sequence numbers of the messages of every chatroom.
+ * Each chatroom has its own counter in memory, so concurrent senders get their numbers with one atomic increment
+ * instead of locking the chatroom row. A counter is seeded from the database the first time the chatroom sends a message
+ * after startup, from the highest number recorded on the chatroom or found on its messages.
+ * The counters assume a single backend instance, the unique key on chatroom and sequence number rejects a duplicate
+ * if two instances ever hand out the same number.
+ */
+@Component
+public class ChatRoomSequencer {
+
+    /**
+     * Logger for ChatRoomSequencer
+     * This logger is used to log various events and errors in the ChatRoomSequencer class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ChatRoomSequencer.class);
+
+    /**
+     * Last allocated sequence number of every chatroom that sent a message since startup.
+     */
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final ChatRoomRepository chatRoomRepository;
+    private final MessageRepository messageRepository;
+    private final ShardRouter shardRouter;
+
+    public ChatRoomSequencer(ChatRoomRepository chatRoomRepository, MessageRepository messageRepository, ShardRouter shardRouter) {
+        this.chatRoomRepository = chatRoomRepository;
+        this.messageRepository = messageRepository;
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Allocates the next sequence number of a chatroom.
+     * A number whose message is rolled back is not handed out again and stays a gap.
+     * @param chatroomId ID of the chatroom
+     * @return the allocated sequence number, starting at 1
+     */
+    public long next(String chatroomId) {
+        AtomicLong counter = counters.get(chatroomId);
+        if (counter == null) {
+            // Read outside computeIfAbsent so the map is not locked during the query, the first seed to arrive wins.
+            long seed = loadLastSeq(chatroomId);
+            counter = counters.computeIfAbsent(chatroomId, id -> new AtomicLong(seed));
+        }
+        return counter.incrementAndGet();
+    }
+
+    /**
+     * Reads the highest sequence number of a chatroom from the database, the messages from the shard of the chatroom.
+     */
+    private long loadLastSeq(String chatroomId) {
+        Long recorded = chatRoomRepository.findLastSeq(chatroomId);
+        Long stored = shardRouter.readOnChatroom(chatroomId, () -> messageRepository.findMaxSeq(chatroomId));
+        long seed = Math.max(recorded != null ? recorded : 0, stored != null ? stored : 0);
+        logger.debug("Sequence of chatroom {} seeded at {}", chatroomId, seed);
+        return seed;
+    }
+}
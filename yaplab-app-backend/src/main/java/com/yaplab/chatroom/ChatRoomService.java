@@ -1,20 +1,32 @@
 package com.yaplab.chatroom;
 
+import com.yaplab.archive.MessageArchive;
+import com.yaplab.cache.RecentMessageCache;
+import com.yaplab.cache.SingleFlight;
+import com.yaplab.datasource.DataSourceRouting;
 import com.yaplab.enums.ChatRoomType;
 import com.yaplab.group.Group;
 import com.yaplab.group.GroupRepository;
-import com.yaplab.message.Message;
+import com.yaplab.message.MessageHistoryRow;
 import com.yaplab.message.MessageMapper;
 import com.yaplab.message.MessageRepository;
 import com.yaplab.message.MessageResponseDTO;
+import com.yaplab.shard.ShardRouter;
 import com.yaplab.user.User;
 import com.yaplab.user.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -43,14 +55,40 @@ public class ChatRoomService {
     private final ChatRoomMapper chatRoomMapper;
     private final MessageMapper messageMapper;
     private final MessageRepository messageRepository;
+    private final MessageArchive messageArchive;
+    private final ChatRoomSequencer chatRoomSequencer;
+    private final RecentMessageCache recentMessageCache;
+    private final ShardRouter shardRouter;
 
-    public ChatRoomService(UserService userService, GroupRepository groupRepository, ChatRoomRepository chatRoomRepository, ChatRoomMapper chatRoomMapper, MessageMapper messageMapper, MessageRepository messageRepository) {
+    /**
+     * Concurrent reads of the same history page or chatroom list share one load.
+     */
+    private final SingleFlight<HistoryPageKey, List<MessageResponseDTO>> historyLoads;
+    private final SingleFlight<Long, List<ChatRoomResponseDTO>> userChatRoomLoads;
+
+    /**
+     * Maximum number of messages in one page of history.
+     */
+    private static final int MAX_HISTORY_PAGE_SIZE = 200;
+
+    /**
+     * Maximum number of sequence numbers in one range request.
+     */
+    private static final int MAX_SEQ_RANGE = 200;
+
+    public ChatRoomService(UserService userService, GroupRepository groupRepository, ChatRoomRepository chatRoomRepository, ChatRoomMapper chatRoomMapper, MessageMapper messageMapper, MessageRepository messageRepository, MessageArchive messageArchive, ChatRoomSequencer chatRoomSequencer, RecentMessageCache recentMessageCache, MeterRegistry meterRegistry, ShardRouter shardRouter) {
         this.userService = userService;
         this.groupRepository = groupRepository;
         this.chatRoomRepository = chatRoomRepository;
         this.chatRoomMapper = chatRoomMapper;
         this.messageMapper = messageMapper;
         this.messageRepository = messageRepository; // Ensure this is initialized
+        this.messageArchive = messageArchive;
+        this.chatRoomSequencer = chatRoomSequencer;
+        this.recentMessageCache = recentMessageCache;
+        this.shardRouter = shardRouter;
+        this.historyLoads = new SingleFlight<>("chatroom-history", meterRegistry);
+        this.userChatRoomLoads = new SingleFlight<>("user-chatrooms", meterRegistry);
     }
 
     /**
@@ -140,12 +178,17 @@ public class ChatRoomService {
 
     /**
      * Get the list of chatrooms for a particular user
+     * Concurrent requests for the same user share one load.
      * @param userID user ID of the user
      * @return list of chatroom response DTO
      */
     public List<ChatRoomResponseDTO> getUserChatRooms(Long userID){
+        return userChatRoomLoads.load(userID, () -> loadUserChatRooms(userID));
+    }
+
+    private List<ChatRoomResponseDTO> loadUserChatRooms(Long userID) {
         User user = userService.getUserEntityByID(userID);
-        logger.info("Fetching chatrooms for user {}", userID);
+        logger.debug("Fetching chatrooms for user {}", userID);
         return chatRoomRepository.findAllByParticipantsContaining(user)
                 .stream()
                 .map(chatRoomMapper::chatRoomResponseDTO)
@@ -153,18 +196,127 @@ public class ChatRoomService {
     }
 
     /**
-     * Gets the list of messages for a chatroom
+     * Checks that a user takes part in every given chatroom.
+     * The chatrooms are read on the default shard, so this can be called while working on a message shard.
+     * @param userId ID of the user
+     * @param chatroomIds IDs of the chatrooms
+     * @throws AccessDeniedException if the user is not a participant of one of the chatrooms
+     */
+    public void checkParticipant(Long userId, Collection<String> chatroomIds) {
+        Set<String> wanted = new HashSet<>(chatroomIds);
+        List<String> joined = shardRouter.readOnShard(ShardRouter.DEFAULT_SHARD,
+                () -> chatRoomRepository.findChatroomIdsByParticipantIdAndChatroomIdIn(userId, wanted));
+        if (joined.size() != wanted.size()) {
+            logger.warn("User {} is not a participant of every chatroom of {}", userId, wanted);
+            throw new AccessDeniedException("User is not a participant of the chatroom.");
+        }
+    }
+
+    /**
+     * Gets one page of the message history of a chatroom.
+     * Recent messages are read from the database as flat rows in one query and older ones from the archive, merged by send time,
+     * so clients page through the whole history without knowing where a message is stored.
+     * The archive is only read when the page reaches back to archived messages.
+     * The latest page of an active chatroom is served from the recent message cache without a database connection,
+     * a latest page read from the database is put in the cache for the next reader.
+     * Concurrent requests for a page that is not cached share one read.
      * @param chatroomId ID of the chatroom
-     * @return list of messages in the chatroom
+     * @param before only messages sent before this time are returned, null for the latest page
+     * @param beforeId ID of the oldest message of the previous page, messages sent at the before time with a lower ID
+     *                 are returned too, so a page boundary inside one millisecond skips nothing. Null for none of them.
+     * @param limit maximum number of messages, capped at 200
+     * @return the messages of the page, oldest first
      */
-    public List<MessageResponseDTO> getMessagesFromChatRoom(String chatroomId){
-        logger.info("Fetching non-soft-deleted messages for chatroom {}", chatroomId);
-        // Use the repository method to find messages where softDeleted is false
-        List<Message> messages = messageRepository.findByChatroom_ChatroomIdAndSoftDeletedFalse(chatroomId);
+    public List<MessageResponseDTO> getMessagesFromChatRoom(String chatroomId, Instant before, Long beforeId, int limit){
+        int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE_SIZE));
+        if (before != null) {
+            HistoryCursor cursor = new HistoryCursor(before, beforeId != null ? beforeId : Long.MIN_VALUE);
+            return historyLoads.load(new HistoryPageKey(chatroomId, cursor, pageSize), () -> readHistoryPage(chatroomId, cursor, pageSize));
+        }
+        HistoryPageKey key = new HistoryPageKey(chatroomId, null, pageSize);
+        List<MessageResponseDTO> cached = recentMessageCache.latest(chatroomId, pageSize);
+        if (cached != null) {
+            return cached;
+        }
+        return historyLoads.load(key, () -> {
+            RecentMessageCache.Load load = recentMessageCache.beginLoad(chatroomId);
+            // Read from the primary, a page from a lagging replica would stay in the cache without the messages it missed.
+            List<MessageResponseDTO> page = DataSourceRouting.onPrimary(() -> readHistoryPage(chatroomId, null, pageSize));
+            recentMessageCache.install(load, page, page.size() < pageSize);
+            return page;
+        });
+    }
 
-        return messages.stream()
-                .map(messageMapper::toResponseDTO)
-                .collect(Collectors.toList());
+    /**
+     * Identifies a history page for coalescing concurrent reads of it.
+     */
+    private record HistoryPageKey(String chatroomId, HistoryCursor cursor, int pageSize) {
+    }
+
+    /**
+     * Position in the history, a page holds the messages ordered before it by send time and then ID.
+     */
+    private record HistoryCursor(Instant before, long beforeId) {
+    }
+
+    /**
+     * Reads one page of the message history from the database and the archive.
+     * Not transactional on purpose, the page reads each run in their own read-only transaction
+     * so a page served from the cache never takes a connection.
+     * @param cursor position the page ends before, null for the latest page
+     * @return the messages of the page, oldest first
+     */
+    private List<MessageResponseDTO> readHistoryPage(String chatroomId, HistoryCursor cursor, int pageSize) {
+        logger.debug("Fetching {} messages before {} for chatroom {}", pageSize, cursor, chatroomId);
+        List<MessageHistoryRow> hot = shardRouter.onChatroom(chatroomId, () -> cursor == null
+                ? messageRepository.findHistoryRows(chatroomId, Limit.of(pageSize))
+                : messageRepository.findHistoryRowsBefore(chatroomId, cursor.before(), cursor.beforeId(), Limit.of(pageSize)));
+        List<MessageResponseDTO> page = hot.stream()
+                .map(messageMapper::fromHistoryRow)
+                .collect(Collectors.toCollection(ArrayList::new));
+
+        Instant newestArchived = messageArchive.newestTimestamp(chatroomId);
+        boolean reachesArchive = newestArchived != null
+                && (page.size() < pageSize || !newestArchived.isBefore(page.getLast().timestamp()));
+        if (reachesArchive) {
+            Set<Long> hotIds = page.stream().map(MessageResponseDTO::id).collect(Collectors.toSet());
+            List<MessageResponseDTO> archivedPage = cursor == null
+                    ? messageArchive.readBefore(chatroomId, null, null, pageSize)
+                    : messageArchive.readBefore(chatroomId, cursor.before(), cursor.beforeId(), pageSize);
+            for (MessageResponseDTO archived : archivedPage) {
+                if (!hotIds.contains(archived.id())) {
+                    page.add(archived);
+                }
+            }
+            page.sort(Comparator.comparing(MessageResponseDTO::timestamp).thenComparing(MessageResponseDTO::id).reversed());
+            if (page.size() > pageSize) {
+                page.subList(pageSize, page.size()).clear();
+            }
+        }
+        Collections.reverse(page);
+        return page;
+    }
+
+    /**
+     * Gets the messages of a chatroom with a sequence number in the given range.
+     * Used by clients that noticed a gap in the sequence numbers they received to fetch only the missing messages.
+     * Numbers of rolled back sends and of deleted or archived messages are not returned, a gap the range does not fill is final.
+     * Read from the primary, a replica that has not caught up yet would report a gap as final.
+     * @param chatroomId ID of the chatroom
+     * @param fromSeq first sequence number, inclusive
+     * @param toSeq last sequence number, inclusive, at most 200 numbers after fromSeq
+     * @return the messages of the range, in sequence order
+     */
+    @Transactional(readOnly = true)
+    public List<MessageResponseDTO> getMessagesBySeqRange(String chatroomId, long fromSeq, long toSeq) {
+        if (fromSeq < 1 || toSeq < fromSeq || toSeq - fromSeq >= MAX_SEQ_RANGE) {
+            throw new IllegalArgumentException("Sequence range must start at 1 or later and span 1 to " + MAX_SEQ_RANGE + " numbers.");
+        }
+        logger.debug("Fetching messages {} to {} of chatroom {}", fromSeq, toSeq, chatroomId);
+        return shardRouter.readOnChatroom(chatroomId, () -> DataSourceRouting.onPrimary(() -> messageRepository.findHistoryRowsBySeqRange(chatroomId, fromSeq, toSeq)))
+                .stream()
+                .map(messageMapper::fromHistoryRow)
+                .toList();
     }
 
     /**
@@ -217,4 +369,26 @@ public class ChatRoomService {
         chatRoom.setLastActivity(Instant.now());
         chatRoomRepository.save(chatRoom);
     }
+
+    /**
+     * Allocates the sequence number of a new message of the chatroom.
+     * @param chatroomId ID of the chatroom
+     * @return the sequence number
+     */
+    public long nextSequence(String chatroomId) {
+        return chatRoomSequencer.next(chatroomId);
+    }
+
+    /**
+     * Records a new message of the chatroom, updating its last activity and highest sequence number in one statement.
+     * @param chatroomId ID of the chatroom
+     * @param seq sequence number of the message
+     */
+    @Transactional
+    public void recordMessage(String chatroomId, long seq) {
+        if (chatRoomRepository.recordMessage(chatroomId, seq, Instant.now()) == 0) {
+            logger.warn("Failed to record message {}: Chatroom {} not found", seq, chatroomId);
+            throw new RuntimeException("Chatroom not found");
+        }
+    }
 }
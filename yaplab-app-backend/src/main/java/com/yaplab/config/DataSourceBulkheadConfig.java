@@ -0,0 +1,66 @@
+package com.yaplab.config;
+
+import com.yaplab.datasource.Workload;
+import com.yaplab.datasource.WorkloadBulkheadDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Configuration class putting the workload bulkheads in front of the data source used by JPA.
+ * Active when spring.datasource.bulkhead.enabled is set. Wraps whichever data source is named dataSource,
+ * the plain Spring Boot pool, the replica routing or the shard routing one, so the limits count connections
+ * across all pools behind it. Limits and timeouts are set per workload under spring.datasource.bulkhead.{workload}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.datasource.bulkhead.enabled", havingValue = "true")
+public class DataSourceBulkheadConfig {
+
+    /**
+     * Default connection limits, for the pool size of 20 of the example configuration.
+     */
+    private static final Map<Workload, Integer> DEFAULT_LIMITS = Map.of(
+            Workload.REALTIME, 0,
+            Workload.INTERACTIVE, 12,
+            Workload.BACKGROUND, 4);
+
+    /**
+     * Default waits for a connection beyond the limit.
+     */
+    private static final Map<Workload, Duration> DEFAULT_TIMEOUTS = Map.of(
+            Workload.REALTIME, Duration.ofSeconds(2),
+            Workload.INTERACTIVE, Duration.ofSeconds(5),
+            Workload.BACKGROUND, Duration.ofSeconds(30));
+
+    /**
+     * Wraps the dataSource bean once it is initialized. Static, as bean post processors are created before other beans.
+     */
+    @Bean
+    public static BeanPostProcessor workloadBulkheadPostProcessor(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!"dataSource".equals(beanName) || !(bean instanceof DataSource dataSource)) {
+                    return bean;
+                }
+                Map<Workload, Integer> limits = new EnumMap<>(Workload.class);
+                Map<Workload, Duration> timeouts = new EnumMap<>(Workload.class);
+                for (Workload workload : Workload.values()) {
+                    String prefix = "spring.datasource.bulkhead." + workload.name().toLowerCase();
+                    limits.put(workload, environment.getProperty(prefix + ".max-connections", Integer.class, DEFAULT_LIMITS.get(workload)));
+                    timeouts.put(workload, environment.getProperty(prefix + ".timeout", Duration.class, DEFAULT_TIMEOUTS.get(workload)));
+                }
+                return new WorkloadBulkheadDataSource(dataSource, limits, timeouts, meterRegistry.getObject());
+            }
+        };
+    }
+}
@@ -0,0 +1,12 @@
+package com.yaplab.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Configuration class enabling scheduled background jobs such as search index commits.
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -2,6 +2,7 @@ package com.yaplab.config;
 
 import com.yaplab.security.JWTFilter;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -34,16 +35,21 @@ public class SecurityConfig{
      */
     private final UserDetailsService userDetailsService;
     private final JWTFilter jwtFilter;
+    private final int managementPort;
 
-    public SecurityConfig(UserDetailsService userDetailsService, JWTFilter jwtFilter) {
+    public SecurityConfig(UserDetailsService userDetailsService, JWTFilter jwtFilter,
+                          @Value("${management.server.port:-1}") int managementPort) {
         this.userDetailsService = userDetailsService;
         this.jwtFilter = jwtFilter;
+        this.managementPort = managementPort;
     }
 
     /**
      * Configures the security filter chain for the application.
      * Spring security's default CSRF function is disabled.
      * Any request with login, register or password reset paths are authorized by default and permitted.
+     * The health endpoint is permitted too. The Prometheus scrape endpoint is only permitted on the internal
+     * management port (management.server.port), on the public port it needs a token like any other request.
      * The session is stateless and a filter is added before this default security filter to manage JWT tokens.
      * and adds the JWT filter to the security chain.
      */
@@ -59,7 +65,12 @@ public class SecurityConfig{
                                 "/auth/login",
                                 "/auth/verify-email",
                                 "/auth/forgot-password",
-                                "/auth/reset-password")
+                                "/auth/reset-password",
+                                "/actuator/health")
+                        .permitAll()
+                        .requestMatchers(managementRequest -> managementPort > 0
+                                && managementRequest.getLocalPort() == managementPort
+                                && managementRequest.getRequestURI().startsWith("/actuator/"))
                         .permitAll()
                         .anyRequest().authenticated())
                         .sessionManagement(session -> session.
@@ -0,0 +1,88 @@
+package com.yaplab.config;
+
+import com.yaplab.shard.ShardDataSources;
+import com.yaplab.shard.ShardRouter;
+import com.yaplab.shard.ShardRoutingDataSource;
+import com.yaplab.shard.ShardSchemaIntegrator;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Configuration class for sharding the messages over several MySQL databases.
+ * Active when message.shards.urls lists at least one database besides spring.datasource, see ShardRouter.
+ * Every shard has the full schema, provisioned on startup with the schema action of spring.jpa.hibernate.ddl-auto,
+ * see ShardSchemaIntegrator. The shards after the first need a copy of the users, groups, chatrooms and files
+ * replicated from it, because messages refer to them and history queries join them. The foreign keys from messages
+ * to those copies are dropped on startup, see ShardSchema, so a message is not rejected while its chatroom is still replicating.
+ * Instead the journal drain checks the copies before inserting, see MessageService.persistJournaledMessages.
+ * Every shard gets its own pool with the size of message.shards.pool-size and the credentials of spring.datasource.
+ */
+@Configuration
+@ConditionalOnExpression("!'${message.shards.urls:}'.isBlank()")
+public class ShardConfig {
+
+    /**
+     * The connection pools of all shards, the default shard first, each publishing the hikaricp metrics under its pool name.
+     */
+    @Bean(destroyMethod = "close")
+    public ShardDataSources shardDataSources(DataSourceProperties properties,
+                                             @Value("${message.shards.urls}") List<String> urls,
+                                             @Value("${message.shards.pool-size:20}") int poolSize,
+                                             @Value("${spring.datasource.replica.url:}") String replicaUrl,
+                                             MeterRegistry meterRegistry) {
+        if (!replicaUrl.isBlank()) {
+            throw new IllegalStateException("Message shards cannot be combined with spring.datasource.replica.url");
+        }
+        Map<String, HikariDataSource> shards = new LinkedHashMap<>();
+        shards.put(ShardRouter.DEFAULT_SHARD, pool(properties, properties.determineUrl(), ShardRouter.DEFAULT_SHARD, poolSize, meterRegistry));
+        for (int i = 0; i < urls.size(); i++) {
+            String shard = String.valueOf(i + 1);
+            shards.put(shard, pool(properties, urls.get(i), shard, poolSize, meterRegistry));
+        }
+        return new ShardDataSources(shards);
+    }
+
+    /**
+     * Provisions the schema of the shards after the default one while Hibernate builds the session factory.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer shardSchemaProvisioning(ShardDataSources shardDataSources) {
+        IntegratorProvider integrators = () -> List.of(new ShardSchemaIntegrator(shardDataSources.dataSources()));
+        return hibernateProperties -> hibernateProperties.put(EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER, integrators);
+    }
+
+    /**
+     * The data source used by JPA, routing every connection to the shard selected when its first statement runs.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardDataSources shardDataSources) {
+        return new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(shardDataSources.dataSources()));
+    }
+
+    private static HikariDataSource pool(DataSourceProperties properties, String url, String shard, int poolSize, MeterRegistry meterRegistry) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .url(url)
+                .build();
+        dataSource.setPoolName("shard-" + shard);
+        dataSource.setMaximumPoolSize(poolSize);
+        dataSource.setMetricRegistry(meterRegistry);
+        return dataSource;
+    }
+}
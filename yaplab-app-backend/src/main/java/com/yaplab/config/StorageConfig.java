@@ -0,0 +1,77 @@
+package com.yaplab.config;
+
+import com.amazonaws.auth.AWSCredentialsProvider;
+import com.amazonaws.auth.AWSStaticCredentialsProvider;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.client.builder.AwsClientBuilder;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.yaplab.files.BlobStore;
+import com.yaplab.files.InMemoryBlobStore;
+import com.yaplab.files.LocalBlobStore;
+import com.yaplab.files.S3BlobStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration class for the storage backend of uploaded files.
+ * The backend is selected with the file.storage.type property:
+ * local (default) keeps files on disk, s3 keeps them in a bucket and memory keeps them in memory for tests.
+ */
+@Configuration
+public class StorageConfig {
+
+    /**
+     * Blob store writing to a local directory. Used when no storage type is configured.
+     * @param uploadDir directory where uploaded files are stored
+     */
+    @Bean
+    @ConditionalOnProperty(name = "file.storage.type", havingValue = "local", matchIfMissing = true)
+    public BlobStore localBlobStore(@Value("${file.upload-dir:uploads}") String uploadDir) {
+        return new LocalBlobStore(uploadDir);
+    }
+
+    /**
+     * Blob store keeping files in memory. Acts as a fake S3 for tests and local runs.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "file.storage.type", havingValue = "memory")
+    public BlobStore inMemoryBlobStore() {
+        return new InMemoryBlobStore();
+    }
+
+    /**
+     * Blob store writing to an S3 bucket.
+     * Setting an endpoint points the client to an S3 compatible server such as a local MinIO,
+     * in which case path style access is used because such servers rarely have per-bucket DNS names.
+     * Static keys are optional, without them the default AWS credential chain is used.
+     */
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(name = "file.storage.type", havingValue = "s3")
+    public BlobStore s3BlobStore(
+            @Value("${file.storage.s3.bucket}") String bucket,
+            @Value("${file.storage.s3.region:us-east-1}") String region,
+            @Value("${file.storage.s3.endpoint:}") String endpoint,
+            @Value("${file.storage.s3.access-key:}") String accessKey,
+            @Value("${file.storage.s3.secret-key:}") String secretKey,
+            @Value("${file.storage.s3.multipart-threshold:16777216}") long multipartThreshold,
+            @Value("${file.storage.s3.part-size:8388608}") long partSize,
+            @Value("${file.storage.s3.upload-threads:4}") int uploadThreads) {
+        AWSCredentialsProvider credentials = accessKey.isBlank()
+                ? DefaultAWSCredentialsProviderChain.getInstance()
+                : new AWSStaticCredentialsProvider(new BasicAWSCredentials(accessKey, secretKey));
+
+        AmazonS3ClientBuilder builder = AmazonS3ClientBuilder.standard().withCredentials(credentials);
+        if (endpoint.isBlank()) {
+            builder.withRegion(region);
+        } else {
+            builder.withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region))
+                    .withPathStyleAccessEnabled(true);
+        }
+        AmazonS3 s3 = builder.build();
+        return new S3BlobStore(s3, bucket, multipartThreshold, partSize, uploadThreads);
+    }
+}
@@ -1,10 +1,28 @@
 package com.yaplab.config;
 
+import com.yaplab.datasource.ReadYourWritesTracker;
+import com.yaplab.datasource.Workload;
+import com.yaplab.metrics.WebSocketFrameMetrics;
+import com.yaplab.websocket.BroadcastFrameEncoder;
+import com.yaplab.websocket.SlowConsumerGuard;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.time.Duration;
 
 /**
  * Configuration class for WebSocket messaging in the YapLab application.
@@ -14,15 +32,59 @@ import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerCo
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    /**
+     * Constructor based dependency injection
+     */
+    private final WebSocketFrameMetrics frameMetrics;
+    private final SlowConsumerGuard slowConsumerGuard;
+
+    /**
+     * In virtual-thread mode (spring.threads.virtual.enabled) the client channels run every frame on its own virtual thread,
+     * so a frame blocked on JDBC no longer holds one of the few pool threads.
+     * The concurrency limit is the bulkhead in front of the connection pool: beyond it the channel stops
+     * taking new frames instead of letting thousands of virtual threads queue on the pool and time out.
+     */
+    private final boolean virtualThreads;
+    private final int channelConcurrencyLimit;
+
+    /**
+     * Limits of a single WebSocket session. Frames to a client that is not reading queue in a send buffer,
+     * the session is closed once the buffer holds more than sendBufferSizeLimit bytes or a write has been
+     * blocked for sendTimeLimit. The {@link SlowConsumerGuard} sheds load and disconnects well before that.
+     */
+    private final Duration sendTimeLimit;
+    private final int sendBufferSizeLimit;
+    private final int messageSizeLimit;
+
+    public WebSocketConfig(
+            WebSocketFrameMetrics frameMetrics,
+            SlowConsumerGuard slowConsumerGuard,
+            @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+            @Value("${websocket.channel.concurrency-limit:40}") int channelConcurrencyLimit,
+            @Value("${websocket.send-time-limit:PT10S}") Duration sendTimeLimit,
+            @Value("${websocket.send-buffer-size-limit:524288}") int sendBufferSizeLimit,
+            @Value("${websocket.message-size-limit:65536}") int messageSizeLimit) {
+        this.frameMetrics = frameMetrics;
+        this.slowConsumerGuard = slowConsumerGuard;
+        this.virtualThreads = virtualThreads;
+        this.channelConcurrencyLimit = channelConcurrencyLimit;
+        this.sendTimeLimit = sendTimeLimit;
+        this.sendBufferSizeLimit = sendBufferSizeLimit;
+        this.messageSizeLimit = messageSizeLimit;
+    }
+
     /**
      * Configures the message broker for WebSocket communication.
      * Enables a simple in-memory broker and sets application destination prefixes.
+     * /queue carries the destinations of single users, such as /user/queue/errors for failed sends.
+     * Frames to a session are sent in the order they were published, even when the outbound channel runs them on several threads.
      * @param registry the MessageBrokerRegistry to configure
      */
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic", "/user");
+        registry.enableSimpleBroker("/topic", "/queue", "/user");
         registry.setApplicationDestinationPrefixes("/app");
+        registry.setPreservePublishOrder(true);
     }
 
     /**
@@ -36,4 +98,73 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
+
+    /**
+     * Counts the frames received from clients, marks their handling as realtime work for the connection bulkheads,
+     * binds their user for the read-your-writes tracking and runs them on virtual threads if enabled.
+     * @param registration the registration of the client inbound channel
+     */
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(frameMetrics.inboundInterceptor(), Workload.realtimeInterceptor(),
+                ReadYourWritesTracker.frameUserInterceptor());
+        if (virtualThreads) {
+            registration.executor(virtualThreadExecutor("ws-inbound-"));
+        }
+    }
+
+    /**
+     * Counts the frames sent to clients, sheds frames to slow clients and sends them on virtual threads if enabled.
+     * @param registration the registration of the client outbound channel
+     */
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(frameMetrics.outboundInterceptor(), slowConsumerGuard.outboundInterceptor());
+        if (virtualThreads) {
+            registration.executor(virtualThreadExecutor("ws-outbound-"));
+        }
+    }
+
+    /**
+     * Sets the limits of the WebSocket sessions and tracks them for the slow consumer policy.
+     * @param registration the WebSocket transport registration
+     */
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setSendTimeLimit((int) sendTimeLimit.toMillis())
+                .setSendBufferSizeLimit(sendBufferSizeLimit)
+                .setMessageSizeLimit(messageSizeLimit)
+                .addDecoratorFactory(slowConsumerGuard::decorate);
+    }
+
+    /**
+     * Makes the STOMP handler encode broadcast frames with the {@link BroadcastFrameEncoder},
+     * so the body of a message sent to a room is encoded once and not once per member.
+     * Runs once all beans exist and before the server accepts connections.
+     * @param subProtocolWebSocketHandler the handler of the STOMP endpoint
+     */
+    @Bean
+    public SmartInitializingSingleton broadcastFrameEncoderInstaller(
+            @Qualifier("subProtocolWebSocketHandler") WebSocketHandler subProtocolWebSocketHandler) {
+        return () -> {
+            if (subProtocolWebSocketHandler instanceof SubProtocolWebSocketHandler handler) {
+                for (SubProtocolHandler protocolHandler : handler.getProtocolHandlers()) {
+                    if (protocolHandler instanceof StompSubProtocolHandler stompHandler) {
+                        stompHandler.setEncoder(new BroadcastFrameEncoder());
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates an executor starting a virtual thread per task, with at most channelConcurrencyLimit tasks running.
+     * Submitting a task beyond the limit blocks the submitter, which pushes back on the client connections.
+     */
+    private SimpleAsyncTaskExecutor virtualThreadExecutor(String threadNamePrefix) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor(threadNamePrefix);
+        executor.setVirtualThreads(true);
+        executor.setConcurrencyLimit(channelConcurrencyLimit);
+        return executor;
+    }
 }
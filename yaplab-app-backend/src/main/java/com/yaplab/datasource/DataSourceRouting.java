@@ -0,0 +1,38 @@
+package com.yaplab.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * Lets code require the primary database for reads that must not lag behind the writes,
+ * such as reads whose result is cached or trusted as complete.
+ * Read-only transactions started inside onPrimary go to the primary instead of the replica.
+ */
+public final class DataSourceRouting {
+
+    private static final ThreadLocal<Boolean> PRIMARY_REQUIRED = ThreadLocal.withInitial(() -> false);
+
+    private DataSourceRouting() {
+    }
+
+    /**
+     * Runs the work with all its reads on the primary database.
+     * @param work the work to run
+     * @return the result of the work
+     */
+    public static <T> T onPrimary(Supplier<T> work) {
+        boolean outer = PRIMARY_REQUIRED.get();
+        PRIMARY_REQUIRED.set(true);
+        try {
+            return work.get();
+        } finally {
+            PRIMARY_REQUIRED.set(outer);
+        }
+    }
+
+    /**
+     * Returns true if the current thread runs inside onPrimary.
+     */
+    public static boolean isPrimaryRequired() {
+        return PRIMARY_REQUIRED.get();
+    }
+}
@@ -0,0 +1,31 @@
+package com.yaplab.datasource;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Marks HTTP requests as interactive work, ahead of the security filters so the token checks count too.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class InteractiveWorkloadFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Workload outer = Workload.INTERACTIVE.enter();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            Workload.exit(outer);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.yaplab.datasource;
+
+import com.yaplab.security.AppUserDetails;
+import com.yaplab.transaction.AfterCommit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which users wrote to the primary database recently, so their reads can stay on the primary
+ * until the replica has caught up with their own writes. Users are identified by their user ID.
+ * On HTTP threads the user is the authenticated principal of the security context, on STOMP threads
+ * the principal of the frame being handled, bound by the inbound interceptor. Writes made on threads
+ * without a user, such as the group commit writer and the journal drainer, are recorded for the sender
+ * with recordWriteAfterCommit. Work without a user is never pinned.
+ */
+@Component
+public class ReadYourWritesTracker {
+
+    /**
+     * User ID of the STOMP frame handled by the current thread.
+     */
+    private static final ThreadLocal<Long> FRAME_USER = new ThreadLocal<>();
+
+    /**
+     * Interceptor of the client inbound channel binding the principal of every STOMP frame to the thread handling it.
+     */
+    private static final ExecutorChannelInterceptor FRAME_USER_INTERCEPTOR = new ExecutorChannelInterceptor() {
+        @Override
+        public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+            Long userId = userIdOf(SimpMessageHeaderAccessor.getUser(message.getHeaders()));
+            if (userId != null) {
+                FRAME_USER.set(userId);
+            }
+            return message;
+        }
+
+        @Override
+        public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+            FRAME_USER.remove();
+        }
+    };
+
+    private final long windowNanos;
+
+    /**
+     * Time until which the reads of every user who wrote recently go to the primary, by user ID.
+     */
+    private final Map<Long, Long> pinnedUntil = new ConcurrentHashMap<>();
+
+    public ReadYourWritesTracker(@Value("${spring.datasource.replica.read-your-writes-window:PT5S}") Duration window) {
+        this.windowNanos = window.toNanos();
+    }
+
+    /**
+     * Records that the current user committed a write.
+     */
+    public void recordWrite() {
+        recordWrite(currentUser());
+    }
+
+    /**
+     * Records a write of a user once the surrounding transaction commits, for writes made on behalf of a user
+     * on a thread that has none, or right away if there is no transaction.
+     * @param userId ID of the user who wrote
+     */
+    public void recordWriteAfterCommit(Long userId) {
+        AfterCommit.run(() -> recordWrite(userId));
+    }
+
+    private void recordWrite(Long userId) {
+        if (userId != null && windowNanos > 0) {
+            pinnedUntil.put(userId, System.nanoTime() + windowNanos);
+        }
+    }
+
+    /**
+     * Returns true if the current user wrote within the window, then reads must go to the primary.
+     */
+    public boolean isPinned() {
+        Long user = currentUser();
+        if (user == null) {
+            return false;
+        }
+        Long until = pinnedUntil.get(user);
+        if (until == null) {
+            return false;
+        }
+        if (until - System.nanoTime() > 0) {
+            return true;
+        }
+        pinnedUntil.remove(user, until);
+        return false;
+    }
+
+    /**
+     * Forgets users whose window has passed and who did not read since.
+     */
+    @Scheduled(fixedDelayString = "${spring.datasource.replica.read-your-writes-window:PT5S}")
+    public void purgeExpired() {
+        long now = System.nanoTime();
+        pinnedUntil.values().removeIf(until -> until - now <= 0);
+    }
+
+    /**
+     * Returns the interceptor binding the user of every STOMP frame, for channels running their handlers on an executor.
+     */
+    public static ExecutorChannelInterceptor frameUserInterceptor() {
+        return FRAME_USER_INTERCEPTOR;
+    }
+
+    private static Long currentUser() {
+        Long userId = userIdOf(SecurityContextHolder.getContext().getAuthentication());
+        return userId != null ? userId : FRAME_USER.get();
+    }
+
+    /**
+     * Returns the user ID of an authenticated principal, null for anonymous or unknown principals.
+     */
+    private static Long userIdOf(Principal principal) {
+        if (!(principal instanceof Authentication authentication) || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication.getPrincipal() instanceof AppUserDetails user ? user.getUserId() : null;
+    }
+}
@@ -0,0 +1,60 @@
+package com.yaplab.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * Sends the connections of read-only transactions to the replica and all others to the primary.
+ * Reads stay on the primary inside DataSourceRouting.onPrimary and for users who committed a write within
+ * the read-your-writes window, so nobody reads a replica that has not caught up with their own changes yet.
+ * The route is decided when a connection is taken, so the data source must be wrapped in a LazyConnectionDataSourceProxy:
+ * the transaction manager takes the connection before the transaction is marked read-only,
+ * the proxy only takes the real one on the first statement.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    /**
+     * Lookup keys of the two databases.
+     */
+    public enum Route { PRIMARY, REPLICA }
+
+    private final ReadYourWritesTracker readYourWritesTracker;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReadYourWritesTracker readYourWritesTracker) {
+        this.readYourWritesTracker = readYourWritesTracker;
+        setTargetDataSources(Map.of(Route.PRIMARY, primary, Route.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return currentRoute();
+    }
+
+    /**
+     * Decides the route of a connection taken now, and for a read-write transaction
+     * records the write of the current user once the transaction commits.
+     */
+    Route currentRoute() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCommit() {
+                        readYourWritesTracker.recordWrite();
+                    }
+                });
+            }
+            return Route.PRIMARY;
+        }
+        if (DataSourceRouting.isPrimaryRequired() || readYourWritesTracker.isPinned()) {
+            return Route.PRIMARY;
+        }
+        return Route.REPLICA;
+    }
+}
@@ -0,0 +1,110 @@
+package com.yaplab.datasource;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+
+import java.util.function.Supplier;
+
+/**
+ * The kinds of work competing for database connections, each with its own bulkhead in front of the pool.
+ * The workload of the current thread is set where the work enters the application: STOMP frames and the
+ * message send threads are realtime, HTTP requests interactive, everything else, such as scheduled jobs, background.
+ */
+public enum Workload {
+
+    /**
+     * Live messaging: STOMP frames and the group commit writer.
+     */
+    REALTIME,
+
+    /**
+     * REST requests: history pages, chatroom lists, search, uploads.
+     */
+    INTERACTIVE,
+
+    /**
+     * Scheduled and startup jobs and the journal drainer: archive, compaction, reindexing, rebalancing.
+     */
+    BACKGROUND;
+
+    private static final ThreadLocal<Workload> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Interceptor of the client inbound channel marking the handling of every STOMP frame as realtime.
+     */
+    private static final ExecutorChannelInterceptor REALTIME_INTERCEPTOR = new ExecutorChannelInterceptor() {
+        @Override
+        public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+            CURRENT.set(REALTIME);
+            return message;
+        }
+
+        @Override
+        public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+            CURRENT.remove();
+        }
+    };
+
+    /**
+     * Returns the workload of the current thread, background if none was set.
+     */
+    public static Workload current() {
+        Workload workload = CURRENT.get();
+        return workload != null ? workload : BACKGROUND;
+    }
+
+    /**
+     * Runs work as this workload.
+     * @param work the work to run
+     * @return the result of the work
+     */
+    public <T> T run(Supplier<T> work) {
+        Workload outer = enter();
+        try {
+            return work.get();
+        } finally {
+            exit(outer);
+        }
+    }
+
+    /**
+     * Runs work as this workload.
+     * @param work the work to run
+     */
+    public void run(Runnable work) {
+        run(() -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Makes this the workload of the current thread.
+     * @return the workload to restore with exit, null if none was set
+     */
+    Workload enter() {
+        Workload outer = CURRENT.get();
+        CURRENT.set(this);
+        return outer;
+    }
+
+    /**
+     * Restores the workload the current thread had before enter.
+     */
+    static void exit(Workload outer) {
+        if (outer != null) {
+            CURRENT.set(outer);
+        } else {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Returns the interceptor marking the frames of a channel as realtime, for channels running their handlers on an executor.
+     */
+    public static ExecutorChannelInterceptor realtimeInterceptor() {
+        return REALTIME_INTERCEPTOR;
+    }
+}
@@ -0,0 +1,185 @@
+package com.yaplab.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits the connections of the pool between the workloads, so one kind of work cannot take all of them.
+ * Every workload holds at most its limit of connections at once, a limit of 0 leaves it unlimited.
+ * Keeping the interactive and background limits below the pool size keeps connections free for realtime work,
+ * so a burst of history scans or a slow job makes REST requests or jobs wait, not message sends.
+ * A connection beyond the limit is waited for up to the timeout of the workload, then the call fails
+ * with an SQLTransientConnectionException, as it would if the pool itself were exhausted.
+ * A thread that already holds a connection of its workload gets further ones without waiting, so a REQUIRES_NEW
+ * transaction inside another one cannot deadlock with callers holding every slot while waiting for their own nested one.
+ * Nesting can therefore take a workload past its limit by the depth of the nesting.
+ * Publishes yaplab.datasource.bulkhead.active, .wait and .rejected tagged with the workload.
+ */
+public class WorkloadBulkheadDataSource extends DelegatingDataSource {
+
+    private final Map<Workload, Partition> partitions = new EnumMap<>(Workload.class);
+
+    /**
+     * @param target the pool or routing data source to split
+     * @param limits the limit of every workload, 0 for unlimited
+     * @param timeouts the time every workload waits for a connection beyond its limit
+     * @param registry registry of the bulkhead metrics
+     */
+    public WorkloadBulkheadDataSource(DataSource target, Map<Workload, Integer> limits, Map<Workload, Duration> timeouts,
+                                      MeterRegistry registry) {
+        super(target);
+        for (Workload workload : Workload.values()) {
+            partitions.put(workload, new Partition(workload, limits.getOrDefault(workload, 0), timeouts.get(workload), registry));
+        }
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Partition partition = partitions.get(Workload.current());
+        Lease lease = partition.acquire();
+        try {
+            return partition.track(obtainTargetDataSource().getConnection(), lease);
+        } catch (SQLException | RuntimeException e) {
+            partition.release(lease);
+            throw e;
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        Partition partition = partitions.get(Workload.current());
+        Lease lease = partition.acquire();
+        try {
+            return partition.track(obtainTargetDataSource().getConnection(username, password), lease);
+        } catch (SQLException | RuntimeException e) {
+            partition.release(lease);
+            throw e;
+        }
+    }
+
+    /**
+     * A connection taken from a partition.
+     * @param held number of connections of the partition held by the thread that took it
+     * @param permit whether the connection took a slot of the limit
+     */
+    private record Lease(AtomicInteger held, boolean permit) {
+    }
+
+    /**
+     * The connections of one workload.
+     */
+    private static class Partition {
+
+        private final Workload workload;
+        private final Semaphore permits;
+        private final Duration timeout;
+        private final AtomicInteger active = new AtomicInteger();
+        private final ThreadLocal<AtomicInteger> held = ThreadLocal.withInitial(AtomicInteger::new);
+        private final Timer wait;
+        private final Counter rejected;
+
+        Partition(Workload workload, int limit, Duration timeout, MeterRegistry registry) {
+            this.workload = workload;
+            this.permits = limit > 0 ? new Semaphore(limit) : null;
+            this.timeout = timeout;
+            String tag = workload.name().toLowerCase();
+            Gauge.builder("yaplab.datasource.bulkhead.active", active, AtomicInteger::get)
+                    .description("Connections held by the workload")
+                    .tag("workload", tag)
+                    .register(registry);
+            this.wait = Timer.builder("yaplab.datasource.bulkhead.wait")
+                    .description("Time spent waiting for a connection slot of the workload")
+                    .tag("workload", tag)
+                    .register(registry);
+            this.rejected = Counter.builder("yaplab.datasource.bulkhead.rejected")
+                    .description("Connection requests of the workload that timed out waiting for a slot")
+                    .tag("workload", tag)
+                    .register(registry);
+        }
+
+        /**
+         * Takes a slot of the workload, or none if the thread already holds a connection of it.
+         */
+        Lease acquire() throws SQLException {
+            AtomicInteger heldByThread = held.get();
+            boolean permit = permits != null && heldByThread.get() == 0;
+            if (permit) {
+                long start = System.nanoTime();
+                boolean acquired;
+                try {
+                    acquired = permits.tryAcquire(timeout.toNanos(), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLTransientConnectionException("Interrupted while waiting for a " + workload + " connection", e);
+                }
+                wait.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                if (!acquired) {
+                    rejected.increment();
+                    throw new SQLTransientConnectionException("No " + workload + " connection available within " + timeout);
+                }
+            }
+            heldByThread.incrementAndGet();
+            active.incrementAndGet();
+            return new Lease(heldByThread, permit);
+        }
+
+        /**
+         * Gives back a connection, counted for the thread that took it even if another thread closes it.
+         */
+        void release(Lease lease) {
+            lease.held().decrementAndGet();
+            active.decrementAndGet();
+            if (lease.permit()) {
+                permits.release();
+            }
+        }
+
+        /**
+         * Wraps a connection so closing it gives its slot back, once however often it is closed.
+         */
+        Connection track(Connection connection, Lease lease) {
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("equals")) {
+                            return proxy == args[0];
+                        }
+                        if (method.getName().equals("hashCode")) {
+                            return System.identityHashCode(proxy);
+                        }
+                        if (method.getName().equals("close") && method.getParameterCount() == 0) {
+                            try {
+                                connection.close();
+                            } finally {
+                                if (closed.compareAndSet(false, true)) {
+                                    release(lease);
+                                }
+                            }
+                            return null;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.yaplab.files;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Storage backend for the raw bytes of uploaded files.
+ * File metadata stays in the database, only the content is kept by the blob store under a key.
+ * Implementations can be a local directory, an S3 bucket or an in-memory map used for tests.
+ */
+public interface BlobStore {
+
+    /**
+     * Stores the content under the given key, replacing anything stored before.
+     * @param key unique key of the blob
+     * @param content stream with the content, read fully but not closed
+     * @param size size of the content in bytes
+     * @param contentType MIME type of the content, may be null
+     */
+    void put(String key, InputStream content, long size, String contentType) throws IOException;
+
+    /**
+     * Opens a stream to read the content stored under the given key.
+     * The caller is responsible for closing the stream.
+     * @param key key of the blob
+     * @throws java.io.FileNotFoundException if nothing is stored under the key
+     */
+    InputStream get(String key) throws IOException;
+
+    /**
+     * Deletes the content stored under the given key. Does nothing if the key does not exist.
+     * @param key key of the blob
+     */
+    void delete(String key) throws IOException;
+
+    /**
+     * Returns a time limited URL that lets the client download the blob directly from the storage,
+     * taking the application off the data path.
+     * Stores which cannot serve files directly return an empty optional and the file is streamed by the application.
+     * @param key key of the blob
+     * @param fileName file name suggested to the browser
+     * @param expiry how long the URL stays valid
+     */
+    default Optional<URL> presignedDownloadUrl(String key, String fileName, Duration expiry) {
+        return Optional.empty();
+    }
+}
@@ -1,5 +1,6 @@
 package com.yaplab.files;
 
+import com.yaplab.id.SnowflakeId;
 import com.yaplab.user.User;
 import jakarta.persistence.*;
 
@@ -16,9 +17,10 @@ public class File {
     /**
      * Unique identifier for each file which is assigned automatically.
      * Long is preferred for large datasets.
+     * Generated in memory and time-ordered, so inserts of several files are batched.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     /**
@@ -10,9 +10,9 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.net.URI;
+import java.net.URL;
+import java.util.Optional;
 
 /**
  * REST Controller for handling file operations.
@@ -33,8 +33,10 @@ public class FileController {
 
     /**
      * Returns a file as a resource for the client to download.
-     * File is wrapped as a resource using file service.
-     * The content type is determined using the extension of the file.
+     * If the storage can serve the file directly, the client is redirected to a presigned URL instead
+     * so the bytes do not pass through the application.
+     * Otherwise the file is wrapped as a resource using file service.
+     * The content type is the one recorded when the file was uploaded.
      * A new header is created and tells browser to show the file in the window.
      * Response entity is created using custom headers.
      * File added in HTTP header and streamed on the client side
@@ -45,11 +47,16 @@ public class FileController {
             @PathVariable Long fileId
     ) {
         try {
+            Optional<URL> directUrl = fileService.getDirectDownloadUrl(fileId);
+            if (directUrl.isPresent()) {
+                return ResponseEntity.status(HttpStatus.FOUND)
+                        .location(URI.create(directUrl.get().toString()))
+                        .build();
+            }
+
             FileUploadResponseDTO fileInfo = fileService.getFileInfo(fileId);
             Resource resource = fileService.downloadFile(fileId);
-
-            Path filePath = Paths.get(fileService.getUploadDir()).resolve(fileInfo.fileName());
-            String contentType = Files.probeContentType(filePath);
+            String contentType = fileInfo.fileType();
 
             HttpHeaders headers = new HttpHeaders();
             headers.add(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=\"" + fileInfo.fileName() + "\"");
@@ -1,20 +1,21 @@
 package com.yaplab.files;
 
+import com.yaplab.tracing.SampledLog;
 import com.yaplab.user.UserService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.core.io.Resource;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Optional;
 
 /**
  * Service class for handling file related operations like upload, download, delete, etc.
@@ -30,10 +31,10 @@ public class FileService {
     private static final Logger logger = LoggerFactory.getLogger(FileService.class);
 
     /**
-     * Directory where uploaded files are stored.
+     * How long a direct download URL handed out to a client stays valid.
      */
-    @Value("${file.upload-dir:uploads}")
-    private String uploadDir;
+    @Value("${file.storage.presigned-url-expiry:PT10M}")
+    private Duration presignedUrlExpiry;
 
     /**
      * Maximum file size allowed is only 50MB.
@@ -46,34 +47,35 @@ public class FileService {
     private final FileMapper fileMapper;
     private final FilesRepository filesRepository;
     private final UserService userService;
+    private final BlobStore blobStore;
+    private final SampledLog sampledLog;
 
-    public FileService(FileMapper fileMapper, FilesRepository filesRepository, UserService userService) {
+    public FileService(FileMapper fileMapper, FilesRepository filesRepository, UserService userService, BlobStore blobStore, SampledLog sampledLog) {
         this.fileMapper = fileMapper;
         this.filesRepository = filesRepository;
         this.userService = userService;
+        this.blobStore = blobStore;
+        this.sampledLog = sampledLog;
     }
 
     /**
-     * Uploads the file in the directory if it doesn't exist.
-     * Checks for file size and creates a consistent filename.
+     * Uploads the file to the blob store.
+     * Checks for file size and creates a consistent filename which is also used as the key in the store.
      * @param file represents a multipart file received in a multipart request
      * @param id ID of the file.
      * @return an upload responseDTO
      */
     public FileUploadResponseDTO uploadFile(MultipartFile file, Long id) throws IOException {
-        logger.info("Attempting to upload file: {} for user ID: {}", file.getOriginalFilename(), id);
+        sampledLog.log(logger, "Attempting to upload file: {} for user ID: {}", file.getOriginalFilename(), id);
 
         if(file.getSize()>MAX_FILE_SIZE){
             logger.warn("File upload failed for user ID {}: File size exceeds max limit ({} bytes)", id, MAX_FILE_SIZE);
             throw new IllegalArgumentException("File size exceeds 50MB");
         }
         String fileName = System.currentTimeMillis() + "_" + file.getOriginalFilename();
-        Path uploadPath = Paths.get(uploadDir);
-        if(!Files.exists(uploadPath)){
-            Files.createDirectories(uploadPath);
+        try (InputStream content = file.getInputStream()) {
+            blobStore.put(fileName, content, file.getSize(), file.getContentType());
         }
-        Path filePath = uploadPath.resolve(fileName);
-        file.transferTo(filePath.toFile());
 
         File files = new File(
                 fileName,
@@ -90,57 +92,84 @@ public class FileService {
     }
 
     /**
-     * Method to download a file from the directory
+     * Method to download a file from the blob store
      * Input stream resource represents a stream of incoming data that can only be read
      * @param fileId ID of the file
      * @return a resource of type inputStreamResource
      */
     public Resource downloadFile(Long fileId) throws IOException {
-        logger.info("Attempting to download file with ID: {}", fileId);
+        sampledLog.log(logger, "Attempting to download file with ID: {}", fileId);
         File file = filesRepository.findById(fileId)
                 .orElseThrow(() -> {
                     logger.warn("File download failed: File not found with ID: {}", fileId);
                     return new IllegalArgumentException("File not found with ID: " + fileId);
                 });
-        Path filePath = Paths.get(uploadDir).resolve(file.getFileName());
+        sampledLog.log(logger, "File found: {}", file.getFileName());
+        return new InputStreamResource(blobStore.get(file.getFileName())); // FileNotFoundException is logged by the exception handler if not caught
+    }
 
-        try {
-            logger.info("File found on disk: {}", file.getFileName());
-            return new InputStreamResource(Files.newInputStream(filePath));
-        } catch (NoSuchFileException e) {
-            throw new FileNotFoundException("File not found on disk: " + file.getFileName()); // Logged by the exception handler if not caught
-        } catch (IOException e) {
-            throw new IOException("Error reading file: " + file.getFileName(), e);
-        }
+    /**
+     * Returns a URL the client can use to download the file straight from the storage.
+     * Empty if the storage backend cannot serve files directly, in which case the file has to be streamed.
+     * @param fileId ID of the file
+     */
+    public Optional<URL> getDirectDownloadUrl(Long fileId) {
+        File file = filesRepository.findById(fileId)
+                .orElseThrow(() -> {
+                    logger.warn("File download failed: File not found with ID: {}", fileId);
+                    return new IllegalArgumentException("File not found with ID: " + fileId);
+                });
+        return blobStore.presignedDownloadUrl(file.getFileName(), file.getFileName(), presignedUrlExpiry);
     }
 
     /**
-     * Deletes the file from the directory and it's details from database
+     * Deletes the file from the blob store and it's details from database
      * @param id ID of the file
      */
     public void deleteFile(Long id) throws IOException {
-        logger.info("Attempting to delete file with ID: {}", id);
+        sampledLog.log(logger, "Attempting to delete file with ID: {}", id);
         File file = filesRepository.findById(id)
                 .orElseThrow(() -> {
                     logger.warn("File deletion failed: File not found with ID: {}", id);
                     return new IllegalArgumentException("File not found");
                 });
-        Path filePath = Paths.get(uploadDir).resolve(file.getFileName());
         try {
-            Files.deleteIfExists(filePath);
+            blobStore.delete(file.getFileName());
             filesRepository.delete(file);
             logger.info("File deleted successfully with ID: {}", id);
         } catch (IOException e) {
-            throw new IOException("Failed to delete file on disk: " + file.getFileName(), e); // Logged by the exception handler if not caught
+            throw new IOException("Failed to delete file from storage: " + file.getFileName(), e); // Logged by the exception handler if not caught
         }
     }
 
+    /**
+     * Returns an uploaded file so it can be attached to a message by reference.
+     * Only the user who uploaded the file is allowed to attach it.
+     * @param fileId ID of the uploaded file
+     * @param userId ID of the user attaching the file
+     * @return the file entity
+     * @throws IllegalArgumentException if the file does not exist
+     * @throws AccessDeniedException if the file was uploaded by another user
+     */
+    public File getAttachableFile(Long fileId, Long userId) {
+        File file = filesRepository.findById(fileId)
+                .orElseThrow(() -> {
+                    logger.warn("Attach file failed: File not found with ID: {}", fileId);
+                    return new IllegalArgumentException("File not found with ID: " + fileId);
+                });
+        if (file.getUploadedBy() == null || !file.getUploadedBy().getId().equals(userId)) {
+            logger.warn("Attach file failed: File {} was not uploaded by user {}", fileId, userId);
+            throw new AccessDeniedException("User is not authorized to attach this file.");
+        }
+        return file;
+    }
+
     /**
      * Returns the details of the file from its ID
      * @param id ID of the file
      */
     public FileUploadResponseDTO getFileInfo(Long id){
-        logger.info("Attempting to get file info for ID: {}", id);
+        sampledLog.log(logger, "Attempting to get file info for ID: {}", id);
         File file = filesRepository.findById(id)
                 .orElseThrow(() -> {
                     logger.warn("Get file info failed: File not found with ID: {}", id);
@@ -148,11 +177,4 @@ public class FileService {
                 });
         return fileMapper.toFileUploadResponseDTO(file);
     }
-
-    /**
-     * Returns the location of the file
-     */
-    public String getUploadDir(){
-        return uploadDir;
-    }
 }
@@ -1,10 +1,18 @@
 package com.yaplab.files;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 /**
  * Repository interface to manage File entity.
  * Extends JPARepository to perform CRUD operations.
  */
 public interface FilesRepository extends JpaRepository<File, Long> {
+
+    /**
+     * Finds the highest file ID.
+     * @return The highest ID, or null if there are no files.
+     */
+    @Query("select max(f.id) from File f")
+    Long findMaxId();
 }
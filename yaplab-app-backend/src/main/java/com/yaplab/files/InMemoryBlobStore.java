@@ -0,0 +1,47 @@
+package com.yaplab.files;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Blob store keeping files in memory.
+ * Behaves like an S3 bucket (flat keys, whole-object overwrite) and is meant as a fake for tests and local runs
+ * without a disk or an S3 endpoint. Everything is lost when the application stops.
+ */
+public class InMemoryBlobStore implements BlobStore {
+
+    /**
+     * Content of the stored blobs by key.
+     */
+    private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+
+    @Override
+    public void put(String key, InputStream content, long size, String contentType) throws IOException {
+        blobs.put(key, content.readAllBytes());
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        byte[] content = blobs.get(key);
+        if (content == null) {
+            throw new FileNotFoundException("File not found in store: " + key);
+        }
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public void delete(String key) {
+        blobs.remove(key);
+    }
+
+    /**
+     * Returns true if something is stored under the key.
+     */
+    public boolean contains(String key) {
+        return blobs.containsKey(key);
+    }
+}
@@ -0,0 +1,72 @@
+package com.yaplab.files;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Blob store keeping files in a directory on the local disk.
+ * Only suitable for a single node because the directory is not shared between instances.
+ */
+public class LocalBlobStore implements BlobStore {
+
+    /**
+     * Logger for LocalBlobStore
+     * This logger is used to log various events and errors in the LocalBlobStore class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(LocalBlobStore.class);
+
+    /**
+     * Directory where uploaded files are stored.
+     */
+    private final Path rootDir;
+
+    public LocalBlobStore(String uploadDir) {
+        this.rootDir = Paths.get(uploadDir);
+    }
+
+    /**
+     * Copies the content to a file named after the key, creating the directory if it doesn't exist.
+     */
+    @Override
+    public void put(String key, InputStream content, long size, String contentType) throws IOException {
+        if (!Files.exists(rootDir)) {
+            Files.createDirectories(rootDir);
+        }
+        Files.copy(content, resolve(key), StandardCopyOption.REPLACE_EXISTING);
+        logger.debug("Stored blob {} ({} bytes) in {}", key, size, rootDir);
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        try {
+            return Files.newInputStream(resolve(key));
+        } catch (NoSuchFileException e) {
+            throw new FileNotFoundException("File not found on disk: " + key);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        Files.deleteIfExists(resolve(key));
+    }
+
+    /**
+     * Resolves the key inside the root directory and rejects keys that would escape it.
+     */
+    private Path resolve(String key) {
+        Path path = rootDir.resolve(key).normalize();
+        if (!path.startsWith(rootDir.normalize())) {
+            throw new IllegalArgumentException("Invalid file key: " + key);
+        }
+        return path;
+    }
+}
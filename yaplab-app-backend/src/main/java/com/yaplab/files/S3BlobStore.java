@@ -0,0 +1,125 @@
+package com.yaplab.files;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.HttpMethod;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.ResponseHeaderOverrides;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
+import com.amazonaws.services.s3.transfer.Upload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Blob store keeping files in an S3 bucket (or any S3 compatible storage such as MinIO).
+ * Large files are uploaded as multipart uploads whose parts are sent in parallel by a transfer manager.
+ * Downloads are served through presigned URLs so the bytes do not pass through the application.
+ */
+public class S3BlobStore implements BlobStore {
+
+    /**
+     * Logger for S3BlobStore
+     * This logger is used to log various events and errors in the S3BlobStore class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(S3BlobStore.class);
+
+    private final AmazonS3 s3;
+    private final String bucket;
+    private final TransferManager transferManager;
+
+    /**
+     * @param s3 client of the bucket
+     * @param bucket name of the bucket
+     * @param multipartThreshold size in bytes from which uploads are split into parts
+     * @param partSize size in bytes of each part of a multipart upload
+     * @param uploadThreads number of parts uploaded in parallel
+     */
+    public S3BlobStore(AmazonS3 s3, String bucket, long multipartThreshold, long partSize, int uploadThreads) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        ExecutorService uploadExecutor = Executors.newFixedThreadPool(uploadThreads);
+        this.transferManager = TransferManagerBuilder.standard()
+                .withS3Client(s3)
+                .withMultipartUploadThreshold(multipartThreshold)
+                .withMinimumUploadPartSize(partSize)
+                .withExecutorFactory(() -> uploadExecutor)
+                .build();
+    }
+
+    /**
+     * Uploads the content and waits for all parts to be stored.
+     * The size must be known up front so the transfer manager can plan the parts without buffering the stream.
+     */
+    @Override
+    public void put(String key, InputStream content, long size, String contentType) throws IOException {
+        ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(size);
+        if (contentType != null) {
+            metadata.setContentType(contentType);
+        }
+        try {
+            Upload upload = transferManager.upload(bucket, key, content, metadata);
+            upload.waitForCompletion();
+            logger.debug("Stored blob {} ({} bytes) in bucket {}", key, size, bucket);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Upload interrupted: " + key);
+        } catch (AmazonServiceException e) {
+            throw new IOException("Failed to upload file to bucket: " + key, e);
+        }
+    }
+
+    @Override
+    public InputStream get(String key) throws IOException {
+        try {
+            return s3.getObject(bucket, key).getObjectContent();
+        } catch (AmazonServiceException e) {
+            if (e.getStatusCode() == 404) {
+                throw new FileNotFoundException("File not found in bucket: " + key);
+            }
+            throw new IOException("Failed to read file from bucket: " + key, e);
+        }
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            s3.deleteObject(bucket, key);
+        } catch (AmazonServiceException e) {
+            throw new IOException("Failed to delete file from bucket: " + key, e);
+        }
+    }
+
+    /**
+     * Signs a GET request for the object which also tells the browser to show the file inline under its name.
+     */
+    @Override
+    public Optional<URL> presignedDownloadUrl(String key, String fileName, Duration expiry) {
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(bucket, key)
+                .withMethod(HttpMethod.GET)
+                .withExpiration(new Date(System.currentTimeMillis() + expiry.toMillis()))
+                .withResponseHeaders(new ResponseHeaderOverrides()
+                        .withContentDisposition("inline; filename=\"" + fileName + "\""));
+        return Optional.of(s3.generatePresignedUrl(request));
+    }
+
+    /**
+     * Stops the upload threads. Called by the container when the application shuts down.
+     */
+    public void shutdown() {
+        transferManager.shutdownNow(false);
+    }
+}
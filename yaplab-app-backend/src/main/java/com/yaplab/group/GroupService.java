@@ -1,6 +1,7 @@
 package com.yaplab.group;
 
 import com.yaplab.chatroom.ChatRoomService;
+import com.yaplab.tracing.SampledLog;
 import com.yaplab.user.User;
 import com.yaplab.user.UserRepository;
 import org.slf4j.Logger;
@@ -38,12 +39,14 @@ public class GroupService {
     private final UserRepository userRepository;
     private final GroupMapper groupMapper;
     private final ChatRoomService chatRoomService;
+    private final SampledLog sampledLog;
 
-    public GroupService(GroupRepository groupRepository, UserRepository userRepository, GroupMapper groupMapper, ChatRoomService chatRoomService){
+    public GroupService(GroupRepository groupRepository, UserRepository userRepository, GroupMapper groupMapper, ChatRoomService chatRoomService, SampledLog sampledLog){
         this.groupRepository = groupRepository;
         this.userRepository = userRepository;
         this.groupMapper = groupMapper;
         this.chatRoomService = chatRoomService;
+        this.sampledLog = sampledLog;
     }
 
     /**
@@ -56,7 +59,7 @@ public class GroupService {
                     logger.warn("Group not found with ID: {}", id);
                     return new RuntimeException("Group not found");
                 });
-        logger.info("Group found with ID: {}", id);
+        sampledLog.log(logger, "Group found with ID: {}", id);
         return group;
     }
 
@@ -67,7 +70,7 @@ public class GroupService {
      */
     @Transactional
     public GroupResponseDTO createGroup(GroupDTO groupDTO, Long createdById){
-        logger.info("Attempting to create group: {}", groupDTO.name());
+        sampledLog.log(logger, "Attempting to create group: {}", groupDTO.name());
         User creator = userRepository.findById(createdById)
                 .orElseThrow(()->{
                     logger.error("Group creation failed: Creator user not found with ID: {}", createdById);
@@ -98,7 +101,7 @@ public class GroupService {
      */
     @Transactional
     public void addUsers(Long userId, Long groupId){
-        logger.info("Attempting to add user {} to group {}", userId, groupId);
+        sampledLog.log(logger, "Attempting to add user {} to group {}", userId, groupId);
         User user = userRepository.findById(userId)
                 .orElseThrow(()->{
                     logger.warn("Add user failed: User not found with ID: {}", userId);
@@ -125,7 +128,7 @@ public class GroupService {
      */
     @Transactional
     public void removeUser(Long userId, Long groupId) {
-        logger.info("Attempting to remove user {} from group {}", userId, groupId);
+        sampledLog.log(logger, "Attempting to remove user {} from group {}", userId, groupId);
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> {
                     logger.warn("Remove user failed: User not found with ID: {}", userId);
@@ -156,7 +159,7 @@ public class GroupService {
      */
     @Transactional
     public void updateProfilePicture(Long groupId, MultipartFile file){
-        logger.info("Attempting to update profile picture for group {}", groupId);
+        sampledLog.log(logger, "Attempting to update profile picture for group {}", groupId);
         Group group = groupRepository.findById(groupId)
                 .orElseThrow(() -> {
                     logger.warn("Profile picture update failed: Group not found with ID: {}", groupId);
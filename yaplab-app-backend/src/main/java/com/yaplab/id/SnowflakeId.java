@@ -0,0 +1,19 @@
+package com.yaplab.id;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks an ID field as generated by the {@link SnowflakeIdGenerator}.
+ * The ID is assigned in memory when the entity is persisted, so inserts can be batched
+ * and do not need a round-trip to read the generated key back.
+ */
+@IdGeneratorType(SnowflakeIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface SnowflakeId {
+}
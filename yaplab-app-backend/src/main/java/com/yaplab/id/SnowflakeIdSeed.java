@@ -0,0 +1,58 @@
+package com.yaplab.id;
+
+import com.yaplab.files.FilesRepository;
+import com.yaplab.message.MessageRepository;
+import com.yaplab.shard.ShardRouter;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Seeds the Snowflake sequence of this node from the highest stored ID at startup.
+ * The generators only remember their last tick in memory, so without the seed a clock that was
+ * stepped back while the node was down would hand out IDs of rows that are already stored.
+ * Runs before the application takes requests, when no ID has been generated yet.
+ */
+@Component
+public class SnowflakeIdSeed {
+
+    /**
+     * Logger for SnowflakeIdSeed
+     * This logger is used to log the ID the sequence was seeded from.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SnowflakeIdSeed.class);
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final MessageRepository messageRepository;
+    private final FilesRepository filesRepository;
+    private final ShardRouter shardRouter;
+
+    public SnowflakeIdSeed(MessageRepository messageRepository, FilesRepository filesRepository, ShardRouter shardRouter) {
+        this.messageRepository = messageRepository;
+        this.filesRepository = filesRepository;
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Advances the sequence past the highest message ID of every shard and the highest file ID.
+     */
+    @PostConstruct
+    public void seed() {
+        List<Long> highest = new ArrayList<>(shardRouter.readOnEveryShard(() -> {
+            Long maxId = messageRepository.findMaxId();
+            return maxId != null ? List.of(maxId) : List.of();
+        }));
+        highest.add(shardRouter.readOnShard(ShardRouter.DEFAULT_SHARD, filesRepository::findMaxId));
+        highest.stream().filter(Objects::nonNull).max(Long::compare).ifPresent(maxId -> {
+            SnowflakeIdGenerator.advancePast(maxId);
+            logger.info("Snowflake IDs continue after {}", maxId);
+        });
+    }
+}
@@ -0,0 +1,56 @@
+package com.yaplab.journal;
+
+import com.yaplab.enums.MessageType;
+import com.yaplab.message.Message;
+
+import java.time.Instant;
+
+/**
+ * A sent message as written to the journal, with references by ID only.
+ * Holds everything needed to insert the message later exactly as it was acknowledged to the clients.
+ * @param messageId ID assigned to the message when it was sent
+ * @param chatroomId ID of the chatroom
+ * @param senderId ID of the sender
+ * @param receiverId ID of the receiver of a personal message
+ * @param groupId ID of the group of a group message
+ * @param replyToId ID of the message replied to
+ * @param fileId ID of the attached file
+ * @param content content of the message
+ * @param messageType type of the message
+ * @param timestamp time the message was sent
+ * @param seq position of the message in its chatroom
+ */
+public record JournalEntry(
+        Long messageId,
+        String chatroomId,
+        Long senderId,
+        Long receiverId,
+        Long groupId,
+        Long replyToId,
+        Long fileId,
+        String content,
+        MessageType messageType,
+        Instant timestamp,
+        Long seq
+) {
+
+    /**
+     * Builds the entry of a prepared message.
+     * @param message the message with its ID, timestamp and sequence number assigned
+     * @return the entry to write to the journal
+     */
+    public static JournalEntry of(Message message) {
+        return new JournalEntry(
+                message.getId(),
+                message.getChatroom().getChatroomId(),
+                message.getSender().getId(),
+                message.getReceiver() != null ? message.getReceiver().getId() : null,
+                message.getGroup() != null ? message.getGroup().getId() : null,
+                message.getReplyTo() != null ? message.getReplyTo().getId() : null,
+                message.getFile() != null ? message.getFile().getId() : null,
+                message.getContent(),
+                message.getMessageType(),
+                message.getTimestamp(),
+                message.getSeq());
+    }
+}
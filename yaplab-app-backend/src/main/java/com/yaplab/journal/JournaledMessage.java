@@ -0,0 +1,14 @@
+package com.yaplab.journal;
+
+import com.yaplab.message.MessageResponseDTO;
+
+/**
+ * A message prepared for the journal: the entry to write and the DTO to publish once the entry is durable.
+ * @param entry the journal entry of the message
+ * @param response the message as it is published to the chatroom
+ */
+public record JournaledMessage(
+        JournalEntry entry,
+        MessageResponseDTO response
+) {
+}
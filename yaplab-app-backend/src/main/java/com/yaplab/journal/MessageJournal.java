@@ -0,0 +1,433 @@
+package com.yaplab.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of memory-mapped segment files on the local disk.
+ * Every entry is written as its length, a CRC32C checksum and the payload, at an offset that only ever grows across segments.
+ * Appends only copy into the mapped segment, a flusher thread forces the written pages to disk and hands
+ * the futures of every append the force covered to a completer thread, so many appends share one fsync
+ * and callbacks of the futures never hold up the next force. Futures complete in append order.
+ * Entries are read back in order up to the durable offset, and the reader records how far it got as a checkpoint.
+ * Segments entirely before the checkpoint are deleted.
+ * On open the end of the journal is found by reading the last segment until the first entry that is missing or fails its checksum,
+ * so an entry torn by a crash is discarded and only entries that were acknowledged as durable are kept for sure.
+ */
+public class MessageJournal implements Closeable {
+
+    /**
+     * Logger for MessageJournal
+     * This logger is used to log various events and errors in the MessageJournal class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MessageJournal.class);
+
+    /**
+     * Bytes before the payload of every entry: length and checksum.
+     */
+    static final int HEADER_BYTES = 8;
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final Path dir;
+    private final int segmentSize;
+    private final long maxFlushDelayNanos;
+
+    /**
+     * Open segments by the offset of their first byte.
+     */
+    private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+    /**
+     * Appends waiting for the next force, in offset order. Guarded by this.
+     */
+    private final Queue<PendingAppend> pending = new ArrayDeque<>();
+
+    private volatile Segment active;
+    private long writeOffset;
+    private volatile long durableOffset;
+    private volatile long checkpointOffset;
+    private volatile boolean closed = false;
+    private final Thread flusher;
+    private final ExecutorService completer;
+
+    private MessageJournal(Path dir, int segmentSize, Duration maxFlushDelay) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.maxFlushDelayNanos = maxFlushDelay.toNanos();
+        this.flusher = Thread.ofPlatform().name("message-journal-flusher").unstarted(this::flushLoop);
+        this.completer = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("message-journal-completer").factory());
+    }
+
+    /**
+     * Opens the journal in the directory, creating it if needed, and recovers the end of the last segment.
+     * @param dir directory of the segment files and the checkpoint
+     * @param segmentSize size of new segment files in bytes, the largest possible entry
+     * @param maxFlushDelay how long the flusher sleeps when there is nothing to force, appends wake it right away
+     * @return the opened journal
+     */
+    public static MessageJournal open(Path dir, int segmentSize, Duration maxFlushDelay) throws IOException {
+        if (segmentSize <= HEADER_BYTES) {
+            throw new IllegalArgumentException("Journal segment size must be larger than " + HEADER_BYTES + " bytes");
+        }
+        Files.createDirectories(dir);
+        MessageJournal journal = new MessageJournal(dir, segmentSize, maxFlushDelay);
+        journal.recover();
+        journal.flusher.start();
+        return journal;
+    }
+
+    /**
+     * Appends an entry.
+     * @param payload the bytes of the entry
+     * @return completes with the offset after the entry once it is forced to disk, or fails if the force failed
+     */
+    public CompletableFuture<Long> append(byte[] payload) {
+        int size = HEADER_BYTES + payload.length;
+        if (size > segmentSize) {
+            throw new IllegalArgumentException("Journal entry of " + payload.length + " bytes does not fit in a segment");
+        }
+        CompletableFuture<Long> durable = new CompletableFuture<>();
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Message journal is closed");
+            }
+            if (writeOffset - active.base + size > active.size) {
+                active = createSegment(active.base + active.size);
+                writeOffset = active.base;
+            }
+            ByteBuffer buffer = active.buffer.duplicate();
+            buffer.position((int) (writeOffset - active.base));
+            buffer.putInt(payload.length).putInt(checksum(payload)).put(payload);
+            writeOffset += size;
+            pending.add(new PendingAppend(writeOffset, durable));
+        }
+        LockSupport.unpark(flusher);
+        return durable;
+    }
+
+    /**
+     * Reads durable entries in order.
+     * @param fromOffset offset of the first entry, the nextOffset of the last entry read or the checkpoint
+     * @param maxEntries maximum number of entries
+     * @return the entries, empty if there are no durable entries at the offset yet
+     */
+    public List<JournalRecord> read(long fromOffset, int maxEntries) {
+        List<JournalRecord> records = new ArrayList<>();
+        long offset = fromOffset;
+        long end = durableOffset;
+        while (offset < end && records.size() < maxEntries) {
+            Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+            if (entry == null) {
+                throw new IllegalStateException("Journal offset " + offset + " is before the first segment");
+            }
+            Segment segment = entry.getValue();
+            byte[] payload = segment.readAt((int) (offset - segment.base));
+            if (payload == null) {
+                // End of the entries of this segment, the next one starts right after it.
+                offset = segment.base + segment.size;
+                continue;
+            }
+            long nextOffset = offset + HEADER_BYTES + payload.length;
+            records.add(new JournalRecord(offset, nextOffset, payload));
+            offset = nextOffset;
+        }
+        return records;
+    }
+
+    /**
+     * Records that every entry before the offset is applied, so it is not read again after a restart,
+     * and deletes the segments that only hold such entries.
+     * @param offset the nextOffset of the last applied entry
+     */
+    public void checkpoint(long offset) throws IOException {
+        Path tmp = dir.resolve(CHECKPOINT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(0, offset));
+            channel.force(true);
+        }
+        Files.move(tmp, dir.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        checkpointOffset = offset;
+        for (Segment segment : segments.headMap(offset, false).values()) {
+            if (segment != active && segment.base + segment.size <= offset) {
+                segments.remove(segment.base);
+                segment.delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the offset up to which entries are applied, where reading starts after a restart.
+     */
+    public long checkpointOffset() {
+        return checkpointOffset;
+    }
+
+    /**
+     * Returns the offset up to which entries are forced to disk.
+     */
+    public long durableOffset() {
+        return durableOffset;
+    }
+
+    /**
+     * Forces the remaining entries to disk and closes the segment files.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        LockSupport.unpark(flusher);
+        try {
+            flusher.join();
+            completer.shutdown();
+            completer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+    }
+
+    /**
+     * Loop of the flusher thread: forces what was appended since the last force and acknowledges those appends.
+     */
+    private void flushLoop() {
+        while (true) {
+            long target;
+            boolean stopping;
+            synchronized (this) {
+                target = writeOffset;
+                stopping = closed;
+            }
+            if (target == durableOffset) {
+                if (stopping) {
+                    return;
+                }
+                LockSupport.parkNanos(maxFlushDelayNanos);
+                continue;
+            }
+            try {
+                for (Segment segment : segments.tailMap(segments.floorKey(durableOffset), true).values()) {
+                    segment.buffer.force();
+                }
+                durableOffset = target;
+                complete(target, null);
+            } catch (RuntimeException e) {
+                logger.error("Failed to force the message journal to disk", e);
+                complete(target, e);
+            }
+        }
+    }
+
+    /**
+     * Takes the appends up to the given offset off the pending queue and completes their futures on the completer thread.
+     */
+    private void complete(long upTo, RuntimeException error) {
+        List<PendingAppend> done = new ArrayList<>();
+        synchronized (this) {
+            while (!pending.isEmpty() && pending.peek().endOffset() <= upTo) {
+                done.add(pending.poll());
+            }
+        }
+        if (done.isEmpty()) {
+            return;
+        }
+        completer.execute(() -> {
+            for (PendingAppend append : done) {
+                if (error == null) {
+                    append.durable().complete(append.endOffset());
+                } else {
+                    append.durable().completeExceptionally(error);
+                }
+            }
+        });
+    }
+
+    /**
+     * Maps the existing segments, drops the ones before the checkpoint and finds the end of the last one.
+     */
+    private void recover() throws IOException {
+        Path checkpointFile = dir.resolve(CHECKPOINT_FILE);
+        checkpointOffset = Files.exists(checkpointFile) ? ByteBuffer.wrap(Files.readAllBytes(checkpointFile)).getLong() : 0;
+
+        List<Long> bases;
+        try (Stream<Path> files = Files.list(dir)) {
+            bases = files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .toList();
+        }
+        for (long base : bases) {
+            Segment segment = Segment.open(segmentPath(base), base);
+            if (segment.base + segment.size <= checkpointOffset && base != bases.getLast()) {
+                segment.delete();
+            } else {
+                segments.put(base, segment);
+            }
+        }
+
+        if (segments.isEmpty()) {
+            active = createSegment(checkpointOffset);
+            writeOffset = active.base;
+        } else {
+            active = segments.lastEntry().getValue();
+            int position = checkpointOffset > active.base ? (int) Math.min(checkpointOffset - active.base, active.size) : 0;
+            byte[] payload;
+            while (position + HEADER_BYTES <= active.size && (payload = active.readAt(position)) != null) {
+                position += HEADER_BYTES + payload.length;
+            }
+            active.clearFrom(position);
+            writeOffset = active.base + position;
+        }
+        active.buffer.force();
+        durableOffset = writeOffset;
+        logger.info("Message journal opened in {}: checkpoint at {}, end at {}, {} bytes to replay",
+                dir, checkpointOffset, writeOffset, Math.max(0, writeOffset - checkpointOffset));
+    }
+
+    private Segment createSegment(long base) {
+        try {
+            Segment segment = Segment.create(segmentPath(base), base, segmentSize);
+            segments.put(base, segment);
+            syncDirectory();
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create journal segment at offset " + base, e);
+        }
+    }
+
+    /**
+     * Makes a new segment file itself durable, not only its contents.
+     */
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Not supported on every platform, the file contents are forced either way.
+            logger.debug("Failed to sync the journal directory {}", dir, e);
+        }
+    }
+
+    private Path segmentPath(long base) {
+        return dir.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+
+    private static int checksum(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * An append waiting to be forced to disk.
+     */
+    private record PendingAppend(long endOffset, CompletableFuture<Long> durable) {
+    }
+
+    /**
+     * One entry read from the journal.
+     * @param offset offset of the entry
+     * @param nextOffset offset right after the entry, where the next one starts
+     * @param payload the bytes of the entry
+     */
+    public record JournalRecord(long offset, long nextOffset, byte[] payload) {
+    }
+
+    /**
+     * A segment file mapped into memory as a whole.
+     */
+    private static final class Segment {
+
+        private final Path path;
+        private final long base;
+        private final int size;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+
+        private Segment(Path path, long base, FileChannel channel) throws IOException {
+            this.path = path;
+            this.base = base;
+            this.size = (int) channel.size();
+            this.channel = channel;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        static Segment open(Path path, long base) throws IOException {
+            return new Segment(path, base, FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+
+        static Segment create(Path path, long base, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Sets the file size, the new bytes read as zero which marks the end of the entries.
+            channel.write(ByteBuffer.allocate(1), size - 1);
+            return new Segment(path, base, channel);
+        }
+
+        /**
+         * Reads the payload of the entry at the position.
+         * @return the payload, or null if there is no complete entry with a valid checksum at the position
+         */
+        byte[] readAt(int position) {
+            if (position + HEADER_BYTES > size) {
+                return null;
+            }
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > size - position - HEADER_BYTES) {
+                return null;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(position + HEADER_BYTES, payload);
+            return checksum(payload) == buffer.getInt(position + Integer.BYTES) ? payload : null;
+        }
+
+        /**
+         * Zeroes the segment from the position on, so the remains of a torn entry are never read as an entry.
+         */
+        void clearFrom(int position) {
+            for (int i = position; i < size; i++) {
+                if (buffer.get(i) != 0) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+        }
+
+        void delete() throws IOException {
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+    }
+}
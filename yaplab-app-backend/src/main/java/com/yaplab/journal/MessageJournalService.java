@@ -0,0 +1,388 @@
+package com.yaplab.journal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yaplab.cache.RecentMessageCache;
+import com.yaplab.datasource.Workload;
+import com.yaplab.id.SnowflakeIdGenerator;
+import com.yaplab.message.MessageDTO;
+import com.yaplab.message.MessageResponseDTO;
+import com.yaplab.message.MessageRetractEventDTO;
+import com.yaplab.message.MessageSendRequest;
+import com.yaplab.message.MessageService;
+import com.yaplab.metrics.MessageSendMetrics.Kind;
+import com.yaplab.shard.ShardRouter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends messages through the local journal instead of inserting them while the sender waits.
+ * A send is resolved and validated as usual, gets its ID, time and sequence number, is appended to the journal
+ * and is acknowledged and published as soon as the journal is forced to disk, together with the other sends of that fsync.
+ * A drainer thread inserts the journaled messages into the database in batches and then moves the checkpoint,
+ * so a slow or briefly unavailable database delays the drain instead of the senders.
+ * On startup everything after the checkpoint is inserted before any new send is accepted, messages that were
+ * inserted before a crash but not checkpointed are recognised by their ID and skipped.
+ * Until a message is drained it is published but not in the history, a drain normally takes milliseconds.
+ * Replies, edits, deletes and status updates of a message sent through this node wait for its drain, see awaitDrained.
+ * An entry the database rejects for good was already acknowledged, so it is not only dropped: it is appended to
+ * the dead-letter file of the journal directory to be inspected or inserted by hand, and a retraction is published
+ * to its chatroom so clients remove the message.
+ * Disabled unless message.journal.enabled is set.
+ */
+@Component
+public class MessageJournalService {
+
+    /**
+     * Logger for MessageJournalService
+     * This logger is used to log various events and errors in the MessageJournalService class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MessageJournalService.class);
+
+    /**
+     * Wait before the drainer retries after the database failed.
+     */
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+
+    /**
+     * Longest wait for the drain of a message before changing it.
+     */
+    private static final Duration DRAIN_WAIT = Duration.ofSeconds(5);
+
+    /**
+     * File of the journal directory the entries that could not be inserted are appended to, one JSON entry per line.
+     */
+    static final String DEAD_LETTER_FILE = "dead-letter.jsonl";
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final MessageService messageService;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry registry;
+    private final boolean enabled;
+    private final Path dir;
+    private final DataSize segmentSize;
+    private final Duration flushDelay;
+    private final int drainBatchSize;
+    private final Duration drainInterval;
+    private final SnowflakeIdGenerator idGenerator;
+    private final RecentMessageCache recentMessageCache;
+    private final ShardRouter shardRouter;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    private final Counter skipped;
+
+    /**
+     * IDs of the messages sent through this node that are journaled but not drained yet. Also the monitor awaitDrained waits on.
+     */
+    private final Set<Long> undrained = ConcurrentHashMap.newKeySet();
+
+    private MessageJournal journal;
+    private Thread drainer;
+    private volatile boolean running = false;
+
+    /**
+     * Offset of the next entry to drain. Only used by the drainer, and by startup and shutdown when it is not running.
+     */
+    private long drainOffset;
+
+    public MessageJournalService(MessageService messageService,
+                                 ObjectMapper objectMapper,
+                                 MeterRegistry registry,
+                                 @Value("${message.journal.enabled:false}") boolean enabled,
+                                 @Value("${message.journal.dir:message-journal}") String dir,
+                                 @Value("${message.journal.segment-size:64MB}") DataSize segmentSize,
+                                 @Value("${message.journal.flush-delay:PT0.002S}") Duration flushDelay,
+                                 @Value("${message.journal.drain-batch-size:500}") int drainBatchSize,
+                                 @Value("${message.journal.drain-interval:PT0.01S}") Duration drainInterval,
+                                 @Value("${spring.jpa.properties.yaplab.id.node-id}") long nodeId,
+                                 RecentMessageCache recentMessageCache,
+                                 ShardRouter shardRouter,
+                                 SimpMessagingTemplate messagingTemplate) {
+        this.messageService = messageService;
+        this.objectMapper = objectMapper;
+        this.registry = registry;
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.segmentSize = segmentSize;
+        this.flushDelay = flushDelay;
+        this.drainBatchSize = drainBatchSize;
+        this.drainInterval = drainInterval;
+        this.idGenerator = new SnowflakeIdGenerator(nodeId);
+        this.recentMessageCache = recentMessageCache;
+        this.shardRouter = shardRouter;
+        this.messagingTemplate = messagingTemplate;
+        this.skipped = Counter.builder("yaplab.message.journal.skipped")
+                .description("Journal entries that could not be inserted and were moved to the dead-letter file")
+                .register(registry);
+    }
+
+    /**
+     * Returns true if sends go through the journal.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Opens the journal, inserts what is left of the last run and starts the drainer.
+     * Senders never wait for the drainer, so it takes background connections and a backlog cannot crowd out live sends.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        journal = MessageJournal.open(dir, (int) segmentSize.toBytes(), flushDelay);
+        drainOffset = journal.checkpointOffset();
+        int replayed = drainAll();
+        if (replayed > 0) {
+            logger.info("Replayed {} journaled messages into the database", replayed);
+        }
+        Gauge.builder("yaplab.message.journal.lag", journal, j -> j.durableOffset() - j.checkpointOffset())
+                .description("Bytes of journaled messages not yet inserted into the database")
+                .baseUnit("bytes")
+                .register(registry);
+        running = true;
+        drainer = Thread.ofPlatform().name("message-journal-drainer").start(() -> Workload.BACKGROUND.run(this::drainLoop));
+    }
+
+    /**
+     * Stops the drainer, inserts what is still journaled and closes the journal.
+     * Whatever cannot be inserted now stays in the journal for the next start.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException, IOException {
+        if (journal == null) {
+            return;
+        }
+        running = false;
+        drainer.join();
+        try {
+            drainAll();
+        } catch (RuntimeException e) {
+            logger.warn("Journaled messages left for the next start: {}", e.getMessage());
+        }
+        journal.close();
+    }
+
+    /**
+     * Sends a message through the journal.
+     * @param kind whether the message is a personal, group or reply message
+     * @param messageDTO the message DTO coming from the client
+     * The message is added to the recent message cache once durable, like it is published, not once it is drained.
+     * @return the sent message, completed once it is durable in the journal
+     */
+    public CompletableFuture<MessageResponseDTO> send(Kind kind, MessageDTO messageDTO) {
+        if (!running) {
+            throw new IllegalStateException("Message journal is not running");
+        }
+        MessageSendRequest request = new MessageSendRequest(kind, messageDTO);
+        long messageId = idGenerator.nextId();
+        if (kind == Kind.REPLY) {
+            awaitDrained(messageDTO.repliedToMessageId());
+        }
+        // A reply only reads, starting with the replied-to message, so it is prepared on the message shard of that message.
+        JournaledMessage prepared = kind == Kind.REPLY && messageDTO.repliedToMessageId() != null
+                ? shardRouter.onMessage(messageDTO.repliedToMessageId(), messageDTO.chatRoomId(),
+                        () -> messageService.prepareJournaledMessage(request, messageId))
+                : messageService.prepareJournaledMessage(request, messageId);
+        byte[] payload;
+        try {
+            payload = objectMapper.writeValueAsBytes(prepared.entry());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to serialize message " + prepared.entry().messageId(), e);
+        }
+        undrained.add(messageId);
+        return journal.append(payload).whenComplete((offset, error) -> {
+            if (error != null) {
+                drained(List.of(messageId));
+            }
+        }).thenApply(offset -> {
+            recentMessageCache.addAfterCommit(prepared.response());
+            return prepared.response();
+        });
+    }
+
+    /**
+     * Waits until a message sent through this node is in the database, so it can be replied to, changed
+     * or marked as read right after it was acknowledged. Returns at once for messages that are drained or were
+     * sent through another node, whose journal this node cannot see, and after a few seconds if the database
+     * does not take the message in time, the change then fails as for an unknown message.
+     * @param messageId ID of the message, may be null
+     */
+    public void awaitDrained(Long messageId) {
+        if (messageId == null || !undrained.contains(messageId)) {
+            return;
+        }
+        long deadline = System.nanoTime() + DRAIN_WAIT.toNanos();
+        synchronized (undrained) {
+            while (undrained.contains(messageId)) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) {
+                    logger.warn("Message {} still not drained after {}", messageId, DRAIN_WAIT);
+                    return;
+                }
+                try {
+                    TimeUnit.NANOSECONDS.timedWait(undrained, left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks messages as drained and wakes the threads waiting for them.
+     */
+    private void drained(List<Long> messageIds) {
+        synchronized (undrained) {
+            messageIds.forEach(undrained::remove);
+            undrained.notifyAll();
+        }
+    }
+
+    /**
+     * Inserts journaled messages of one shard, one by one if the batch is rejected.
+     */
+    private void persist(String shard, List<JournalEntry> entries) {
+        try {
+            shardRouter.onShard(shard, () -> messageService.persistJournaledMessages(entries));
+        } catch (DataIntegrityViolationException e) {
+            logger.warn("Journal batch of {} messages rejected, inserting them one by one: {}", entries.size(), e.getMessage());
+            for (JournalEntry entry : entries) {
+                try {
+                    shardRouter.onShard(shard, () -> messageService.persistJournaledMessages(List.of(entry)));
+                } catch (DataIntegrityViolationException single) {
+                    deadLetter(entry, single);
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves an entry the database rejected to the dead-letter file and retracts the published message.
+     * If the dead-letter file cannot be written the batch fails and is retried, so no entry is lost.
+     */
+    private void deadLetter(JournalEntry entry, DataIntegrityViolationException cause) {
+        try {
+            appendDeadLetter(objectMapper.writeValueAsBytes(entry));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to move journaled message " + entry.messageId() + " to the dead-letter file", e);
+        }
+        skipped.increment();
+        recentMessageCache.removeAfterCommit(entry.chatroomId(), entry.messageId());
+        messagingTemplate.convertAndSend("/topic/chat/" + entry.chatroomId(), MessageRetractEventDTO.of(entry.messageId(), entry.chatroomId()));
+        logger.error("Moved journaled message {} of chatroom {} to {} and retracted it: {}",
+                entry.messageId(), entry.chatroomId(), DEAD_LETTER_FILE, cause.getMessage());
+    }
+
+    /**
+     * Appends an entry to the dead-letter file and forces it to disk before the checkpoint moves past the entry.
+     */
+    private void appendDeadLetter(byte[] payload) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir.resolve(DEAD_LETTER_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer line = ByteBuffer.allocate(payload.length + 1).put(payload).put((byte) '\n').flip();
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Loop of the drainer thread. Waits between polls only when the journal is drained,
+     * and after a failure, so the entries are retried once the database is back.
+     */
+    private void drainLoop() {
+        while (running) {
+            try {
+                if (drainBatch() == 0) {
+                    Thread.sleep(drainInterval.toMillis());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException | IOException e) {
+                logger.error("Failed to drain the message journal, retrying in {}", RETRY_DELAY, e);
+                try {
+                    Thread.sleep(RETRY_DELAY.toMillis());
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Drains until the journal is empty.
+     * @return the number of drained entries
+     */
+    private int drainAll() throws IOException {
+        int drained = 0;
+        int batch;
+        while ((batch = drainBatch()) > 0) {
+            drained += batch;
+        }
+        return drained;
+    }
+
+    /**
+     * Inserts the next batch of journaled messages and moves the checkpoint past them.
+     * With message shards the batch is inserted in one transaction per shard.
+     * An entry that can never be inserted, such as one whose chatroom was deleted in the meantime,
+     * is moved to the dead-letter file so it does not block the entries after it. Other failures leave the checkpoint where it is.
+     * @return the number of entries in the batch
+     */
+    private int drainBatch() throws IOException {
+        List<MessageJournal.JournalRecord> records = journal.read(drainOffset, drainBatchSize);
+        if (records.isEmpty()) {
+            return 0;
+        }
+        List<JournalEntry> entries = new ArrayList<>(records.size());
+        for (MessageJournal.JournalRecord record : records) {
+            try {
+                JournalEntry entry = objectMapper.readValue(record.payload(), JournalEntry.class);
+                // Entries replayed after a restart are not stored yet when the ID seed reads the highest stored ID.
+                SnowflakeIdGenerator.advancePast(entry.messageId());
+                entries.add(entry);
+            } catch (IOException e) {
+                appendDeadLetter(record.payload());
+                skipped.increment();
+                logger.error("Moved unreadable journal entry at offset {} to {}", record.offset(), DEAD_LETTER_FILE, e);
+            }
+        }
+        shardRouter.groupByShard(entries, JournalEntry::chatroomId).forEach(this::persist);
+        drainOffset = records.getLast().nextOffset();
+        journal.checkpoint(drainOffset);
+        drained(entries.stream().map(JournalEntry::messageId).toList());
+        return records.size();
+    }
+}
@@ -5,9 +5,11 @@ import com.yaplab.enums.MessageStatus;
 import com.yaplab.enums.MessageType;
 import com.yaplab.files.File;
 import com.yaplab.group.Group;
+import com.yaplab.id.SnowflakeId;
 import com.yaplab.user.User;
 import jakarta.persistence.*;
-import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+import org.springframework.data.domain.Persistable;
 
 import java.time.Instant;
 
@@ -15,42 +17,45 @@ import java.time.Instant;
  * Message entity to store id, sender_id, receiver_id, content, message_type, message_status, etc.
  */
 @Entity
-@Table(name = "message")
-public class Message {
+@Table(name = "message",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"chatroom_id", "seq"}),
+        indexes = @Index(name = "idx_message_chatroom_updated", columnList = "chatroom_id, updated_at, id"))
+public class Message implements Persistable<Long> {
 
     /**
      * Unique identifier for each message which is assigned automatically.
      * Long is preferred for large datasets.
+     * Generated in memory and time-ordered, so inserts of several messages are batched.
      */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @SnowflakeId
     private Long id;
 
     /**
      * The chatroom this message belongs to.
      */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "chatroom_id", nullable = false)
     private ChatRoom chatroom;
 
     /**
      * The sender of the message (cannot be null).
      */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "sender_id", nullable = false)
     private User sender;
 
     /**
      * The receiver of the message (nullable for group messages).
      */
-    @ManyToOne(optional = true)
+    @ManyToOne(optional = true, fetch = FetchType.LAZY)
     @JoinColumn(name = "receiver_id")
     private User receiver;
 
     /**
      * The group to which the message belongs (nullable for personal messages).
      */
-    @ManyToOne(optional = true)
+    @ManyToOne(optional = true, fetch = FetchType.LAZY)
     @JoinColumn(name = "group_id")
     private Group group;
 
@@ -70,23 +75,38 @@ public class Message {
     /**
      * File sent or received as a message
      */
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "file_id")
     private File file;
 
     /**
      * Timestamp of when message was created.
+     * Set on insert unless already set, a message replayed from the journal keeps the time it was sent at.
      */
     @Column(nullable = false, updatable = false)
-    @CreationTimestamp
     private Instant timestamp;
 
+    /**
+     * Timestamp of the last change of the message: sending, status change, edit or soft deletion.
+     * Reconnecting clients sync the changes of a chatroom since the last one they saw by this column.
+     */
+    @Column(name = "updated_at")
+    @UpdateTimestamp
+    private Instant updatedAt;
+
     /**
      * Soft delete flag to allow message recovery.
      */
     @Column(nullable = false)
     private Boolean softDeleted = false;
 
+    /**
+     * Timestamp of the soft deletion, used by compaction to find messages past the retention window.
+     * Nullable because a message might not be deleted.
+     */
+    @Column(nullable = true)
+    private Instant deletedAt;
+
     /**
      * Status of the message. Can be Sent, Delivered, Read.
      */
@@ -96,9 +116,9 @@ public class Message {
 
     /**
      * If this message is a reply, it stores the referenced message
-     * Cascade is used to avoid unintended deletions.
+     * Not cascaded, saving or deleting a reply never touches the message it refers to.
      */
-    @ManyToOne(cascade = CascadeType.ALL)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "replyTo_id")
     private Message replyTo;
 
@@ -114,6 +134,20 @@ public class Message {
     @Column(nullable = false)
     private boolean forwarded = false;
 
+    /**
+     * ID of the message this one was forwarded from, if it is a forward.
+     * A plain column without a foreign key, the original may be on another message shard or compacted away.
+     * The forward keeps its own copy of the content and file, and of the sender name of the original.
+     */
+    @Column(name = "forwarded_from_id")
+    private Long forwardedFromId;
+
+    /**
+     * Name of the sender of the original message when it was forwarded.
+     */
+    @Column(name = "forwarded_from_sender_name")
+    private String forwardedFromSenderName;
+
     /**
      * Timestamp of the last edit.
      * Nullable because a message might not be edited.
@@ -121,6 +155,28 @@ public class Message {
     @Column(nullable = true)
     private Instant editTimestamp;
 
+    /**
+     * Revision of the current content. Starts at 0 and is incremented by every edit.
+     * Older revisions are kept in the message_revision table.
+     */
+    @Column(nullable = false)
+    private int revision = 0;
+
+    /**
+     * Position of the message in its chatroom, allocated by the ChatRoomSequencer when the message is sent.
+     * Increases by one per message of the room, so clients can tell a message is missing and fetch just that range.
+     * Null for messages sent before sequence numbers existed.
+     */
+    @Column(name = "seq")
+    private Long seq;
+
+    /**
+     * Whether the message was loaded from or saved to the database.
+     * Messages get their ID before they are saved, so the ID alone does not tell a new message apart.
+     */
+    @Transient
+    private boolean persisted = false;
+
     /**
      * Default Constructor.
      */
@@ -160,10 +216,32 @@ public class Message {
     /**
      *  Getters and setters
      */
+    @Override
     public Long getId() {
         return id;
     }
 
+    /**
+     * Tells Spring Data to insert a new message with an ID assigned up front instead of merging it, which would select it first.
+     */
+    @Override
+    public boolean isNew() {
+        return !persisted;
+    }
+
+    @PrePersist
+    void onCreate() {
+        if (timestamp == null) {
+            timestamp = Instant.now();
+        }
+    }
+
+    @PostLoad
+    @PostPersist
+    void markPersisted() {
+        persisted = true;
+    }
+
     public void setId(Long id) {
         this.id = id;
     }
@@ -232,6 +310,14 @@ public class Message {
         this.softDeleted = softDeleted;
     }
 
+    public Instant getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(Instant deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
     public MessageStatus getMessageStatus() {
         return messageStatus;
     }
@@ -273,6 +359,22 @@ public class Message {
         this.forwarded = forwarded;
     }
 
+    public Long getForwardedFromId() {
+        return forwardedFromId;
+    }
+
+    public void setForwardedFromId(Long forwardedFromId) {
+        this.forwardedFromId = forwardedFromId;
+    }
+
+    public String getForwardedFromSenderName() {
+        return forwardedFromSenderName;
+    }
+
+    public void setForwardedFromSenderName(String forwardedFromSenderName) {
+        this.forwardedFromSenderName = forwardedFromSenderName;
+    }
+
     public Instant getEditTimestamp() {
         return editTimestamp;
     }
@@ -281,6 +383,30 @@ public class Message {
         this.editTimestamp = editTimestamp;
     }
 
+    public int getRevision() {
+        return revision;
+    }
+
+    public void setRevision(int revision) {
+        this.revision = revision;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public Long getSeq() {
+        return seq;
+    }
+
+    public void setSeq(Long seq) {
+        this.seq = seq;
+    }
+
     public void markAsEdited() {
         this.edited = true;
         this.editTimestamp = Instant.now();
@@ -0,0 +1,16 @@
+package com.yaplab.message;
+
+import java.time.Instant;
+
+/**
+ * A change of a message as read by the catch-up sync, without the message itself.
+ * @param id id of the changed message
+ * @param updatedAt time of the change
+ * @param softDeleted whether the change deleted the message
+ */
+public record MessageChangeRow(
+        Long id,
+        Instant updatedAt,
+        Boolean softDeleted
+) {
+}
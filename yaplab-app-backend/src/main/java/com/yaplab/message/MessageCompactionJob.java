@@ -0,0 +1,98 @@
+package com.yaplab.message;
+
+import com.yaplab.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Background job hard-deleting soft-deleted messages older than message.compaction.retention.
+ * Disabled unless message.compaction.enabled is set. Works in bounded batches, each in its own transaction,
+ * and stops after message.compaction.max-batches-per-run so one run never keeps the database busy for long.
+ */
+@Component
+public class MessageCompactionJob {
+
+    /**
+     * Logger for MessageCompactionJob
+     * This logger is used to log the result of every compaction run.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MessageCompactionJob.class);
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final MessageCompactionService messageCompactionService;
+    private final ShardRouter shardRouter;
+    private final boolean enabled;
+    private final Duration retention;
+    private final int batchSize;
+    private final int maxBatchesPerRun;
+
+    /**
+     * Prevents two compaction runs at the same time.
+     */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public MessageCompactionJob(MessageCompactionService messageCompactionService,
+                                ShardRouter shardRouter,
+                                @Value("${message.compaction.enabled:false}") boolean enabled,
+                                @Value("${message.compaction.retention:P30D}") Duration retention,
+                                @Value("${message.compaction.batch-size:1000}") int batchSize,
+                                @Value("${message.compaction.max-batches-per-run:100}") int maxBatchesPerRun) {
+        this.messageCompactionService = messageCompactionService;
+        this.shardRouter = shardRouter;
+        this.enabled = enabled;
+        this.retention = retention;
+        this.batchSize = batchSize;
+        this.maxBatchesPerRun = maxBatchesPerRun;
+    }
+
+    /**
+     * Runs compaction on the configured interval.
+     */
+    @Scheduled(fixedDelayString = "${message.compaction.interval-ms:3600000}", initialDelayString = "${message.compaction.initial-delay-ms:120000}")
+    public void scheduledRun() {
+        if (enabled) {
+            compact();
+        }
+    }
+
+    /**
+     * Compacts soft-deleted messages past the retention window, on every message shard in turn.
+     * The batch limit applies to every shard.
+     * @return the counts of the run, or null if a run was already in progress
+     */
+    public MessageCompactionReport compact() {
+        if (!running.compareAndSet(false, true)) {
+            logger.warn("Compaction requested while another run is in progress");
+            return null;
+        }
+        try {
+            long started = System.currentTimeMillis();
+            Instant cutoff = Instant.now().minus(retention);
+            MessageCompactionReport total = MessageCompactionReport.EMPTY;
+            for (String shard : shardRouter.shards()) {
+                for (int batches = 0; batches < maxBatchesPerRun; batches++) {
+                    MessageCompactionReport batch = shardRouter.onShard(shard, () -> messageCompactionService.compactBatch(cutoff, batchSize));
+                    total = total.plus(batch);
+                    if (batch.compactedMessages() < batchSize) {
+                        break;
+                    }
+                }
+            }
+            logger.info("Compacted messages deleted before {}: {} rows deleted, {} rows scrubbed, {} revisions deleted, ~{} bytes reclaimed in {} ms",
+                    cutoff, total.deletedMessages(), total.scrubbedMessages(), total.deletedRevisions(), total.reclaimedBytes(),
+                    System.currentTimeMillis() - started);
+            return total;
+        } finally {
+            running.set(false);
+        }
+    }
+}
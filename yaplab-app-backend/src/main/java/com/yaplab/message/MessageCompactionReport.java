@@ -0,0 +1,36 @@
+package com.yaplab.message;
+
+/**
+ * Result of a compaction of soft-deleted messages.
+ * @param deletedMessages number of message rows removed from the table
+ * @param scrubbedMessages number of message rows kept as empty placeholders because another message refers to them
+ * @param deletedRevisions number of edit history rows removed
+ * @param reclaimedBytes approximate payload reclaimed, counted as the characters of content and edit history removed
+ */
+public record MessageCompactionReport(
+        long deletedMessages,
+        long scrubbedMessages,
+        long deletedRevisions,
+        long reclaimedBytes
+) {
+
+    public static final MessageCompactionReport EMPTY = new MessageCompactionReport(0, 0, 0, 0);
+
+    /**
+     * Adds the counts of another report to this one.
+     */
+    public MessageCompactionReport plus(MessageCompactionReport other) {
+        return new MessageCompactionReport(
+                deletedMessages + other.deletedMessages,
+                scrubbedMessages + other.scrubbedMessages,
+                deletedRevisions + other.deletedRevisions,
+                reclaimedBytes + other.reclaimedBytes);
+    }
+
+    /**
+     * Returns the number of message rows touched.
+     */
+    public long compactedMessages() {
+        return deletedMessages + scrubbedMessages;
+    }
+}
@@ -0,0 +1,66 @@
+package com.yaplab.message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Service layer purging soft-deleted messages for good once they are past the retention window.
+ */
+@Service
+public class MessageCompactionService {
+
+    /**
+     * Logger for MessageCompactionService
+     * This logger is used to log various events and errors in the MessageCompactionService class.
+     * It helps in debugging and tracking the flow of operations related to message compaction.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MessageCompactionService.class);
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final MessageRepository messageRepository;
+    private final MessageRevisionRepository messageRevisionRepository;
+
+    public MessageCompactionService(MessageRepository messageRepository, MessageRevisionRepository messageRevisionRepository) {
+        this.messageRepository = messageRepository;
+        this.messageRevisionRepository = messageRevisionRepository;
+    }
+
+    /**
+     * Compacts one batch of soft-deleted messages.
+     * The edit history of every message in the batch is deleted. Messages nothing refers to are deleted,
+     * messages that are still replied to keep their row so the reference stays valid,
+     * but lose their content and attachment and are shown as a deleted placeholder.
+     * A placeholder is deleted by a later run once the messages referring to it are gone.
+     * @param cutoff messages deleted before this time are compacted
+     * @param batchSize maximum number of messages in the batch
+     * @return the counts of the batch
+     */
+    @Transactional
+    public MessageCompactionReport compactBatch(Instant cutoff, int batchSize) {
+        List<Long> ids = messageRepository.findCompactableMessageIds(cutoff, Limit.of(batchSize));
+        if (ids.isEmpty()) {
+            return MessageCompactionReport.EMPTY;
+        }
+        Set<Long> referenced = new HashSet<>(messageRepository.findReferencedIds(ids));
+        List<Long> unreferenced = ids.stream().filter(id -> !referenced.contains(id)).toList();
+
+        long reclaimedBytes = messageRepository.sumContentLength(ids)
+                + messageRevisionRepository.sumReplacedTextLength(ids);
+        int deletedRevisions = messageRevisionRepository.deleteAllByMessageIdIn(ids);
+        int scrubbed = referenced.isEmpty() ? 0 : messageRepository.scrubAllByIdIn(referenced);
+        int deleted = unreferenced.isEmpty() ? 0 : messageRepository.deleteAllByIdIn(unreferenced);
+
+        logger.debug("Compacted {} messages: {} deleted, {} scrubbed", ids.size(), deleted, scrubbed);
+        return new MessageCompactionReport(deleted, scrubbed, deletedRevisions, reclaimedBytes);
+    }
+}
@@ -1,15 +1,29 @@
 package com.yaplab.message;
 
 import com.yaplab.enums.MessageStatus;
+import com.yaplab.journal.MessageJournalService;
+import com.yaplab.metrics.MessageSendMetrics;
+import com.yaplab.metrics.MessageSendMetrics.Kind;
+import com.yaplab.metrics.MessageSendMetrics.Stage;
+import com.yaplab.user.UserService;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
+import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
 
+import java.security.Principal;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 /**
  * Controller for handling messaging operations via REST and WebSocket.
@@ -18,27 +32,50 @@ import java.util.Map;
 @RequestMapping("/messages")
 public class MessageController {
 
+    /**
+     * Logger for MessageController
+     * This logger is used to log various events and errors in the MessageController class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MessageController.class);
+
     /**
      * Constructor based dependency injection
      */
     private final MessageService messageService;
+    private final MessageRevisionService messageRevisionService;
     private final SimpMessagingTemplate messagingTemplate;
+    private final MessageSendMetrics sendMetrics;
+    private final MessageIngestPipeline ingestPipeline;
+    private final MessageJournalService journalService;
+    private final UserService userService;
 
     public MessageController(
             MessageService messageService,
-            SimpMessagingTemplate messagingTemplate) {
+            MessageRevisionService messageRevisionService,
+            SimpMessagingTemplate messagingTemplate,
+            MessageSendMetrics sendMetrics,
+            MessageIngestPipeline ingestPipeline,
+            MessageJournalService journalService,
+            UserService userService) {
         this.messageService = messageService;
+        this.messageRevisionService = messageRevisionService;
         this.messagingTemplate = messagingTemplate;
+        this.sendMetrics = sendMetrics;
+        this.ingestPipeline = ingestPipeline;
+        this.journalService = journalService;
+        this.userService = userService;
     }
 
     /**
      * Handles incoming WebSocket messages to update a message's status to DELIVERED.
      * Sends this to the topic so people subscribed to it also get notified.
      * @param messageId ID of the message
+     * @param chatroomId ID of the chatroom of the message from the chatroom-id header, required when messages are sharded
      */
     @MessageMapping("/status/delivered")
-    public void handleDeliveredStatusUpdate(@Payload Long messageId) {
-        messageService.updateMessageStatus(messageId, MessageStatus.DELIVERED);
+    public void handleDeliveredStatusUpdate(@Payload Long messageId, @Header(name = "chatroom-id", required = false) String chatroomId) {
+        journalService.awaitDrained(messageId);
+        messageService.updateMessageStatus(messageId, chatroomId, MessageStatus.DELIVERED);
         messagingTemplate.convertAndSend("/topic/messages/status", createStatusUpdatePayload(messageId, MessageStatus.DELIVERED));
     }
 
@@ -46,65 +83,148 @@ public class MessageController {
      * Handles incoming WebSocket messages to update a message's status to READ.
      * Sends this to the topic so people subscribed to it also get notified.
      * @param messageId ID of the message
+     * @param chatroomId ID of the chatroom of the message from the chatroom-id header, required when messages are sharded
      */
     @MessageMapping("/status/read")
-    public void handleReadStatusUpdate(@Payload Long messageId) {
-        messageService.updateMessageStatus(messageId, MessageStatus.READ);
+    public void handleReadStatusUpdate(@Payload Long messageId, @Header(name = "chatroom-id", required = false) String chatroomId) {
+        journalService.awaitDrained(messageId);
+        messageService.updateMessageStatus(messageId, chatroomId, MessageStatus.READ);
         messagingTemplate.convertAndSend("/topic/messages/status", createStatusUpdatePayload(messageId, MessageStatus.READ));
     }
 
     /**
      * Sends a personal message via WebSocket to the appropriate chatroom topic.
      * @param messageDTO the message DTO coming from the client.
+     * @param principal the sender, told on /user/queue/errors if the send fails
      */
     @MessageMapping("/personal")
-    public void personalMessage(@Payload MessageDTO messageDTO) {
-        MessageResponseDTO response = messageService.sendPersonalMessage(messageDTO);
-        String chatroomId = response.chatRoomId();
-        messagingTemplate.convertAndSend("/topic/chat/" + chatroomId, response);
+    public void personalMessage(@Payload MessageDTO messageDTO, Principal principal) {
+        send(Kind.PERSONAL, messageDTO, principal, () -> messageService.sendPersonalMessage(messageDTO));
     }
 
     /**
      * Sends a group message via WebSocket to the appropriate chatroom topic.
      * @param messageDTO the message DTO coming from the client.
+     * @param principal the sender, told on /user/queue/errors if the send fails
      */
     @MessageMapping("/group")
-    public void groupMessage(@Payload MessageDTO messageDTO) {
-        MessageResponseDTO response = messageService.sendGroupMessage(messageDTO);
-        String chatroomId = response.chatRoomId(); // Ensure your DTO has this field
-        messagingTemplate.convertAndSend("/topic/chat/" + chatroomId, response);
+    public void groupMessage(@Payload MessageDTO messageDTO, Principal principal) {
+        send(Kind.GROUP, messageDTO, principal, () -> messageService.sendGroupMessage(messageDTO));
     }
 
     /**
      * Sends a reply message via WebSocket to the appropriate chatroom topic.
      * @param messageDTO the message DTO coming from the client.
+     * @param principal the sender, told on /user/queue/errors if the send fails
      */
     @MessageMapping("/reply")
-    public void sendReplyMessageViaWebSocket(@Payload MessageDTO messageDTO) {
-        MessageResponseDTO response = messageService.sendReplyMessage(messageDTO, messageDTO.repliedToMessageId());
-        String chatroomId = response.chatRoomId();
-        messagingTemplate.convertAndSend("/topic/chat/" + chatroomId, response);
+    public void sendReplyMessageViaWebSocket(@Payload MessageDTO messageDTO, Principal principal) {
+        send(Kind.REPLY, messageDTO, principal, () -> messageService.sendReplyMessage(messageDTO, messageDTO.repliedToMessageId()));
+    }
+
+    /**
+     * Sends a message and publishes it, timed as a whole.
+     * With the journal the message is published once it is durable in the journal and inserted later,
+     * with the ingest pipeline it is queued for the next group commit and published once that commits,
+     * otherwise it is sent in a transaction of its own on the calling thread.
+     * Either way a failed send is reported to the sender, see reportFailure.
+     * @param kind kind of the message
+     * @param messageDTO the message DTO coming from the client.
+     * @param principal the sender
+     * @param directSend sends the message in its own transaction
+     */
+    private void send(Kind kind, MessageDTO messageDTO, Principal principal, Supplier<MessageResponseDTO> directSend) {
+        if (!journalService.isEnabled() && !ingestPipeline.isEnabled()) {
+            sendMetrics.send(kind).record(() -> {
+                try {
+                    publish(kind, directSend.get());
+                } catch (RuntimeException e) {
+                    reportFailure(kind, messageDTO, principal, e);
+                }
+            });
+            return;
+        }
+        Timer.Sample sample = Timer.start();
+        queue(kind, messageDTO).whenComplete((response, error) -> {
+            if (error != null) {
+                reportFailure(kind, messageDTO, principal, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                publish(kind, response);
+            }
+            sample.stop(sendMetrics.send(kind));
+        });
+    }
+
+    /**
+     * Tells the sender that a message could not be sent, on its /user/queue/errors destination.
+     * The message was not published, so without this a client waiting for it on the chatroom topic would never learn it failed.
+     * @param kind kind of the message
+     * @param messageDTO the message DTO coming from the client.
+     * @param principal the sender, nothing is sent to an anonymous session
+     * @param error the failure of the send
+     */
+    private void reportFailure(Kind kind, MessageDTO messageDTO, Principal principal, Throwable error) {
+        logger.warn("Failed to send {} message from user {}: {}", kind, messageDTO.senderId(), error.getMessage());
+        if (principal != null) {
+            messagingTemplate.convertAndSendToUser(principal.getName(), "/queue/errors", new MessageSendErrorDTO(kind, error.getMessage(), messageDTO));
+        }
+    }
+
+    /**
+     * Queues a message in the journal if it is enabled, otherwise for the group commit of the ingest pipeline.
+     * @return the sent message, completed once it is durable
+     */
+    private CompletableFuture<MessageResponseDTO> queue(Kind kind, MessageDTO messageDTO) {
+        return journalService.isEnabled() ? journalService.send(kind, messageDTO) : ingestPipeline.submit(kind, messageDTO);
+    }
+
+    /**
+     * Publishes a sent message to the topic of its chatroom, timed as the publish stage of the send.
+     * The message is only published after the service call returned, so after its transaction committed.
+     * @param kind kind of the sent message
+     * @param response the sent message
+     */
+    private void publish(Kind kind, MessageResponseDTO response) {
+        sendMetrics.stage(kind, Stage.PUBLISH).record(() ->
+                messagingTemplate.convertAndSend("/topic/chat/" + response.chatRoomId(), response));
     }
 
     /**
      * Sends a reply message to an existing message.
+     * Goes through the journal or the ingest pipeline like the WebSocket sends when either is enabled,
+     * as a direct send runs on the default shard and cannot insert on the message shard of the chatroom.
+     * The request waits until the reply is durable and fails with the error of the send.
      * @param messageDTO the message DTO coming from the client.
      */
     @PostMapping("/reply")
     public ResponseEntity<MessageResponseDTO> sendReplyMessage(
             @RequestBody MessageDTO messageDTO) {
-        return ResponseEntity.ok(messageService.sendReplyMessage(messageDTO, messageDTO.repliedToMessageId()));
+        if (!journalService.isEnabled() && !ingestPipeline.isEnabled()) {
+            return ResponseEntity.ok(messageService.sendReplyMessage(messageDTO, messageDTO.repliedToMessageId()));
+        }
+        try {
+            return ResponseEntity.ok(queue(Kind.REPLY, messageDTO).join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
     }
 
     /**
      * Updates the status of a message based on its ID.
+     * The chatroom of the message is required when messages are sharded, here and in the other calls on a single message.
+     * With the journal these calls first wait for the message to be drained, so they work right after it was sent.
      */
     @PatchMapping("/{messageId}/status/{status}")
     public ResponseEntity<String> updateMessageStatus(
             @PathVariable Long messageId,
-            @PathVariable MessageStatus status
+            @PathVariable MessageStatus status,
+            @RequestParam(required = false) String chatroomId
     ){
-        messageService.updateMessageStatus(messageId, status);
+        journalService.awaitDrained(messageId);
+        messageService.updateMessageStatus(messageId, chatroomId, status);
         return ResponseEntity.ok("Status Updated to " + status);
     }
 
@@ -114,9 +234,11 @@ public class MessageController {
     @DeleteMapping("/{messageId}")
     public ResponseEntity<Void> softDeleteMessage(
             @PathVariable Long messageId, // Message ID from path
-            @RequestParam Long userId // User ID from request parameter
+            @RequestParam Long userId, // User ID from request parameter
+            @RequestParam(required = false) String chatroomId
     ){
-        messageService.softDeleteMessage(messageId, userId);
+        journalService.awaitDrained(messageId);
+        messageService.softDeleteMessage(messageId, chatroomId, userId);
         return ResponseEntity.noContent().build();
     }
 
@@ -135,25 +257,96 @@ public class MessageController {
 
     /**
      * Edits an existing message.
+     * Only the sender can edit a message, the authenticated user must be the sender.
+     * Publishes the edit to the chatroom topic so subscribed clients patch the message in place.
      */
     @PutMapping("/{messageId}")
-    public ResponseEntity<Message> editMessage(
+    public ResponseEntity<MessageEditEventDTO> editMessage(
             @PathVariable Long messageId,
+            Principal principal,
+            @RequestParam(required = false) String chatroomId,
             @RequestBody String newContent) {
-        Message updatedMessage = messageService.editMessage(messageId, newContent);
-        return ResponseEntity.ok(updatedMessage);
+        try {
+            Long userId = userService.getUserEntityByEmail(principal.getName()).getId();
+            journalService.awaitDrained(messageId);
+            MessageEditEventDTO editEvent = messageService.editMessage(messageId, chatroomId, userId, newContent);
+            messagingTemplate.convertAndSend("/topic/chat/" + editEvent.chatRoomId(), editEvent);
+            return ResponseEntity.ok(editEvent);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Gets the edit history of a message, oldest revision first.
+     * The authenticated user must take part in the chatroom of the message.
+     */
+    @GetMapping("/{messageId}/revisions")
+    public ResponseEntity<List<MessageRevisionDTO>> getRevisions(
+            @PathVariable Long messageId,
+            Principal principal,
+            @RequestParam(required = false) String chatroomId) {
+        try {
+            Long userId = userService.getUserEntityByEmail(principal.getName()).getId();
+            journalService.awaitDrained(messageId);
+            return ResponseEntity.ok(messageRevisionService.getRevisions(messageId, chatroomId, userId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    /**
+     * Gets the content of a message in one revision.
+     * The authenticated user must take part in the chatroom of the message.
+     */
+    @GetMapping("/{messageId}/revisions/{revision}")
+    public ResponseEntity<MessageRevisionDTO> getRevision(
+            @PathVariable Long messageId,
+            @PathVariable int revision,
+            Principal principal,
+            @RequestParam(required = false) String chatroomId) {
+        try {
+            Long userId = userService.getUserEntityByEmail(principal.getName()).getId();
+            journalService.awaitDrained(messageId);
+            return ResponseEntity.ok(messageRevisionService.getRevision(messageId, chatroomId, userId, revision));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
     }
 
     /**
      * Forwards an existing message.
+     * The authenticated user is the sender and must take part in both chat rooms.
      */
     @PostMapping("/{messageId}/forward")
-    public ResponseEntity<Message> forwardMessage(
+    public ResponseEntity<MessageResponseDTO> forwardMessage(
             @PathVariable Long messageId,
+            Principal principal,
+            @RequestParam(required = false) String chatroomId,
             @RequestBody Map<String, Object> requestBody) {
         String recipientChatRoomId = (String) requestBody.get("recipientChatRoomId");
-        Long senderId = (Long) requestBody.get("senderId");
-        Message forwardedMessage = messageService.forwardMessage(messageId, recipientChatRoomId, senderId); // Pass recipientChatRoomId as String
+        Long senderId = userService.getUserEntityByEmail(principal.getName()).getId();
+        journalService.awaitDrained(messageId);
+        MessageResponseDTO forwardedMessage = messageService.forwardMessage(messageId, chatroomId, recipientChatRoomId, senderId); // Pass recipientChatRoomId as String
         return ResponseEntity.ok(forwardedMessage);
     }
-}
\ No newline at end of file
+
+    /**
+     * Forwards an existing message to several chat rooms.
+     * The authenticated user is the sender and must take part in the chat room of the message and in every recipient.
+     */
+    @PostMapping("/{messageId}/forward/bulk")
+    public ResponseEntity<List<MessageResponseDTO>> forwardMessageToChatRooms(
+            @PathVariable Long messageId,
+            Principal principal,
+            @RequestParam(required = false) String chatroomId,
+            @RequestBody List<String> recipientChatRoomIds) {
+        try {
+            Long senderId = userService.getUserEntityByEmail(principal.getName()).getId();
+            journalService.awaitDrained(messageId);
+            return ResponseEntity.ok(messageService.forwardMessage(messageId, chatroomId, recipientChatRoomIds, senderId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
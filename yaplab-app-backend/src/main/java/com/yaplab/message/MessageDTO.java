@@ -7,32 +7,39 @@ import java.util.Objects;
 /**
  * A Data Transfer Object (DTO) for sending messages.
  * This DTO is used to encapsulate the data required to send a message,
- * including sender and receiver information, content, group ID, and file details.
+ * including sender and receiver information, content, group ID, and the attached file.
+ * Files are uploaded first through /files/upload and then referenced here by their ID.
  * @param senderId   ID of the user sending the message (required).
  * @param receiverId ID of the user receiving the message (optional).
  * @param content    Content of the message (optional).
  * @param groupId    ID of the group to which the message is sent (optional).
- * @param fileUrl    URL of the file attached to the message (optional).
- * @param fileName   Name of the file attached to the message (optional).
- * @param fileSize   Size of the file attached to the message in bytes (optional).
+ * @param fileId     ID of an uploaded file attached to the message, must be uploaded by the sender (optional).
  * @param repliedToMessageId ID of the message replied to (optional).
  * @param edited boolean indicating if the message was edited
  * @param forwarded boolean indicating if the message was forwarded
  * @param editTimestamp timestamp of the last edit
+ * @param chatRoomId ID of the chatroom of the replied-to message, required for replies when messages are sharded (optional).
  */
 public record MessageDTO(
         @NotNull Long senderId,
         Long receiverId,
         String content,
         Long groupId,
-        String fileUrl,
-        String fileName,
-        Long fileSize,
+        Long fileId,
         Long repliedToMessageId,
         boolean edited,
         boolean forwarded,
-        Instant editTimestamp
+        Instant editTimestamp,
+        String chatRoomId
 ) {
+    /**
+     * Message DTO without the chatroom ID, for messages other than replies.
+     */
+    public MessageDTO(Long senderId, Long receiverId, String content, Long groupId, Long fileId, Long repliedToMessageId,
+                      boolean edited, boolean forwarded, Instant editTimestamp) {
+        this(senderId, receiverId, content, groupId, fileId, repliedToMessageId, edited, forwarded, editTimestamp, null);
+    }
+
     /**
      * Used to compare if two MessageDTO objects are equal.
      * Same message can have two different dto as objects. They reside at different memory locations.
@@ -46,7 +53,7 @@ public record MessageDTO(
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         MessageDTO that = (MessageDTO) o;
-        return edited == that.edited && forwarded == that.forwarded && Objects.equals(senderId, that.senderId) && Objects.equals(receiverId, that.receiverId) && Objects.equals(content, that.content) && Objects.equals(groupId, that.groupId) && Objects.equals(fileUrl, that.fileUrl) && Objects.equals(fileName, that.fileName) && Objects.equals(fileSize, that.fileSize) && Objects.equals(repliedToMessageId, that.repliedToMessageId) && Objects.equals(editTimestamp, that.editTimestamp);
+        return edited == that.edited && forwarded == that.forwarded && Objects.equals(senderId, that.senderId) && Objects.equals(receiverId, that.receiverId) && Objects.equals(content, that.content) && Objects.equals(groupId, that.groupId) && Objects.equals(fileId, that.fileId) && Objects.equals(repliedToMessageId, that.repliedToMessageId) && Objects.equals(editTimestamp, that.editTimestamp) && Objects.equals(chatRoomId, that.chatRoomId);
     }
 
     /**
@@ -56,7 +63,7 @@ public record MessageDTO(
      */
     @Override
     public int hashCode() {
-        return Objects.hash(senderId, receiverId, content, groupId, fileUrl, fileName, fileSize, repliedToMessageId, edited, forwarded, editTimestamp);
+        return Objects.hash(senderId, receiverId, content, groupId, fileId, repliedToMessageId, edited, forwarded, editTimestamp, chatRoomId);
     }
 
     /**
@@ -71,13 +78,12 @@ public record MessageDTO(
                 ", receiverId=" + receiverId +
                 ", content='" + content + '\'' +
                 ", groupId=" + groupId +
-                ", fileUrl='" + fileUrl + '\'' +
-                ", fileName='" + fileName + '\'' +
-                ", fileSize=" + fileSize +
+                ", fileId=" + fileId +
                 ", repliedToMessageId=" + repliedToMessageId +
                 ", edited=" + edited +
                 ", forwarded=" + forwarded +
                 ", editTimestamp=" + editTimestamp +
+                ", chatRoomId='" + chatRoomId + '\'' +
                 '}';
     }
 }
\ No newline at end of file
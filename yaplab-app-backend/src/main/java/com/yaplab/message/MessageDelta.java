@@ -0,0 +1,54 @@
+package com.yaplab.message;
+
+/**
+ * Compact difference between two versions of a message content.
+ * Edits usually change a small part of a message, so instead of a full copy only the part between
+ * the unchanged start and the unchanged end is kept.
+ * Applying the delta to the base text keeps the first prefixLength and the last suffixLength characters
+ * of the base and puts text in between.
+ * @param prefixLength number of characters at the start of the base text that are kept
+ * @param suffixLength number of characters at the end of the base text that are kept
+ * @param text the text that replaces everything in between
+ */
+public record MessageDelta(
+        int prefixLength,
+        int suffixLength,
+        String text
+) {
+
+    /**
+     * Computes the delta that turns the base text into the target text.
+     * A null text is treated as an empty text.
+     * @param base the text the delta is applied to
+     * @param target the text the delta produces
+     * @return the delta from base to target
+     */
+    public static MessageDelta between(String base, String target) {
+        String from = base != null ? base : "";
+        String to = target != null ? target : "";
+        int maxShared = Math.min(from.length(), to.length());
+        int prefix = 0;
+        while (prefix < maxShared && from.charAt(prefix) == to.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < maxShared - prefix
+                && from.charAt(from.length() - 1 - suffix) == to.charAt(to.length() - 1 - suffix)) {
+            suffix++;
+        }
+        return new MessageDelta(prefix, suffix, to.substring(prefix, to.length() - suffix));
+    }
+
+    /**
+     * Applies the delta to the text it was computed from.
+     * @param base the base text, null is treated as an empty text
+     * @return the target text
+     */
+    public String apply(String base) {
+        String from = base != null ? base : "";
+        if (prefixLength + suffixLength > from.length()) {
+            throw new IllegalArgumentException("Delta does not match the base text of length " + from.length());
+        }
+        return from.substring(0, prefixLength) + text + from.substring(from.length() - suffixLength);
+    }
+}
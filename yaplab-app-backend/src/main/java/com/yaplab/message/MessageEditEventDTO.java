@@ -0,0 +1,32 @@
+package com.yaplab.message;
+
+import java.time.Instant;
+
+/**
+ * Event published to the chatroom topic when a message is edited.
+ * Carries only the changed part of the content so clients holding the previous revision
+ * patch the message in place. Clients holding another revision fetch the current one instead.
+ * @param eventType type of the event, always EDIT
+ * @param messageId id of the edited message
+ * @param chatRoomId id of the chatroom of the message
+ * @param baseRevision revision the delta applies to
+ * @param revision revision created by the edit
+ * @param prefixLength number of characters kept from the start of the previous content
+ * @param suffixLength number of characters kept from the end of the previous content
+ * @param text the new text between the kept start and end
+ * @param editTimestamp timestamp of the edit
+ */
+public record MessageEditEventDTO(
+        String eventType,
+        Long messageId,
+        String chatRoomId,
+        int baseRevision,
+        int revision,
+        int prefixLength,
+        int suffixLength,
+        String text,
+        Instant editTimestamp
+) {
+
+    public static final String EDIT = "EDIT";
+}
@@ -0,0 +1,59 @@
+package com.yaplab.message;
+
+import com.yaplab.enums.MessageStatus;
+
+import java.time.Instant;
+
+/**
+ * A flat view of a message with its sender, attachment and replied-to message, read in a single query.
+ * Used to build MessageResponseDTOs for history pages without loading any entity.
+ * @param id id of the message
+ * @param senderName sender of the message
+ * @param content content of the message
+ * @param timestamp timestamp of the message
+ * @param messageStatus status of the message
+ * @param fileUrl url of the file if any
+ * @param fileName name of the file if any
+ * @param fileSize size of the file if any
+ * @param uploadedByUserId id of the user who uploaded the file if any
+ * @param uploadedByUserName name of the user who uploaded the file if any
+ * @param fileType type of the file if any
+ * @param replyToId id of the message being replied to if any
+ * @param replyToSenderName sender of the message being replied to if any
+ * @param replyToContent content of the message being replied to if any
+ * @param replyToSoftDeleted soft delete flag of the message being replied to if any
+ * @param forwardedFromId id of the message this one was forwarded from if any
+ * @param forwardedFromSenderName sender of the message this one was forwarded from if any
+ * @param chatRoomId id of the chatroom of the message
+ * @param edited boolean indicating if the message was edited
+ * @param forwarded boolean indicating if the message was forwarded
+ * @param editTimestamp timestamp of the last edit
+ * @param revision revision of the content
+ * @param seq position of the message in its chatroom
+ */
+public record MessageHistoryRow(
+        Long id,
+        String senderName,
+        String content,
+        Instant timestamp,
+        MessageStatus messageStatus,
+        String fileUrl,
+        String fileName,
+        Long fileSize,
+        Long uploadedByUserId,
+        String uploadedByUserName,
+        String fileType,
+        Long replyToId,
+        String replyToSenderName,
+        String replyToContent,
+        Boolean replyToSoftDeleted,
+        Long forwardedFromId,
+        String forwardedFromSenderName,
+        String chatRoomId,
+        boolean edited,
+        boolean forwarded,
+        Instant editTimestamp,
+        int revision,
+        Long seq
+) {
+}
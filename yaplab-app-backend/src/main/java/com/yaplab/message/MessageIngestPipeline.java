@@ -0,0 +1,212 @@
+package com.yaplab.message;
+
+import com.yaplab.datasource.Workload;
+import com.yaplab.metrics.MessageSendMetrics.Kind;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Group commit of sent messages.
+ * Every send normally runs in its own transaction, so under load the database spends most of its time committing.
+ * When enabled, sends are put on a bounded queue and a single writer thread takes whatever has queued up
+ * and sends it with MessageService.sendMessages: one transaction, batched inserts and one commit per batch.
+ * Batches form by themselves, while one batch commits the next one queues, so a lone send is not delayed.
+ * The future of a send completes once its batch is committed, in the order the sends arrived, on a completer thread
+ * so that callbacks such as publishing the message never hold up the next batch.
+ * Disabled unless message.ingest.batching.enabled is set.
+ */
+@Component
+public class MessageIngestPipeline {
+
+    /**
+     * Logger for MessageIngestPipeline
+     * This logger is used to log various events and errors in the MessageIngestPipeline class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MessageIngestPipeline.class);
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final MessageService messageService;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final Duration offerTimeout;
+
+    private final BlockingQueue<PendingSend> queue;
+    private final DistributionSummary batchSizes;
+    private final Counter fallbacks;
+    private final Counter rejected;
+
+    private volatile boolean running = false;
+    private Thread writer;
+    private ExecutorService completer;
+
+    public MessageIngestPipeline(MessageService messageService,
+                                 MeterRegistry registry,
+                                 @Value("${message.ingest.batching.enabled:false}") boolean enabled,
+                                 @Value("${message.ingest.queue-capacity:4096}") int queueCapacity,
+                                 @Value("${message.ingest.max-batch-size:256}") int maxBatchSize,
+                                 @Value("${message.ingest.offer-timeout:PT1S}") Duration offerTimeout) {
+        this.messageService = messageService;
+        this.enabled = enabled;
+        this.maxBatchSize = maxBatchSize;
+        this.offerTimeout = offerTimeout;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSizes = DistributionSummary.builder("yaplab.message.ingest.batch.size")
+                .description("Number of messages sent in one group commit")
+                .register(registry);
+        this.fallbacks = Counter.builder("yaplab.message.ingest.fallbacks")
+                .description("Group commits that failed and were retried one message at a time")
+                .register(registry);
+        this.rejected = Counter.builder("yaplab.message.ingest.rejected")
+                .description("Sends rejected because the ingest queue stayed full")
+                .register(registry);
+        Gauge.builder("yaplab.message.ingest.queue", queue, BlockingQueue::size)
+                .description("Sends waiting for the next group commit")
+                .register(registry);
+    }
+
+    /**
+     * Returns true if sends go through the pipeline instead of a transaction of their own.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts the writer thread when the pipeline is enabled.
+     */
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        completer = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("message-ingest-completer").factory());
+        writer = Thread.ofPlatform().name("message-ingest-writer").start(() -> Workload.REALTIME.run(this::run));
+        logger.info("Message ingest pipeline started with batches of up to {} messages", maxBatchSize);
+    }
+
+    /**
+     * Stops accepting sends and waits for the writer to send what is already queued and for its futures to complete.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join(offerTimeout.toMillis() + 10_000);
+        completer.shutdown();
+        completer.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queues a message for the next group commit.
+     * Waits up to the offer timeout while the queue is full, which slows the inbound channel down instead of buffering without bound.
+     * @param kind whether the message is a personal, group or reply message
+     * @param messageDTO the message DTO coming from the client
+     * @return the sent message, completed once its batch is committed, or failed with the error of the send
+     */
+    public CompletableFuture<MessageResponseDTO> submit(Kind kind, MessageDTO messageDTO) {
+        if (!running) {
+            throw new IllegalStateException("Message ingest pipeline is not running");
+        }
+        PendingSend pending = new PendingSend(new MessageSendRequest(kind, messageDTO), new CompletableFuture<>());
+        boolean accepted;
+        try {
+            accepted = queue.offer(pending, offerTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing a message", e);
+        }
+        if (!accepted) {
+            rejected.increment();
+            throw new IllegalStateException("Message ingest queue is full");
+        }
+        return pending.result();
+    }
+
+    /**
+     * Loop of the writer thread. Keeps going after a stop until the queue is empty.
+     */
+    private void run() {
+        List<PendingSend> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingSend first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Message ingest writer interrupted with {} sends queued", queue.size());
+                return;
+            } catch (RuntimeException e) {
+                logger.error("Message ingest writer failed on a batch of {} messages", batch.size(), e);
+                List<PendingSend> failed = List.copyOf(batch);
+                completer.execute(() -> failed.forEach(pending -> pending.result().completeExceptionally(e)));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Sends a batch in one transaction.
+     * One invalid message rolls the whole transaction back, so a failed batch is retried one message at a time
+     * and only the sends that fail on their own are failed.
+     */
+    private void write(List<PendingSend> batch) {
+        List<MessageResponseDTO> sent;
+        try {
+            sent = messageService.sendMessages(batch.stream().map(PendingSend::request).toList());
+        } catch (RuntimeException e) {
+            fallbacks.increment();
+            logger.warn("Group commit of {} messages failed, sending them one by one: {}", batch.size(), e.getMessage());
+            for (PendingSend pending : batch) {
+                try {
+                    MessageResponseDTO single = messageService.sendMessages(List.of(pending.request())).getFirst();
+                    completer.execute(() -> pending.result().complete(single));
+                } catch (RuntimeException error) {
+                    completer.execute(() -> pending.result().completeExceptionally(error));
+                }
+            }
+            return;
+        }
+        batchSizes.record(batch.size());
+        List<PendingSend> done = List.copyOf(batch);
+        completer.execute(() -> {
+            for (int i = 0; i < done.size(); i++) {
+                done.get(i).result().complete(sent.get(i));
+            }
+        });
+    }
+
+    /**
+     * A queued send with the future its sender waits on.
+     */
+    private record PendingSend(MessageSendRequest request, CompletableFuture<MessageResponseDTO> result) {
+    }
+}
@@ -70,18 +70,22 @@ public class MessageMapper {
 
     /**
      * Maps parameters to a message entity for a forwarded message.
+     * The forward copies the original instead of referring to it, so it can be stored on another message shard.
      *
      * @param chatroom        The chatroom the message is being forwarded to.
      * @param sender          The sender of the forwarded message.
-     * @param content         The content of the forwarded message.
+     * @param content         The content of the original message.
      * @param file            Optional file attached to the original message.
-     * @param originalMessage The original message being forwarded.
+     * @param originalId      The ID of the original message.
+     * @param originalSenderName The name of the sender of the original message.
      * @return The message entity for the forwarded message.
      */
-    public Message createForwardedMessage(ChatRoom chatroom, User sender, String content, File file, Message originalMessage) {
+    public Message createForwardedMessage(ChatRoom chatroom, User sender, String content, File file, Long originalId, String originalSenderName) {
         MessageType messageType = (file != null) ? determineMessageTypeFromFileType(file.getFileType()) : MessageType.TEXT;
-        Message forwardedMessage = new Message(chatroom, sender, (User) null, content, messageType, MessageStatus.SENT, originalMessage, file);
+        Message forwardedMessage = new Message(chatroom, sender, (User) null, content, messageType, MessageStatus.SENT, null, file);
         forwardedMessage.setForwarded(true);
+        forwardedMessage.setForwardedFromId(originalId);
+        forwardedMessage.setForwardedFromSenderName(originalSenderName);
         return forwardedMessage;
     }
 
@@ -117,10 +121,17 @@ public class MessageMapper {
         if (message.getReplyTo() != null) {
             Message repliedToMessage = message.getReplyTo();
             Long repliedToId = repliedToMessage.getId();
-            String repliedToSenderName = (repliedToMessage.getSender() != null) ? repliedToMessage.getSender().getUserName() : null;
-            String repliedToContent = repliedToMessage.getContent();
+            if (Boolean.TRUE.equals(repliedToMessage.getSoftDeleted())) {
+                // Deleted messages are only shown as a placeholder, their content may already be scrubbed by compaction
+                repliedToMessageDTO = new MessageResponseDTO.RepliedToMessageDTO(repliedToId, null, null);
+            } else {
+                String repliedToSenderName = (repliedToMessage.getSender() != null) ? repliedToMessage.getSender().getUserName() : null;
+                String repliedToContent = repliedToMessage.getContent();
 
-            repliedToMessageDTO = new MessageResponseDTO.RepliedToMessageDTO(repliedToId, repliedToSenderName, repliedToContent);
+                repliedToMessageDTO = new MessageResponseDTO.RepliedToMessageDTO(repliedToId, repliedToSenderName, repliedToContent);
+            }
+        } else {
+            repliedToMessageDTO = forwardedFrom(message.getForwardedFromId(), message.getForwardedFromSenderName(), message.getContent());
         }
 
         return new MessageResponseDTO(
@@ -137,9 +148,56 @@ public class MessageMapper {
                 fileType,
                 repliedToMessageDTO,
                 message.getChatroom().getChatroomId(),
-                false,
-                false,
-                message.getEditTimestamp()
+                message.isEdited(),
+                message.isForwarded(),
+                message.getEditTimestamp(),
+                message.getRevision(),
+                message.getSeq()
         );
     }
+
+    /**
+     * Converts a flat history row to a MessageResponseDTO.
+     * Gives the same result as toResponseDTO without touching any entity association.
+     * @param row The history row read by a projection query.
+     * @return A MessageResponseDTO containing the message details.
+     */
+    public MessageResponseDTO fromHistoryRow(MessageHistoryRow row) {
+        MessageResponseDTO.RepliedToMessageDTO repliedToMessageDTO = null;
+        if (row.replyToId() != null) {
+            repliedToMessageDTO = Boolean.TRUE.equals(row.replyToSoftDeleted())
+                    ? new MessageResponseDTO.RepliedToMessageDTO(row.replyToId(), null, null)
+                    : new MessageResponseDTO.RepliedToMessageDTO(row.replyToId(), row.replyToSenderName(), row.replyToContent());
+        } else {
+            repliedToMessageDTO = forwardedFrom(row.forwardedFromId(), row.forwardedFromSenderName(), row.content());
+        }
+        return new MessageResponseDTO(
+                row.id(),
+                row.senderName(),
+                row.content(),
+                row.timestamp(),
+                row.messageStatus(),
+                row.fileUrl(),
+                row.fileName(),
+                row.fileSize(),
+                row.uploadedByUserId(),
+                row.uploadedByUserName(),
+                row.fileType(),
+                repliedToMessageDTO,
+                row.chatRoomId(),
+                row.edited(),
+                row.forwarded(),
+                row.editTimestamp(),
+                row.revision(),
+                row.seq()
+        );
+    }
+
+    /**
+     * Shows the original of a forward like a replied-to message, from the copy the forward keeps.
+     * @return the original as replied-to message, or null if the message is not a forward
+     */
+    private static MessageResponseDTO.RepliedToMessageDTO forwardedFrom(Long forwardedFromId, String senderName, String content) {
+        return forwardedFromId != null ? new MessageResponseDTO.RepliedToMessageDTO(forwardedFromId, senderName, content) : null;
+    }
 }
@@ -1,8 +1,15 @@
 package com.yaplab.message;
 
+import com.yaplab.search.MessageIndexRow;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -12,6 +19,24 @@ import java.util.List;
 @Repository
 public interface MessageRepository extends JpaRepository<Message, Long> {
 
+    /**
+     * Select and joins shared by the queries reading messages as MessageHistoryRows,
+     * each query appends its own where and order by clauses.
+     */
+    String HISTORY_ROW_SELECT = """
+            select new com.yaplab.message.MessageHistoryRow(
+                m.id, s.userName, m.content, m.timestamp, m.messageStatus,
+                f.fileUrl, f.fileName, f.fileSize, u.id, u.userName, f.fileType,
+                r.id, rs.userName, r.content, r.softDeleted, m.forwardedFromId, m.forwardedFromSenderName,
+                m.chatroom.chatroomId, m.edited, m.forwarded, m.editTimestamp, m.revision, m.seq)
+            from Message m
+            join m.sender s
+            left join m.file f
+            left join f.uploadedBy u
+            left join m.replyTo r
+            left join r.sender rs
+            """;
+
     /**
      * Finds all messages for a given chatroom that are not soft-deleted.
      * @param chatroomId The ID of the chatroom.
@@ -19,4 +44,202 @@ public interface MessageRepository extends JpaRepository<Message, Long> {
      */
     List<Message> findByChatroom_ChatroomIdAndSoftDeletedFalse(String chatroomId);
 
-}
\ No newline at end of file
+    /**
+     * Reads the next batch of messages for the search index in ID order, without loading associations.
+     * @param afterId ID of the last message of the previous batch, 0 for the first batch
+     * @param limit maximum number of messages in the batch
+     * @return the non-soft-deleted messages after the given ID
+     */
+    @Query("""
+            select new com.yaplab.search.MessageIndexRow(m.id, m.chatroom.chatroomId, s.userName, m.content, m.timestamp)
+            from Message m join m.sender s
+            where m.id > :afterId and m.softDeleted = false
+            order by m.id
+            """)
+    List<MessageIndexRow> findIndexRowsAfter(@Param("afterId") Long afterId, Limit limit);
+
+    /**
+     * Reads the newest messages of a chatroom that are not soft-deleted as flat rows in one query.
+     * @param chatroomId The ID of the chatroom.
+     * @param limit Maximum number of messages.
+     * @return The messages, newest first.
+     */
+    @Query(HISTORY_ROW_SELECT + """
+            where m.chatroom.chatroomId = :chatroomId and m.softDeleted = false
+            order by m.timestamp desc, m.id desc
+            """)
+    List<MessageHistoryRow> findHistoryRows(@Param("chatroomId") String chatroomId, Limit limit);
+
+    /**
+     * Reads the newest messages of a chatroom older than the given position that are not soft-deleted as flat rows in one query.
+     * The position is a send time and a message ID, so messages sent in the same millisecond as the position are not skipped.
+     * @param chatroomId The ID of the chatroom.
+     * @param before Send time of the position.
+     * @param beforeId ID of the message at the position, messages sent at that time with a lower ID are returned.
+     * @param limit Maximum number of messages.
+     * @return The messages, newest first.
+     */
+    @Query(HISTORY_ROW_SELECT + """
+            where m.chatroom.chatroomId = :chatroomId and m.softDeleted = false
+              and (m.timestamp < :before or (m.timestamp = :before and m.id < :beforeId))
+            order by m.timestamp desc, m.id desc
+            """)
+    List<MessageHistoryRow> findHistoryRowsBefore(@Param("chatroomId") String chatroomId, @Param("before") Instant before, @Param("beforeId") Long beforeId, Limit limit);
+
+    /**
+     * Reads the messages of a chatroom with a sequence number in the given range that are not soft-deleted as flat rows in one query.
+     * @param chatroomId The ID of the chatroom.
+     * @param fromSeq First sequence number, inclusive.
+     * @param toSeq Last sequence number, inclusive.
+     * @return The messages in sequence order.
+     */
+    @Query(HISTORY_ROW_SELECT + """
+            where m.chatroom.chatroomId = :chatroomId and m.seq between :fromSeq and :toSeq and m.softDeleted = false
+            order by m.seq
+            """)
+    List<MessageHistoryRow> findHistoryRowsBySeqRange(@Param("chatroomId") String chatroomId, @Param("fromSeq") long fromSeq, @Param("toSeq") long toSeq);
+
+    /**
+     * Finds which of the given messages exist, soft-deleted or not.
+     * @param ids IDs of the messages.
+     * @return The IDs of the messages that exist.
+     */
+    @Query("select m.id from Message m where m.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Finds which of the given chatrooms have messages changed after the given time.
+     * @param chatroomIds The IDs of the chatrooms.
+     * @param since Only changes strictly after this time count.
+     * @return The IDs of the chatrooms with changes.
+     */
+    @Query("select distinct m.chatroom.chatroomId from Message m where m.chatroom.chatroomId in :chatroomIds and m.updatedAt > :since")
+    List<String> findChatroomIdsChangedSince(@Param("chatroomIds") Collection<String> chatroomIds, @Param("since") Instant since);
+
+    /**
+     * Reads the changes of a chatroom after the given position, ordered by change time and ID so the last row is the next position.
+     * Soft-deleted messages are included so the deletion itself is a change.
+     * @param chatroomId The ID of the chatroom.
+     * @param updatedAt Change time of the last seen change.
+     * @param afterId ID of the message of the last seen change.
+     * @param limit Maximum number of changes.
+     * @return The changes, oldest first.
+     */
+    @Query("""
+            select new com.yaplab.message.MessageChangeRow(m.id, m.updatedAt, m.softDeleted)
+            from Message m
+            where m.chatroom.chatroomId = :chatroomId
+              and (m.updatedAt > :updatedAt or (m.updatedAt = :updatedAt and m.id > :afterId))
+            order by m.updatedAt, m.id
+            """)
+    List<MessageChangeRow> findChangesAfter(@Param("chatroomId") String chatroomId, @Param("updatedAt") Instant updatedAt, @Param("afterId") Long afterId, Limit limit);
+
+    /**
+     * Finds the highest message ID, including soft-deleted messages.
+     * @return The highest ID, or null if there are no messages.
+     */
+    @Query("select max(m.id) from Message m")
+    Long findMaxId();
+
+    /**
+     * Finds the highest sequence number of the messages of a chatroom, including soft-deleted ones.
+     * @param chatroomId The ID of the chatroom.
+     * @return The highest sequence number, or null if no message of the chatroom has one.
+     */
+    @Query("select max(m.seq) from Message m where m.chatroom.chatroomId = :chatroomId")
+    Long findMaxSeq(@Param("chatroomId") String chatroomId);
+
+    /**
+     * Reads the given messages that are not soft-deleted as flat rows in one query.
+     * @param ids IDs of the messages.
+     * @return The messages in no particular order.
+     */
+    @Query(HISTORY_ROW_SELECT + """
+            where m.id in :ids and m.softDeleted = false
+            """)
+    List<MessageHistoryRow> findHistoryRowsByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Finds the chatrooms having messages sent before the given time that are not soft-deleted.
+     * @param cutoff The archival cutoff time.
+     * @return IDs of the chatrooms.
+     */
+    @Query("""
+            select distinct m.chatroom.chatroomId from Message m
+            where m.timestamp < :cutoff and m.softDeleted = false
+            """)
+    List<String> findChatroomIdsWithMessagesBefore(@Param("cutoff") Instant cutoff);
+
+    /**
+     * Finds the oldest messages of a chatroom that can be moved to the archive.
+     * Soft-deleted and edited messages stay in the table, as do messages that another message replies to,
+     * because those rows are still referenced. Forwards keep a copy of their original and do not refer to it.
+     * @param chatroomId The ID of the chatroom.
+     * @param cutoff Only messages sent before this time are returned.
+     * @param limit Maximum number of messages.
+     * @return The archivable messages as flat rows, oldest first.
+     */
+    @Query(HISTORY_ROW_SELECT + """
+            where m.chatroom.chatroomId = :chatroomId
+              and m.timestamp < :cutoff
+              and m.softDeleted = false
+              and m.revision = 0
+              and not exists (select reply.id from Message reply where reply.replyTo = m)
+            order by m.timestamp, m.id
+            """)
+    List<MessageHistoryRow> findArchivableRows(@Param("chatroomId") String chatroomId, @Param("cutoff") Instant cutoff, Limit limit);
+
+    /**
+     * Finds soft-deleted messages past the retention window that still hold data.
+     * Messages deleted before the deletion time was recorded use their send time instead.
+     * Already scrubbed messages are only returned again once nothing refers to them any more.
+     * @param cutoff Messages deleted before this time are returned.
+     * @param limit Maximum number of messages.
+     * @return IDs of the messages in ID order.
+     */
+    @Query("""
+            select m.id from Message m
+            where m.softDeleted = true
+              and coalesce(m.deletedAt, m.timestamp) < :cutoff
+              and (m.content is not null
+                   or m.file is not null
+                   or m.revision > 0
+                   or not exists (select r.id from Message r where r.replyTo = m))
+            order by m.id
+            """)
+    List<Long> findCompactableMessageIds(@Param("cutoff") Instant cutoff, Limit limit);
+
+    /**
+     * Finds which of the given messages are replied to by another message.
+     * @param ids IDs of the messages.
+     * @return IDs of the referenced messages.
+     */
+    @Query("select distinct r.replyTo.id from Message r where r.replyTo.id in :ids")
+    List<Long> findReferencedIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Sums the content length of the given messages.
+     * @param ids IDs of the messages.
+     * @return total number of content characters.
+     */
+    @Query("select coalesce(sum(length(m.content)), 0) from Message m where m.id in :ids")
+    long sumContentLength(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Deletes the given messages without loading them.
+     * @param ids IDs of the messages.
+     * @return number of deleted rows.
+     */
+    @Modifying
+    @Query("delete from Message m where m.id in :ids")
+    int deleteAllByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Removes the content, attachment and revision of the given messages while keeping the rows.
+     * @param ids IDs of the messages.
+     * @return number of scrubbed rows.
+     */
+    @Modifying
+    @Query("update Message m set m.content = null, m.file = null, m.revision = 0 where m.id in :ids")
+    int scrubAllByIdIn(@Param("ids") Collection<Long> ids);
+}
@@ -22,6 +22,11 @@ import java.time.Instant;
  * @param edited boolean indicating if the message was edited
  * @param forwarded boolean indicating if the message was forwarded
  * @param editTimestamp timestamp of the last edit
+ * @param revision revision of the content, incremented by every edit
+ * @param seq position of the message in its chatroom, one higher than the previous message of the room.
+ *            A client that receives seq n + 2 after n missed n + 1 and can fetch it from /chatrooms/{id}/messages/range.
+ *            Messages can arrive slightly out of order and a number can be skipped for good when a send fails,
+ *            so a gap that the range endpoint does not fill is final. Null for messages older than sequence numbers.
  */
 public record MessageResponseDTO (
         Long id,
@@ -39,9 +44,29 @@ public record MessageResponseDTO (
         String chatRoomId,
         boolean edited,
         boolean forwarded,
-        Instant editTimestamp
+        Instant editTimestamp,
+        int revision,
+        Long seq
 ){
 
+    /**
+     * Returns a copy of this message with another status.
+     */
+    public MessageResponseDTO withMessageStatus(MessageStatus messageStatus) {
+        return new MessageResponseDTO(id, senderName, content, timestamp, messageStatus, fileUrl, fileName, fileSize,
+                uploadedByUserId, uploadedByUserName, fileType, repliedToMessage, chatRoomId, edited, forwarded,
+                editTimestamp, revision, seq);
+    }
+
+    /**
+     * Returns a copy of this message with another preview of the message it replies to.
+     */
+    public MessageResponseDTO withRepliedToMessage(RepliedToMessageDTO repliedToMessage) {
+        return new MessageResponseDTO(id, senderName, content, timestamp, messageStatus, fileUrl, fileName, fileSize,
+                uploadedByUserId, uploadedByUserName, fileType, repliedToMessage, chatRoomId, edited, forwarded,
+                editTimestamp, revision, seq);
+    }
+
     /**
      * Replied to message DTO to receive details about reply
      */
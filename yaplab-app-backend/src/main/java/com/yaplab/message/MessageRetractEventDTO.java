@@ -0,0 +1,28 @@
+package com.yaplab.message;
+
+/**
+ * Event published to the chatroom topic when a message that was already acknowledged and published
+ * could not be stored, such as a journaled message whose chatroom was deleted before it was drained.
+ * Clients remove the message, it will never be in the history.
+ * @param eventType type of the event, always RETRACT
+ * @param messageId id of the retracted message
+ * @param chatRoomId id of the chatroom of the message
+ */
+public record MessageRetractEventDTO(
+        String eventType,
+        Long messageId,
+        String chatRoomId
+) {
+
+    public static final String RETRACT = "RETRACT";
+
+    /**
+     * Builds the retraction of a message.
+     * @param messageId id of the message
+     * @param chatRoomId id of the chatroom of the message
+     * @return the event to publish to the chatroom
+     */
+    public static MessageRetractEventDTO of(Long messageId, String chatRoomId) {
+        return new MessageRetractEventDTO(RETRACT, messageId, chatRoomId);
+    }
+}
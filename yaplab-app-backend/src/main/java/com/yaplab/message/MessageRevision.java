@@ -0,0 +1,123 @@
+package com.yaplab.message;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * MessageRevision entity to store the edit history of a message.
+ * Only the current content is kept on the message itself. Each edit stores a reverse delta
+ * that turns the content after the edit back into the content before it,
+ * so older revisions are rebuilt by walking back from the current content.
+ */
+@Entity
+@Table(
+        name = "message_revision",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"message_id", "revision"})
+)
+public class MessageRevision {
+
+    /**
+     * Unique identifier for each revision which is assigned automatically.
+     */
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    /**
+     * The message that was edited.
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "message_id", nullable = false)
+    private Message message;
+
+    /**
+     * Revision created by the edit. The original content is revision 0, the first edit creates revision 1.
+     */
+    @Column(nullable = false)
+    private int revision;
+
+    /**
+     * Number of characters at the start of the content that the edit did not change.
+     */
+    @Column(nullable = false)
+    private int prefixLength;
+
+    /**
+     * Number of characters at the end of the content that the edit did not change.
+     */
+    @Column(nullable = false)
+    private int suffixLength;
+
+    /**
+     * The text the edit replaced, as it was before the edit.
+     */
+    @Column(nullable = false)
+    private String replacedText;
+
+    /**
+     * Timestamp of the edit.
+     */
+    @Column(nullable = false, updatable = false)
+    private Instant editedAt;
+
+    /**
+     * Default Constructor.
+     */
+    public MessageRevision() {
+    }
+
+    /**
+     * Creates the revision with the reverse delta of an edit.
+     * @param message the edited message
+     * @param revision the revision created by the edit
+     * @param reverseDelta the delta from the content after the edit to the content before it
+     * @param editedAt timestamp of the edit
+     */
+    public MessageRevision(Message message, int revision, MessageDelta reverseDelta, Instant editedAt) {
+        this.message = message;
+        this.revision = revision;
+        this.prefixLength = reverseDelta.prefixLength();
+        this.suffixLength = reverseDelta.suffixLength();
+        this.replacedText = reverseDelta.text();
+        this.editedAt = editedAt;
+    }
+
+    /**
+     * Returns the delta that turns the content of this revision back into the content of the previous one.
+     */
+    public MessageDelta reverseDelta() {
+        return new MessageDelta(prefixLength, suffixLength, replacedText);
+    }
+
+    /**
+     *  Getters and setters
+     */
+    public Long getId() {
+        return id;
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    public int getRevision() {
+        return revision;
+    }
+
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    public int getSuffixLength() {
+        return suffixLength;
+    }
+
+    public String getReplacedText() {
+        return replacedText;
+    }
+
+    public Instant getEditedAt() {
+        return editedAt;
+    }
+}
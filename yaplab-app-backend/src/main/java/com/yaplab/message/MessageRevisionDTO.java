@@ -0,0 +1,20 @@
+package com.yaplab.message;
+
+import java.time.Instant;
+
+/**
+ * A Response DTO with the content of one revision of a message.
+ * @param messageId id of the message
+ * @param revision revision number, 0 is the original content
+ * @param content content of the message in this revision
+ * @param createdAt timestamp when this revision was written, the send time for revision 0
+ * @param current boolean indicating if this is the current content of the message
+ */
+public record MessageRevisionDTO(
+        Long messageId,
+        int revision,
+        String content,
+        Instant createdAt,
+        boolean current
+) {
+}
@@ -0,0 +1,43 @@
+package com.yaplab.message;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository interface for managing the edit history of messages.
+ */
+@Repository
+public interface MessageRevisionRepository extends JpaRepository<MessageRevision, Long> {
+
+    /**
+     * Finds the revisions of a message newer than the given revision, newest first.
+     * This is the order in which the reverse deltas are applied to rebuild an older revision.
+     * @param messageId ID of the message
+     * @param revision revisions after this one are returned
+     * @return the newer revisions of the message
+     */
+    List<MessageRevision> findByMessageIdAndRevisionGreaterThanOrderByRevisionDesc(Long messageId, int revision);
+
+    /**
+     * Sums the length of the stored deltas of the given messages.
+     * @param messageIds IDs of the messages
+     * @return total number of stored delta characters
+     */
+    @Query("select coalesce(sum(length(r.replacedText)), 0) from MessageRevision r where r.message.id in :messageIds")
+    long sumReplacedTextLength(@Param("messageIds") Collection<Long> messageIds);
+
+    /**
+     * Deletes the edit history of the given messages.
+     * @param messageIds IDs of the messages
+     * @return number of deleted revisions
+     */
+    @Modifying
+    @Query("delete from MessageRevision r where r.message.id in :messageIds")
+    int deleteAllByMessageIdIn(@Param("messageIds") Collection<Long> messageIds);
+}
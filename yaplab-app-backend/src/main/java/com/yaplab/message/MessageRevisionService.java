@@ -0,0 +1,152 @@
+package com.yaplab.message;
+
+import com.yaplab.chatroom.ChatRoomService;
+import com.yaplab.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Service layer for the edit history of messages.
+ * Records a reverse delta for every edit and rebuilds older revisions on demand.
+ */
+@Service
+public class MessageRevisionService {
+
+    /**
+     * Logger for MessageRevisionService
+     * This logger is used to log various events and errors in the MessageRevisionService class.
+     * It helps in debugging and tracking the flow of operations related to message edit history.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MessageRevisionService.class);
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final MessageRevisionRepository messageRevisionRepository;
+    private final MessageRepository messageRepository;
+    private final ShardRouter shardRouter;
+    private final ChatRoomService chatRoomService;
+
+    public MessageRevisionService(MessageRevisionRepository messageRevisionRepository, MessageRepository messageRepository, ShardRouter shardRouter, ChatRoomService chatRoomService) {
+        this.messageRevisionRepository = messageRevisionRepository;
+        this.messageRepository = messageRepository;
+        this.shardRouter = shardRouter;
+        this.chatRoomService = chatRoomService;
+    }
+
+    /**
+     * Records an edit of a message and applies the new content to it.
+     * Stores the reverse delta of the edit as a new revision and returns the forward delta as an event for clients.
+     * Must be called inside the transaction that saves the message.
+     * @param message the message being edited
+     * @param newContent the new content
+     * @return the edit event with the change from the previous revision
+     */
+    @Transactional
+    public MessageEditEventDTO recordEdit(Message message, String newContent) {
+        String oldContent = message.getContent();
+        if (Objects.equals(oldContent, newContent)) {
+            throw new IllegalArgumentException("New content is the same as the current content of message " + message.getId());
+        }
+        int baseRevision = message.getRevision();
+        int revision = baseRevision + 1;
+        Instant editedAt = Instant.now();
+
+        messageRevisionRepository.save(new MessageRevision(message, revision, MessageDelta.between(newContent, oldContent), editedAt));
+        MessageDelta forward = MessageDelta.between(oldContent, newContent);
+        message.setContent(newContent);
+        message.setRevision(revision);
+        message.setEdited(true);
+        message.setEditTimestamp(editedAt);
+        logger.debug("Recorded revision {} of message {}", revision, message.getId());
+
+        return new MessageEditEventDTO(
+                MessageEditEventDTO.EDIT,
+                message.getId(),
+                message.getChatroom().getChatroomId(),
+                baseRevision,
+                revision,
+                forward.prefixLength(),
+                forward.suffixLength(),
+                forward.text(),
+                editedAt
+        );
+    }
+
+    /**
+     * Gets every revision of a message, oldest first.
+     * All revisions are rebuilt in one walk back from the current content.
+     * @param messageId ID of the message
+     * @param chatroomId ID of the chatroom of the message, required when messages are sharded
+     * @param userId ID of the user reading the history, who must take part in the chatroom of the message
+     * @return the revisions of the message
+     */
+    @Transactional(readOnly = true)
+    public List<MessageRevisionDTO> getRevisions(Long messageId, String chatroomId, Long userId) {
+        return shardRouter.onMessage(messageId, chatroomId, () -> {
+            Message message = getMessage(messageId, chatroomId, userId);
+            List<MessageRevision> newerFirst = messageRevisionRepository
+                    .findByMessageIdAndRevisionGreaterThanOrderByRevisionDesc(messageId, 0);
+            List<MessageRevisionDTO> revisions = new ArrayList<>(newerFirst.size() + 1);
+            String content = message.getContent();
+            for (MessageRevision revision : newerFirst) {
+                revisions.add(new MessageRevisionDTO(messageId, revision.getRevision(), content, revision.getEditedAt(),
+                        revision.getRevision() == message.getRevision()));
+                content = revision.reverseDelta().apply(content);
+            }
+            revisions.add(new MessageRevisionDTO(messageId, 0, content, message.getTimestamp(), message.getRevision() == 0));
+            Collections.reverse(revisions);
+            return revisions;
+        });
+    }
+
+    /**
+     * Rebuilds one revision of a message.
+     * Only the deltas of revisions newer than the requested one are read.
+     * @param messageId ID of the message
+     * @param chatroomId ID of the chatroom of the message, required when messages are sharded
+     * @param userId ID of the user reading the revision, who must take part in the chatroom of the message
+     * @param revision the revision number, 0 is the original content
+     * @return the content of the message in that revision
+     */
+    @Transactional(readOnly = true)
+    public MessageRevisionDTO getRevision(Long messageId, String chatroomId, Long userId, int revision) {
+        return shardRouter.onMessage(messageId, chatroomId, () -> {
+            Message message = getMessage(messageId, chatroomId, userId);
+            if (revision < 0 || revision > message.getRevision()) {
+                throw new IllegalArgumentException("Message " + messageId + " has no revision " + revision);
+            }
+            String content = message.getContent();
+            Instant createdAt = message.getTimestamp();
+            for (MessageRevision stored : messageRevisionRepository
+                    .findByMessageIdAndRevisionGreaterThanOrderByRevisionDesc(messageId, Math.max(revision - 1, 0))) {
+                if (stored.getRevision() > revision) {
+                    content = stored.reverseDelta().apply(content);
+                } else {
+                    createdAt = stored.getEditedAt();
+                }
+            }
+            return new MessageRevisionDTO(messageId, revision, content, createdAt, revision == message.getRevision());
+        });
+    }
+
+    /**
+     * Reads a message whose history a user may see.
+     * @throws org.springframework.security.access.AccessDeniedException if the user does not take part in the chatroom of the message
+     */
+    private Message getMessage(Long messageId, String chatroomId, Long userId) {
+        Message message = messageRepository.findById(messageId)
+                .filter(found -> chatroomId == null || found.getChatroom().getChatroomId().equals(chatroomId))
+                .orElseThrow(() -> new IllegalArgumentException("Message not found with ID: " + messageId));
+        chatRoomService.checkParticipant(userId, List.of(message.getChatroom().getChatroomId()));
+        return message;
+    }
+}
@@ -0,0 +1,17 @@
+package com.yaplab.message;
+
+import com.yaplab.metrics.MessageSendMetrics.Kind;
+
+/**
+ * Error sent to the user queue of the sender when a message sent over the WebSocket could not be sent.
+ * The message was never published to its chatroom, clients mark it as failed and may send it again.
+ * @param kind kind of the message, such as PERSONAL, GROUP or REPLY
+ * @param error description of the failure
+ * @param message the message as the client sent it
+ */
+public record MessageSendErrorDTO(
+        Kind kind,
+        String error,
+        MessageDTO message
+) {
+}
@@ -0,0 +1,14 @@
+package com.yaplab.message;
+
+import com.yaplab.metrics.MessageSendMetrics.Kind;
+
+/**
+ * A message waiting to be sent in a batch.
+ * @param kind whether the message is a personal, group or reply message
+ * @param messageDTO the message DTO coming from the client
+ */
+public record MessageSendRequest(
+        Kind kind,
+        MessageDTO messageDTO
+) {
+}
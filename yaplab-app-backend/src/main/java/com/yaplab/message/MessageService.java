@@ -1,21 +1,45 @@
 package com.yaplab.message;
 
+import com.yaplab.cache.RecentMessageCache;
 import com.yaplab.chatroom.*;
+import com.yaplab.datasource.ReadYourWritesTracker;
 import com.yaplab.enums.ChatRoomType;
 import com.yaplab.enums.MessageStatus;
 import com.yaplab.files.File;
-import com.yaplab.files.FilesRepository;
+import com.yaplab.files.FileService;
 import com.yaplab.group.Group;
 import com.yaplab.group.GroupService;
+import com.yaplab.journal.JournalEntry;
+import com.yaplab.journal.JournaledMessage;
+import com.yaplab.metrics.MessageSendMetrics;
+import com.yaplab.metrics.MessageSendMetrics.Kind;
+import com.yaplab.metrics.MessageSendMetrics.Stage;
+import com.yaplab.search.MessageSearchIndex;
+import com.yaplab.shard.ShardRouter;
 import com.yaplab.user.User;
 import com.yaplab.user.UserService;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Service layer for handling message-related operations such as sending personal/group message.
@@ -31,6 +55,11 @@ public class MessageService {
      */
     private static final Logger logger = LoggerFactory.getLogger(MessageService.class);
 
+    /**
+     * Maximum number of chat rooms a message is forwarded to at once.
+     */
+    private static final int MAX_FORWARD_RECIPIENTS = 50;
+
     /**
      * Constructor based dependency injection
      */
@@ -40,31 +69,250 @@ public class MessageService {
     private final UserService userService;
     private final GroupService groupService;
     private final ChatRoomRepository chatRoomRepository;
-    private final FilesRepository filesRepository;
-
-    public MessageService(MessageRepository messageRepository, MessageMapper messageMapper, ChatRoomService chatRoomService, UserService userService, GroupService groupService, ChatRoomRepository chatRoomRepository, FilesRepository filesRepository) {
+    private final FileService fileService;
+    private final MessageSearchIndex messageSearchIndex;
+    private final MessageRevisionService messageRevisionService;
+    private final MessageSendMetrics sendMetrics;
+    private final EntityManager entityManager;
+    private final RecentMessageCache recentMessageCache;
+    private final ShardRouter shardRouter;
+    private final ReadYourWritesTracker readYourWritesTracker;
+    private final boolean archiveEnabled;
+    private final Duration archiveMaxAge;
+
+    public MessageService(MessageRepository messageRepository, MessageMapper messageMapper, ChatRoomService chatRoomService, UserService userService, GroupService groupService, ChatRoomRepository chatRoomRepository, FileService fileService, MessageSearchIndex messageSearchIndex, MessageRevisionService messageRevisionService, MessageSendMetrics sendMetrics, EntityManager entityManager, RecentMessageCache recentMessageCache, ShardRouter shardRouter, ReadYourWritesTracker readYourWritesTracker,
+                          @Value("${message.archive.enabled:false}") boolean archiveEnabled,
+                          @Value("${message.archive.max-age:P90D}") Duration archiveMaxAge) {
         this.messageRepository = messageRepository;
         this.messageMapper = messageMapper;
         this.chatRoomService = chatRoomService;
         this.userService = userService;
         this.groupService = groupService;
         this.chatRoomRepository = chatRoomRepository;
-        this.filesRepository = filesRepository;
+        this.fileService = fileService;
+        this.messageSearchIndex = messageSearchIndex;
+        this.messageRevisionService = messageRevisionService;
+        this.sendMetrics = sendMetrics;
+        this.entityManager = entityManager;
+        this.recentMessageCache = recentMessageCache;
+        this.shardRouter = shardRouter;
+        this.readYourWritesTracker = readYourWritesTracker;
+        this.archiveEnabled = archiveEnabled;
+        this.archiveMaxAge = archiveMaxAge;
     }
 
     /**
      * Sends a personal message from one user to another and saves it in the database.
-     * Creates a chatroom DTO with the list of participants to get or create a chatroomResponse DTO
-     * Sends a file if a file is sent.
-     * Creates a message and saves it
+     * The lookups and the insert are timed as the resolve and persist stages of the send.
      */
     @Transactional
     public MessageResponseDTO sendPersonalMessage(MessageDTO messageDTO) {
+        Message message = preparePersonalMessage(messageDTO);
+        Timer.Sample persist = Timer.start();
+        persist(message);
+        persist.stop(sendMetrics.stage(Kind.PERSONAL, Stage.PERSIST));
+        logger.debug("Personal message sent from user {} to user {} in chatroom {}", messageDTO.senderId(), messageDTO.receiverId(), message.getChatroom().getChatroomId());
+        return sentResponse(message);
+    }
+
+    /**
+     * Sends a group message from one user to a group with multiple users and saves it in the database.
+     * The lookups and the insert are timed as the resolve and persist stages of the send.
+     */
+    @Transactional
+    public MessageResponseDTO sendGroupMessage(MessageDTO messageDTO) {
+        Message message = prepareGroupMessage(messageDTO);
+        Timer.Sample persist = Timer.start();
+        persist(message);
+        persist.stop(sendMetrics.stage(Kind.GROUP, Stage.PERSIST));
+        logger.debug("Group message sent from user {} to group {} in chatroom {}", messageDTO.senderId(), messageDTO.groupId(), message.getChatroom().getChatroomId());
+        return sentResponse(message);
+    }
+
+    /**
+     * Sends a reply message to an existing message and saves it in the database.
+     * Attaches the referenced file if user wants to send a file as a reply.
+     */
+    @Transactional
+    public MessageResponseDTO sendReplyMessage(MessageDTO replyMessageDTO, Long repliedToMessageId) {
+        Message replyMessage = prepareReplyMessage(replyMessageDTO, repliedToMessageId);
+        Timer.Sample persist = Timer.start();
+        persist(replyMessage);
+        persist.stop(sendMetrics.stage(Kind.REPLY, Stage.PERSIST));
+        return sentResponse(replyMessage);
+    }
+
+    /**
+     * Sends several messages in one transaction, used by the ingest pipeline for the sends it collected.
+     * Every message is prepared first and then all of them are inserted together, so the inserts go out in JDBC batches,
+     * each chatroom is updated once with its highest sequence number and the whole batch costs one commit.
+     * Sequence numbers are only allocated once every message of the batch is validated, so a message that is rejected
+     * does not leave gaps for the rest of the batch when it is retried one by one.
+     * If one message fails the whole batch is rolled back.
+     * @param requests the messages to send, in the order they arrived
+     * @return the sent messages in the same order
+     */
+    @Transactional
+    public List<MessageResponseDTO> sendMessages(List<MessageSendRequest> requests) {
+        List<Message> messages = requests.stream().map(this::prepareMessage).toList();
+        messages.forEach(this::assignSequence);
+        messageRepository.saveAll(messages);
+        recordSaved(messages);
+        logger.debug("Batch of {} messages sent", messages.size());
+        return messages.stream().map(this::sentResponse).toList();
+    }
+
+    /**
+     * Prepares a message for the journal without inserting it.
+     * The message is resolved and validated like a direct send and gets its ID, send time and sequence number now,
+     * so the published DTO is exactly what is inserted once the journal is drained.
+     * @param request the message to send
+     * @param messageId the ID of the message
+     * @return the journal entry and the DTO of the message
+     */
+    @Transactional
+    public JournaledMessage prepareJournaledMessage(MessageSendRequest request, long messageId) {
+        Message message = prepareMessage(request);
+        assignSequence(message);
+        message.setId(messageId);
+        message.setTimestamp(Instant.now());
+        return new JournaledMessage(JournalEntry.of(message), messageMapper.toResponseDTO(message));
+    }
+
+    /**
+     * Inserts messages drained from the journal in one transaction.
+     * Messages already in the database are skipped, so entries replayed after a crash between the insert and the checkpoint are not inserted twice.
+     * On a shard other than the default one, whose foreign keys to the replicated tables are dropped, the chatrooms,
+     * users, groups and files of the entries are checked first, see checkReplicated.
+     * @param entries the journal entries, in journal order
+     * @return the number of inserted messages
+     */
+    @Transactional
+    public int persistJournaledMessages(List<JournalEntry> entries) {
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        Set<Long> existing = new HashSet<>(messageRepository.findExistingIds(entries.stream().map(JournalEntry::messageId).toList()));
+        List<JournalEntry> missing = entries.stream().filter(entry -> !existing.contains(entry.messageId())).toList();
+        if (!missing.isEmpty() && !shardRouter.currentShard().equals(ShardRouter.DEFAULT_SHARD)) {
+            checkReplicated(missing);
+        }
+        List<Message> messages = missing.stream()
+                .map(this::fromJournalEntry)
+                .toList();
+        if (messages.isEmpty()) {
+            return 0;
+        }
+        messageRepository.saveAll(messages);
+        recordSaved(messages);
+        messages.forEach(message -> recentMessageCache.confirmAfterCommit(message.getChatroom().getChatroomId(), message.getId()));
+        return messages.size();
+    }
+
+    /**
+     * Checks that the rows journal entries refer to are replicated to the current shard, where no foreign key checks them.
+     * A row missing here but present on the default shard is still replicating: the insert fails with an
+     * IllegalStateException, so the drain keeps the entries and retries them. A row missing on the default shard too
+     * was deleted: the insert fails with a DataIntegrityViolationException as it would on the default shard.
+     */
+    private void checkReplicated(List<JournalEntry> entries) {
+        checkReplicated("ChatRoom", "chatroomId", entries.stream().map(JournalEntry::chatroomId).collect(Collectors.toSet()));
+        checkReplicated("User", "id", entries.stream()
+                .flatMap(entry -> Stream.of(entry.senderId(), entry.receiverId()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet()));
+        checkReplicated("Group", "id", entries.stream().map(JournalEntry::groupId).filter(Objects::nonNull).collect(Collectors.toSet()));
+        checkReplicated("File", "id", entries.stream().map(JournalEntry::fileId).filter(Objects::nonNull).collect(Collectors.toSet()));
+    }
+
+    private void checkReplicated(String entity, String idField, Set<?> ids) {
+        if (ids.isEmpty()) {
+            return;
+        }
+        String query = "select e." + idField + " from " + entity + " e where e." + idField + " in :ids";
+        Set<Object> missing = new HashSet<>(ids);
+        missing.removeAll(entityManager.createQuery(query, Object.class).setParameter("ids", ids).getResultList());
+        if (missing.isEmpty()) {
+            return;
+        }
+        String shard = shardRouter.currentShard();
+        List<Object> onDefaultShard = shardRouter.readOnShard(ShardRouter.DEFAULT_SHARD,
+                () -> entityManager.createQuery(query, Object.class).setParameter("ids", missing).getResultList());
+        if (!onDefaultShard.isEmpty()) {
+            throw new IllegalStateException("Shard " + shard + " has no copy of " + entity + " " + onDefaultShard
+                    + " yet, the users, groups, chatrooms and files must be replicated from the default shard");
+        }
+        throw new DataIntegrityViolationException(entity + " " + missing + " no longer exists");
+    }
+
+    /**
+     * Builds the message of a journal entry, referring to the chatroom, users, group, file and replied-to message without loading them.
+     */
+    private Message fromJournalEntry(JournalEntry entry) {
+        Message message = new Message(
+                entityManager.getReference(ChatRoom.class, entry.chatroomId()),
+                entityManager.getReference(User.class, entry.senderId()),
+                entry.receiverId() != null ? entityManager.getReference(User.class, entry.receiverId()) : null,
+                entry.content(),
+                entry.messageType(),
+                MessageStatus.SENT,
+                entry.replyToId() != null ? entityManager.getReference(Message.class, entry.replyToId()) : null,
+                entry.fileId() != null ? entityManager.getReference(File.class, entry.fileId()) : null);
+        if (entry.groupId() != null) {
+            message.setGroup(entityManager.getReference(Group.class, entry.groupId()));
+        }
+        message.setId(entry.messageId());
+        message.setTimestamp(entry.timestamp());
+        message.setSeq(entry.seq());
+        return message;
+    }
+
+    /**
+     * Queues saved messages for the search index, records them on their chatrooms, once per chatroom,
+     * and records the write of every sender, as the writer threads sending them have no user of their own.
+     */
+    private void recordSaved(List<Message> messages) {
+        Map<String, Long> lastSeqByChatroom = new HashMap<>();
+        for (Message message : messages) {
+            messageSearchIndex.indexAfterCommit(message);
+            readYourWritesTracker.recordWriteAfterCommit(message.getSender().getId());
+            lastSeqByChatroom.merge(message.getChatroom().getChatroomId(), message.getSeq(), Math::max);
+        }
+        recordOnChatrooms(lastSeqByChatroom);
+    }
+
+    /**
+     * Records sent messages on their chatrooms with the highest sequence number per chatroom.
+     * Chatrooms are stored on the default shard, with message shards this runs in a transaction of its own there.
+     */
+    private void recordOnChatrooms(Map<String, Long> lastSeqByChatroom) {
+        shardRouter.writeOnDefaultShard(() -> lastSeqByChatroom.forEach(chatRoomService::recordMessage));
+    }
+
+    /**
+     * Builds and validates a message of any kind, without a sequence number and without saving it.
+     */
+    private Message prepareMessage(MessageSendRequest request) {
+        MessageDTO messageDTO = request.messageDTO();
+        return switch (request.kind()) {
+            case PERSONAL -> preparePersonalMessage(messageDTO);
+            case GROUP -> prepareGroupMessage(messageDTO);
+            case REPLY -> prepareReplyMessage(messageDTO, messageDTO.repliedToMessageId());
+        };
+    }
+
+    /**
+     * Builds a personal message without a sequence number and without saving it.
+     * Creates a chatroom DTO with the list of participants to get or create a chatroomResponse DTO
+     * Attaches the referenced file if a file ID is sent.
+     */
+    private Message preparePersonalMessage(MessageDTO messageDTO) {
         if (messageDTO.receiverId() == null || messageDTO.groupId() != null) {
             logger.warn("Invalid MessageDTO for personal message: receiverId missing or groupId present. DTO: {}", messageDTO);
             throw new IllegalArgumentException("For personal messages, receiverId must be present and groupId must be null.");
         }
 
+        Timer.Sample resolve = Timer.start();
         ChatRoomDTO chatRoomDTO = new ChatRoomDTO(
                 null,
                 ChatRoomType.PERSONAL,
@@ -83,37 +331,25 @@ public class MessageService {
         User sender = userService.getUserEntityByID(messageDTO.senderId());
         User receiver = userService.getUserEntityByID(messageDTO.receiverId());
 
-        File attachedFile = null;
-        if (messageDTO.fileUrl() != null && messageDTO.fileName() != null && messageDTO.fileSize() != null) {
-            attachedFile = new File();
-            attachedFile.setFileUrl(messageDTO.fileUrl());
-            attachedFile.setFileName(messageDTO.fileName());
-            attachedFile.setFileSize(messageDTO.fileSize());
-            attachedFile.setUploadedBy(sender);
-            filesRepository.save(attachedFile);
-            logger.info("File attached to personal message from user {}: {} ({} bytes)", sender.getId(), messageDTO.fileName(), messageDTO.fileSize());
-        }
+        File attachedFile = resolveAttachment(messageDTO, sender);
+        resolve.stop(sendMetrics.stage(Kind.PERSONAL, Stage.RESOLVE));
 
         Message message = messageMapper.createPersonalMessage(chatRoom, sender, receiver, messageDTO.content(), attachedFile);
-        messageRepository.save(message);
-        chatRoomService.updateLastActivity(chatRoom.getChatroomId());
-        logger.info("Personal message sent from user {} to user {} in chatroom {}", messageDTO.senderId(), messageDTO.receiverId(), chatRoom.getChatroomId());
-        return messageMapper.toResponseDTO(message);
+        return message;
     }
 
     /**
-     * Sends a group message from one user to a group with multiple users and saves it in the database.
-     * Creates a chatroom DTO with the list of participants to get or create a chatroomResponse DTO
-     * Sends a file if a file is sent.
-     * Creates a message and saves it
+     * Builds a group message without a sequence number and without saving it.
+     * Creates a chatroom DTO with the group to get or create a chatroomResponse DTO
+     * Attaches the referenced file if a file ID is sent.
      */
-    @Transactional
-    public MessageResponseDTO sendGroupMessage(MessageDTO messageDTO) {
+    private Message prepareGroupMessage(MessageDTO messageDTO) {
         if (messageDTO.groupId() == null || messageDTO.receiverId() != null) {
             logger.warn("Invalid MessageDTO for group message: groupId missing or receiverId present. DTO: {}", messageDTO);
             throw new IllegalArgumentException("For group messages, groupId must be present and receiverId must be null.");
         }
 
+        Timer.Sample resolve = Timer.start();
         ChatRoomDTO chatRoomDTO = new ChatRoomDTO(
                 null,
                 ChatRoomType.GROUP,
@@ -132,30 +368,18 @@ public class MessageService {
         User sender = userService.getUserEntityByID(messageDTO.senderId());
         Group group = groupService.getGroupEntity(messageDTO.groupId());
 
-        File attachedFile = null;
-        if (messageDTO.fileUrl() != null && messageDTO.fileName() != null && messageDTO.fileSize() != null) {
-            attachedFile = new File();
-            attachedFile.setFileUrl(messageDTO.fileUrl());
-            attachedFile.setFileName(messageDTO.fileName());
-            attachedFile.setFileSize(messageDTO.fileSize());
-            attachedFile.setUploadedBy(sender);
-            filesRepository.save(attachedFile);
-            logger.info("File attached to group message from user {} in group {}: {} ({} bytes)", sender.getId(), group.getId(), messageDTO.fileName(), messageDTO.fileSize());
-        }
+        File attachedFile = resolveAttachment(messageDTO, sender);
+        resolve.stop(sendMetrics.stage(Kind.GROUP, Stage.RESOLVE));
 
         Message message = messageMapper.createGroupMessage(chatRoom, sender, group, messageDTO.content(), attachedFile);
-        messageRepository.save(message);
-        chatRoomService.updateLastActivity(chatRoom.getChatroomId());
-        logger.info("Group message sent from user {} to group {} in chatroom {}", messageDTO.senderId(), messageDTO.groupId(), chatRoom.getChatroomId());
-        return messageMapper.toResponseDTO(message);
+        return message;
     }
 
     /**
-     * Sends a reply message to an existing message and saves it in the database.
-     * Sends a file as a file if user wants to send a file as a reply.
+     * Builds a reply message without a sequence number and without saving it.
+     * If the DTO names a chatroom, the replied-to message must be in it.
      */
-    @Transactional
-    public MessageResponseDTO sendReplyMessage(MessageDTO replyMessageDTO, Long repliedToMessageId) {
+    private Message prepareReplyMessage(MessageDTO replyMessageDTO, Long repliedToMessageId) {
         if (replyMessageDTO.receiverId() != null || replyMessageDTO.groupId() != null) {
             logger.warn("Invalid MessageDTO for reply message: receiverId or groupId present. DTO: {}", replyMessageDTO);
             throw new IllegalArgumentException("Invalid MessageDTO for a reply message. receiverId and groupId must be null.");
@@ -166,7 +390,9 @@ public class MessageService {
             throw new IllegalArgumentException("repliedToMessageId cannot be null for a reply message.");
         }
 
+        Timer.Sample resolve = Timer.start();
         Message repliedToMessage = messageRepository.findById(repliedToMessageId)
+                .filter(message -> replyMessageDTO.chatRoomId() == null || message.getChatroom().getChatroomId().equals(replyMessageDTO.chatRoomId()))
                 .orElseThrow(() -> {
                     logger.warn("Reply message failed: Message being replied to not found with ID: {}", repliedToMessageId);
                     return new IllegalArgumentException("Message being replied to not found with ID: " + repliedToMessageId);
@@ -189,51 +415,91 @@ public class MessageService {
 
         User sender = userService.getUserEntityByID(replyMessageDTO.senderId());
 
-        File attachedFile = null;
-        if (replyMessageDTO.fileUrl() != null && replyMessageDTO.fileName() != null && replyMessageDTO.fileSize() != null) {
-            attachedFile = new File();
-            attachedFile.setFileUrl(replyMessageDTO.fileUrl());
-            attachedFile.setFileName(replyMessageDTO.fileName());
-            attachedFile.setFileSize(replyMessageDTO.fileSize());
-            attachedFile.setUploadedBy(sender);
-            filesRepository.save(attachedFile);
-            logger.info("File attached to reply message from user {} to message {}: {} ({} bytes)", sender.getId(), repliedToMessageId, replyMessageDTO.fileName(), replyMessageDTO.fileSize());
-        }
+        File attachedFile = resolveAttachment(replyMessageDTO, sender);
+        resolve.stop(sendMetrics.stage(Kind.REPLY, Stage.RESOLVE));
 
         Message replyMessage = messageMapper.createReplyMessage(
                 chatRoom, sender, replyMessageDTO.content(),
                 attachedFile, repliedToMessage
         );
-        messageRepository.save(replyMessage);
-        chatRoomService.updateLastActivity(chatRoom.getChatroomId());
-        return messageMapper.toResponseDTO(replyMessage);
+        return replyMessage;
+    }
+
+    /**
+     * Allocates the sequence number of a prepared message.
+     * Runs after every check of the send, as a number that is allocated and not inserted is a gap for good.
+     */
+    private void assignSequence(Message message) {
+        message.setSeq(chatRoomService.nextSequence(message.getChatroom().getChatroomId()));
+    }
+
+    /**
+     * Gives a prepared message its sequence number, saves it, queues it for the search index, records it on its chatroom
+     * and records the write of its sender.
+     */
+    private void persist(Message message) {
+        assignSequence(message);
+        messageRepository.save(message);
+        messageSearchIndex.indexAfterCommit(message);
+        readYourWritesTracker.recordWriteAfterCommit(message.getSender().getId());
+        recordOnChatrooms(Map.of(message.getChatroom().getChatroomId(), message.getSeq()));
+    }
+
+    /**
+     * Maps a sent message to its response and adds it to the recent message cache once the send commits.
+     */
+    private MessageResponseDTO sentResponse(Message message) {
+        MessageResponseDTO response = messageMapper.toResponseDTO(message);
+        recentMessageCache.addAfterCommit(response);
+        return response;
+    }
+
+    /**
+     * Looks up the file referenced by the message DTO.
+     * The file must already be uploaded by the sender, so the message links to the existing row instead of inserting a new one.
+     * @param messageDTO the message DTO coming from the client.
+     * @param sender the sender of the message.
+     * @return the attached file, or null if the message has no attachment.
+     */
+    private File resolveAttachment(MessageDTO messageDTO, User sender) {
+        if (messageDTO.fileId() == null) {
+            return null;
+        }
+        File file = fileService.getAttachableFile(messageDTO.fileId(), sender.getId());
+        logger.debug("File {} attached to message from user {}", file.getId(), sender.getId());
+        return file;
     }
 
     /**
      * Updates the status of a message.
      * @param id     The ID of the message.
+     * @param chatroomId The ID of the chatroom of the message, required when messages are sharded.
      * @param status The status the message.
+     * The message is read on its message shard, which the rest of the transaction then uses.
      */
     @Transactional
-    public void updateMessageStatus(Long id, MessageStatus status){
-        Message message = messageRepository.findById(id)
+    public void updateMessageStatus(Long id, String chatroomId, MessageStatus status){
+        Message message = findMessage(id, chatroomId)
                 .orElseThrow(() -> {
                     logger.warn("Update message status failed: Message not found with ID: {}", id);
                     return new RuntimeException("Message not found");
                 });
         message.setMessageStatus(status);
         messageRepository.save(message);
-        logger.info("Message status updated for message ID {}: to {}", id, status);
+        recentMessageCache.patchAfterCommit(message.getChatroom().getChatroomId(), id, cached -> cached.withMessageStatus(status));
+        logger.debug("Message status updated for message ID {}: to {}", id, status);
     }
 
     /**
      * Soft deletes a message.
      * @param id The ID of the message.
+     * @param chatroomId The ID of the chatroom of the message, required when messages are sharded.
      * @param userId The ID of the user requesting the soft deletion.
+     * The message is read on its message shard, which the rest of the transaction then uses.
      */
     @Transactional
-    public void softDeleteMessage(Long id, Long userId){
-        Message message = messageRepository.findById(id)
+    public void softDeleteMessage(Long id, String chatroomId, Long userId){
+        Message message = findMessage(id, chatroomId)
                 .orElseThrow(() -> {
                     logger.warn("Soft delete failed: Message not found with ID: {}", id);
                     return new RuntimeException("Message not found");
@@ -241,48 +507,143 @@ public class MessageService {
         if (!message.getSender().getId().equals(userId)) {
             throw new AccessDeniedException("User is not authorized to delete this message.");
         }
+        checkNotPastArchiveAge(message);
         message.setSoftDeleted(true);
+        message.setDeletedAt(Instant.now());
         messageRepository.save(message);
+        messageSearchIndex.indexAfterCommit(message);
+        recentMessageCache.removeAfterCommit(message.getChatroom().getChatroomId(), id);
         logger.info("Message soft-deleted with ID: {}", id);
     }
 
     /**
      * Edits a message.
+     * The previous content is kept as a revision in the edit history.
+     * The message is read on its message shard, which the rest of the transaction then uses.
      * @param messageId The ID of the message to edit.
+     * @param chatroomId The ID of the chatroom of the message, required when messages are sharded.
+     * @param userId The ID of the user requesting the edit, who must be the sender of the message.
      * @param newContent The new content for the message.
-     * @return The updated Message entity.
+     * @return The edit event with the change to publish to the chatroom.
      */
     @Transactional
-    public Message editMessage(Long messageId, String newContent) {
-        Message message = messageRepository.findById(messageId)
-                .orElseThrow(() -> new RuntimeException("Message not found with ID: " + messageId));
-        message.setContent(newContent);
-        message.markAsEdited();
+    public MessageEditEventDTO editMessage(Long messageId, String chatroomId, Long userId, String newContent) {
+        Message message = findMessage(messageId, chatroomId)
+                .orElseThrow(() -> new IllegalArgumentException("Message not found with ID: " + messageId));
+        if (!message.getSender().getId().equals(userId)) {
+            throw new AccessDeniedException("User is not authorized to edit this message.");
+        }
+        if (Boolean.TRUE.equals(message.getSoftDeleted())) {
+            throw new IllegalArgumentException("Deleted message cannot be edited: " + messageId);
+        }
+        checkNotPastArchiveAge(message);
+        MessageEditEventDTO editEvent = messageRevisionService.recordEdit(message, newContent);
         messageRepository.save(message);
-        return message;
+        messageSearchIndex.indexAfterCommit(message);
+        recentMessageCache.replaceAfterCommit(messageMapper.toResponseDTO(message));
+        logger.info("Message {} edited to revision {}", messageId, editEvent.revision());
+        return editEvent;
+    }
+
+    /**
+     * Reads a message on the message shard of its chatroom, which the rest of the transaction then uses.
+     * A message of another chatroom than the given one is not found.
+     * @param id the ID of the message
+     * @param chatroomId the ID of the chatroom of the message, required when messages are sharded
+     */
+    private Optional<Message> findMessage(Long id, String chatroomId) {
+        return shardRouter.onMessage(id, chatroomId, () -> messageRepository.findById(id))
+                .filter(message -> chatroomId == null || message.getChatroom().getChatroomId().equals(chatroomId));
+    }
+
+    /**
+     * Rejects changing a message old enough to be archived.
+     * Archived segments are never rewritten, so with archiving enabled message.archive.max-age is also the window
+     * in which messages can be edited or deleted. Applying it to messages the job has not moved yet keeps the rule
+     * the same for every message of that age.
+     */
+    private void checkNotPastArchiveAge(Message message) {
+        if (archiveEnabled && message.getTimestamp().isBefore(Instant.now().minus(archiveMaxAge))) {
+            throw new IllegalArgumentException("Messages older than " + archiveMaxAge + " are archived and can no longer be changed: " + message.getId());
+        }
     }
 
     /**
      * Forwards a message to a different chat room.
      * @param messageId The ID of the message to forward.
+     * @param chatroomId The ID of the chat room of the message, required when messages are sharded.
      * @param recipientChatRoomId The ID of the chat room to forward the message to.
      * @param senderId The ID of the user forwarding the message.
-     * @return The forwarded Message entity.
+     * @return The forwarded message response DTO.
      */
     @Transactional
-    public Message forwardMessage(Long messageId, String recipientChatRoomId, Long senderId) {
-        Message originalMessage = messageRepository.findById(messageId)
-                .orElseThrow(() -> new RuntimeException("Original message not found with ID: " + messageId));
+    public MessageResponseDTO forwardMessage(Long messageId, String chatroomId, String recipientChatRoomId, Long senderId) {
+        return forwardMessage(messageId, chatroomId, List.of(recipientChatRoomId), senderId).getFirst();
+    }
+
+    /**
+     * Forwards a message to several chat rooms at once.
+     * A forward copies the content and file of the original and keeps its ID without a foreign key,
+     * so the original and the recipient chat rooms can be on different message shards.
+     * The sender must take part in the chat room of the original and in every recipient chat room.
+     * The chat rooms, sender and file are read on the default shard and the original on its own shard,
+     * then the copies of every shard are inserted in a transaction of their own there, together in JDBC batches.
+     * @param messageId The ID of the message to forward.
+     * @param chatroomId The ID of the chat room of the message, required when messages are sharded.
+     * @param recipientChatRoomIds The IDs of the chat rooms to forward the message to.
+     * @param senderId The ID of the user forwarding the message.
+     * @return The forwarded messages in the order of the chat rooms found.
+     * @throws AccessDeniedException if the sender is not a participant of one of the chat rooms.
+     */
+    @Transactional
+    public List<MessageResponseDTO> forwardMessage(Long messageId, String chatroomId, List<String> recipientChatRoomIds, Long senderId) {
+        if (recipientChatRoomIds.isEmpty() || recipientChatRoomIds.size() > MAX_FORWARD_RECIPIENTS) {
+            throw new IllegalArgumentException("A message can be forwarded to 1 to " + MAX_FORWARD_RECIPIENTS + " chat rooms at once.");
+        }
+        ForwardSource source = shardRouter.readOnMessage(messageId, chatroomId, () -> messageRepository.findById(messageId)
+                        .filter(message -> chatroomId == null || message.getChatroom().getChatroomId().equals(chatroomId))
+                        .map(ForwardSource::of))
+                .orElseThrow(() -> new IllegalArgumentException("Original message not found with ID: " + messageId));
+        if (source.softDeleted()) {
+            throw new IllegalArgumentException("Cannot forward a soft-deleted message.");
+        }
 
-        ChatRoom recipientChatRoom = chatRoomRepository.findById(recipientChatRoomId)
-                .orElseThrow(() -> new RuntimeException("Recipient chat room not found with ID: " + recipientChatRoomId));
+        List<ChatRoom> recipientChatRooms = chatRoomRepository.findAllById(recipientChatRoomIds);
+        if (recipientChatRooms.size() != new HashSet<>(recipientChatRoomIds).size()) {
+            throw new IllegalArgumentException("One or more recipient chat rooms not found.");
+        }
+        Set<String> involvedChatRoomIds = new HashSet<>(recipientChatRoomIds);
+        involvedChatRoomIds.add(source.chatroomId());
+        chatRoomService.checkParticipant(senderId, involvedChatRoomIds);
 
         User sender = userService.getUserEntityByID(senderId);
+        String originalSenderName = userService.getUserEntityByID(source.senderId()).getUserName();
+        File file = source.fileId() != null ? entityManager.find(File.class, source.fileId()) : null;
+
+        List<Message> forwardedMessages = recipientChatRooms.stream()
+                .map(chatRoom -> messageMapper.createForwardedMessage(
+                        chatRoom, sender, source.content(), file, source.id(), originalSenderName))
+                .toList();
+        forwardedMessages.forEach(this::assignSequence);
+        shardRouter.groupByShard(forwardedMessages, forwarded -> forwarded.getChatroom().getChatroomId())
+                .forEach((shard, messages) -> shardRouter.writeOnShard(shard, () -> {
+                    messageRepository.saveAll(messages);
+                    recordSaved(messages);
+                    return null;
+                }));
+        logger.debug("Message {} forwarded to {} chat rooms by user {}", messageId, forwardedMessages.size(), senderId);
+        return forwardedMessages.stream().map(this::sentResponse).toList();
+    }
 
-        Message forwardedMessage = messageMapper.createForwardedMessage(
-                recipientChatRoom, sender, originalMessage.getContent(), originalMessage.getFile(), originalMessage
-        );
-        messageRepository.save(forwardedMessage);
-        return forwardedMessage;
+    /**
+     * What a forward copies from the original message, read on the shard of the original.
+     * The sender and file are kept as IDs and read on the default shard.
+     */
+    private record ForwardSource(Long id, String chatroomId, String content, Long senderId, Long fileId, boolean softDeleted) {
+
+        static ForwardSource of(Message message) {
+            return new ForwardSource(message.getId(), message.getChatroom().getChatroomId(), message.getContent(), message.getSender().getId(),
+                    message.getFile() != null ? message.getFile().getId() : null, Boolean.TRUE.equals(message.getSoftDeleted()));
+        }
     }
 }
@@ -0,0 +1,69 @@
+package com.yaplab.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Timers of the message send path.
+ * yaplab.message.send times the whole STOMP handler of a send, including the transaction commit and the broker publish.
+ * yaplab.message.send.stage times the stages inside it, so the difference of the two is commit time:
+ * resolve (chatroom, sender, receiver and attachment lookups), persist (insert, index update and chatroom activity)
+ * and publish (serialization and hand-off to the broker, which fans out to the subscribers).
+ * All timers are registered up front so the hot path never looks them up in the registry.
+ */
+@Component
+public class MessageSendMetrics {
+
+    /**
+     * Kinds of messages sent, used as the kind tag.
+     */
+    public enum Kind { PERSONAL, GROUP, REPLY }
+
+    /**
+     * Stages of a send, used as the stage tag.
+     */
+    public enum Stage { RESOLVE, PERSIST, PUBLISH }
+
+    private final Map<Kind, Timer> sendTimers = new EnumMap<>(Kind.class);
+    private final Map<Kind, Map<Stage, Timer>> stageTimers = new EnumMap<>(Kind.class);
+
+    public MessageSendMetrics(MeterRegistry registry) {
+        for (Kind kind : Kind.values()) {
+            String kindTag = kind.name().toLowerCase(Locale.ROOT);
+            sendTimers.put(kind, Timer.builder("yaplab.message.send")
+                    .description("Time to handle a sent message, from the inbound frame to the broker publish")
+                    .tag("kind", kindTag)
+                    .publishPercentileHistogram()
+                    .register(registry));
+            Map<Stage, Timer> stages = new EnumMap<>(Stage.class);
+            for (Stage stage : Stage.values()) {
+                stages.put(stage, Timer.builder("yaplab.message.send.stage")
+                        .description("Time spent in one stage of handling a sent message")
+                        .tag("kind", kindTag)
+                        .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                        .publishPercentileHistogram()
+                        .register(registry));
+            }
+            stageTimers.put(kind, stages);
+        }
+    }
+
+    /**
+     * Returns the timer of the whole send of a kind of message.
+     */
+    public Timer send(Kind kind) {
+        return sendTimers.get(kind);
+    }
+
+    /**
+     * Returns the timer of a stage of the send of a kind of message.
+     */
+    public Timer stage(Kind kind, Stage stage) {
+        return stageTimers.get(kind).get(stage);
+    }
+}
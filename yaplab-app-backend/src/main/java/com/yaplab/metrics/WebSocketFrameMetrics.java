@@ -0,0 +1,104 @@
+package com.yaplab.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts the STOMP frames received from and sent to WebSocket clients.
+ * Registered on both client channels, every frame increments yaplab.websocket.frames
+ * tagged with the direction, the frame type and the destination prefix.
+ * The prefix is the destination cut down to its first two segments, /app/personal or /topic/chat,
+ * and a second segment that looks like an ID (it has a digit or an underscore) is replaced by *,
+ * which keeps the number of time series bounded however many chatrooms there are.
+ */
+@Component
+public class WebSocketFrameMetrics {
+
+    private final MeterRegistry registry;
+
+    /**
+     * Counters by direction, frame type and prefix, so frames do not go through the registry lookup.
+     */
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    private final ChannelInterceptor inboundInterceptor = new FrameCounter("in");
+    private final ChannelInterceptor outboundInterceptor = new FrameCounter("out");
+
+    public WebSocketFrameMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Returns the interceptor of the client inbound channel.
+     */
+    public ChannelInterceptor inboundInterceptor() {
+        return inboundInterceptor;
+    }
+
+    /**
+     * Returns the interceptor of the client outbound channel.
+     */
+    public ChannelInterceptor outboundInterceptor() {
+        return outboundInterceptor;
+    }
+
+    private void count(String direction, Message<?> message) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String typeTag = type != null ? type.name().toLowerCase(Locale.ROOT) : "other";
+        String prefix = destinationPrefix(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+        counters.computeIfAbsent(direction + '|' + typeTag + '|' + prefix, key -> Counter.builder("yaplab.websocket.frames")
+                        .description("STOMP frames exchanged with WebSocket clients")
+                        .tag("direction", direction)
+                        .tag("type", typeTag)
+                        .tag("destination", prefix)
+                        .register(registry))
+                .increment();
+    }
+
+    /**
+     * Cuts a destination down to a prefix with bounded cardinality.
+     */
+    static String destinationPrefix(String destination) {
+        if (destination == null || destination.length() < 2 || destination.charAt(0) != '/') {
+            return "none";
+        }
+        int first = destination.indexOf('/', 1);
+        if (first < 0) {
+            return destination;
+        }
+        int second = destination.indexOf('/', first + 1);
+        String segment = second < 0 ? destination.substring(first + 1) : destination.substring(first + 1, second);
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (Character.isDigit(c) || c == '_') {
+                return destination.substring(0, first) + "/*";
+            }
+        }
+        return destination.substring(0, first + 1) + segment;
+    }
+
+    private class FrameCounter implements ChannelInterceptor {
+
+        private final String direction;
+
+        private FrameCounter(String direction) {
+            this.direction = direction;
+        }
+
+        @Override
+        public Message<?> preSend(Message<?> message, MessageChannel channel) {
+            count(direction, message);
+            return message;
+        }
+    }
+}
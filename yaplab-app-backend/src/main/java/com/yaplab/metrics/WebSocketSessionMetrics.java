@@ -0,0 +1,52 @@
+package com.yaplab.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gauge of the open STOMP sessions, with counters of connects and disconnects.
+ * Sessions are tracked by ID so a disconnect without a connect, e.g. a failed handshake, does not skew the gauge.
+ */
+@Component
+public class WebSocketSessionMetrics {
+
+    private final Set<String> openSessions = ConcurrentHashMap.newKeySet();
+    private final Counter connects;
+    private final Counter disconnects;
+
+    public WebSocketSessionMetrics(MeterRegistry registry) {
+        Gauge.builder("yaplab.websocket.sessions", openSessions, Set::size)
+                .description("Open STOMP sessions")
+                .register(registry);
+        this.connects = Counter.builder("yaplab.websocket.connects")
+                .description("STOMP sessions connected")
+                .register(registry);
+        this.disconnects = Counter.builder("yaplab.websocket.disconnects")
+                .description("STOMP sessions closed")
+                .register(registry);
+    }
+
+    @EventListener
+    public void onConnected(SessionConnectedEvent event) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (sessionId != null && openSessions.add(sessionId)) {
+            connects.increment();
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        if (openSessions.remove(event.getSessionId())) {
+            disconnects.increment();
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.yaplab.search;
+
+import java.time.Instant;
+
+/**
+ * A flat view of a message holding only the fields stored in the search index.
+ * Used by the bulk reindex job so messages can be read without loading their associations.
+ * @param id ID of the message
+ * @param chatroomId ID of the chatroom the message belongs to
+ * @param senderName name of the sender
+ * @param content content of the message
+ * @param timestamp timestamp of the message
+ */
+public record MessageIndexRow(
+        Long id,
+        String chatroomId,
+        String senderName,
+        String content,
+        Instant timestamp
+) {
+}
@@ -0,0 +1,116 @@
+package com.yaplab.search;
+
+import com.yaplab.archive.MessageArchive;
+import com.yaplab.message.MessageRepository;
+import com.yaplab.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Background job rebuilding the message search index from the database and the message archive.
+ * Runs on startup when the index is empty (first start or a deleted index directory) or when forced with
+ * search.reindex-on-startup, and reads messages in ID order in bounded batches so memory use stays flat.
+ */
+@Component
+public class MessageReindexJob {
+
+    /**
+     * Logger for MessageReindexJob
+     * This logger is used to log the progress of the bulk reindex.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MessageReindexJob.class);
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final MessageSearchIndex messageSearchIndex;
+    private final MessageRepository messageRepository;
+    private final MessageArchive messageArchive;
+    private final ShardRouter shardRouter;
+    private final int batchSize;
+    private final boolean reindexOnStartup;
+
+    /**
+     * Prevents two reindex runs at the same time.
+     */
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    public MessageReindexJob(MessageSearchIndex messageSearchIndex, MessageRepository messageRepository, MessageArchive messageArchive, ShardRouter shardRouter,
+                             @Value("${search.reindex.batch-size:5000}") int batchSize,
+                             @Value("${search.reindex-on-startup:false}") boolean reindexOnStartup) {
+        this.messageSearchIndex = messageSearchIndex;
+        this.messageRepository = messageRepository;
+        this.messageArchive = messageArchive;
+        this.shardRouter = shardRouter;
+        this.batchSize = batchSize;
+        this.reindexOnStartup = reindexOnStartup;
+    }
+
+    /**
+     * Starts a reindex in the background once the application is ready, if needed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (reindexOnStartup || messageSearchIndex.size() == 0) {
+            Thread.ofPlatform().name("message-reindex").daemon().start(this::reindexAll);
+        }
+    }
+
+    /**
+     * Builds new index contents from every message that is not soft-deleted, then every archived message,
+     * and swaps them in at the end. Searches keep using the old contents until then.
+     * Messages sent, edited or deleted during the run are indexed by the send path as usual and replayed over
+     * the new contents, so a batch read before such a change cannot bring back the old content or a deleted message.
+     * The archive is read last, so a message archived during the run is found in one of the two.
+     * @return the number of indexed messages, or -1 if a reindex was already running
+     */
+    public long reindexAll() {
+        if (!running.compareAndSet(false, true)) {
+            logger.warn("Reindex requested while another reindex is running");
+            return -1;
+        }
+        try (MessageSearchIndex.Rebuild rebuild = messageSearchIndex.startRebuild()) {
+            long started = System.currentTimeMillis();
+            long indexed = 0;
+            for (String shard : shardRouter.shards()) {
+                long lastId = 0;
+                List<MessageIndexRow> batch;
+                do {
+                    long after = lastId;
+                    batch = shardRouter.onShard(shard, () -> messageRepository.findIndexRowsAfter(after, Limit.of(batchSize)));
+                    if (!batch.isEmpty()) {
+                        rebuild.addAll(batch);
+                        indexed += batch.size();
+                        lastId = batch.get(batch.size() - 1).id();
+                        logger.debug("Reindexed {} messages so far", indexed);
+                    }
+                } while (batch.size() == batchSize);
+            }
+            long[] archived = {0};
+            messageArchive.forEachBlock(messages -> {
+                rebuild.addAll(messages.stream()
+                        .map(message -> new MessageIndexRow(message.id(), message.chatRoomId(), message.senderName(), message.content(), message.timestamp()))
+                        .toList());
+                archived[0] += messages.size();
+            });
+            indexed += archived[0];
+            rebuild.swap();
+            logger.info("Reindexed {} messages in {} ms", indexed, System.currentTimeMillis() - started);
+            return indexed;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to clean up after rebuilding the search index", e);
+        } finally {
+            running.set(false);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.yaplab.search;
+
+import com.yaplab.user.UserService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+
+/**
+ * REST Controller for searching messages.
+ */
+@RestController
+@RequestMapping("/search")
+public class MessageSearchController {
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final MessageSearchService messageSearchService;
+    private final UserService userService;
+
+    public MessageSearchController(MessageSearchService messageSearchService, UserService userService) {
+        this.messageSearchService = messageSearchService;
+        this.userService = userService;
+    }
+
+    /**
+     * Searches the messages of the chatrooms the user takes part in.
+     * @param principal the authenticated user, whose chatrooms are searched
+     * @param query the text to search for
+     * @param page index of the page, starting at 0
+     * @param size maximum number of results per page
+     */
+    @GetMapping("/messages")
+    public ResponseEntity<MessageSearchResponseDTO> searchMessages(
+            Principal principal,
+            @RequestParam("q") String query,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size
+    ){
+        try {
+            Long userId = userService.getUserEntityByEmail(principal.getName()).getId();
+            return ResponseEntity.ok(messageSearchService.searchMessages(userId, query, page, size));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
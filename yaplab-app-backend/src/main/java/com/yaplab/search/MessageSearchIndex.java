@@ -0,0 +1,433 @@
+package com.yaplab.search;
+
+import com.yaplab.message.Message;
+import com.yaplab.transaction.AfterCommit;
+import jakarta.annotation.PreDestroy;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Embedded full-text index of message contents kept in a Lucene index on the local disk.
+ * The index is updated incrementally when messages are sent, edited or deleted and
+ * is committed to disk in the background, new documents become searchable within about a second.
+ */
+@Component
+public class MessageSearchIndex {
+
+    /**
+     * Logger for MessageSearchIndex
+     * This logger is used to log various events and errors in the MessageSearchIndex class.
+     * It helps in debugging and tracking the flow of operations related to the search index.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MessageSearchIndex.class);
+
+    /**
+     * Names of the fields in the index documents.
+     */
+    static final String FIELD_ID = "id";
+    static final String FIELD_CHATROOM = "chatroomId";
+    static final String FIELD_SENDER = "senderName";
+    static final String FIELD_CONTENT = "content";
+    static final String FIELD_TIMESTAMP = "timestamp";
+
+    /**
+     * Results are ordered by relevance and then by the newest message first.
+     */
+    private static final Sort RESULT_ORDER = new Sort(
+            SortField.FIELD_SCORE,
+            new SortField(FIELD_TIMESTAMP, SortField.Type.LONG, true));
+
+    private final Analyzer analyzer = new StandardAnalyzer();
+    private final Path indexPath;
+    private final FSDirectory directory;
+    private final IndexWriter writer;
+    private final SearcherManager searcherManager;
+
+    /**
+     * Held shared by changes, refreshes and commits, and exclusively while a rebuilt index replaces the contents,
+     * so neither searches nor the index on disk ever see the contents half replaced.
+     */
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+
+    /**
+     * Changes of single messages made while a rebuild runs, by message ID, empty for a removal, null without a rebuild.
+     * They are replayed over the rebuilt contents, so they win over the older rows the rebuild read before them.
+     */
+    private volatile Map<Long, Optional<Document>> rebuildChanges;
+
+    public MessageSearchIndex(@Value("${search.index-dir:search-index}") String indexDir) throws IOException {
+        this.indexPath = Paths.get(indexDir);
+        this.directory = FSDirectory.open(indexPath);
+        this.writer = new IndexWriter(directory, new IndexWriterConfig(analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE_OR_APPEND));
+        this.searcherManager = new SearcherManager(writer, null);
+        logger.info("Message search index opened in {} with {} documents", indexDir, writer.getDocStats().numDocs);
+    }
+
+    /**
+     * Adds or replaces the message in the index once the surrounding transaction commits,
+     * so messages from rolled back transactions never become searchable.
+     * Soft-deleted messages are removed from the index instead.
+     * The document is built right away while the entity is still attached.
+     * @param message the saved message
+     */
+    public void indexAfterCommit(Message message) {
+        Long id = message.getId();
+        if (Boolean.TRUE.equals(message.getSoftDeleted())) {
+            AfterCommit.run(() -> delete(id));
+            return;
+        }
+        Document document = toDocument(new MessageIndexRow(
+                id,
+                message.getChatroom().getChatroomId(),
+                message.getSender() != null ? message.getSender().getUserName() : null,
+                message.getContent(),
+                message.getTimestamp()));
+        AfterCommit.run(() -> update(id, document));
+    }
+
+    /**
+     * Adds or replaces a batch of messages.
+     * Replacing by ID keeps a message indexed twice from being found twice.
+     * @param rows the messages to add
+     */
+    public void addAll(List<MessageIndexRow> rows) {
+        try {
+            for (MessageIndexRow row : rows) {
+                writer.updateDocument(new Term(FIELD_ID, row.id().toString()), toDocument(row));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to add messages to the search index", e);
+        }
+    }
+
+    /**
+     * Removes a message from the index.
+     * @param messageId ID of the message
+     */
+    public void delete(Long messageId) {
+        swapLock.readLock().lock();
+        try {
+            writer.deleteDocuments(new Term(FIELD_ID, messageId.toString()));
+            Map<Long, Optional<Document>> changes = rebuildChanges;
+            if (changes != null) {
+                changes.put(messageId, Optional.empty());
+            }
+        } catch (IOException e) {
+            logger.error("Failed to remove message {} from the search index", messageId, e);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Starts building new contents for the index next to the live ones, which keep serving searches and taking changes.
+     * Used by the bulk reindex job, only one rebuild can run at a time.
+     * @return the rebuild, to fill and then swap in, closing it without a swap discards it
+     */
+    public Rebuild startRebuild() {
+        if (rebuildChanges != null) {
+            throw new IllegalStateException("The search index is already being rebuilt");
+        }
+        try {
+            Rebuild rebuild = new Rebuild(indexPath.resolveSibling(indexPath.getFileName() + "-rebuild"));
+            rebuildChanges = new ConcurrentHashMap<>();
+            return rebuild;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start rebuilding the search index", e);
+        }
+    }
+
+    /**
+     * Returns the number of messages in the index, including changes that are not committed yet.
+     */
+    public long size() {
+        return writer.getDocStats().numDocs;
+    }
+
+    /**
+     * Searches the contents of messages in the given chatrooms.
+     * The query supports simple syntax: quoted phrases, + and - operators and prefix* terms.
+     * @param queryText the text to search for
+     * @param chatroomIds chatrooms the search is restricted to
+     * @param page index of the page, starting at 0
+     * @param size maximum number of results per page
+     * @return the messages of the page with the total number of matches
+     */
+    public SearchPage search(String queryText, Collection<String> chatroomIds, int page, int size) {
+        if (chatroomIds.isEmpty()) {
+            return new SearchPage(List.of(), 0);
+        }
+        Query contentQuery = new SimpleQueryParser(analyzer, FIELD_CONTENT).parse(queryText);
+        if (contentQuery == null) {
+            return new SearchPage(List.of(), 0);
+        }
+        List<BytesRef> rooms = chatroomIds.stream().map(BytesRef::new).toList();
+        Query query = new BooleanQuery.Builder()
+                .add(contentQuery, BooleanClause.Occur.MUST)
+                .add(new TermInSetQuery(FIELD_CHATROOM, rooms), BooleanClause.Occur.FILTER)
+                .build();
+
+        IndexSearcher searcher = null;
+        try {
+            searcher = searcherManager.acquire();
+            int offset = page * size;
+            TopFieldDocs topDocs = searcher.search(query, offset + size, RESULT_ORDER, true);
+            List<SearchHit> results = new ArrayList<>(size);
+            ScoreDoc[] hits = topDocs.scoreDocs;
+            for (int i = offset; i < hits.length; i++) {
+                Document document = searcher.storedFields().document(hits[i].doc);
+                // The second sort field is the send time, read back from the sort values
+                Long timestamp = (Long) ((FieldDoc) hits[i]).fields[1];
+                results.add(new SearchHit(Long.valueOf(document.get(FIELD_ID)), document.get(FIELD_CHATROOM), Instant.ofEpochMilli(timestamp)));
+            }
+            return new SearchPage(results, topDocs.totalHits.value);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to search messages", e);
+        } finally {
+            release(searcher);
+        }
+    }
+
+    /**
+     * Makes recent changes visible to searches.
+     */
+    @Scheduled(fixedDelayString = "${search.refresh-interval-ms:1000}")
+    public void refresh() {
+        swapLock.readLock().lock();
+        try {
+            searcherManager.maybeRefresh();
+        } catch (IOException e) {
+            logger.error("Failed to refresh the search index", e);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Makes recent changes durable on disk.
+     * Changes that are not committed are lost on a crash and picked up again by a reindex.
+     */
+    @Scheduled(fixedDelayString = "${search.commit-interval-ms:30000}")
+    public void commit() {
+        swapLock.readLock().lock();
+        try {
+            if (writer.hasUncommittedChanges()) {
+                writer.commit();
+            }
+        } catch (IOException e) {
+            logger.error("Failed to commit the search index", e);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Commits and closes the index when the application shuts down.
+     */
+    @PreDestroy
+    public void close() throws IOException {
+        searcherManager.close();
+        writer.close();
+        directory.close();
+    }
+
+    /**
+     * Builds the index document of a message.
+     * The ID and chatroom are exact-match fields, stored so hits on archived messages can be read from the archive,
+     * the content is analysed for full-text search
+     * and the timestamp is kept as a point for range queries and as doc values for sorting.
+     */
+    private Document toDocument(MessageIndexRow row) {
+        Document document = new Document();
+        document.add(new StringField(FIELD_ID, row.id().toString(), Field.Store.YES));
+        document.add(new StringField(FIELD_CHATROOM, row.chatroomId(), Field.Store.YES));
+        if (row.senderName() != null) {
+            document.add(new StoredField(FIELD_SENDER, row.senderName()));
+        }
+        document.add(new TextField(FIELD_CONTENT, row.content() != null ? row.content() : "", Field.Store.NO));
+        long timestamp = (row.timestamp() != null ? row.timestamp() : Instant.now()).toEpochMilli();
+        document.add(new LongPoint(FIELD_TIMESTAMP, timestamp));
+        document.add(new NumericDocValuesField(FIELD_TIMESTAMP, timestamp));
+        return document;
+    }
+
+    private void update(Long messageId, Document document) {
+        swapLock.readLock().lock();
+        try {
+            writer.updateDocument(new Term(FIELD_ID, messageId.toString()), document);
+            Map<Long, Optional<Document>> changes = rebuildChanges;
+            if (changes != null) {
+                changes.put(messageId, Optional.of(document));
+            }
+        } catch (IOException e) {
+            logger.error("Failed to index message {}", messageId, e);
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private void release(IndexSearcher searcher) {
+        if (searcher == null) {
+            return;
+        }
+        try {
+            searcherManager.release(searcher);
+        } catch (IOException e) {
+            logger.error("Failed to release index searcher", e);
+        }
+    }
+
+    /**
+     * New contents of the index built in a directory of their own.
+     * Rows read from the database may be older than changes the send path makes meanwhile,
+     * those changes are recorded and replayed over the new contents when they are swapped in.
+     */
+    public final class Rebuild implements Closeable {
+
+        private final Path path;
+        private final FSDirectory rebuildDirectory;
+        private final IndexWriter rebuildWriter;
+        private boolean swapped = false;
+
+        private Rebuild(Path path) throws IOException {
+            this.path = path;
+            this.rebuildDirectory = FSDirectory.open(path);
+            this.rebuildWriter = new IndexWriter(rebuildDirectory, new IndexWriterConfig(analyzer)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE));
+        }
+
+        /**
+         * Adds or replaces a batch of messages in the new contents.
+         * @param rows the messages to add
+         */
+        public void addAll(List<MessageIndexRow> rows) {
+            try {
+                for (MessageIndexRow row : rows) {
+                    rebuildWriter.updateDocument(new Term(FIELD_ID, row.id().toString()), toDocument(row));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to add messages to the rebuilt search index", e);
+            }
+        }
+
+        /**
+         * Replaces the contents of the index with the new ones, replays the changes made since the rebuild started,
+         * then commits and refreshes. Searches see the old contents until then, changes wait for the swap to finish.
+         */
+        public void swap() {
+            try {
+                rebuildWriter.close();
+                swapLock.writeLock().lock();
+                try {
+                    writer.deleteAll();
+                    writer.addIndexes(rebuildDirectory);
+                    for (Map.Entry<Long, Optional<Document>> change : rebuildChanges.entrySet()) {
+                        Term id = new Term(FIELD_ID, change.getKey().toString());
+                        if (change.getValue().isPresent()) {
+                            writer.updateDocument(id, change.getValue().get());
+                        } else {
+                            writer.deleteDocuments(id);
+                        }
+                    }
+                    logger.info("Swapped in the rebuilt search index with {} changes made during the rebuild", rebuildChanges.size());
+                    rebuildChanges = null;
+                    swapped = true;
+                    writer.commit();
+                    searcherManager.maybeRefreshBlocking();
+                } finally {
+                    swapLock.writeLock().unlock();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to swap in the rebuilt search index", e);
+            }
+        }
+
+        /**
+         * Deletes the directory of the new contents, and discards them if they were not swapped in.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!swapped) {
+                rebuildChanges = null;
+            }
+            if (rebuildWriter.isOpen()) {
+                rebuildWriter.close();
+            }
+            for (String file : rebuildDirectory.listAll()) {
+                rebuildDirectory.deleteFile(file);
+            }
+            rebuildDirectory.close();
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * One page of search results.
+     * @param hits the matching messages in result order
+     * @param totalHits number of matching messages across all pages
+     */
+    public record SearchPage(List<SearchHit> hits, long totalHits) {
+
+        /**
+         * Returns the IDs of the matching messages in result order.
+         */
+        public List<Long> messageIds() {
+            return hits.stream().map(SearchHit::messageId).toList();
+        }
+    }
+
+    /**
+     * One matching message.
+     * @param messageId ID of the message
+     * @param chatroomId ID of the chatroom of the message, null for documents indexed before the chatroom was stored
+     * @param timestamp send time of the message
+     */
+    public record SearchHit(Long messageId, String chatroomId, Instant timestamp) {
+    }
+}
@@ -0,0 +1,22 @@
+package com.yaplab.search;
+
+import com.yaplab.message.MessageResponseDTO;
+
+import java.util.List;
+
+/**
+ * A Response DTO to send one page of message search results to the client.
+ * @param query the query that was searched
+ * @param page index of the page, starting at 0
+ * @param size maximum number of results per page
+ * @param totalHits number of matching messages across all pages
+ * @param results the matching messages of this page, best match first
+ */
+public record MessageSearchResponseDTO(
+        String query,
+        int page,
+        int size,
+        long totalHits,
+        List<MessageResponseDTO> results
+) {
+}
@@ -0,0 +1,119 @@
+package com.yaplab.search;
+
+import com.yaplab.archive.MessageArchive;
+import com.yaplab.chatroom.ChatRoomRepository;
+import com.yaplab.message.MessageHistoryRow;
+import com.yaplab.message.MessageMapper;
+import com.yaplab.message.MessageRepository;
+import com.yaplab.message.MessageResponseDTO;
+import com.yaplab.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Service layer for searching the contents of messages.
+ * Searches are restricted to the chatrooms the caller takes part in.
+ */
+@Service
+public class MessageSearchService {
+
+    /**
+     * Logger for MessageSearchService
+     * This logger is used to log various events and errors in the MessageSearchService class.
+     * It helps in debugging and tracking the flow of operations related to message search.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(MessageSearchService.class);
+
+    /**
+     * Limits of the pagination. Deep pages get expensive because every earlier hit has to be ranked again.
+     */
+    private static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_RESULT_WINDOW = 10_000;
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final MessageSearchIndex messageSearchIndex;
+    private final ChatRoomRepository chatRoomRepository;
+    private final MessageRepository messageRepository;
+    private final MessageMapper messageMapper;
+    private final ShardRouter shardRouter;
+    private final MessageArchive messageArchive;
+
+    public MessageSearchService(MessageSearchIndex messageSearchIndex, ChatRoomRepository chatRoomRepository, MessageRepository messageRepository, MessageMapper messageMapper, ShardRouter shardRouter, MessageArchive messageArchive) {
+        this.messageSearchIndex = messageSearchIndex;
+        this.messageArchive = messageArchive;
+        this.chatRoomRepository = chatRoomRepository;
+        this.messageRepository = messageRepository;
+        this.shardRouter = shardRouter;
+        this.messageMapper = messageMapper;
+    }
+
+    /**
+     * Searches the messages of all chatrooms of the user.
+     * The index returns the IDs of the matching messages, which are then loaded from the database
+     * so deleted messages and access rules are always checked against the current state.
+     * Hits the database no longer has are read from the archive of their chatroom.
+     * Archived messages are never edited or deleted, so the archived copy is the current state.
+     * @param userId ID of the user searching
+     * @param query the text to search for
+     * @param page index of the page, starting at 0
+     * @param size maximum number of results per page
+     * @return one page of matching messages
+     */
+    @Transactional(readOnly = true)
+    public MessageSearchResponseDTO searchMessages(Long userId, String query, int page, int size) {
+        if (query == null || query.isBlank()) {
+            throw new IllegalArgumentException("Search query must not be empty.");
+        }
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Page must be positive and size between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+        if ((long) (page + 1) * size > MAX_RESULT_WINDOW) {
+            throw new IllegalArgumentException("Search results are limited to the first " + MAX_RESULT_WINDOW + " matches.");
+        }
+
+        List<String> chatroomIds = chatRoomRepository.findChatroomIdsByParticipantId(userId);
+        MessageSearchIndex.SearchPage hits = messageSearchIndex.search(query, chatroomIds, page, size);
+
+        // The index does not know the shards, every message shard returns the hits it stores.
+        Map<Long, MessageHistoryRow> rowsById = shardRouter.readOnEveryShard(() -> messageRepository.findHistoryRowsByIdIn(hits.messageIds()))
+                .stream()
+                .collect(Collectors.toMap(MessageHistoryRow::id, Function.identity()));
+        Map<Long, MessageResponseDTO> archivedById = readArchivedHits(hits, rowsById.keySet());
+        List<MessageResponseDTO> results = hits.messageIds().stream()
+                .map(id -> rowsById.containsKey(id) ? messageMapper.fromHistoryRow(rowsById.get(id)) : archivedById.get(id))
+                .filter(Objects::nonNull)
+                .toList();
+
+        logger.debug("Message search by user {} returned {} of {} hits", userId, results.size(), hits.totalHits());
+        return new MessageSearchResponseDTO(query, page, size, hits.totalHits(), results);
+    }
+
+    /**
+     * Reads the hits missing from the database from the archive, with one read per chatroom.
+     */
+    private Map<Long, MessageResponseDTO> readArchivedHits(MessageSearchIndex.SearchPage hits, Set<Long> foundIds) {
+        Map<String, Map<Long, Instant>> missingByChatroom = new HashMap<>();
+        for (MessageSearchIndex.SearchHit hit : hits.hits()) {
+            if (!foundIds.contains(hit.messageId()) && hit.chatroomId() != null) {
+                missingByChatroom.computeIfAbsent(hit.chatroomId(), id -> new HashMap<>()).put(hit.messageId(), hit.timestamp());
+            }
+        }
+        Map<Long, MessageResponseDTO> archivedById = new HashMap<>();
+        missingByChatroom.forEach((chatroomId, timestamps) ->
+                messageArchive.readByIds(chatroomId, timestamps).forEach(message -> archivedById.put(message.id(), message)));
+        return archivedById;
+    }
+}
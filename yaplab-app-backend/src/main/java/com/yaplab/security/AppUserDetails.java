@@ -39,6 +39,13 @@ public class AppUserDetails implements UserDetails {
         return user.getPassword();
     }
 
+    /**
+     * Returns the ID of the user.
+     */
+    public Long getUserId() {
+        return user.getId();
+    }
+
     @Override
     public String getUsername() {
         return user.getUserName();
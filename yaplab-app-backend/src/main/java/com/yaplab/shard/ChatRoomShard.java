@@ -0,0 +1,42 @@
+package com.yaplab.shard;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/**
+ * Shard of a chatroom that was moved away from the shard the hash ring gives it.
+ * Stored on the default shard only.
+ */
+@Entity
+@Table(name = "chatroom_shard")
+public class ChatRoomShard {
+
+    @Id
+    @Column(name = "chatroom_id", nullable = false, updatable = false)
+    private String chatroomId;
+
+    @Column(nullable = false, length = 32)
+    private String shard;
+
+    public ChatRoomShard() {
+    }
+
+    public ChatRoomShard(String chatroomId, String shard) {
+        this.chatroomId = chatroomId;
+        this.shard = shard;
+    }
+
+    public String getChatroomId() {
+        return chatroomId;
+    }
+
+    public String getShard() {
+        return shard;
+    }
+
+    public void setShard(String shard) {
+        this.shard = shard;
+    }
+}
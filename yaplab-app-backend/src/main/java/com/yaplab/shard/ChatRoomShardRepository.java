@@ -0,0 +1,11 @@
+package com.yaplab.shard;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository interface to manage the chatrooms pinned to a shard.
+ */
+@Repository
+public interface ChatRoomShardRepository extends JpaRepository<ChatRoomShard, String> {
+}
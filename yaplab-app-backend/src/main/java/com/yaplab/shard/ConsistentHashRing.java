@@ -0,0 +1,60 @@
+package com.yaplab.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Maps keys to shards by consistent hashing.
+ * Every shard is placed on a ring of 64 bit hashes at many points, a key belongs to the first shard point at or after its hash.
+ * Adding a shard only moves the keys that fall just before its points, about 1 / N of them, the others keep their shard.
+ */
+public class ConsistentHashRing {
+
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+
+    /**
+     * @param shards names of the shards, the name decides the placement so a shard keeps its keys when others are added
+     * @param virtualNodes number of points of every shard, more points spread the keys more evenly
+     */
+    public ConsistentHashRing(List<String> shards, int virtualNodes) {
+        if (shards.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("A ring needs at least one shard and one point per shard");
+        }
+        for (String shard : shards) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points.put(hash(shard + "#" + i), shard);
+            }
+        }
+    }
+
+    /**
+     * Returns the shard of a key.
+     * @param key the key, a chatroom ID
+     * @return the name of the shard
+     */
+    public String shardFor(String key) {
+        Map.Entry<Long, String> point = points.ceilingEntry(hash(key));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    /**
+     * Hashes a string to the first 8 bytes of its MD5 digest, which spreads similar keys such as chatroom IDs evenly.
+     */
+    private static long hash(String value) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = (hash << 8) | (digest[i] & 0xFF);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not available", e);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.yaplab.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * The connection pools of the shards by shard name, used by the routing data source and the rebalancer.
+ * @param pools connection pool of every shard, the default shard first
+ */
+public record ShardDataSources(Map<String, HikariDataSource> pools) {
+
+    /**
+     * Returns the pools as plain data sources.
+     */
+    public Map<String, DataSource> dataSources() {
+        return Map.copyOf(pools);
+    }
+
+    /**
+     * Closes the pools of all shards.
+     */
+    public void close() {
+        pools.values().forEach(HikariDataSource::close);
+    }
+}
@@ -0,0 +1,308 @@
+package com.yaplab.shard;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Moves the messages of chatrooms to the shard they belong to.
+ * After a shard is added the hash ring gives some chatrooms a new shard, message.shards.rebalance.moves
+ * pins single chatrooms to a shard of choice, for example to move a very busy chatroom to a shard of its own.
+ * Runs on startup, before the server takes traffic, when message.shards.rebalance.enabled is set, so that no
+ * history read or edit sees a chatroom half moved. Each chatroom is copied to its new shard in pages and then deleted
+ * from its old one in pages. A run that is cut off is finished by the next one, a move that fails fails the startup,
+ * as the chatroom is already routed to its new shard. Forwards that still refer to a moved message like a reply,
+ * as they did before forwards kept a plain link, are changed to the plain link on the way.
+ * Only portable SQL is used, the shards may run any database the application supports.
+ */
+@Component
+@ConditionalOnExpression("!'${message.shards.urls:}'.isBlank()")
+public class ShardRebalancer {
+
+    /**
+     * Logger for ShardRebalancer
+     * This logger is used to log various events and errors in the ShardRebalancer class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ShardRebalancer.class);
+
+    /**
+     * Rows inserted per JDBC batch.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final ShardRouter shardRouter;
+    private final ShardDataSources shardDataSources;
+    private final boolean enabled;
+    private final List<String> moves;
+
+    public ShardRebalancer(ShardRouter shardRouter,
+                           ShardDataSources shardDataSources,
+                           @Value("${message.shards.rebalance.enabled:false}") boolean enabled,
+                           @Value("${message.shards.rebalance.moves:}") List<String> moves) {
+        this.shardRouter = shardRouter;
+        this.shardDataSources = shardDataSources;
+        this.enabled = enabled;
+        this.moves = moves;
+    }
+
+    /**
+     * Pins the chatrooms listed in the moves and moves every chatroom found on another shard than its own.
+     */
+    @PostConstruct
+    public void rebalance() {
+        if (!enabled) {
+            return;
+        }
+        for (String move : moves) {
+            String[] parts = move.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid shard move, expected chatroom=shard: " + move);
+            }
+            shardRouter.pin(parts[0].trim(), parts[1].trim());
+        }
+        int moved = 0;
+        int failed = 0;
+        for (String shard : shardRouter.shards()) {
+            List<String> chatroomIds = jdbc(shard).queryForList("select distinct chatroom_id from message", String.class);
+            for (String chatroomId : chatroomIds) {
+                String target = shardRouter.shardOf(chatroomId);
+                if (target.equals(shard)) {
+                    continue;
+                }
+                try {
+                    int messages = move(chatroomId, shard, target);
+                    moved++;
+                    logger.info("Moved {} messages of chatroom {} from shard {} to shard {}", messages, chatroomId, shard, target);
+                } catch (RuntimeException e) {
+                    failed++;
+                    logger.error("Failed to move chatroom {} from shard {} to shard {}", chatroomId, shard, target, e);
+                }
+            }
+        }
+        logger.info("Shard rebalance moved {} chatrooms, {} failed", moved, failed);
+        if (failed > 0) {
+            throw new IllegalStateException("Shard rebalance failed to move " + failed + " chatrooms, they are pinned to a shard that is missing messages."
+                    + " Restart once the cause is fixed to finish the move.");
+        }
+    }
+
+    /**
+     * Copies the messages and revisions of a chatroom to the target shard and deletes them from the source.
+     * Messages are copied in pages in ID order, each page with its revisions in one transaction on the target,
+     * so replies within the chatroom are copied after the message they reply to.
+     * Messages the target already has, left by an interrupted run, are not copied again.
+     * @return the number of messages copied
+     */
+    private int move(String chatroomId, String source, String target) {
+        JdbcTemplate from = jdbc(source);
+        JdbcTemplate to = jdbc(target);
+        JdbcTemplate pages = pages(source);
+        int copied = 0;
+        long after = Long.MIN_VALUE;
+        while (true) {
+            List<Map<String, Object>> page = pages.queryForList(
+                    "select * from message where chatroom_id = ? and id > ? order by id", chatroomId, after);
+            if (page.isEmpty()) {
+                break;
+            }
+            copied += copyPage(chatroomId, page, from, to, target);
+            after = idOf(page.getLast());
+        }
+        linkForwardsOf(chatroomId, source, from);
+        deleteFromSource(chatroomId, source, from);
+        return copied;
+    }
+
+    /**
+     * Copies the messages of a page the target does not have yet, with their revisions.
+     * @return the number of messages copied
+     */
+    private int copyPage(String chatroomId, List<Map<String, Object>> page, JdbcTemplate from, JdbcTemplate to, String target) {
+        List<Long> ids = page.stream().map(ShardRebalancer::idOf).toList();
+        Set<Long> present = new HashSet<>(to.queryForList(
+                "select id from message where id in (" + placeholders(ids.size()) + ")", Long.class, ids.toArray()));
+        List<Map<String, Object>> missing = page.stream()
+                .filter(row -> !present.contains(idOf(row)))
+                .toList();
+        if (missing.isEmpty()) {
+            return 0;
+        }
+        linkRepliesToOtherChatrooms(chatroomId, missing, from);
+        List<Long> missingIds = missing.stream().map(ShardRebalancer::idOf).toList();
+        List<Map<String, Object>> revisions = from.queryForList(
+                "select * from message_revision where message_id in (" + placeholders(missingIds.size()) + ") order by id",
+                missingIds.toArray())
+                .stream()
+                .map(ShardRebalancer::withoutId)
+                .toList();
+        transaction(target).executeWithoutResult(status -> {
+            insert(to, "message", missing);
+            insert(to, "message_revision", revisions);
+        });
+        return missing.size();
+    }
+
+    /**
+     * Turns replies to messages of other chatrooms into plain forward links before they are copied.
+     * Forwards used to refer to their original like a reply, which only works while both are on the same shard.
+     */
+    private void linkRepliesToOtherChatrooms(String chatroomId, List<Map<String, Object>> rows, JdbcTemplate from) {
+        List<Long> replyToIds = rows.stream()
+                .map(row -> (Number) row.get("reply_to_id"))
+                .filter(Objects::nonNull)
+                .map(Number::longValue)
+                .distinct()
+                .toList();
+        if (replyToIds.isEmpty()) {
+            return;
+        }
+        Map<Long, Long> senderOfOriginal = new HashMap<>();
+        List<Object> args = new ArrayList<>(replyToIds);
+        args.add(chatroomId);
+        from.query("select id, sender_id from message where id in (" + placeholders(replyToIds.size()) + ") and chatroom_id <> ?",
+                (RowCallbackHandler) rs -> senderOfOriginal.put(rs.getLong("id"), rs.getLong("sender_id")), args.toArray());
+        Map<Long, String> senderNames = senderNames(senderOfOriginal.values());
+        for (Map<String, Object> row : rows) {
+            Number replyToId = (Number) row.get("reply_to_id");
+            if (replyToId != null && senderOfOriginal.containsKey(replyToId.longValue())) {
+                row.put("reply_to_id", null);
+                row.put("forwarded_from_id", replyToId.longValue());
+                row.put("forwarded_from_sender_name", senderNames.get(senderOfOriginal.get(replyToId.longValue())));
+            }
+        }
+    }
+
+    /**
+     * Turns forwards in other chatrooms of the source that still refer to messages of the moved chatroom into plain links,
+     * so the foreign key of those forwards does not block deleting the messages.
+     */
+    private void linkForwardsOf(String chatroomId, String source, JdbcTemplate from) {
+        List<Map<String, Object>> forwards = from.queryForList("""
+                select f.id, m.id as original_id, m.sender_id from message f join message m on m.id = f.reply_to_id
+                where m.chatroom_id = ? and f.chatroom_id <> ?""", chatroomId, chatroomId);
+        if (forwards.isEmpty()) {
+            return;
+        }
+        Map<Long, String> senderNames = senderNames(forwards.stream().map(row -> ((Number) row.get("sender_id")).longValue()).toList());
+        List<Object[]> links = forwards.stream()
+                .map(row -> new Object[]{row.get("original_id"), senderNames.get(((Number) row.get("sender_id")).longValue()), row.get("id")})
+                .toList();
+        transaction(source).executeWithoutResult(status -> from.batchUpdate(
+                "update message set reply_to_id = null, forwarded_from_id = ?, forwarded_from_sender_name = ? where id = ?", links));
+        logger.info("Linked {} forwards of messages of chatroom {} on shard {} by ID", forwards.size(), chatroomId, source);
+    }
+
+    /**
+     * Deletes the messages of a chatroom and their revisions from the source in pages, each in one transaction.
+     * Replies to the messages of a page are unlinked first, the copies on the target keep them.
+     */
+    private void deleteFromSource(String chatroomId, String source, JdbcTemplate from) {
+        JdbcTemplate pages = pages(source);
+        while (true) {
+            List<Long> ids = pages.queryForList("select id from message where chatroom_id = ? order by id", Long.class, chatroomId);
+            if (ids.isEmpty()) {
+                return;
+            }
+            String in = " in (" + placeholders(ids.size()) + ")";
+            transaction(source).executeWithoutResult(status -> {
+                from.update("update message set reply_to_id = null where reply_to_id" + in, ids.toArray());
+                from.update("delete from message_revision where message_id" + in, ids.toArray());
+                from.update("delete from message where id" + in, ids.toArray());
+            });
+        }
+    }
+
+    /**
+     * Finds the names of users, stored on the default shard.
+     */
+    private Map<Long, String> senderNames(Collection<Long> senderIds) {
+        Map<Long, String> names = new HashMap<>();
+        List<Long> ids = List.copyOf(new HashSet<>(senderIds));
+        if (!ids.isEmpty()) {
+            jdbc(ShardRouter.DEFAULT_SHARD).query("select id, user_name from user_details where id in (" + placeholders(ids.size()) + ")",
+                    (RowCallbackHandler) rs -> names.put(rs.getLong("id"), rs.getString("user_name")), ids.toArray());
+        }
+        return names;
+    }
+
+    /**
+     * Inserts rows into a table in batches, with the columns of the first row.
+     */
+    private static void insert(JdbcTemplate jdbc, String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        List<String> columns = new ArrayList<>(rows.getFirst().keySet());
+        String sql = "insert into " + table + " (" + String.join(", ", columns) + ") values ("
+                + columns.stream().map(column -> "?").collect(Collectors.joining(", ")) + ")";
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            List<Object[]> batch = rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())).stream()
+                    .map(row -> columns.stream().map(row::get).toArray())
+                    .toList();
+            jdbc.batchUpdate(sql, batch);
+        }
+    }
+
+    /**
+     * Drops the ID column of a revision, the target shard assigns its own.
+     */
+    private static Map<String, Object> withoutId(Map<String, Object> row) {
+        row.remove("id");
+        return row;
+    }
+
+    private static long idOf(Map<String, Object> row) {
+        return ((Number) row.get("id")).longValue();
+    }
+
+    private static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+
+    private JdbcTemplate jdbc(String shard) {
+        return new JdbcTemplate(dataSource(shard));
+    }
+
+    /**
+     * Returns a JDBC template reading at most one page of rows per query, without database specific limit clauses.
+     */
+    private JdbcTemplate pages(String shard) {
+        JdbcTemplate jdbc = jdbc(shard);
+        jdbc.setMaxRows(BATCH_SIZE);
+        return jdbc;
+    }
+
+    private TransactionTemplate transaction(String shard) {
+        return new TransactionTemplate(new DataSourceTransactionManager(dataSource(shard)));
+    }
+
+    private DataSource dataSource(String shard) {
+        DataSource dataSource = shardDataSources.pools().get(shard);
+        if (dataSource == null) {
+            throw new IllegalArgumentException("Unknown shard: " + shard);
+        }
+        return dataSource;
+    }
+}
@@ -0,0 +1,280 @@
+package com.yaplab.shard;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+/**
+ * Decides which shard stores the messages of a chatroom and runs database work on it.
+ * Shard 0 is the spring.datasource database and keeps everything except messages and their revisions,
+ * message.shards.urls adds shards 1 to N. A chatroom belongs to the shard the consistent hash ring gives it,
+ * unless the rebalancer pinned it to another one.
+ * Work selects its shard before its first statement: onShard and the methods built on it only set the shard,
+ * so they must wrap a whole transaction or run at the start of one that has not run a statement yet,
+ * the read and write methods run the work in a transaction of its own and are safe anywhere.
+ * With a single shard every method runs the work as it is, without new transactions or lookups.
+ */
+@Component
+public class ShardRouter {
+
+    /**
+     * Logger for ShardRouter
+     * This logger is used to log various events and errors in the ShardRouter class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ShardRouter.class);
+
+    /**
+     * Name of the shard holding everything that is not sharded.
+     */
+    public static final String DEFAULT_SHARD = "0";
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final ChatRoomShardRepository chatRoomShardRepository;
+    private final boolean journalEnabled;
+
+    private final List<String> shards;
+    private final ConsistentHashRing ring;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+
+    /**
+     * Chatrooms pinned to another shard than the ring gives them.
+     */
+    private final Map<String, String> pinned = new ConcurrentHashMap<>();
+
+    public ShardRouter(ChatRoomShardRepository chatRoomShardRepository,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${message.shards.urls:}") List<String> shardUrls,
+                       @Value("${message.shards.virtual-nodes:128}") int virtualNodes,
+                       @Value("${message.journal.enabled:false}") boolean journalEnabled) {
+        this.chatRoomShardRepository = chatRoomShardRepository;
+        this.journalEnabled = journalEnabled;
+        this.shards = IntStream.rangeClosed(0, shardUrls.size()).mapToObj(String::valueOf).toList();
+        this.ring = new ConsistentHashRing(shards, virtualNodes);
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.writeTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Loads the pinned chatrooms. Direct sends create the chatroom and insert the message in one transaction,
+     * which cannot span two databases, so with several shards messages must be sent through the journal.
+     */
+    @PostConstruct
+    public void start() {
+        if (!isSharded()) {
+            return;
+        }
+        if (!journalEnabled) {
+            throw new IllegalStateException("Message shards require message.journal.enabled");
+        }
+        chatRoomShardRepository.findAll().forEach(pin -> pinned.put(pin.getChatroomId(), pin.getShard()));
+        logger.info("Messages sharded over {} databases, {} chatrooms pinned", shards.size(), pinned.size());
+    }
+
+    /**
+     * Returns true if there is more than one shard.
+     */
+    public boolean isSharded() {
+        return shards.size() > 1;
+    }
+
+    /**
+     * Returns the shard the connections of the current thread go to.
+     */
+    public String currentShard() {
+        String shard = ShardContext.current();
+        return shard != null ? shard : DEFAULT_SHARD;
+    }
+
+    /**
+     * Returns the names of all shards, the default shard first.
+     */
+    public List<String> shards() {
+        return shards;
+    }
+
+    /**
+     * Returns the shard storing the messages of a chatroom.
+     * @param chatroomId ID of the chatroom
+     * @return name of the shard
+     */
+    public String shardOf(String chatroomId) {
+        if (!isSharded()) {
+            return DEFAULT_SHARD;
+        }
+        String shard = pinned.get(chatroomId);
+        return shard != null ? shard : ring.shardFor(chatroomId);
+    }
+
+    /**
+     * Returns the shard the hash ring gives a chatroom, ignoring pins.
+     */
+    String ringShardOf(String chatroomId) {
+        return ring.shardFor(chatroomId);
+    }
+
+    /**
+     * Pins a chatroom to a shard, or removes the pin if the shard is the one of the ring.
+     * Only changes where the messages are looked for, moving them is up to the caller.
+     * @param chatroomId ID of the chatroom
+     * @param shard name of the shard
+     */
+    void pin(String chatroomId, String shard) {
+        if (!shards.contains(shard)) {
+            throw new IllegalArgumentException("Unknown shard: " + shard);
+        }
+        onShard(DEFAULT_SHARD, () -> writeTransaction.execute(status -> {
+            if (shard.equals(ring.shardFor(chatroomId))) {
+                chatRoomShardRepository.deleteById(chatroomId);
+            } else {
+                chatRoomShardRepository.save(new ChatRoomShard(chatroomId, shard));
+            }
+            return null;
+        }));
+        if (shard.equals(ring.shardFor(chatroomId))) {
+            pinned.remove(chatroomId);
+        } else {
+            pinned.put(chatroomId, shard);
+        }
+    }
+
+    /**
+     * Runs work with its connections on a shard.
+     * @param shard name of the shard
+     * @param work the work, usually a transactional call
+     * @return the result of the work
+     */
+    public <T> T onShard(String shard, Supplier<T> work) {
+        if (!isSharded()) {
+            return work.get();
+        }
+        String outer = ShardContext.current();
+        ShardContext.set(shard);
+        try {
+            return work.get();
+        } finally {
+            ShardContext.set(outer);
+        }
+    }
+
+    /**
+     * Runs work with its connections on the shard of a chatroom.
+     */
+    public <T> T onChatroom(String chatroomId, Supplier<T> work) {
+        return onShard(shardOf(chatroomId), work);
+    }
+
+    /**
+     * Runs work with its connections on the shard storing a message, found from the chatroom of the message.
+     * The shard is not looked up from the message ID, that would ask every shard, so with several shards the caller
+     * has to know the chatroom. The work must check that the message it finds belongs to that chatroom.
+     * @param messageId ID of the message, for the error
+     * @param chatroomId ID of the chatroom of the message, may be null with a single shard
+     */
+    public <T> T onMessage(Long messageId, String chatroomId, Supplier<T> work) {
+        if (!isSharded()) {
+            return work.get();
+        }
+        if (chatroomId == null) {
+            throw new IllegalArgumentException("The chatroom of message " + messageId + " is required when messages are sharded");
+        }
+        return onChatroom(chatroomId, work);
+    }
+
+    /**
+     * Runs a read in a read-only transaction of its own on a shard.
+     */
+    public <T> T readOnShard(String shard, Supplier<T> work) {
+        if (!isSharded()) {
+            return work.get();
+        }
+        return onShard(shard, () -> readTransaction.execute(status -> work.get()));
+    }
+
+    /**
+     * Runs a read in a read-only transaction of its own on the shard of a chatroom.
+     */
+    public <T> T readOnChatroom(String chatroomId, Supplier<T> work) {
+        return readOnShard(shardOf(chatroomId), work);
+    }
+
+    /**
+     * Runs a read in a read-only transaction of its own on the shard storing a message, found from the chatroom of the message.
+     * @param messageId ID of the message, for the error
+     * @param chatroomId ID of the chatroom of the message, may be null with a single shard
+     * @see #onMessage(Long, String, Supplier)
+     */
+    public <T> T readOnMessage(Long messageId, String chatroomId, Supplier<T> work) {
+        return onMessage(messageId, chatroomId, () -> readOnShard(shardOf(chatroomId), work));
+    }
+
+    /**
+     * Runs a read on every shard and concatenates the results, in the order of the shards.
+     */
+    public <T> List<T> readOnEveryShard(Supplier<? extends Collection<T>> work) {
+        if (!isSharded()) {
+            return new ArrayList<>(work.get());
+        }
+        List<T> results = new ArrayList<>();
+        for (String shard : shards) {
+            results.addAll(readOnShard(shard, work));
+        }
+        return results;
+    }
+
+    /**
+     * Runs writes in a transaction of its own on a shard.
+     * With a single shard the writes join the current transaction.
+     */
+    public <T> T writeOnShard(String shard, Supplier<T> work) {
+        if (!isSharded()) {
+            return work.get();
+        }
+        return onShard(shard, () -> writeTransaction.execute(status -> work.get()));
+    }
+
+    /**
+     * Runs writes in a transaction of its own on the default shard.
+     * With a single shard the writes join the current transaction.
+     */
+    public void writeOnDefaultShard(Runnable work) {
+        writeOnShard(DEFAULT_SHARD, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Groups items by the shard of their chatroom.
+     * @param items the items to group
+     * @param chatroomOf returns the chatroom ID of an item
+     * @return the items of every shard that has any, in their original order
+     */
+    public <T> Map<String, List<T>> groupByShard(Collection<T> items, Function<T, String> chatroomOf) {
+        Map<String, List<T>> byShard = new LinkedHashMap<>();
+        for (T item : items) {
+            byShard.computeIfAbsent(shardOf(chatroomOf.apply(item)), shard -> new ArrayList<>()).add(item);
+        }
+        return byShard;
+    }
+}
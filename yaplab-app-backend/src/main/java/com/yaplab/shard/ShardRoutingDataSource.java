@@ -0,0 +1,31 @@
+package com.yaplab.shard;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Sends every connection to the shard set by ShardRouter on the current thread, or to the default shard.
+ * The route is decided when a connection is taken, so the data source must be wrapped in a LazyConnectionDataSourceProxy:
+ * a transaction then takes its real connection on its first statement, after the service selected the shard.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    /**
+     * @param shards data source of every shard by name, including the default shard
+     */
+    public ShardRoutingDataSource(Map<String, DataSource> shards) {
+        setTargetDataSources(new HashMap<>(shards));
+        setDefaultTargetDataSource(shards.get(ShardRouter.DEFAULT_SHARD));
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        String shard = ShardContext.current();
+        return shard != null ? shard : ShardRouter.DEFAULT_SHARD;
+    }
+}
@@ -0,0 +1,86 @@
+package com.yaplab.shard;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Schema changes the shards after the default one need.
+ * Those shards only hold copies of the users, groups, chatrooms and files replicated from the default shard,
+ * so a message can arrive before the rows it refers to. A foreign key from a message to one of those tables would then
+ * reject the insert, and the journal drainer dead-letters entries that are rejected. The keys are dropped on those shards,
+ * the default shard keeps them and still rejects messages of deleted chatrooms. Keys between the sharded tables stay.
+ * Without the keys the drain checks the replicated rows itself before inserting, see MessageService.persistJournaledMessages.
+ */
+public final class ShardSchema {
+
+    /**
+     * Logger for ShardSchema
+     * This logger is used to log the foreign keys dropped on a shard.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ShardSchema.class);
+
+    /**
+     * Tables stored on the shard of their chatroom.
+     */
+    private static final Set<String> SHARDED_TABLES = Set.of("message", "message_revision");
+
+    private ShardSchema() {
+    }
+
+    /**
+     * Drops the foreign keys from the sharded tables to tables stored on the default shard.
+     * Tables that do not exist yet are skipped.
+     * @param shard name of the shard, for the log
+     * @param dataSource data source of a shard other than the default one
+     * @return the number of dropped keys
+     */
+    public static int dropForeignKeysToDefaultShard(String shard, DataSource dataSource) {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            DatabaseMetaData metaData = connection.getMetaData();
+            String quote = metaData.getIdentifierQuoteString().trim();
+            // MySQL before 8.0.19 only knows the foreign key specific form.
+            String drop = metaData.getDatabaseProductName().equals("MySQL") ? " drop foreign key " : " drop constraint ";
+            int dropped = 0;
+            for (String table : SHARDED_TABLES) {
+                for (Map.Entry<String, String> key : foreignKeysToOtherTables(metaData, connection, table).entrySet()) {
+                    statement.execute("alter table " + quote + key.getValue() + quote + drop + quote + key.getKey() + quote);
+                    logger.info("Dropped foreign key {} of table {} on shard {}", key.getKey(), key.getValue(), shard);
+                    dropped++;
+                }
+            }
+            return dropped;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to drop the foreign keys to default shard tables on shard " + shard, e);
+        }
+    }
+
+    /**
+     * Finds the foreign keys of a table that refer to an unsharded table, from key name to the table name as the database stores it.
+     * The table is looked up as written and in upper case, for databases that store unquoted names in upper case.
+     */
+    private static Map<String, String> foreignKeysToOtherTables(DatabaseMetaData metaData, Connection connection, String table) throws SQLException {
+        Map<String, String> keys = new LinkedHashMap<>();
+        for (String name : Set.of(table, table.toUpperCase())) {
+            try (ResultSet importedKeys = metaData.getImportedKeys(connection.getCatalog(), connection.getSchema(), name)) {
+                while (importedKeys.next()) {
+                    String referenced = importedKeys.getString("PKTABLE_NAME");
+                    String keyName = importedKeys.getString("FK_NAME");
+                    if (keyName != null && !SHARDED_TABLES.contains(referenced.toLowerCase())) {
+                        keys.put(keyName, importedKeys.getString("FKTABLE_NAME"));
+                    }
+                }
+            }
+        }
+        return keys;
+    }
+}
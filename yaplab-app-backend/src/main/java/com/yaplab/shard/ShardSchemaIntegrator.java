@@ -0,0 +1,65 @@
+package com.yaplab.shard;
+
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Applies the schema action of the default shard to the other shards while the session factory is built.
+ * Hibernate creates or updates the schema through the routing data source, which only reaches the default shard,
+ * so every other shard is selected in turn and the same action, such as spring.jpa.hibernate.ddl-auto=update, is run on it.
+ * The foreign keys to default shard tables are dropped afterwards, see ShardSchema, as an update adds them back.
+ * Runs before the session factory can be used, so no message reaches a shard without its tables.
+ */
+public class ShardSchemaIntegrator implements Integrator {
+
+    /**
+     * Logger for ShardSchemaIntegrator
+     * This logger is used to log the shards whose schema is provisioned.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(ShardSchemaIntegrator.class);
+
+    private final Map<String, DataSource> shards;
+
+    /**
+     * @param shards data source of every shard by name, including the default shard, which is left to Hibernate
+     */
+    public ShardSchemaIntegrator(Map<String, DataSource> shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext, SessionFactoryImplementor sessionFactory) {
+        Map<String, Object> settings = new HashMap<>(bootstrapContext.getServiceRegistry()
+                .requireService(ConfigurationService.class).getSettings());
+        shards.forEach((shard, dataSource) -> {
+            if (shard.equals(ShardRouter.DEFAULT_SHARD)) {
+                return;
+            }
+            String outer = ShardContext.current();
+            ShardContext.set(shard);
+            try {
+                // Shards are never dropped on close, create-drop leaves them for the next start like create.
+                SchemaManagementToolCoordinator.process(metadata, bootstrapContext.getServiceRegistry(), settings, action -> { });
+            } finally {
+                ShardContext.set(outer);
+            }
+            ShardSchema.dropForeignKeysToDefaultShard(shard, dataSource);
+            logger.info("Schema of shard {} provisioned", shard);
+        });
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+    }
+}
@@ -0,0 +1,23 @@
+package com.yaplab.sync;
+
+import com.yaplab.message.MessageResponseDTO;
+
+import java.util.List;
+
+/**
+ * Changes of one chatroom since the cursor of the client.
+ * New, edited and status changed messages are returned in their current state, deleted messages by ID only.
+ * @param chatroomId ID of the chatroom
+ * @param messages messages that were sent or changed, in change order
+ * @param deletedMessageIds IDs of the messages that were deleted
+ * @param nextCursor cursor to send with the next sync of this chatroom, held back to the commit grace window on the last page
+ * @param hasMore true if the chatroom has more changes than the limit, the client syncs again with nextCursor
+ */
+public record RoomSyncDTO(
+        String chatroomId,
+        List<MessageResponseDTO> messages,
+        List<Long> deletedMessageIds,
+        SyncCursor nextCursor,
+        boolean hasMore
+) {
+}
@@ -0,0 +1,49 @@
+package com.yaplab.sync;
+
+import com.yaplab.user.UserService;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.Principal;
+
+/**
+ * REST Controller for the catch-up sync of clients reconnecting after a dropped WebSocket connection.
+ */
+@RestController
+@RequestMapping("/sync")
+public class SyncController {
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final SyncService syncService;
+    private final UserService userService;
+
+    public SyncController(SyncService syncService, UserService userService) {
+        this.syncService = syncService;
+        this.userService = userService;
+    }
+
+    /**
+     * Returns the messages sent, edited, deleted or changed in status since the cursors of the client,
+     * for the chatrooms of the user that have any changes.
+     * The client stores the nextCursor of every returned chatroom and syncs again while hasMore or hasMoreRooms is set.
+     * @param principal the authenticated user, whose chatrooms are synced
+     * @param request cursors per chatroom, a time for all chatrooms, or both
+     */
+    @PostMapping
+    public ResponseEntity<SyncResponseDTO> sync(
+            Principal principal,
+            @RequestBody SyncRequestDTO request
+    ){
+        try {
+            Long userId = userService.getUserEntityByEmail(principal.getName()).getId();
+            return ResponseEntity.ok(syncService.sync(userId, request));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.yaplab.sync;
+
+import java.time.Instant;
+
+/**
+ * Position in the changes of a chatroom, the last change a client has seen.
+ * Changes are ordered by change time and then by message ID, so two changes at the same time are never skipped.
+ * @param updatedAt change time of the last seen change
+ * @param messageId ID of the message of the last seen change
+ */
+public record SyncCursor(
+        Instant updatedAt,
+        Long messageId
+) {
+}
@@ -0,0 +1,17 @@
+package com.yaplab.sync;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Request of a reconnecting client for the changes it missed.
+ * @param since changes after this time are returned for every chatroom without its own cursor, null to sync only the chatrooms in cursors
+ * @param cursors last seen change per chatroom ID, taken from the nextCursor of the previous sync
+ * @param limit maximum number of changes per chatroom, capped at 200
+ */
+public record SyncRequestDTO(
+        Instant since,
+        Map<String, SyncCursor> cursors,
+        Integer limit
+) {
+}
@@ -0,0 +1,19 @@
+package com.yaplab.sync;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Changes a reconnecting client missed, for the chatrooms that have any.
+ * Chatrooms without changes are left out.
+ * @param rooms changes per chatroom
+ * @param hasMoreRooms true if more chatrooms have changes than one sync returns, the client syncs again with the new cursors
+ * @param serverTime time of the sync less the commit grace window, all changes before it are settled,
+ *                   used as since by a client that has no per-chatroom cursors yet
+ */
+public record SyncResponseDTO(
+        List<RoomSyncDTO> rooms,
+        boolean hasMoreRooms,
+        Instant serverTime
+) {
+}
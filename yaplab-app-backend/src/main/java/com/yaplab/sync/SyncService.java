@@ -0,0 +1,179 @@
+package com.yaplab.sync;
+
+import com.yaplab.chatroom.ChatRoomRepository;
+import com.yaplab.message.MessageChangeRow;
+import com.yaplab.message.MessageMapper;
+import com.yaplab.message.MessageRepository;
+import com.yaplab.message.MessageResponseDTO;
+import com.yaplab.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Service layer for the catch-up sync of reconnecting clients.
+ * Instead of reloading the history of every chatroom, a client sends the last change it saw per chatroom
+ * and gets only what changed since then, so the cost of a reconnect follows the missed activity and not the size of the history.
+ * Every chatroom is read with a bounded range scan of the (chatroom, updated_at, id) index.
+ * The change time is taken when a message is written, not when its transaction commits, so a change can become visible
+ * after later ones were already synced. Cursors are therefore never moved past the commit grace window before the sync,
+ * and the changes within that window are read again by the next sync.
+ */
+@Service
+public class SyncService {
+
+    /**
+     * Logger for SyncService
+     * This logger is used to log various events and errors in the SyncService class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SyncService.class);
+
+    /**
+     * Limits of one sync. Chatrooms over the limits are returned with hasMore and synced again by the client.
+     */
+    private static final int DEFAULT_CHANGES_PER_ROOM = 50;
+    private static final int MAX_CHANGES_PER_ROOM = 200;
+    private static final int MAX_ROOMS_PER_SYNC = 50;
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final ChatRoomRepository chatRoomRepository;
+    private final MessageRepository messageRepository;
+    private final MessageMapper messageMapper;
+    private final ShardRouter shardRouter;
+    private final Duration commitGrace;
+
+    public SyncService(ChatRoomRepository chatRoomRepository, MessageRepository messageRepository, MessageMapper messageMapper, ShardRouter shardRouter,
+                       @Value("${message.sync.commit-grace:PT10S}") Duration commitGrace) {
+        this.chatRoomRepository = chatRoomRepository;
+        this.messageRepository = messageRepository;
+        this.messageMapper = messageMapper;
+        this.shardRouter = shardRouter;
+        this.commitGrace = commitGrace;
+    }
+
+    /**
+     * Gets the changes of the chatrooms of the user since the given cursors.
+     * One query finds the chatrooms with any change since the oldest cursor, then each of them is read from its own cursor
+     * and the current state of all changed messages is loaded in one more query.
+     * Cursors of chatrooms the user does not take part in are ignored.
+     * Changes are ordered by the time they were written. A send committing late can land behind a change that was already
+     * synced, so the cursors returned are no later than the commit grace window before the sync, and the changes within
+     * that window are returned again by the next sync. Clients merge them by message ID, as they do with the messages pushed live.
+     * The chatrooms synced least recently come first, so chatrooms over the room limit are reached by the following syncs
+     * even while the first ones keep changing.
+     * Soft-deleted messages that compaction already purged are not reported, clients offline for longer than the retention reload the history.
+     * With message shards every shard is asked for its chatrooms, so the queries run once per shard holding any of them.
+     * @param userId ID of the user syncing
+     * @param request the cursors of the client
+     * @return the changes of the chatrooms that have any
+     */
+    @Transactional(readOnly = true)
+    public SyncResponseDTO sync(Long userId, SyncRequestDTO request) {
+        Instant settled = Instant.now().minus(commitGrace);
+        Map<String, SyncCursor> requested = request.cursors() != null ? request.cursors() : Map.of();
+        if (request.since() == null && requested.isEmpty()) {
+            throw new IllegalArgumentException("Either since or cursors must be present.");
+        }
+        int limit = Math.max(1, Math.min(request.limit() != null ? request.limit() : DEFAULT_CHANGES_PER_ROOM, MAX_CHANGES_PER_ROOM));
+
+        Map<String, SyncCursor> cursors = new HashMap<>();
+        for (String chatroomId : chatRoomRepository.findChatroomIdsByParticipantId(userId)) {
+            SyncCursor cursor = requested.get(chatroomId);
+            if (cursor == null && request.since() != null) {
+                cursor = new SyncCursor(request.since(), 0L);
+            }
+            if (cursor != null) {
+                if (cursor.updatedAt() == null) {
+                    throw new IllegalArgumentException("Cursor of chatroom " + chatroomId + " has no updatedAt.");
+                }
+                cursors.put(chatroomId, cursor);
+            }
+        }
+        if (cursors.isEmpty()) {
+            return new SyncResponseDTO(List.of(), false, settled);
+        }
+
+        Instant oldest = cursors.values().stream().map(SyncCursor::updatedAt).min(Comparator.naturalOrder()).orElseThrow();
+        List<String> changedRooms = new ArrayList<>();
+        shardRouter.groupByShard(cursors.keySet(), chatroomId -> chatroomId).forEach((shard, chatroomIds) ->
+                changedRooms.addAll(shardRouter.readOnShard(shard, () -> messageRepository.findChatroomIdsChangedSince(chatroomIds, oldest))));
+        changedRooms.sort(Comparator.comparing((String chatroomId) -> cursors.get(chatroomId).updatedAt()).thenComparing(Comparator.naturalOrder()));
+
+        List<PendingRoom> pending = new ArrayList<>();
+        Map<String, List<Long>> liveIdsByShard = new HashMap<>();
+        int scanned = 0;
+        for (String chatroomId : changedRooms) {
+            if (pending.size() == MAX_ROOMS_PER_SYNC) {
+                break;
+            }
+            scanned++;
+            SyncCursor cursor = cursors.get(chatroomId);
+            long afterId = cursor.messageId() != null ? cursor.messageId() : 0L;
+            List<MessageChangeRow> changes = shardRouter.readOnChatroom(chatroomId,
+                    () -> messageRepository.findChangesAfter(chatroomId, cursor.updatedAt(), afterId, Limit.of(limit + 1)));
+            if (changes.isEmpty()) {
+                // Changed after the oldest cursor but not after its own.
+                continue;
+            }
+            boolean hasMore = changes.size() > limit;
+            if (hasMore) {
+                changes = changes.subList(0, limit);
+            }
+            List<Long> liveIds = liveIdsByShard.computeIfAbsent(shardRouter.shardOf(chatroomId), shard -> new ArrayList<>());
+            changes.stream().filter(change -> !Boolean.TRUE.equals(change.softDeleted())).map(MessageChangeRow::id).forEach(liveIds::add);
+            pending.add(new PendingRoom(chatroomId, changes, hasMore));
+        }
+
+        Map<Long, MessageResponseDTO> messagesById = new HashMap<>();
+        liveIdsByShard.forEach((shard, liveIds) -> {
+            if (!liveIds.isEmpty()) {
+                shardRouter.readOnShard(shard, () -> messageRepository.findHistoryRowsByIdIn(liveIds))
+                        .forEach(row -> messagesById.put(row.id(), messageMapper.fromHistoryRow(row)));
+            }
+        });
+
+        List<RoomSyncDTO> rooms = pending.stream().map(room -> toRoomSync(room, messagesById, settled)).toList();
+        boolean hasMoreRooms = scanned < changedRooms.size();
+        logger.debug("Synced {} of {} changed chatrooms for user {}", rooms.size(), changedRooms.size(), userId);
+        return new SyncResponseDTO(rooms, hasMoreRooms, settled);
+    }
+
+    private RoomSyncDTO toRoomSync(PendingRoom room, Map<Long, MessageResponseDTO> messagesById, Instant settled) {
+        List<MessageResponseDTO> messages = room.changes().stream()
+                .filter(change -> !Boolean.TRUE.equals(change.softDeleted()))
+                .map(change -> messagesById.get(change.id()))
+                .filter(Objects::nonNull)
+                .toList();
+        List<Long> deleted = room.changes().stream()
+                .filter(change -> Boolean.TRUE.equals(change.softDeleted()))
+                .map(MessageChangeRow::id)
+                .toList();
+        MessageChangeRow last = room.changes().getLast();
+        SyncCursor next = new SyncCursor(last.updatedAt(), last.id());
+        if (!room.hasMore() && last.updatedAt().isAfter(settled)) {
+            // A later page must still move past the current one, only the last page is held back to re-read the window.
+            next = new SyncCursor(settled, 0L);
+        }
+        return new RoomSyncDTO(room.chatroomId(), messages, deleted, next, room.hasMore());
+    }
+
+    /**
+     * Changes of a chatroom read from the index, waiting for the messages to be loaded.
+     */
+    private record PendingRoom(String chatroomId, List<MessageChangeRow> changes, boolean hasMore) {
+    }
+}
@@ -0,0 +1,57 @@
+package com.yaplab.tracing;
+
+import org.slf4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Logs the routine success-path events of the services, such as a group being looked up or a file being downloaded,
+ * in the mode set by tracing.success-log.mode:
+ * info logs every event at INFO, sampled-debug logs one in tracing.success-log.sample-rate events at DEBUG
+ * and off drops them. In sampled-debug mode nothing is formatted unless DEBUG is enabled for the logger,
+ * so steady-state traffic costs one level check per event. Per-method latencies are recorded by the
+ * {@link TracingAspect} whatever the mode.
+ * Events that change state and are worth an audit trail (registrations, deletions, password changes) keep logging at INFO.
+ */
+@Component
+public class SampledLog {
+
+    /**
+     * Modes of the success-path logging.
+     */
+    public enum Mode { INFO, SAMPLED_DEBUG, OFF }
+
+    private final Mode mode;
+    private final int sampleRate;
+
+    public SampledLog(
+            @Value("${tracing.success-log.mode:info}") Mode mode,
+            @Value("${tracing.success-log.sample-rate:100}") int sampleRate) {
+        this.mode = mode;
+        this.sampleRate = Math.max(sampleRate, 1);
+    }
+
+    public void log(Logger logger, String format, Object arg) {
+        if (mode == Mode.INFO) {
+            logger.info(format, arg);
+        } else if (sampled(logger)) {
+            logger.debug(format, arg);
+        }
+    }
+
+    public void log(Logger logger, String format, Object arg1, Object arg2) {
+        if (mode == Mode.INFO) {
+            logger.info(format, arg1, arg2);
+        } else if (sampled(logger)) {
+            logger.debug(format, arg1, arg2);
+        }
+    }
+
+    private boolean sampled(Logger logger) {
+        return mode == Mode.SAMPLED_DEBUG
+                && logger.isDebugEnabled()
+                && (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0);
+    }
+}
@@ -0,0 +1,163 @@
+package com.yaplab.tracing;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traces every public call into a service class.
+ * The latency of each call is recorded in the yaplab.service.call timer tagged with the class, the method and the outcome,
+ * calls slower than tracing.slow-call-threshold are logged with the IDs and flags they got and the types of their other arguments, at most
+ * tracing.slow-call-samples-per-second times a second so a slow database does not flood the log,
+ * and exceptions are logged with their cause as the earlier logging aspect did.
+ * Timers are looked up once per method and cached, so a call costs two clock reads and a histogram update.
+ */
+@Aspect
+@Component
+public class TracingAspect {
+
+    /**
+     * Logger for TracingAspect
+     * This logger is used to log slow calls and exceptions thrown in the service layers.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(TracingAspect.class);
+
+    private final MeterRegistry registry;
+    private final boolean percentileHistograms;
+    private final long slowCallNanos;
+    private final int slowCallSamplesPerSecond;
+
+    private final Map<Method, MethodTimers> timers = new ConcurrentHashMap<>();
+
+    /**
+     * Start of the current one second sampling window and the slow calls logged in it.
+     */
+    private final AtomicLong sampleWindow = new AtomicLong();
+    private final AtomicInteger samplesInWindow = new AtomicInteger();
+
+    public TracingAspect(
+            MeterRegistry registry,
+            @Value("${tracing.percentile-histograms:true}") boolean percentileHistograms,
+            @Value("${tracing.slow-call-threshold:PT0.25S}") Duration slowCallThreshold,
+            @Value("${tracing.slow-call-samples-per-second:5}") int slowCallSamplesPerSecond) {
+        this.registry = registry;
+        this.percentileHistograms = percentileHistograms;
+        this.slowCallNanos = slowCallThreshold.toNanos();
+        this.slowCallSamplesPerSecond = slowCallSamplesPerSecond;
+    }
+
+    /**
+     * Times a service call and logs it if it was slow or failed.
+     * @param joinPoint the service call
+     * @return the result of the call
+     */
+    @Around("execution(public * com.yaplab..*Service.*(..))")
+    public Object trace(ProceedingJoinPoint joinPoint) throws Throwable {
+        long started = System.nanoTime();
+        boolean failed = false;
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable ex) {
+            failed = true;
+            logFailure(joinPoint, ex);
+            throw ex;
+        } finally {
+            long elapsed = System.nanoTime() - started;
+            MethodTimers methodTimers = timers.computeIfAbsent(((MethodSignature) joinPoint.getSignature()).getMethod(), this::register);
+            (failed ? methodTimers.error : methodTimers.success).record(elapsed, TimeUnit.NANOSECONDS);
+            if (elapsed >= slowCallNanos && trySample()) {
+                logSlowCall(joinPoint, elapsed);
+            }
+        }
+    }
+
+    /**
+     * Logs an exception thrown by a service.
+     * The log contains the name of the class, the method name and the cause if available.
+     */
+    private void logFailure(ProceedingJoinPoint joinPoint, Throwable ex) {
+        logger.error("Exception in {}.{}() with cause = {} and message = {}",
+                joinPoint.getSignature().getDeclaringTypeName(),
+                joinPoint.getSignature().getName(),
+                ex.getCause() != null ? ex.getCause() : "NULL",
+                ex.getMessage(), ex);
+    }
+
+    private void logSlowCall(ProceedingJoinPoint joinPoint, long elapsedNanos) {
+        logger.warn("Slow call {}.{}({}) took {} ms",
+                joinPoint.getSignature().getDeclaringTypeName(),
+                joinPoint.getSignature().getName(),
+                describe(joinPoint.getArgs()),
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+    }
+
+    /**
+     * Describes the arguments of a call for the log.
+     * Only numbers, booleans and enums are written as they are, every other argument by its type:
+     * strings, records and DTOs can carry passwords, tokens or message content, and their toString shows them.
+     */
+    static String describe(Object[] args) {
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < args.length; i++) {
+            if (i > 0) {
+                description.append(", ");
+            }
+            Object arg = args[i];
+            if (arg == null || arg instanceof Number || arg instanceof Boolean || arg instanceof Enum<?>) {
+                description.append(arg);
+            } else {
+                description.append(arg.getClass().getSimpleName());
+            }
+        }
+        return description.toString();
+    }
+
+    /**
+     * Returns true if another slow call may be logged in the current second.
+     */
+    private boolean trySample() {
+        long second = System.nanoTime() / 1_000_000_000L;
+        long window = sampleWindow.get();
+        if (window != second && sampleWindow.compareAndSet(window, second)) {
+            samplesInWindow.set(0);
+        }
+        return samplesInWindow.incrementAndGet() <= slowCallSamplesPerSecond;
+    }
+
+    private MethodTimers register(Method method) {
+        return new MethodTimers(timer(method, "success"), timer(method, "error"));
+    }
+
+    private Timer timer(Method method, String outcome) {
+        return Timer.builder("yaplab.service.call")
+                .description("Latency of calls into the service layer")
+                .tag("class", method.getDeclaringClass().getSimpleName())
+                .tag("method", method.getName())
+                .tag("outcome", outcome)
+                .publishPercentileHistogram(percentileHistograms)
+                .register(registry);
+    }
+
+    /**
+     * Timers of one service method.
+     * @param success timer of the calls that returned
+     * @param error timer of the calls that threw
+     */
+    private record MethodTimers(Timer success, Timer error) {
+    }
+}
@@ -101,14 +101,16 @@ public class UserController {
     }
 
     /**
-     * Searches the list of entire users in the database to provide in the search box.
-     * @param input Any set of characters that can be the email,name or mobile of the user
+     * Searches the users to provide in the search box as the user types.
+     * @param input Any set of characters that can be the start of the email, name or mobile of the user
+     * @param limit Maximum number of users returned
      */
     @GetMapping("/search/{input}")
     public ResponseEntity<List<UserResponseDTO>> findUsers(
-            @PathVariable String input
+            @PathVariable String input,
+            @RequestParam(defaultValue = "20") int limit
     ){
-        List<UserResponseDTO> response = userService.findUser(input);
+        List<UserResponseDTO> response = userService.findUser(input, limit);
         return ResponseEntity.ok(response);
     }
 
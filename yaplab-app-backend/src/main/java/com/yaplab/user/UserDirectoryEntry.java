@@ -0,0 +1,16 @@
+package com.yaplab.user;
+
+/**
+ * A flat view of a user holding only the fields searchable in the user directory.
+ * @param id UserId of the user
+ * @param userName UserName of the user
+ * @param emailId EmailId of the user
+ * @param mobileNumber MobileNumber of the user
+ */
+public record UserDirectoryEntry(
+        Long id,
+        String userName,
+        String emailId,
+        String mobileNumber
+) {
+}
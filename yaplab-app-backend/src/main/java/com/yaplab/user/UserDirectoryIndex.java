@@ -0,0 +1,365 @@
+package com.yaplab.user;
+
+import com.yaplab.transaction.AfterCommit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory prefix index of the user directory used for search and typeahead.
+ * Every user is indexed under their name, each word of their name, their email and their mobile number.
+ * Terms are kept in a sorted map, so all terms starting with a prefix are one contiguous range
+ * that is found in logarithmic time, the same walk a trie would do but with far fewer objects per user.
+ * The users of a term are a sorted array of IDs, so most terms, which belong to a single user, cost one small array.
+ * Searches read the arrays without locking, a change publishes a new array or a longer view of the same one.
+ * Searches walk the matching terms from the best score down and stop once they have enough users,
+ * so a prefix shared by many users is not ranked user by user.
+ * The index is loaded once on startup and kept in sync by the register, update and delete paths.
+ * Changes are applied one at a time under a lock, a user changed while the index loads is not overwritten
+ * by the older row the load may have read.
+ */
+@Component
+public class UserDirectoryIndex {
+
+    /**
+     * Logger for UserDirectoryIndex
+     * This logger is used to log various events and errors in the UserDirectoryIndex class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(UserDirectoryIndex.class);
+
+    /**
+     * Users are read from the database in batches of this size when the index is loaded.
+     */
+    private static final int LOAD_BATCH_SIZE = 10_000;
+
+    /**
+     * Upper bound of index keys looked at for one search.
+     * Short prefixes such as a single letter match a large part of the directory,
+     * bounding the scan keeps the latency flat at the cost of ranking only the first matches in term order.
+     */
+    private static final int MAX_SCANNED_KEYS = 2_000;
+
+    /**
+     * Separates the term from the field in an index key. Sorts before every other character,
+     * so all keys of a term stay next to each other.
+     */
+    private static final char FIELD_SEPARATOR = '\u0000';
+
+    /**
+     * Fields a term can come from, in the order of their weight in the ranking.
+     */
+    private enum Field {
+        NAME(400),
+        NAME_WORD(300),
+        EMAIL(200),
+        MOBILE(100);
+
+        private final int weight;
+
+        Field(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Index keys (term + separator + field) to the sorted IDs of the users having that term.
+     */
+    private final ConcurrentSkipListMap<String, Posting> postings = new ConcurrentSkipListMap<>();
+
+    /**
+     * Index keys of every user, needed to remove the old terms when a user changes.
+     */
+    private final Map<Long, List<String>> keysByUser = new ConcurrentHashMap<>();
+
+    /**
+     * Users registered, updated or deleted while the index loads. The load skips them, the change is newer than its row.
+     */
+    private final Set<Long> changedWhileLoading = new HashSet<>();
+
+    /**
+     * Guards every change of the index and changedWhileLoading.
+     */
+    private final Object lock = new Object();
+
+    /**
+     * Constructor based dependency injection
+     */
+    private final UserRepository userRepository;
+
+    /**
+     * Set once the whole directory is loaded. Until then searches fall back to the database.
+     */
+    private volatile boolean ready = false;
+
+    public UserDirectoryIndex(UserRepository userRepository) {
+        this.userRepository = userRepository;
+    }
+
+    /**
+     * Loads every user into the index once the application is ready.
+     * Users are read as flat rows in ID order so no entity associations are loaded.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long started = System.currentTimeMillis();
+        long lastId = 0;
+        int loaded = 0;
+        List<UserDirectoryEntry> batch;
+        do {
+            batch = userRepository.findDirectoryEntriesAfter(lastId, Limit.of(LOAD_BATCH_SIZE));
+            for (UserDirectoryEntry entry : batch) {
+                synchronized (lock) {
+                    if (!changedWhileLoading.contains(entry.id())) {
+                        put(entry);
+                    }
+                }
+            }
+            loaded += batch.size();
+            if (!batch.isEmpty()) {
+                lastId = batch.get(batch.size() - 1).id();
+            }
+        } while (batch.size() == LOAD_BATCH_SIZE);
+        synchronized (lock) {
+            ready = true;
+            changedWhileLoading.clear();
+        }
+        logger.info("User directory index loaded with {} users in {} ms", loaded, System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Returns true once the directory is loaded and searches can be served from memory.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Adds or updates the user once the surrounding transaction commits.
+     * @param user the saved user
+     */
+    public void putAfterCommit(User user) {
+        UserDirectoryEntry entry = new UserDirectoryEntry(user.getId(), user.getUserName(), user.getEmailId(), user.getMobileNumber());
+        AfterCommit.run(() -> change(entry.id(), () -> put(entry)));
+    }
+
+    /**
+     * Removes the user once the surrounding transaction commits.
+     * @param userId ID of the deleted user
+     */
+    public void removeAfterCommit(Long userId) {
+        AfterCommit.run(() -> change(userId, () -> remove(userId)));
+    }
+
+    /**
+     * Finds the users with a name, name word, email or mobile number starting with the input.
+     * Exact matches rank above prefix matches, names above emails above mobile numbers,
+     * and shorter terms (closer to what was typed) above longer ones.
+     * @param input the typed characters
+     * @param limit maximum number of users returned
+     * @return IDs of the best matching users, best first
+     */
+    public List<Long> search(String input, int limit) {
+        String prefix = normalize(input);
+        if (prefix.isEmpty()) {
+            return List.of();
+        }
+        NavigableMap<String, Posting> range = postings.subMap(prefix, true, prefix + Character.MAX_VALUE, true);
+        List<ScoredPosting> matches = new ArrayList<>();
+        for (Map.Entry<String, Posting> posting : range.entrySet()) {
+            if (matches.size() == MAX_SCANNED_KEYS) {
+                break;
+            }
+            String key = posting.getKey();
+            int separator = key.lastIndexOf(FIELD_SEPARATOR);
+            Field field = Field.values()[key.charAt(separator + 1) - '0'];
+            int termLength = separator;
+            int score = field.weight
+                    + (termLength == prefix.length() ? 1000 : 0)
+                    - Math.min(termLength - prefix.length(), 99);
+            matches.add(new ScoredPosting(score, posting.getValue()));
+        }
+        matches.sort(Comparator.comparingInt(ScoredPosting::score).reversed());
+
+        // A user first met in a score group has that group's score as their best, ties are ranked by ID
+        List<Long> results = new ArrayList<>(limit);
+        Set<Long> seen = new HashSet<>();
+        int group = 0;
+        while (group < matches.size() && results.size() < limit) {
+            int groupEnd = group;
+            while (groupEnd < matches.size() && matches.get(groupEnd).score() == matches.get(group).score()) {
+                groupEnd++;
+            }
+            int needed = limit - results.size();
+            List<Long> candidates = new ArrayList<>();
+            for (ScoredPosting match : matches.subList(group, groupEnd)) {
+                Posting users = match.users();
+                int taken = 0;
+                for (int i = 0; i < users.size() && taken < needed; i++) {
+                    if (!seen.contains(users.ids()[i])) {
+                        candidates.add(users.ids()[i]);
+                        taken++;
+                    }
+                }
+            }
+            candidates.stream().distinct().sorted().limit(needed).forEach(userId -> {
+                results.add(userId);
+                seen.add(userId);
+            });
+            group = groupEnd;
+        }
+        return results;
+    }
+
+    /**
+     * Applies a change of a user, remembering the user while the index loads.
+     */
+    private void change(Long userId, Runnable change) {
+        synchronized (lock) {
+            if (!ready) {
+                changedWhileLoading.add(userId);
+            }
+            change.run();
+        }
+    }
+
+    /**
+     * Replaces the terms of a user with the terms of the given entry. Called under the lock.
+     */
+    void put(UserDirectoryEntry entry) {
+        List<String> keys = keysOf(entry);
+        List<String> previous = keysByUser.put(entry.id(), keys);
+        if (previous != null) {
+            removeKeys(entry.id(), previous);
+        }
+        for (String key : keys) {
+            postings.compute(key, (k, users) -> with(users, entry.id()));
+        }
+    }
+
+    /**
+     * Removes every term of a user. Called under the lock.
+     */
+    void remove(Long userId) {
+        List<String> previous = keysByUser.remove(userId);
+        if (previous != null) {
+            removeKeys(userId, previous);
+        }
+    }
+
+    private void removeKeys(Long userId, List<String> keys) {
+        for (String key : keys) {
+            postings.computeIfPresent(key, (k, users) -> without(users, userId));
+        }
+    }
+
+    /**
+     * Returns the users of a term with the user added.
+     * A user with a higher ID than all others, as on load and on registration, is appended in place
+     * when the array has room, searches holding the shorter view never look past its size.
+     * Any other change copies the array.
+     */
+    private static Posting with(Posting users, long userId) {
+        if (users == null) {
+            return new Posting(new long[]{userId}, 1);
+        }
+        long[] ids = users.ids();
+        int size = users.size();
+        if (userId > ids[size - 1]) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(size + (size >> 1), size + 1));
+            }
+            ids[size] = userId;
+            return new Posting(ids, size + 1);
+        }
+        int index = Arrays.binarySearch(ids, 0, size, userId);
+        if (index >= 0) {
+            return users;
+        }
+        int insertAt = -index - 1;
+        long[] copy = new long[size + 1];
+        System.arraycopy(ids, 0, copy, 0, insertAt);
+        copy[insertAt] = userId;
+        System.arraycopy(ids, insertAt, copy, insertAt + 1, size - insertAt);
+        return new Posting(copy, size + 1);
+    }
+
+    /**
+     * Returns the users of a term without the user in a copied array, null if none are left.
+     */
+    private static Posting without(Posting users, long userId) {
+        long[] ids = users.ids();
+        int size = users.size();
+        int index = Arrays.binarySearch(ids, 0, size, userId);
+        if (index < 0) {
+            return users;
+        }
+        if (size == 1) {
+            return null;
+        }
+        long[] copy = new long[size - 1];
+        System.arraycopy(ids, 0, copy, 0, index);
+        System.arraycopy(ids, index + 1, copy, index, size - index - 1);
+        return new Posting(copy, size - 1);
+    }
+
+    /**
+     * The users of a term, the first size IDs of the array in ascending order.
+     */
+    private record Posting(long[] ids, int size) {
+    }
+
+    /**
+     * The users of a term matching a search, with the score of the term.
+     */
+    private record ScoredPosting(int score, Posting users) {
+    }
+
+    /**
+     * Builds the index keys of a user.
+     */
+    private List<String> keysOf(UserDirectoryEntry entry) {
+        List<String> keys = new ArrayList<>(6);
+        String name = normalize(entry.userName());
+        if (!name.isEmpty()) {
+            keys.add(key(name, Field.NAME));
+            String[] words = name.split("\\s+");
+            if (words.length > 1) {
+                for (String word : words) {
+                    keys.add(key(word, Field.NAME_WORD));
+                }
+            }
+        }
+        String email = normalize(entry.emailId());
+        if (!email.isEmpty()) {
+            keys.add(key(email, Field.EMAIL));
+        }
+        String mobile = normalize(entry.mobileNumber());
+        if (!mobile.isEmpty()) {
+            keys.add(key(mobile, Field.MOBILE));
+        }
+        return keys;
+    }
+
+    private static String key(String term, Field field) {
+        return term + FIELD_SEPARATOR + field.ordinal();
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,7 +1,10 @@
 package com.yaplab.user;
 
 import com.yaplab.enums.UserStatus;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -35,4 +38,18 @@ public interface UserRepository extends JpaRepository<User, Long> {
     List<User> findDistinctByUserNameIgnoreCaseOrEmailIdIgnoreCaseOrMobileNumber(
             String userName, String emailId, String mobileNumber
     );
+
+    /**
+     * Reads the next batch of users for the user directory index in ID order.
+     * @param afterId ID of the last user of the previous batch, 0 for the first batch
+     * @param limit maximum number of users in the batch
+     * @return the searchable fields of the users after the given ID
+     */
+    @Query("""
+            select new com.yaplab.user.UserDirectoryEntry(u.id, u.userName, u.emailId, u.mobileNumber)
+            from User u
+            where u.id > :afterId
+            order by u.id
+            """)
+    List<UserDirectoryEntry> findDirectoryEntriesAfter(@Param("afterId") Long afterId, Limit limit);
 }
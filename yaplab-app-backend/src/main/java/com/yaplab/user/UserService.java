@@ -1,7 +1,10 @@
 package com.yaplab.user;
 
+import com.yaplab.cache.SingleFlight;
 import com.yaplab.enums.UserStatus;
 import com.yaplab.security.authentication.*;
+import com.yaplab.tracing.SampledLog;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.transaction.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,13 +41,28 @@ public class UserService {
     private final BCryptPasswordEncoder passwordEncoder;
     private final EmailService emailService;
     private final EmailVerificationTokenRepository emailVerificationTokenRepository;
+    private final UserDirectoryIndex userDirectoryIndex;
+    private final SampledLog sampledLog;
 
-    public UserService(UserRepository userRepository, UserMapper userMapper, BCryptPasswordEncoder passwordEncoder, EmailService emailService, EmailVerificationTokenRepository emailVerificationTokenRepository) {
+    /**
+     * Concurrent lookups of the same user share one load.
+     */
+    private final SingleFlight<Long, UserResponseDTO> userLoads;
+
+    /**
+     * Maximum number of users returned by a search.
+     */
+    private static final int MAX_SEARCH_RESULTS = 50;
+
+    public UserService(UserRepository userRepository, UserMapper userMapper, BCryptPasswordEncoder passwordEncoder, EmailService emailService, EmailVerificationTokenRepository emailVerificationTokenRepository, UserDirectoryIndex userDirectoryIndex, SampledLog sampledLog, MeterRegistry meterRegistry) {
         this.userRepository = userRepository;
         this.userMapper = userMapper;
         this.passwordEncoder = passwordEncoder;
         this.emailService = emailService;
         this.emailVerificationTokenRepository = emailVerificationTokenRepository;
+        this.userDirectoryIndex = userDirectoryIndex;
+        this.sampledLog = sampledLog;
+        this.userLoads = new SingleFlight<>("user", meterRegistry);
     }
 
     /**
@@ -96,6 +114,7 @@ public class UserService {
         user.setPassword(passwordEncoder.encode(registerRequestDTO.password()));
         user.setCreatedAt(Instant.now());
         userRepository.save(user);
+        userDirectoryIndex.putAfterCommit(user);
 
         String token = UUID.randomUUID().toString();
         Instant expiry = Instant.now().plusSeconds(1800);
@@ -120,23 +139,26 @@ public class UserService {
         userRepository.findById(userId).ifPresent(user -> {
             user.setStatus(UserStatus.OFFLINE);
             userRepository.save(user);
-            logger.info("User disconnected: {}", user.getEmailId());
+            sampledLog.log(logger, "User disconnected: {}", user.getEmailId());
         });
     }
 
     /**
      * Gets the user by the given ID from the database.
      * This method is used to fetch user details for various purposes.
+     * Concurrent lookups of the same user share one query.
      * @param id ID of the user.
      * @return The User of that id or null if user is not found
      */
     public UserResponseDTO getUserByID(Long id) {
-        User user = userRepository.findById(id)
-                .orElseThrow(() -> {
-                    logger.warn("User not found with ID: {}", id);
-                    return new IllegalArgumentException("User not found");
-                });
-        return userMapper.toResponseDTO(user);
+        return userLoads.load(id, () -> {
+            User user = userRepository.findById(id)
+                    .orElseThrow(() -> {
+                        logger.warn("User not found with ID: {}", id);
+                        return new IllegalArgumentException("User not found");
+                    });
+            return userMapper.toResponseDTO(user);
+        });
     }
 
     /**
@@ -154,18 +176,32 @@ public class UserService {
 
     /**
      * Finds the list of users with the searched set of characters
-     * User can search by emailId or username or by mobile number.
+     * User can search by the start of their username, any word of it, their emailId or their mobile number.
+     * Matches come ranked from the in-memory user directory index and only the returned users are loaded.
+     * While the index is still loading on startup the exact-match database query is used instead.
      * This method is used to fetch user details for search functionality.
      * @param input the inputted set of characters
-     * @return the list of User response DTO object
+     * @param limit maximum number of users returned, capped at 50
+     * @return the list of User response DTO object, best match first
      */
-    public List<UserResponseDTO> findUser(String input) {
-        List<User> users = userRepository.findDistinctByUserNameIgnoreCaseOrEmailIdIgnoreCaseOrMobileNumber(
-                input, input, input
-        );
-        logger.info("User search performed for input: {}", input);
-        return users
+    public List<UserResponseDTO> findUser(String input, int limit) {
+        int cappedLimit = Math.max(1, Math.min(limit, MAX_SEARCH_RESULTS));
+        if (!userDirectoryIndex.isReady()) {
+            logger.debug("User directory index not ready, searching database for input: {}", input);
+            return userRepository.findDistinctByUserNameIgnoreCaseOrEmailIdIgnoreCaseOrMobileNumber(input, input, input)
+                    .stream()
+                    .limit(cappedLimit)
+                    .map(userMapper::toResponseDTO)
+                    .collect(Collectors.toList());
+        }
+        List<Long> rankedIds = userDirectoryIndex.search(input, cappedLimit);
+        Map<Long, User> usersById = userRepository.findAllById(rankedIds)
                 .stream()
+                .collect(Collectors.toMap(User::getId, user -> user));
+        logger.debug("User search performed for input: {} with {} results", input, rankedIds.size());
+        return rankedIds.stream()
+                .map(usersById::get)
+                .filter(Objects::nonNull)
                 .map(userMapper::toResponseDTO)
                 .collect(Collectors.toList());
     }
@@ -228,7 +264,9 @@ public class UserService {
         updatedUser.setId(oldUser.getId());
         updatedUser.setUpdatedAt(Instant.now());
         logger.info("User updated: {}", oldUser.getEmailId());
-        return userMapper.toResponseDTO(userRepository.save(oldUser));
+        User savedUser = userRepository.save(oldUser);
+        userDirectoryIndex.putAfterCommit(savedUser);
+        return userMapper.toResponseDTO(savedUser);
     }
 
     /**
@@ -242,6 +280,7 @@ public class UserService {
             throw new IllegalArgumentException("User not found with ID: " + id);
         }
         userRepository.deleteById(id);
+        userDirectoryIndex.removeAfterCommit(id);
         logger.info("User deleted with ID: {}", id);
     }
 
@@ -251,7 +290,7 @@ public class UserService {
      * @return the list of user response DTO object.
      */
     public List<UserResponseDTO> findConnectedOrDisconnectedUsers(UserStatus status) {
-        logger.info("Finding users with status: {}", status);
+        sampledLog.log(logger, "Finding users with status: {}", status);
         return userRepository.findByStatus(status)
                 .stream()
                 .map(userMapper::toResponseDTO)
@@ -0,0 +1,147 @@
+package com.yaplab.websocket;
+
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * STOMP encoder that encodes the shared part of a broadcast frame once for all recipients.
+ * convertAndSend serializes a message to JSON once and the simple broker hands the same payload array to every subscriber,
+ * only the subscription and message-id headers differ between the MESSAGE frames of the recipients.
+ * The rest of the frame (the other headers, the blank line, the body and the terminating NUL) is encoded
+ * on the first recipient and cached by payload identity, every further recipient only encodes its two headers
+ * and copies the cached bytes. Frames with small bodies and frames other than MESSAGE are encoded as usual.
+ */
+public class BroadcastFrameEncoder extends StompEncoder {
+
+    /**
+     * Bodies shorter than this are not worth caching.
+     */
+    private static final int MIN_CACHED_PAYLOAD = 256;
+
+    /**
+     * Slots of the cache. A slot is picked by the identity hash of the payload, a broadcast
+     * being encoded evicts whatever was in its slot, so the cache never holds more than this many payloads.
+     */
+    static final int CACHE_SLOTS = 64;
+
+    private static final byte[] MESSAGE_COMMAND = "MESSAGE\n".getBytes(StandardCharsets.UTF_8);
+
+    private final AtomicReferenceArray<EncodedTail> cache = new AtomicReferenceArray<>(CACHE_SLOTS);
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Map<String, Object> headers, byte[] payload) {
+        if (payload.length < MIN_CACHED_PAYLOAD
+                || StompHeaderAccessor.getCommand(headers) != StompCommand.MESSAGE
+                || !(headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS) instanceof Map<?, ?>)) {
+            return super.encode(headers, payload);
+        }
+        Map<String, List<String>> nativeHeaders = (Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+
+        int slot = System.identityHashCode(payload) & (CACHE_SLOTS - 1);
+        EncodedTail tail = cache.get(slot);
+        if (tail == null || tail.payload != payload || !tail.matches(nativeHeaders)) {
+            tail = EncodedTail.of(nativeHeaders, payload);
+            cache.set(slot, tail);
+        }
+
+        ByteArrayOutputStream frame = new ByteArrayOutputStream(MESSAGE_COMMAND.length + 128 + tail.bytes.length);
+        frame.writeBytes(MESSAGE_COMMAND);
+        for (Map.Entry<String, List<String>> header : nativeHeaders.entrySet()) {
+            if (isPerRecipient(header.getKey())) {
+                writeHeader(frame, header.getKey(), header.getValue());
+            }
+        }
+        frame.writeBytes(tail.bytes);
+        return frame.toByteArray();
+    }
+
+    private static boolean isPerRecipient(String name) {
+        return StompHeaderAccessor.STOMP_SUBSCRIPTION_HEADER.equals(name) || StompHeaderAccessor.STOMP_MESSAGE_ID_HEADER.equals(name);
+    }
+
+    /**
+     * Writes a header the way StompEncoder does for MESSAGE frames, with escaping and one line per value.
+     */
+    private static void writeHeader(ByteArrayOutputStream output, String name, List<String> values) {
+        byte[] encodedName = escape(name).getBytes(StandardCharsets.UTF_8);
+        for (String value : values) {
+            output.writeBytes(encodedName);
+            output.write(':');
+            output.writeBytes(escape(value).getBytes(StandardCharsets.UTF_8));
+            output.write('\n');
+        }
+    }
+
+    private static String escape(String text) {
+        if (text.indexOf('\\') < 0 && text.indexOf(':') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        StringBuilder escaped = new StringBuilder(text.length() + 8);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\' -> escaped.append("\\\\");
+                case ':' -> escaped.append("\\c");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * The encoded shared part of a broadcast frame.
+     * @param payload the body the tail was encoded for, compared by identity
+     * @param sharedHeaders the headers encoded in the tail, a frame only reuses the tail if its headers are the same
+     * @param bytes the shared headers, content-length, blank line, body and NUL
+     */
+    private record EncodedTail(byte[] payload, Map<String, List<String>> sharedHeaders, byte[] bytes) {
+
+        static EncodedTail of(Map<String, List<String>> nativeHeaders, byte[] payload) {
+            Map<String, List<String>> sharedHeaders = new LinkedHashMap<>();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(payload.length + 256);
+            for (Map.Entry<String, List<String>> header : nativeHeaders.entrySet()) {
+                String name = header.getKey();
+                if (isPerRecipient(name) || StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER.equals(name)) {
+                    continue;
+                }
+                sharedHeaders.put(name, List.copyOf(header.getValue()));
+                writeHeader(output, name, header.getValue());
+            }
+            writeHeader(output, StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER, List.of(Integer.toString(payload.length)));
+            output.write('\n');
+            output.writeBytes(payload);
+            output.write(0);
+            return new EncodedTail(payload, sharedHeaders, output.toByteArray());
+        }
+
+        /**
+         * Returns true if the frame has exactly the shared headers this tail was encoded with.
+         */
+        boolean matches(Map<String, List<String>> nativeHeaders) {
+            int shared = 0;
+            for (Map.Entry<String, List<String>> header : nativeHeaders.entrySet()) {
+                String name = header.getKey();
+                if (isPerRecipient(name) || StompHeaderAccessor.STOMP_CONTENT_LENGTH_HEADER.equals(name)) {
+                    continue;
+                }
+                if (!header.getValue().equals(sharedHeaders.get(name))) {
+                    return false;
+                }
+                shared++;
+            }
+            return shared == sharedHeaders.size();
+        }
+    }
+}
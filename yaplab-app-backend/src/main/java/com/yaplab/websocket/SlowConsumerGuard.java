@@ -0,0 +1,212 @@
+package com.yaplab.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Overflow policy for WebSocket clients that do not keep up with what is sent to them.
+ * Every session is wrapped so the time its current socket write has been blocked is known.
+ * While a write is blocked, frames to the session queue in the send buffer of the session,
+ * so once a write has been blocked for websocket.slow-consumer.shed-after, typing indicators and
+ * presence updates to that session are dropped before they reach the buffer, chat messages, edits and
+ * status receipts are still queued. A session whose write stays blocked for
+ * websocket.slow-consumer.disconnect-after is closed, the client reconnects and reloads the history.
+ * The disconnect happens before the send time limit of the transport would terminate the session anyway,
+ * so it is counted here. Drops are counted in yaplab.websocket.frames.dropped,
+ * disconnects in yaplab.websocket.slow-consumer.disconnects.
+ */
+@Component
+public class SlowConsumerGuard {
+
+    /**
+     * Logger for SlowConsumerGuard
+     * This logger is used to log slow consumers being disconnected.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(SlowConsumerGuard.class);
+
+    private final long shedAfterNanos;
+    private final long disconnectAfterNanos;
+
+    /**
+     * Open sessions by ID.
+     */
+    private final Map<String, TrackedSession> sessions = new ConcurrentHashMap<>();
+
+    private final Counter droppedTyping;
+    private final Counter droppedPresence;
+    private final Counter disconnects;
+
+    private final ExecutorChannelInterceptor outboundInterceptor = new SheddingInterceptor();
+
+    public SlowConsumerGuard(
+            MeterRegistry registry,
+            @Value("${websocket.slow-consumer.shed-after:PT1S}") Duration shedAfter,
+            @Value("${websocket.slow-consumer.disconnect-after:PT5S}") Duration disconnectAfter) {
+        this.shedAfterNanos = shedAfter.toNanos();
+        this.disconnectAfterNanos = disconnectAfter.toNanos();
+        this.droppedTyping = droppedCounter(registry, "typing");
+        this.droppedPresence = droppedCounter(registry, "presence");
+        this.disconnects = Counter.builder("yaplab.websocket.slow-consumer.disconnects")
+                .description("Sessions closed because their client stopped reading")
+                .register(registry);
+        Gauge.builder("yaplab.websocket.slow-consumer.sessions", this, SlowConsumerGuard::countShedding)
+                .description("Sessions whose frames are currently being shed")
+                .register(registry);
+    }
+
+    /**
+     * Wraps the WebSocket handler so every session opened through it is tracked.
+     * @param handler the handler of the STOMP endpoint
+     * @return the decorated handler
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                TrackedSession tracked = new TrackedSession(session);
+                sessions.put(session.getId(), tracked);
+                super.afterConnectionEstablished(tracked);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                sessions.remove(session.getId());
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    /**
+     * Returns the interceptor of the client outbound channel that drops frames to slow sessions.
+     * It runs right before the frame is handed to the session, after any reordering by the channel,
+     * and returning null there still releases the next frame when the publish order is preserved.
+     */
+    public ExecutorChannelInterceptor outboundInterceptor() {
+        return outboundInterceptor;
+    }
+
+    /**
+     * Closes the sessions whose write has been blocked for too long.
+     * The close runs on its own virtual thread, closing a session can block on the same stalled socket.
+     */
+    @Scheduled(fixedDelayString = "${websocket.slow-consumer.check-interval-ms:1000}")
+    public void disconnectStalledSessions() {
+        long now = System.nanoTime();
+        for (TrackedSession session : sessions.values()) {
+            if (session.stalledNanos(now) >= disconnectAfterNanos && sessions.remove(session.getId(), session)) {
+                disconnects.increment();
+                logger.warn("Closing WebSocket session {}: client has not read for {} ms",
+                        session.getId(), session.stalledNanos(now) / 1_000_000);
+                Thread.startVirtualThread(() -> close(session));
+            }
+        }
+    }
+
+    private void close(TrackedSession session) {
+        try {
+            session.getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException e) {
+            logger.debug("Failed to close slow WebSocket session {}", session.getId(), e);
+        }
+    }
+
+    private double countShedding() {
+        long now = System.nanoTime();
+        return sessions.values().stream().filter(session -> session.stalledNanos(now) >= shedAfterNanos).count();
+    }
+
+    /**
+     * Returns the counter of frames dropped for slow sessions, null if the frame is never dropped.
+     * Typing indicators go to /topic/chat/{chatroomId}/typing. Presence updates are the user status broadcast
+     * on /topic/status and the join and leave notices on /topic/{chatroomId}.
+     */
+    private Counter sheddableCounter(String destination) {
+        if (destination == null || !destination.startsWith("/topic/")) {
+            return null;
+        }
+        if (destination.endsWith("/typing")) {
+            return droppedTyping;
+        }
+        if (destination.indexOf('/', "/topic/".length()) < 0) {
+            return droppedPresence;
+        }
+        return null;
+    }
+
+    private static Counter droppedCounter(MeterRegistry registry, String type) {
+        return Counter.builder("yaplab.websocket.frames.dropped")
+                .description("Frames not sent to sessions whose client was not reading")
+                .tag("type", type)
+                .register(registry);
+    }
+
+    private class SheddingInterceptor implements ExecutorChannelInterceptor {
+
+        @Override
+        public Message<?> beforeHandle(Message<?> message, MessageChannel channel, MessageHandler handler) {
+            TrackedSession session = sessions.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+            if (session == null || session.stalledNanos(System.nanoTime()) < shedAfterNanos) {
+                return message;
+            }
+            Counter dropped = sheddableCounter(SimpMessageHeaderAccessor.getDestination(message.getHeaders()));
+            if (dropped == null) {
+                return message;
+            }
+            dropped.increment();
+            return null;
+        }
+    }
+
+    /**
+     * A session that knows since when its current write has been blocked.
+     * Writes to a session are serialized by the send buffer in front of it, so there is at most one at a time.
+     */
+    private static class TrackedSession extends WebSocketSessionDecorator {
+
+        /**
+         * System.nanoTime() the current write started at, 0 while no write is in progress.
+         */
+        private volatile long sendStartedNanos = 0;
+
+        private TrackedSession(WebSocketSession session) {
+            super(session);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            sendStartedNanos = System.nanoTime() | 1;
+            try {
+                super.sendMessage(message);
+            } finally {
+                sendStartedNanos = 0;
+            }
+        }
+
+        long stalledNanos(long now) {
+            long started = sendStartedNanos;
+            return started == 0 ? 0 : now - started;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.yaplab.archive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.yaplab.enums.MessageStatus;
+import com.yaplab.message.MessageResponseDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Writing archive segments and reading them back, by page and by ID, also after a restart.
+ */
+class MessageArchiveTest {
+
+    private static final String CHATROOM = "group_1";
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void pagesReadBackNewestFirstAcrossBlocksAndSegments() {
+        MessageArchive archive = new MessageArchive(objectMapper, dir.toString());
+        archive.append(CHATROOM, messages(1, 300));
+        archive.append(CHATROOM, messages(301, 400));
+
+        List<MessageResponseDTO> latest = archive.readBefore(CHATROOM, null, null, 50);
+        List<MessageResponseDTO> older = archive.readBefore(CHATROOM, latest.getLast().timestamp(), latest.getLast().id(), 200);
+
+        assertThat(ids(latest)).isEqualTo(range(400, 351));
+        assertThat(ids(older)).isEqualTo(range(350, 151));
+        assertThat(older.getFirst().content()).isEqualTo("message 350");
+        assertThat(archive.newestTimestamp(CHATROOM)).isEqualTo(timestampOf(400));
+    }
+
+    @Test
+    void cursorInsideOneMillisecondSkipsNothing() {
+        MessageArchive archive = new MessageArchive(objectMapper, dir.toString());
+        List<MessageResponseDTO> sameTime = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) {
+            sameTime.add(message(id, START));
+        }
+        archive.append(CHATROOM, sameTime);
+
+        List<MessageResponseDTO> first = archive.readBefore(CHATROOM, null, null, 2);
+        List<MessageResponseDTO> second = archive.readBefore(CHATROOM, first.getLast().timestamp(), first.getLast().id(), 2);
+        List<MessageResponseDTO> third = archive.readBefore(CHATROOM, second.getLast().timestamp(), second.getLast().id(), 2);
+
+        assertThat(ids(first)).containsExactly(5L, 4L);
+        assertThat(ids(second)).containsExactly(3L, 2L);
+        assertThat(ids(third)).containsExactly(1L);
+        assertThat(archive.readBefore(CHATROOM, START, null, 10)).isEmpty();
+    }
+
+    @Test
+    void segmentsAreReadFromDiskAfterARestart() {
+        new MessageArchive(objectMapper, dir.toString()).append(CHATROOM, messages(1, 200));
+
+        MessageArchive reopened = new MessageArchive(objectMapper, dir.toString());
+
+        assertThat(ids(reopened.readBefore(CHATROOM, null, null, 1000))).isEqualTo(range(200, 1));
+        assertThat(reopened.readBefore(CHATROOM, null, null, 1).getFirst()).isEqualTo(message(200, timestampOf(200)));
+    }
+
+    @Test
+    void incompleteSegmentsAreIgnored() throws IOException {
+        new MessageArchive(objectMapper, dir.toString()).append(CHATROOM, messages(1, 10));
+        Files.write(dir.resolve(CHATROOM).resolve("0000000000000000011-0000000000000000020.seg"), new byte[]{1, 2, 3});
+
+        MessageArchive reopened = new MessageArchive(objectMapper, dir.toString());
+
+        assertThat(ids(reopened.readBefore(CHATROOM, null, null, 100))).isEqualTo(range(10, 1));
+    }
+
+    @Test
+    void messagesAreFoundByIdAndSendTime() {
+        MessageArchive archive = new MessageArchive(objectMapper, dir.toString());
+        archive.append(CHATROOM, messages(1, 500));
+
+        List<MessageResponseDTO> found = archive.readByIds(CHATROOM, Map.of(
+                7L, timestampOf(7),
+                300L, timestampOf(300),
+                999L, timestampOf(999)));
+
+        assertThat(ids(found)).containsExactlyInAnyOrder(7L, 300L);
+    }
+
+    @Test
+    void everyBlockOfEveryChatroomIsVisited() {
+        MessageArchive archive = new MessageArchive(objectMapper, dir.toString());
+        archive.append(CHATROOM, messages(1, 300));
+        archive.append("group_2", messages(301, 310));
+
+        List<Long> visited = new ArrayList<>();
+        new MessageArchive(objectMapper, dir.toString()).forEachBlock(messages -> visited.addAll(ids(messages)));
+
+        assertThat(visited).containsExactlyInAnyOrderElementsOf(range(310, 1));
+    }
+
+    private static List<MessageResponseDTO> messages(long fromId, long toId) {
+        return LongStream.rangeClosed(fromId, toId).mapToObj(id -> message(id, timestampOf(id))).toList();
+    }
+
+    private static MessageResponseDTO message(long id, Instant timestamp) {
+        return new MessageResponseDTO(id, "alice", "message " + id, timestamp, MessageStatus.SENT, null, null, null,
+                null, null, null, null, CHATROOM, false, false, null, 0, id);
+    }
+
+    private static Instant timestampOf(long id) {
+        return START.plusSeconds(id);
+    }
+
+    private static List<Long> ids(List<MessageResponseDTO> messages) {
+        return messages.stream().map(MessageResponseDTO::id).toList();
+    }
+
+    private static List<Long> range(long from, long downTo) {
+        return LongStream.iterate(from, id -> id >= downTo, id -> id - 1).boxed().toList();
+    }
+}
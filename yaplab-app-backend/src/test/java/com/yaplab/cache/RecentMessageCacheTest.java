@@ -0,0 +1,188 @@
+package com.yaplab.cache;
+
+import com.yaplab.enums.MessageStatus;
+import com.yaplab.message.MessageResponseDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Hits and misses, ring buffer order, changes applied after commit, outdated loads and eviction of the recent message cache.
+ */
+class RecentMessageCacheTest {
+
+    private static final String ROOM = "1_2";
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    private final RecentMessageCache cache = new RecentMessageCache(new SimpleMeterRegistry(), true, 3, DataSize.ofKilobytes(64));
+
+    @Test
+    void uncachedChatroomsAreMisses() {
+        assertThat(cache.latest(ROOM, 3)).isNull();
+    }
+
+    @Test
+    void installedPagesAreServedUntilTheyRunShort() {
+        install(cache, ROOM, false, message(1), message(2), message(3));
+
+        assertThat(ids(cache.latest(ROOM, 2))).containsExactly(2L, 3L);
+        assertThat(ids(cache.latest(ROOM, 3))).containsExactly(1L, 2L, 3L);
+        assertThat(cache.latest(ROOM, 4)).isNull();
+    }
+
+    @Test
+    void completeChatroomsServePagesOfAnySize() {
+        install(cache, ROOM, true, message(1), message(2));
+
+        assertThat(ids(cache.latest(ROOM, 50))).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void aFullBufferDropsItsOldestMessage() {
+        install(cache, ROOM, true, message(1), message(2), message(3));
+
+        cache.addAfterCommit(message(4));
+
+        assertThat(ids(cache.latest(ROOM, 3))).containsExactly(2L, 3L, 4L);
+        assertThat(cache.latest(ROOM, 4)).isNull();
+    }
+
+    @Test
+    void lateMessagesAreInsertedInSendOrder() {
+        install(cache, ROOM, false, message(1), message(3), message(4));
+
+        cache.addAfterCommit(message(2));
+        cache.addAfterCommit(message(0));
+
+        assertThat(ids(cache.latest(ROOM, 3))).containsExactly(2L, 3L, 4L);
+    }
+
+    @Test
+    void changesWaitForTheTransactionToCommit() {
+        install(cache, ROOM, false, message(1));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.addAfterCommit(message(2));
+            assertThat(ids(cache.latest(ROOM, 1))).containsExactly(1L);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(ids(cache.latest(ROOM, 2))).containsExactly(1L, 2L);
+    }
+
+    @Test
+    void editsAndDeletionsUpdateTheReplyPreviews() {
+        install(cache, ROOM, false, message(1), reply(2, 1L));
+
+        cache.replaceAfterCommit(withContent(message(1), "edited"));
+        assertThat(cache.latest(ROOM, 2).getLast().repliedToMessage().content()).isEqualTo("edited");
+
+        cache.removeAfterCommit(ROOM, 1L);
+        List<MessageResponseDTO> latest = cache.latest(ROOM, 1);
+        assertThat(ids(latest)).containsExactly(2L);
+        assertThat(latest.getFirst().repliedToMessage().id()).isEqualTo(1L);
+        assertThat(latest.getFirst().repliedToMessage().content()).isNull();
+    }
+
+    @Test
+    void forwardsKeepTheCopyTheyWereMadeWith() {
+        install(cache, ROOM, false, message(1), forward(2, 1L));
+
+        cache.replaceAfterCommit(withContent(message(1), "edited"));
+        cache.removeAfterCommit(ROOM, 1L);
+
+        assertThat(cache.latest(ROOM, 1).getFirst().repliedToMessage().content()).isEqualTo("message 1");
+    }
+
+    @Test
+    void patchesOnlyTouchTheirMessage() {
+        install(cache, ROOM, false, message(1), message(2));
+
+        cache.patchAfterCommit(ROOM, 2L, current -> withContent(current, "patched"));
+
+        assertThat(cache.latest(ROOM, 2)).extracting(MessageResponseDTO::content).containsExactly("message 1", "patched");
+    }
+
+    @Test
+    void aPageReadWhileTheChatroomChangedIsNotCached() {
+        RecentMessageCache.Load load = cache.beginLoad(ROOM);
+        cache.addAfterCommit(message(3));
+
+        cache.install(load, List.of(message(1), message(2)), false);
+
+        assertThat(cache.latest(ROOM, 1)).isNull();
+    }
+
+    @Test
+    void aMessageMissingFromTheCacheEvictsItsChatroom() {
+        install(cache, ROOM, false, message(1), message(3));
+
+        cache.confirmAfterCommit(ROOM, 2L);
+
+        assertThat(cache.latest(ROOM, 1)).isNull();
+    }
+
+    @Test
+    void leastRecentlyUsedChatroomsAreEvictedOverBudget() {
+        RecentMessageCache small = new RecentMessageCache(new SimpleMeterRegistry(), true, 3, DataSize.ofBytes(2048));
+        install(small, "1_2", false, message(1), message(2), message(3));
+        install(small, "1_3", false, message(4), message(5), message(6));
+        small.latest("1_2", 1);
+
+        install(small, "1_4", false, message(7), message(8), message(9));
+
+        assertThat(small.latest("1_3", 1)).isNull();
+        assertThat(small.latest("1_2", 1)).isNotNull();
+        assertThat(small.latest("1_4", 1)).isNotNull();
+    }
+
+    @Test
+    void aDisabledCacheNeverHits() {
+        RecentMessageCache disabled = new RecentMessageCache(new SimpleMeterRegistry(), false, 3, DataSize.ofKilobytes(64));
+        install(disabled, ROOM, true, message(1));
+
+        assertThat(disabled.latest(ROOM, 1)).isNull();
+    }
+
+    private static void install(RecentMessageCache cache, String chatroomId, boolean complete, MessageResponseDTO... page) {
+        cache.install(cache.beginLoad(chatroomId), List.of(page), complete);
+    }
+
+    private static List<Long> ids(List<MessageResponseDTO> messages) {
+        return messages.stream().map(MessageResponseDTO::id).toList();
+    }
+
+    private static MessageResponseDTO message(long id) {
+        return reply(id, null);
+    }
+
+    private static MessageResponseDTO reply(long id, Long repliedToId) {
+        MessageResponseDTO.RepliedToMessageDTO repliedTo = repliedToId != null
+                ? new MessageResponseDTO.RepliedToMessageDTO(repliedToId, "alice", "message " + repliedToId)
+                : null;
+        return new MessageResponseDTO(id, "alice", "message " + id, START.plusSeconds(id), MessageStatus.SENT, null, null, null,
+                null, null, null, repliedTo, ROOM, false, false, null, 0, id);
+    }
+
+    private static MessageResponseDTO forward(long id, long originalId) {
+        return new MessageResponseDTO(id, "bob", "message " + originalId, START.plusSeconds(id), MessageStatus.SENT, null, null, null,
+                null, null, null, new MessageResponseDTO.RepliedToMessageDTO(originalId, "alice", "message " + originalId), ROOM,
+                false, true, null, 0, id);
+    }
+
+    private static MessageResponseDTO withContent(MessageResponseDTO message, String content) {
+        return new MessageResponseDTO(message.id(), message.senderName(), content, message.timestamp(), message.messageStatus(),
+                null, null, null, null, null, null, message.repliedToMessage(), message.chatRoomId(), true, false,
+                null, message.revision() + 1, message.seq());
+    }
+}
@@ -0,0 +1,139 @@
+package com.yaplab.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Coalescing of concurrent loads, exceptions passed to the callers that joined, and removal of finished loads.
+ */
+class SingleFlightTest {
+
+    private static final int JOINERS = 4;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>("test", registry);
+    private final ExecutorService callers = Executors.newFixedThreadPool(JOINERS + 1);
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        callers.shutdownNow();
+        callers.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void concurrentLoadsOfAKeyRunTheLoaderOnce() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = startLoads(() -> {
+            runs.incrementAndGet();
+            await(release);
+            return "value";
+        });
+        awaitCollapsed(JOINERS);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo("value");
+        }
+        assertThat(runs).hasValue(1);
+    }
+
+    @Test
+    void callersThatJoinedGetTheSameException() throws Exception {
+        IllegalStateException failure = new IllegalStateException("database down");
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<String>> results = startLoads(() -> {
+            await(release);
+            throw failure;
+        });
+        awaitCollapsed(JOINERS);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertThatThrownBy(() -> result.get(10, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .cause().isSameAs(failure);
+        }
+    }
+
+    @Test
+    void finishedLoadsAreNotReused() {
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThat(singleFlight.load("key", () -> "first " + runs.incrementAndGet())).isEqualTo("first 1");
+        assertThat(singleFlight.load("key", () -> "second " + runs.incrementAndGet())).isEqualTo("second 2");
+    }
+
+    @Test
+    void aFailedLoadIsNotReused() {
+        assertThatThrownBy(() -> singleFlight.load("key", () -> {
+            throw new IllegalStateException("database down");
+        })).isInstanceOf(IllegalStateException.class);
+
+        assertThat(singleFlight.load("key", () -> "value")).isEqualTo("value");
+    }
+
+    @Test
+    void loadsOfDifferentKeysDoNotWaitForEachOther() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> blocked = callers.submit(() -> singleFlight.load("blocked", () -> {
+            await(release);
+            return "blocked";
+        }));
+
+        assertThat(singleFlight.load("other", () -> "other")).isEqualTo("other");
+        release.countDown();
+        assertThat(blocked.get(10, TimeUnit.SECONDS)).isEqualTo("blocked");
+    }
+
+    /**
+     * Starts one caller that runs the loader and waits until it runs, then starts the callers that join it.
+     */
+    private List<Future<String>> startLoads(Supplier<String> loader) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        Future<String> first = callers.submit(() -> singleFlight.load("key", () -> {
+            started.countDown();
+            return loader.get();
+        }));
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+        List<Future<String>> joiners = IntStream.range(0, JOINERS)
+                .mapToObj(i -> callers.submit(() -> singleFlight.load("key", () -> "loaded again")))
+                .toList();
+        return Stream.concat(Stream.of(first), joiners.stream()).toList();
+    }
+
+    private void awaitCollapsed(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (registry.get("yaplab.cache.single-flight.loads").tag("result", "collapsed").counter().count() < count) {
+            assertThat(System.nanoTime()).isLessThan(deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.yaplab.datasource;
+
+import com.yaplab.security.AppUserDetails;
+import com.yaplab.user.User;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Routing between two in-memory H2 databases, each holding a row with its own name.
+ */
+class ReplicaRoutingDataSourceTest {
+
+    private static final long ALICE = 1;
+    private static final long BOB = 2;
+
+    private ReadYourWritesTracker tracker;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate readWrite;
+    private TransactionTemplate readOnly;
+
+    @BeforeEach
+    void setUp() {
+        DataSource primary = database("primary");
+        DataSource replica = database("replica");
+        tracker = new ReadYourWritesTracker(Duration.ofMinutes(1));
+        DataSource routing = new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, replica, tracker));
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(routing);
+        jdbc = new JdbcTemplate(routing);
+        readWrite = new TransactionTemplate(transactionManager);
+        readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+    }
+
+    @AfterEach
+    void clearUser() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToTheReplica() {
+        assertThat(readOnlyDatabase()).isEqualTo("replica");
+        assertThat(readWriteDatabase()).isEqualTo("primary");
+    }
+
+    @Test
+    void readsStayOnThePrimaryWhenRequired() {
+        assertThat(DataSourceRouting.onPrimary(this::readOnlyDatabase)).isEqualTo("primary");
+        assertThat(readOnlyDatabase()).isEqualTo("replica");
+    }
+
+    @Test
+    void writerReadsItsOwnWritesFromThePrimary() {
+        signIn(ALICE);
+        readWrite.executeWithoutResult(status -> jdbc.update("update marker set name = name"));
+        assertThat(readOnlyDatabase()).isEqualTo("primary");
+
+        signIn(BOB);
+        assertThat(readOnlyDatabase()).isEqualTo("replica");
+    }
+
+    @Test
+    void rolledBackWritesDoNotPin() {
+        signIn(ALICE);
+        readWrite.executeWithoutResult(status -> {
+            jdbc.update("update marker set name = name");
+            status.setRollbackOnly();
+        });
+        assertThat(readOnlyDatabase()).isEqualTo("replica");
+    }
+
+    @Test
+    void stompFramesPinTheirUserWithoutASecurityContext() {
+        ExecutorChannelInterceptor interceptor = ReadYourWritesTracker.frameUserInterceptor();
+        Message<?> frame = frameOf(ALICE);
+
+        interceptor.beforeHandle(frame, null, null);
+        try {
+            readWrite.executeWithoutResult(status -> jdbc.update("update marker set name = name"));
+            assertThat(readOnlyDatabase()).isEqualTo("primary");
+        } finally {
+            interceptor.afterMessageHandled(frame, null, null, null);
+        }
+
+        assertThat(readOnlyDatabase()).isEqualTo("replica");
+        signIn(ALICE);
+        assertThat(readOnlyDatabase()).isEqualTo("primary");
+    }
+
+    @Test
+    void writesOnBehalfOfASenderPinTheSenderOnceCommitted() {
+        readWrite.executeWithoutResult(status -> {
+            jdbc.update("update marker set name = name");
+            tracker.recordWriteAfterCommit(ALICE);
+        });
+        readWrite.executeWithoutResult(status -> {
+            jdbc.update("update marker set name = name");
+            tracker.recordWriteAfterCommit(BOB);
+            status.setRollbackOnly();
+        });
+
+        signIn(ALICE);
+        assertThat(readOnlyDatabase()).isEqualTo("primary");
+        signIn(BOB);
+        assertThat(readOnlyDatabase()).isEqualTo("replica");
+    }
+
+    private String readOnlyDatabase() {
+        return readOnly.execute(status -> database());
+    }
+
+    private String readWriteDatabase() {
+        return readWrite.execute(status -> database());
+    }
+
+    private String database() {
+        return jdbc.queryForObject("select name from marker", String.class);
+    }
+
+    private static void signIn(long userId) {
+        SecurityContextHolder.getContext().setAuthentication(authenticationOf(userId));
+    }
+
+    private static UsernamePasswordAuthenticationToken authenticationOf(long userId) {
+        User user = new User(userId, "user" + userId, "user" + userId + "@mail.com", "555000" + userId, "secret");
+        return new UsernamePasswordAuthenticationToken(new AppUserDetails(user), null, List.of());
+    }
+
+    private static Message<?> frameOf(long userId) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create();
+        headers.setUser(authenticationOf(userId));
+        return MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders());
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        new JdbcTemplate(dataSource).execute("create table marker (name varchar(16))");
+        new JdbcTemplate(dataSource).update("insert into marker values (?)", name);
+        return dataSource;
+    }
+}
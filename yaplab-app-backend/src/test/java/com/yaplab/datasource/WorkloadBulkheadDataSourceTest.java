@@ -0,0 +1,189 @@
+package com.yaplab.datasource;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Connection limits per workload in front of an in-memory H2 database: waits, rejections, released slots and nested transactions.
+ */
+class WorkloadBulkheadDataSourceTest {
+
+    private static final Duration TIMEOUT = Duration.ofMillis(200);
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService threads = Executors.newFixedThreadPool(4);
+    private final WorkloadBulkheadDataSource bulkhead = new WorkloadBulkheadDataSource(database(),
+            Map.of(Workload.REALTIME, 0, Workload.INTERACTIVE, 1, Workload.BACKGROUND, 2),
+            Map.of(Workload.REALTIME, TIMEOUT, Workload.INTERACTIVE, TIMEOUT, Workload.BACKGROUND, TIMEOUT),
+            registry);
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        threads.shutdownNow();
+        threads.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void aWorkloadAtItsLimitIsRejectedAfterItsTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        holdConnections(Workload.BACKGROUND, 2, release);
+
+        assertThatThrownBy(() -> connectOnOtherThread(Workload.BACKGROUND).get(10, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(SQLTransientConnectionException.class);
+        assertThat(registry.get("yaplab.datasource.bulkhead.rejected").tag("workload", "background").counter().count()).isEqualTo(1);
+
+        release.countDown();
+    }
+
+    @Test
+    void aFullWorkloadDoesNotBlockTheOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        holdConnections(Workload.BACKGROUND, 2, release);
+
+        assertThat(connectOnOtherThread(Workload.INTERACTIVE).get(10, TimeUnit.SECONDS)).isTrue();
+        assertThat(connectOnOtherThread(Workload.REALTIME).get(10, TimeUnit.SECONDS)).isTrue();
+
+        release.countDown();
+    }
+
+    @Test
+    void aConnectionClosedTwiceGivesItsSlotBackOnce() throws Exception {
+        Connection connection = Workload.INTERACTIVE.run(() -> connect());
+        connection.close();
+        connection.close();
+        assertThat(active(Workload.INTERACTIVE)).isZero();
+
+        CountDownLatch release = new CountDownLatch(1);
+        holdConnections(Workload.INTERACTIVE, 1, release);
+        assertThatThrownBy(() -> connectOnOtherThread(Workload.INTERACTIVE).get(10, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(SQLTransientConnectionException.class);
+
+        release.countDown();
+    }
+
+    @Test
+    void aThreadHoldingAConnectionGetsNestedOnesWithoutASlot() throws Exception {
+        Connection outer = Workload.INTERACTIVE.run(() -> connect());
+        Connection nested = Workload.INTERACTIVE.run(() -> connect());
+        assertThat(active(Workload.INTERACTIVE)).isEqualTo(2);
+        assertThatThrownBy(() -> connectOnOtherThread(Workload.INTERACTIVE).get(10, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(SQLTransientConnectionException.class);
+
+        nested.close();
+        outer.close();
+
+        assertThat(active(Workload.INTERACTIVE)).isZero();
+        assertThat(connectOnOtherThread(Workload.INTERACTIVE).get(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void nestedTransactionsDoNotDeadlockWhenEverySlotIsHeld() throws Exception {
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(bulkhead);
+        TransactionTemplate outer = new TransactionTemplate(transactionManager);
+        TransactionTemplate nested = new TransactionTemplate(transactionManager);
+        nested.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        JdbcTemplate jdbc = new JdbcTemplate(bulkhead);
+        CyclicBarrier everySlotHeld = new CyclicBarrier(2);
+
+        List<Future<Integer>> results = List.of(1, 2).stream()
+                .map(i -> threads.submit(() -> Workload.BACKGROUND.run(() -> outer.execute(status -> {
+                    jdbc.queryForObject("select 1", Integer.class);
+                    await(everySlotHeld);
+                    return nested.execute(inner -> jdbc.queryForObject("select 1", Integer.class));
+                }))))
+                .toList();
+
+        for (Future<Integer> result : results) {
+            assertThat(result.get(10, TimeUnit.SECONDS)).isEqualTo(1);
+        }
+        assertThat(active(Workload.BACKGROUND)).isZero();
+    }
+
+    /**
+     * Takes connections of a workload on threads of their own and keeps them until released.
+     */
+    private void holdConnections(Workload workload, int count, CountDownLatch release) throws InterruptedException {
+        CountDownLatch held = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            threads.submit(() -> workload.run(() -> {
+                try (Connection connection = connect()) {
+                    held.countDown();
+                    await(release);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+        assertThat(held.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private Future<Boolean> connectOnOtherThread(Workload workload) {
+        return threads.submit(() -> {
+            Workload outer = workload.enter();
+            try (Connection connection = bulkhead.getConnection()) {
+                return connection.isValid(1);
+            } finally {
+                Workload.exit(outer);
+            }
+        });
+    }
+
+    private Connection connect() {
+        try {
+            return bulkhead.getConnection();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private double active(Workload workload) {
+        return registry.get("yaplab.datasource.bulkhead.active").tag("workload", workload.name().toLowerCase()).gauge().value();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CyclicBarrier barrier) {
+        try {
+            barrier.await(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static JdbcDataSource database() {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:bulkhead-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        return dataSource;
+    }
+}
@@ -0,0 +1,73 @@
+package com.yaplab.files;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * The behaviour every blob store shares, run against each implementation by its subclass.
+ */
+abstract class BlobStoreContractTest {
+
+    /**
+     * Returns an empty store to test.
+     */
+    abstract BlobStore store() throws IOException;
+
+    @Test
+    void storedContentIsReadBack() throws IOException {
+        BlobStore store = store();
+        put(store, "a.txt", "hello");
+
+        assertThat(read(store, "a.txt")).isEqualTo("hello");
+    }
+
+    @Test
+    void putReplacesTheContent() throws IOException {
+        BlobStore store = store();
+        put(store, "a.txt", "first");
+        put(store, "a.txt", "second");
+
+        assertThat(read(store, "a.txt")).isEqualTo("second");
+    }
+
+    @Test
+    void missingKeyIsNotFound() throws IOException {
+        BlobStore store = store();
+
+        assertThatThrownBy(() -> store.get("missing")).isInstanceOf(FileNotFoundException.class);
+    }
+
+    @Test
+    void deletedContentIsGone() throws IOException {
+        BlobStore store = store();
+        put(store, "a.txt", "hello");
+        store.delete("a.txt");
+
+        assertThatThrownBy(() -> store.get("a.txt")).isInstanceOf(FileNotFoundException.class);
+    }
+
+    @Test
+    void deletingAMissingKeyDoesNothing() throws IOException {
+        BlobStore store = store();
+        store.delete("missing");
+    }
+
+    static void put(BlobStore store, String key, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        store.put(key, new ByteArrayInputStream(bytes), bytes.length, "text/plain");
+    }
+
+    static String read(BlobStore store, String key) throws IOException {
+        try (InputStream in = store.get(key)) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.yaplab.files;
+
+class InMemoryBlobStoreTest extends BlobStoreContractTest {
+
+    @Override
+    BlobStore store() {
+        return new InMemoryBlobStore();
+    }
+}
@@ -0,0 +1,26 @@
+package com.yaplab.files;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LocalBlobStoreTest extends BlobStoreContractTest {
+
+    @TempDir
+    Path dir;
+
+    @Override
+    BlobStore store() {
+        return new LocalBlobStore(dir.resolve("uploads").toString());
+    }
+
+    @Test
+    void keysCannotEscapeTheDirectory() {
+        BlobStore store = store();
+
+        assertThatThrownBy(() -> put(store, "../outside.txt", "x")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
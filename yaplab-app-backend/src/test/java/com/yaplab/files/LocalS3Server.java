@@ -0,0 +1,399 @@
+package com.yaplab.files;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * S3 compatible server holding one bucket in memory, reached over HTTP with path style requests like a local MinIO.
+ * Implements the object calls of S3BlobStore: put, multipart upload, get, delete and presigned GETs.
+ * Every request must carry a valid AWS Signature Version 4 for the configured keys, in the Authorization header
+ * or, for presigned URLs, in the query together with an expiry that has not passed, otherwise it is rejected with 403.
+ * Non-final parts of a multipart upload must be at least 5 MB, as on S3.
+ */
+class LocalS3Server implements AutoCloseable {
+
+    static final String ACCESS_KEY = "local-access-key";
+    static final String SECRET_KEY = "local-secret-key";
+    static final String REGION = "us-east-1";
+
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String STREAMING_PAYLOAD = "STREAMING-AWS4-HMAC-SHA256-PAYLOAD";
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'").withZone(ZoneOffset.UTC);
+    private static final Pattern AUTHORIZATION = Pattern.compile(
+            "AWS4-HMAC-SHA256 Credential=([^,]+), ?SignedHeaders=([^,]+), ?Signature=([0-9a-f]+)");
+    private static final Pattern PART_NUMBER = Pattern.compile("<PartNumber>(\\d+)</PartNumber>");
+
+    /**
+     * An object of the bucket.
+     */
+    record StoredObject(byte[] content, String contentType, String etag) {
+    }
+
+    /**
+     * A multipart upload in progress, with its parts by number.
+     */
+    private record MultipartUpload(String key, String contentType, Map<Integer, byte[]> parts) {
+    }
+
+    private final String bucket;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final Map<String, StoredObject> objects = new ConcurrentHashMap<>();
+    private final Map<String, MultipartUpload> uploads = new ConcurrentHashMap<>();
+    private final AtomicInteger completedMultipartUploads = new AtomicInteger();
+
+    /**
+     * Starts the server on a free port of the loopback address.
+     * @param bucket name of the only bucket
+     */
+    LocalS3Server(String bucket) throws IOException {
+        this.bucket = bucket;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Returns the endpoint to configure the S3 client with.
+     */
+    String endpoint() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    StoredObject object(String key) {
+        return objects.get(key);
+    }
+
+    /**
+     * Returns the number of multipart uploads completed so far.
+     */
+    int completedMultipartUploads() {
+        return completedMultipartUploads.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String path = exchange.getRequestURI().getRawPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            String prefix = "/" + bucket + "/";
+            if (!path.startsWith(prefix)) {
+                error(exchange, 404, "NoSuchBucket");
+                return;
+            }
+            String key = URLDecoder.decode(path.substring(prefix.length()), StandardCharsets.UTF_8);
+            byte[] content = authenticate(exchange, path, query, body);
+            if (content == null) {
+                error(exchange, 403, "SignatureDoesNotMatch");
+                return;
+            }
+            switch (exchange.getRequestMethod()) {
+                case "PUT" -> {
+                    if (query.containsKey("uploadId")) {
+                        uploadPart(exchange, query, content);
+                    } else {
+                        objects.put(key, new StoredObject(content, exchange.getRequestHeaders().getFirst("Content-Type"), md5(content)));
+                        exchange.getResponseHeaders().set("ETag", "\"" + md5(content) + "\"");
+                        exchange.sendResponseHeaders(200, -1);
+                    }
+                }
+                case "POST" -> {
+                    if (query.containsKey("uploads")) {
+                        String uploadId = UUID.randomUUID().toString();
+                        uploads.put(uploadId, new MultipartUpload(key, exchange.getRequestHeaders().getFirst("Content-Type"), new ConcurrentHashMap<>()));
+                        xml(exchange, 200, "<InitiateMultipartUploadResult><Bucket>" + bucket + "</Bucket><Key>" + key
+                                + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+                    } else if (query.containsKey("uploadId")) {
+                        completeUpload(exchange, key, query.get("uploadId"), new String(content, StandardCharsets.UTF_8));
+                    } else {
+                        error(exchange, 501, "NotImplemented");
+                    }
+                }
+                case "GET" -> getObject(exchange, key, query);
+                case "DELETE" -> {
+                    if (query.containsKey("uploadId")) {
+                        uploads.remove(query.get("uploadId"));
+                    } else {
+                        objects.remove(key);
+                    }
+                    exchange.sendResponseHeaders(204, -1);
+                }
+                default -> error(exchange, 501, "NotImplemented");
+            }
+        }
+    }
+
+    private void uploadPart(HttpExchange exchange, Map<String, String> query, byte[] content) throws IOException {
+        MultipartUpload upload = uploads.get(query.get("uploadId"));
+        if (upload == null) {
+            error(exchange, 404, "NoSuchUpload");
+            return;
+        }
+        upload.parts().put(Integer.parseInt(query.get("partNumber")), content);
+        exchange.getResponseHeaders().set("ETag", "\"" + md5(content) + "\"");
+        exchange.sendResponseHeaders(200, -1);
+    }
+
+    /**
+     * Joins the listed parts into the object, rejecting parts below the minimum size unless they are the last.
+     */
+    private void completeUpload(HttpExchange exchange, String key, String uploadId, String request) throws IOException {
+        MultipartUpload upload = uploads.remove(uploadId);
+        if (upload == null || !upload.key().equals(key)) {
+            error(exchange, 404, "NoSuchUpload");
+            return;
+        }
+        List<Integer> partNumbers = new ArrayList<>();
+        Matcher matcher = PART_NUMBER.matcher(request);
+        while (matcher.find()) {
+            partNumbers.add(Integer.parseInt(matcher.group(1)));
+        }
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        ByteArrayOutputStream partDigests = new ByteArrayOutputStream();
+        for (int i = 0; i < partNumbers.size(); i++) {
+            byte[] part = upload.parts().get(partNumbers.get(i));
+            if (part == null) {
+                error(exchange, 400, "InvalidPart");
+                return;
+            }
+            if (part.length < MIN_PART_SIZE && i < partNumbers.size() - 1) {
+                error(exchange, 400, "EntityTooSmall");
+                return;
+            }
+            content.writeBytes(part);
+            partDigests.writeBytes(HexFormat.of().parseHex(md5(part)));
+        }
+        String etag = md5(partDigests.toByteArray()) + "-" + partNumbers.size();
+        objects.put(key, new StoredObject(content.toByteArray(), upload.contentType(), etag));
+        completedMultipartUploads.incrementAndGet();
+        xml(exchange, 200, "<CompleteMultipartUploadResult><Bucket>" + bucket + "</Bucket><Key>" + key
+                + "</Key><ETag>\"" + etag + "\"</ETag></CompleteMultipartUploadResult>");
+    }
+
+    private void getObject(HttpExchange exchange, String key, Map<String, String> query) throws IOException {
+        StoredObject object = objects.get(key);
+        if (object == null) {
+            error(exchange, 404, "NoSuchKey");
+            return;
+        }
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", "\"" + object.etag() + "\"");
+        headers.set("Content-Type", object.contentType() != null ? object.contentType() : "binary/octet-stream");
+        if (query.containsKey("response-content-disposition")) {
+            headers.set("Content-Disposition", query.get("response-content-disposition"));
+        }
+        exchange.sendResponseHeaders(200, object.content().length == 0 ? -1 : object.content().length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(object.content());
+        }
+    }
+
+    /**
+     * Checks the signature of a request, from the Authorization header or from the query of a presigned URL.
+     * @return the payload of the request, decoded from aws-chunked if it was streamed, or null if the request is not authentic
+     */
+    private byte[] authenticate(HttpExchange exchange, String path, Map<String, String> query, byte[] body) {
+        Headers headers = exchange.getRequestHeaders();
+        String credential;
+        String signedHeaders;
+        String signature;
+        String amzDate;
+        String payloadHash;
+        byte[] payload = body;
+        Map<String, String> signedQuery = new TreeMap<>(query);
+        String authorization = headers.getFirst("Authorization");
+        if (authorization != null) {
+            Matcher matcher = AUTHORIZATION.matcher(authorization);
+            if (!matcher.matches()) {
+                return null;
+            }
+            credential = matcher.group(1);
+            signedHeaders = matcher.group(2);
+            signature = matcher.group(3);
+            amzDate = headers.getFirst("X-Amz-Date");
+            payloadHash = headers.getFirst("X-Amz-Content-Sha256");
+            if (STREAMING_PAYLOAD.equals(payloadHash)) {
+                payload = decodeChunks(body);
+                if (payload == null || !String.valueOf(payload.length).equals(headers.getFirst("X-Amz-Decoded-Content-Length"))) {
+                    return null;
+                }
+            } else if (!UNSIGNED_PAYLOAD.equals(payloadHash) && !sha256Hex(body).equals(payloadHash)) {
+                return null;
+            }
+        } else if (ALGORITHM.equals(query.get("X-Amz-Algorithm"))) {
+            credential = query.get("X-Amz-Credential");
+            signedHeaders = query.get("X-Amz-SignedHeaders");
+            signature = signedQuery.remove("X-Amz-Signature");
+            amzDate = query.get("X-Amz-Date");
+            payloadHash = UNSIGNED_PAYLOAD;
+            if (amzDate == null || query.get("X-Amz-Expires") == null
+                    || Instant.from(AMZ_DATE.parse(amzDate)).plusSeconds(Long.parseLong(query.get("X-Amz-Expires"))).isBefore(Instant.now())) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        if (credential == null || signedHeaders == null || signature == null || amzDate == null) {
+            return null;
+        }
+        String[] scope = credential.split("/", 2);
+        if (!ACCESS_KEY.equals(scope[0]) || scope.length < 2) {
+            return null;
+        }
+
+        StringBuilder canonicalRequest = new StringBuilder()
+                .append(exchange.getRequestMethod()).append('\n')
+                .append(path).append('\n');
+        List<String> canonicalQuery = new ArrayList<>();
+        signedQuery.forEach((name, value) -> canonicalQuery.add(encode(name) + "=" + encode(value)));
+        canonicalRequest.append(String.join("&", canonicalQuery)).append('\n');
+        for (String name : signedHeaders.split(";")) {
+            List<String> values = headers.get(name);
+            String value = values == null ? "" : String.join(",", values).trim().replaceAll(" +", " ");
+            canonicalRequest.append(name).append(':').append(value).append('\n');
+        }
+        canonicalRequest.append('\n').append(signedHeaders).append('\n').append(payloadHash);
+
+        String stringToSign = ALGORITHM + "\n" + amzDate + "\n" + scope[1] + "\n" + sha256Hex(canonicalRequest.toString().getBytes(StandardCharsets.UTF_8));
+        String[] scopeParts = scope[1].split("/");
+        byte[] signingKey = ("AWS4" + SECRET_KEY).getBytes(StandardCharsets.UTF_8);
+        for (String part : scopeParts) {
+            signingKey = hmac(signingKey, part);
+        }
+        String expected = HexFormat.of().formatHex(hmac(signingKey, stringToSign));
+        return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), signature.getBytes(StandardCharsets.UTF_8)) ? payload : null;
+    }
+
+    /**
+     * Decodes an aws-chunked body, chunks of a hex size with a chunk signature, the data and CRLF, ending with an empty chunk.
+     * @return the data of the chunks, or null if the body is malformed
+     */
+    private static byte[] decodeChunks(byte[] body) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(body.length);
+        int position = 0;
+        while (true) {
+            int lineEnd = indexOfCrlf(body, position);
+            if (lineEnd < 0) {
+                return null;
+            }
+            String header = new String(body, position, lineEnd - position, StandardCharsets.US_ASCII);
+            int size = Integer.parseInt(header.substring(0, header.indexOf(';')), 16);
+            position = lineEnd + 2;
+            if (size == 0) {
+                return data.toByteArray();
+            }
+            if (position + size + 2 > body.length) {
+                return null;
+            }
+            data.write(body, position, size);
+            position += size + 2;
+        }
+    }
+
+    private static int indexOfCrlf(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length - 1; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new TreeMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            String value = separator < 0 ? "" : parameter.substring(separator + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    /**
+     * Encodes a query parameter name or value the way SigV4 canonicalizes it, per RFC 3986.
+     */
+    private static String encode(String text) {
+        return URLEncoder.encode(text, StandardCharsets.UTF_8).replace("+", "%20").replace("*", "%2A").replace("%7E", "~");
+    }
+
+    private static void error(HttpExchange exchange, int status, String code) throws IOException {
+        xml(exchange, status, "<Error><Code>" + code + "</Code><Message>" + code + "</Message></Error>");
+    }
+
+    private static void xml(HttpExchange exchange, int status, String document) throws IOException {
+        byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + document).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static String md5(byte[] content) {
+        return digest("MD5", content);
+    }
+
+    private static String sha256Hex(byte[] content) {
+        return digest("SHA-256", content);
+    }
+
+    private static String digest(String algorithm, byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance(algorithm).digest(content));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] hmac(byte[] key, String data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.yaplab.files;
+
+import com.yaplab.config.StorageConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The S3 store built like the application builds it, against a local S3 compatible server checking request signatures.
+ * Small uploads go through a single put, files over the multipart threshold through a multipart upload.
+ */
+class S3BlobStoreTest extends BlobStoreContractTest {
+
+    private static final int MB = 1024 * 1024;
+
+    private final List<S3BlobStore> stores = new ArrayList<>();
+    private LocalS3Server server;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = new LocalS3Server("files");
+    }
+
+    @AfterEach
+    void shutdown() {
+        stores.forEach(S3BlobStore::shutdown);
+        server.close();
+    }
+
+    @Override
+    BlobStore store() {
+        return store(16 * MB, 8 * MB);
+    }
+
+    @Test
+    void uploadsCarrySizeAndContentType() throws IOException {
+        put(store(), "a.txt", "hello");
+
+        LocalS3Server.StoredObject object = server.object("a.txt");
+        assertThat(object.content()).hasSize(5);
+        assertThat(object.contentType()).isEqualTo("text/plain");
+        assertThat(server.completedMultipartUploads()).isZero();
+    }
+
+    @Test
+    void filesLargerThanThePartSizeAreUploadedInPartsAndReadBack() throws IOException {
+        BlobStore store = store(5 * MB, 5 * MB);
+        byte[] content = new byte[12 * MB + 123];
+        new Random(42).nextBytes(content);
+
+        store.put("video.mp4", new ByteArrayInputStream(content), content.length, "video/mp4");
+
+        assertThat(server.completedMultipartUploads()).isEqualTo(1);
+        assertThat(server.object("video.mp4").etag()).endsWith("-3");
+        assertThat(server.object("video.mp4").contentType()).isEqualTo("video/mp4");
+        try (InputStream in = store.get("video.mp4")) {
+            assertThat(in.readAllBytes()).isEqualTo(content);
+        }
+    }
+
+    @Test
+    void presignedUrlsDownloadTheFileInlineUnderItsName() throws Exception {
+        BlobStore store = store();
+        put(store, "a.txt", "hello");
+        URL url = store.presignedDownloadUrl("a.txt", "report.pdf", Duration.ofMinutes(10)).orElseThrow();
+
+        HttpResponse<String> response = download(url.toURI());
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).isEqualTo("hello");
+        assertThat(response.headers().firstValue("Content-Disposition")).hasValue("inline; filename=\"report.pdf\"");
+    }
+
+    @Test
+    void presignedUrlsOnlyDownloadWhatWasSigned() throws Exception {
+        BlobStore store = store();
+        put(store, "a.txt", "hello");
+        URL url = store.presignedDownloadUrl("a.txt", "report.pdf", Duration.ofMinutes(10)).orElseThrow();
+
+        URI otherName = new URI(url.toString().replace("report.pdf", "other.pdf"));
+        URI unsigned = new URI(url.getProtocol(), null, url.getHost(), url.getPort(), url.getPath(), null, null);
+
+        assertThat(download(otherName).statusCode()).isEqualTo(403);
+        assertThat(download(unsigned).statusCode()).isEqualTo(403);
+    }
+
+    /**
+     * Builds the store through StorageConfig with the endpoint and keys of the local server.
+     */
+    private S3BlobStore store(long multipartThreshold, long partSize) {
+        S3BlobStore store = (S3BlobStore) new StorageConfig().s3BlobStore("files", LocalS3Server.REGION, server.endpoint(),
+                LocalS3Server.ACCESS_KEY, LocalS3Server.SECRET_KEY, multipartThreshold, partSize, 2);
+        stores.add(store);
+        return store;
+    }
+
+    private static HttpResponse<String> download(URI uri) throws IOException, InterruptedException, URISyntaxException {
+        try (HttpClient client = HttpClient.newHttpClient()) {
+            return client.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.ofString());
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.yaplab.id;
+
+import com.yaplab.message.Message;
+import org.hibernate.boot.registry.StandardServiceRegistry;
+import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Node ID validation and continuing the sequence after IDs that are already in use.
+ */
+class SnowflakeIdGeneratorTest {
+
+    private static final int TICK_SHIFT = SnowflakeIdGenerator.NODE_BITS + SnowflakeIdGenerator.SEQUENCE_BITS;
+
+    @Test
+    void aMissingNodeIdFailsInsteadOfFallingBackToNodeZero() throws NoSuchFieldException {
+        CustomIdGeneratorCreationContext context = mock(CustomIdGeneratorCreationContext.class);
+        StandardServiceRegistry serviceRegistry = new StandardServiceRegistryBuilder().build();
+        when(context.getServiceRegistry()).thenReturn(serviceRegistry);
+
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(null, Message.class.getDeclaredField("id"), context))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining(SnowflakeIdGenerator.NODE_ID_SETTING);
+        StandardServiceRegistryBuilder.destroy(serviceRegistry);
+    }
+
+    @Test
+    void nodeIdsOutsideTheNodeBitsAreRejected() {
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(128)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void idsContinueAfterAStoredIdFromALaterTick() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3);
+        long laterTick = (System.currentTimeMillis() - SnowflakeIdGenerator.EPOCH_MILLIS) / SnowflakeIdGenerator.TICK_MILLIS + 50;
+        long stored = laterTick << TICK_SHIFT | 3L << SnowflakeIdGenerator.SEQUENCE_BITS | 7;
+
+        SnowflakeIdGenerator.advancePast(stored);
+        long next = generator.nextId();
+
+        assertThat(next).isGreaterThan(stored);
+        assertThat(next >>> TICK_SHIFT).isEqualTo(laterTick);
+        assertThat(next & ((1L << SnowflakeIdGenerator.SEQUENCE_BITS) - 1)).isEqualTo(8);
+    }
+
+    @Test
+    void advancingPastAnOlderIdChangesNothing() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3);
+        long first = generator.nextId();
+
+        SnowflakeIdGenerator.advancePast(1L << TICK_SHIFT);
+
+        assertThat(generator.nextId()).isGreaterThan(first);
+    }
+}
@@ -0,0 +1,173 @@
+package com.yaplab.journal;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.yaplab.cache.RecentMessageCache;
+import com.yaplab.chatroom.ChatRoom;
+import com.yaplab.chatroom.ChatRoomRepository;
+import com.yaplab.chatroom.ChatRoomService;
+import com.yaplab.datasource.ReadYourWritesTracker;
+import com.yaplab.enums.MessageType;
+import com.yaplab.files.FileService;
+import com.yaplab.group.GroupService;
+import com.yaplab.message.MessageMapper;
+import com.yaplab.message.MessageRepository;
+import com.yaplab.message.MessageRetractEventDTO;
+import com.yaplab.message.MessageRevisionService;
+import com.yaplab.message.MessageService;
+import com.yaplab.metrics.MessageSendMetrics;
+import com.yaplab.search.MessageSearchIndex;
+import com.yaplab.shard.ShardRouter;
+import com.yaplab.user.User;
+import com.yaplab.user.UserRepository;
+import com.yaplab.user.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+/**
+ * Replay and dead-lettering of journaled messages against an H2 database, through the real insert of MessageService.
+ * Every insert commits, so the journal service sees the database as it would after a restart.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.globally_quoted_identifiers=true",
+        "spring.jpa.properties.yaplab.id.node-id=0"
+})
+@Import({MessageService.class, ShardRouter.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MessageJournalServiceTest {
+
+    private static final Duration FLUSH_DELAY = Duration.ofMillis(1);
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    @MockitoBean private MessageMapper messageMapper;
+    @MockitoBean private ChatRoomService chatRoomService;
+    @MockitoBean private UserService userService;
+    @MockitoBean private GroupService groupService;
+    @MockitoBean private FileService fileService;
+    @MockitoBean private MessageSearchIndex messageSearchIndex;
+    @MockitoBean private MessageRevisionService messageRevisionService;
+    @MockitoBean private MessageSendMetrics sendMetrics;
+    @MockitoBean private RecentMessageCache recentMessageCache;
+    @MockitoBean private ReadYourWritesTracker readYourWritesTracker;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ChatRoomRepository chatRoomRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+
+    private User alice;
+    private User bob;
+
+    @BeforeEach
+    void setUp() {
+        alice = userRepository.save(new User(null, "alice", "alice@mail.com", "5550001", "secret"));
+        bob = userRepository.save(new User(null, "bob", "bob@mail.com", "5550002", "secret"));
+        ChatRoom chatRoom = new ChatRoom("alice_bob", alice, bob);
+        chatRoom.setCreatedAt(START);
+        chatRoom.setLastActivity(START);
+        chatRoomRepository.save(chatRoom);
+    }
+
+    @AfterEach
+    void tearDown() {
+        messageRepository.deleteAll();
+        chatRoomRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void entriesInsertedBeforeACrashAreNotInsertedAgain() throws Exception {
+        List<JournalEntry> entries = List.of(entry(1, "alice_bob"), entry(2, "alice_bob"), entry(3, "alice_bob"));
+        MessageJournal crashed = journalOf(entries);
+        messageService.persistJournaledMessages(entries.subList(0, 1));
+
+        MessageJournalService replaying = service();
+        replaying.start();
+        replaying.stop();
+        MessageJournalService restarted = service();
+        restarted.start();
+        restarted.stop();
+        crashed.close();
+
+        assertThat(messageRepository.findAll()).extracting(message -> message.getId()).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(Files.exists(dir.resolve(MessageJournalService.DEAD_LETTER_FILE))).isFalse();
+        verifyNoInteractions(messagingTemplate);
+    }
+
+    @Test
+    void rejectedEntriesAreDeadLetteredAndRetracted() throws Exception {
+        List<JournalEntry> entries = List.of(entry(1, "alice_bob"), entry(2, "deleted_room"), entry(3, "alice_bob"));
+        MessageJournal crashed = journalOf(entries);
+
+        MessageJournalService replaying = service();
+        replaying.start();
+        replaying.stop();
+        crashed.close();
+
+        assertThat(messageRepository.findAll()).extracting(message -> message.getId()).containsExactlyInAnyOrder(1L, 3L);
+        List<String> deadLetters = Files.readAllLines(dir.resolve(MessageJournalService.DEAD_LETTER_FILE));
+        assertThat(deadLetters).hasSize(1);
+        assertThat(objectMapper.readValue(deadLetters.getFirst(), JournalEntry.class)).isEqualTo(entries.get(1));
+        verify(messagingTemplate).convertAndSend("/topic/chat/deleted_room", MessageRetractEventDTO.of(2L, "deleted_room"));
+    }
+
+    /**
+     * Writes entries to a journal that is left open, as if the node crashed before draining them.
+     */
+    private MessageJournal journalOf(List<JournalEntry> entries) throws IOException {
+        MessageJournal journal = MessageJournal.open(dir, 4096, FLUSH_DELAY);
+        for (JournalEntry entry : entries) {
+            journal.append(objectMapper.writeValueAsBytes(entry)).join();
+        }
+        return journal;
+    }
+
+    private MessageJournalService service() {
+        return new MessageJournalService(messageService, objectMapper, new SimpleMeterRegistry(), true, dir.toString(),
+                DataSize.ofKilobytes(4), FLUSH_DELAY, 100, Duration.ofMillis(10), 0, recentMessageCache, shardRouter, messagingTemplate);
+    }
+
+    private JournalEntry entry(long id, String chatroomId) {
+        return new JournalEntry(id, chatroomId, alice.getId(), bob.getId(), null, null, null,
+                "message " + id, MessageType.TEXT, START.plusSeconds(id), id);
+    }
+}
@@ -0,0 +1,139 @@
+package com.yaplab.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Crash recovery of the message journal. A crash is simulated by opening the directory again
+ * without closing the journal that wrote it, so nothing is flushed on shutdown.
+ */
+class MessageJournalTest {
+
+    private static final Duration FLUSH_DELAY = Duration.ofMillis(1);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void acknowledgedEntriesSurviveACrash() throws IOException {
+        MessageJournal journal = MessageJournal.open(dir, 4096, FLUSH_DELAY);
+        appendAll(journal, "a", "b", "c");
+
+        MessageJournal recovered = MessageJournal.open(dir, 4096, FLUSH_DELAY);
+
+        assertThat(payloads(recovered.read(recovered.checkpointOffset(), 100))).containsExactly("a", "b", "c");
+        recovered.close();
+        journal.close();
+    }
+
+    @Test
+    void checkpointedEntriesAreNotReplayed() throws IOException {
+        MessageJournal journal = MessageJournal.open(dir, 4096, FLUSH_DELAY);
+        appendAll(journal, "a", "b", "c");
+        List<MessageJournal.JournalRecord> records = journal.read(0, 100);
+        journal.checkpoint(records.get(1).nextOffset());
+
+        MessageJournal recovered = MessageJournal.open(dir, 4096, FLUSH_DELAY);
+
+        assertThat(payloads(recovered.read(recovered.checkpointOffset(), 100))).containsExactly("c");
+        recovered.close();
+        journal.close();
+    }
+
+    @Test
+    void tornEntryAtTheEndIsDiscardedAndOverwritten() throws IOException {
+        MessageJournal journal = MessageJournal.open(dir, 4096, FLUSH_DELAY);
+        appendAll(journal, "first", "second", "third");
+        journal.close();
+        corruptLastEntry();
+
+        MessageJournal recovered = MessageJournal.open(dir, 4096, FLUSH_DELAY);
+        assertThat(payloads(recovered.read(0, 100))).containsExactly("first", "second");
+        appendAll(recovered, "fourth");
+
+        assertThat(payloads(recovered.read(0, 100))).containsExactly("first", "second", "fourth");
+        recovered.close();
+    }
+
+    @Test
+    void entriesAreReadAcrossSegmentsAndDrainedSegmentsAreDeleted() throws IOException {
+        MessageJournal journal = MessageJournal.open(dir, 64, FLUSH_DELAY);
+        String[] entries = IntStream.range(0, 20).mapToObj(i -> "entry-" + i).toArray(String[]::new);
+        appendAll(journal, entries);
+        List<MessageJournal.JournalRecord> records = journal.read(0, 100);
+        assertThat(payloads(records)).containsExactly(entries);
+        int segmentsBefore = segmentFiles().size();
+
+        journal.checkpoint(records.get(15).nextOffset());
+
+        assertThat(segmentFiles().size()).isLessThan(segmentsBefore);
+        MessageJournal recovered = MessageJournal.open(dir, 64, FLUSH_DELAY);
+        assertThat(payloads(recovered.read(recovered.checkpointOffset(), 100)))
+                .containsExactly("entry-16", "entry-17", "entry-18", "entry-19");
+        recovered.close();
+        journal.close();
+    }
+
+    @Test
+    void futuresCompleteInOrderOffTheFlusherThread() throws IOException {
+        MessageJournal journal = MessageJournal.open(dir, 4096, FLUSH_DELAY);
+        Set<String> callbackThreads = ConcurrentHashMap.newKeySet();
+        List<Long> completed = new CopyOnWriteArrayList<>();
+        List<CompletableFuture<Long>> appends = IntStream.range(0, 200)
+                .mapToObj(i -> journal.append(("entry-" + i).getBytes(StandardCharsets.UTF_8)).whenComplete((offset, error) -> {
+                    callbackThreads.add(Thread.currentThread().getName());
+                    completed.add(offset);
+                }))
+                .toList();
+        CompletableFuture.allOf(appends.toArray(CompletableFuture[]::new)).join();
+
+        assertThat(callbackThreads).contains("message-journal-completer").doesNotContain("message-journal-flusher");
+        assertThat(completed).isSorted();
+        journal.close();
+    }
+
+    private static void appendAll(MessageJournal journal, String... payloads) {
+        CompletableFuture.allOf(Stream.of(payloads)
+                .map(payload -> journal.append(payload.getBytes(StandardCharsets.UTF_8)))
+                .toArray(CompletableFuture[]::new)).join();
+    }
+
+    private static List<String> payloads(List<MessageJournal.JournalRecord> records) {
+        return records.stream().map(record -> new String(record.payload(), StandardCharsets.UTF_8)).toList();
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.toString().endsWith(".log")).sorted().toList();
+        }
+    }
+
+    /**
+     * Flips the last written byte of the last segment, as a write cut short by a crash leaves it.
+     */
+    private void corruptLastEntry() throws IOException {
+        Path segment = segmentFiles().getLast();
+        byte[] bytes = Files.readAllBytes(segment);
+        int last = bytes.length - 1;
+        while (bytes[last] == 0) {
+            last--;
+        }
+        bytes[last] ^= 1;
+        Files.write(segment, bytes);
+    }
+}
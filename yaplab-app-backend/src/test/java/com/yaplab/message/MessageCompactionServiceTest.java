@@ -0,0 +1,141 @@
+package com.yaplab.message;
+
+import com.yaplab.chatroom.ChatRoom;
+import com.yaplab.enums.MessageStatus;
+import com.yaplab.enums.MessageType;
+import com.yaplab.user.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compaction batches against an H2 database: what is deleted, what is scrubbed and how batches are bounded.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.globally_quoted_identifiers=true",
+        "spring.jpa.properties.yaplab.id.node-id=0"
+})
+@Import(MessageCompactionService.class)
+class MessageCompactionServiceTest {
+
+    private static final Instant NOW = Instant.now();
+    private static final Instant CUTOFF = NOW.minus(Duration.ofDays(30));
+    private static final Instant LONG_AGO = NOW.minus(Duration.ofDays(60));
+
+    @Autowired
+    private MessageCompactionService messageCompactionService;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private ChatRoom chatRoom;
+    private User alice;
+    private User bob;
+    private long nextSeq = 1;
+
+    @BeforeEach
+    void setUp() {
+        alice = entityManager.persist(new User(null, "alice", "alice@mail.com", "5550001", "secret"));
+        bob = entityManager.persist(new User(null, "bob", "bob@mail.com", "5550002", "secret"));
+        chatRoom = new ChatRoom("alice_bob", alice, bob);
+        chatRoom.setCreatedAt(NOW);
+        chatRoom.setLastActivity(NOW);
+        chatRoom = entityManager.persist(chatRoom);
+    }
+
+    @Test
+    void deletesUnreferencedMessagesWithTheirRevisions() {
+        Message deleted = message("gone", LONG_AGO);
+        entityManager.persist(new MessageRevision(deleted, 1, MessageDelta.between("gone", "first"), LONG_AGO));
+        Message kept = message("kept", null);
+        flushAndClear();
+
+        MessageCompactionReport report = messageCompactionService.compactBatch(CUTOFF, 100);
+        flushAndClear();
+
+        assertThat(report.deletedMessages()).isEqualTo(1);
+        assertThat(report.scrubbedMessages()).isZero();
+        assertThat(report.deletedRevisions()).isEqualTo(1);
+        assertThat(report.reclaimedBytes()).isEqualTo("gone".length() + "first".length());
+        assertThat(entityManager.find(Message.class, deleted.getId())).isNull();
+        assertThat(entityManager.find(Message.class, kept.getId())).isNotNull();
+    }
+
+    @Test
+    void scrubsRepliedToMessagesAndDeletesThemOnceTheReplyIsGone() {
+        Message original = message("original", LONG_AGO);
+        Message reply = message("reply", null);
+        reply.setReplyTo(original);
+        flushAndClear();
+
+        MessageCompactionReport first = messageCompactionService.compactBatch(CUTOFF, 100);
+        flushAndClear();
+
+        assertThat(first.scrubbedMessages()).isEqualTo(1);
+        assertThat(first.deletedMessages()).isZero();
+        Message placeholder = entityManager.find(Message.class, original.getId());
+        assertThat(placeholder.getContent()).isNull();
+        assertThat(placeholder.getSoftDeleted()).isTrue();
+
+        assertThat(messageCompactionService.compactBatch(CUTOFF, 100).compactedMessages()).isZero();
+
+        entityManager.remove(entityManager.find(Message.class, reply.getId()));
+        flushAndClear();
+        MessageCompactionReport second = messageCompactionService.compactBatch(CUTOFF, 100);
+        flushAndClear();
+
+        assertThat(second.deletedMessages()).isEqualTo(1);
+        assertThat(entityManager.find(Message.class, original.getId())).isNull();
+    }
+
+    @Test
+    void leavesMessagesInsideTheRetentionWindow() {
+        Message recent = message("recent", NOW.minus(Duration.ofDays(1)));
+        flushAndClear();
+
+        assertThat(messageCompactionService.compactBatch(CUTOFF, 100)).isEqualTo(MessageCompactionReport.EMPTY);
+        assertThat(entityManager.find(Message.class, recent.getId())).isNotNull();
+    }
+
+    @Test
+    void batchesAreBoundedByTheBatchSize() {
+        for (int i = 0; i < 5; i++) {
+            message("old " + i, LONG_AGO);
+        }
+        flushAndClear();
+
+        assertThat(messageCompactionService.compactBatch(CUTOFF, 2).compactedMessages()).isEqualTo(2);
+        flushAndClear();
+        assertThat(messageCompactionService.compactBatch(CUTOFF, 2).compactedMessages()).isEqualTo(2);
+        flushAndClear();
+        assertThat(messageCompactionService.compactBatch(CUTOFF, 2).compactedMessages()).isEqualTo(1);
+        flushAndClear();
+        assertThat(messageCompactionService.compactBatch(CUTOFF, 2).compactedMessages()).isZero();
+    }
+
+    /**
+     * Persists a message of alice, soft-deleted at the given time unless it is null.
+     */
+    private Message message(String content, Instant deletedAt) {
+        Message message = new Message(chatRoom, alice, bob, content, MessageType.TEXT, MessageStatus.SENT, null, null);
+        message.setSeq(nextSeq++);
+        if (deletedAt != null) {
+            message.setSoftDeleted(true);
+            message.setDeletedAt(deletedAt);
+        }
+        return entityManager.persist(message);
+    }
+
+    private void flushAndClear() {
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
@@ -0,0 +1,60 @@
+package com.yaplab.message;
+
+import com.yaplab.journal.MessageJournalService;
+import com.yaplab.metrics.MessageSendMetrics;
+import com.yaplab.metrics.MessageSendMetrics.Kind;
+import com.yaplab.user.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.security.Principal;
+import java.util.concurrent.CompletableFuture;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Failed WebSocket sends are reported to the sender on its error queue, queued or not.
+ */
+class MessageControllerTest {
+
+    private final MessageService messageService = mock(MessageService.class);
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final MessageIngestPipeline ingestPipeline = mock(MessageIngestPipeline.class);
+    private final MessageJournalService journalService = mock(MessageJournalService.class);
+    private final MessageController controller = new MessageController(messageService, mock(MessageRevisionService.class),
+            messagingTemplate, new MessageSendMetrics(new SimpleMeterRegistry()), ingestPipeline, journalService, mock(UserService.class));
+
+    private final Principal alice = () -> "alice@mail.com";
+    private final MessageDTO message = new MessageDTO(1L, 2L, "hello", null, null, null, false, false, null);
+
+    @Test
+    void aFailedQueuedSendIsReportedToTheSender() {
+        when(journalService.isEnabled()).thenReturn(true);
+        when(journalService.send(Kind.PERSONAL, message))
+                .thenReturn(CompletableFuture.failedFuture(new DataIntegrityViolationException("Chatroom was deleted")));
+
+        controller.personalMessage(message, alice);
+
+        verify(messagingTemplate).convertAndSendToUser("alice@mail.com", "/queue/errors",
+                new MessageSendErrorDTO(Kind.PERSONAL, "Chatroom was deleted", message));
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+    }
+
+    @Test
+    void aFailedDirectSendIsReportedToTheSender() {
+        when(messageService.sendGroupMessage(message)).thenThrow(new IllegalArgumentException("Group not found"));
+
+        controller.groupMessage(message, alice);
+
+        verify(messagingTemplate).convertAndSendToUser("alice@mail.com", "/queue/errors",
+                new MessageSendErrorDTO(Kind.GROUP, "Group not found", message));
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+    }
+}
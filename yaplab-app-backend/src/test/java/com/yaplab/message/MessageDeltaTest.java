@@ -0,0 +1,100 @@
+package com.yaplab.message;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Deltas between message versions, applied forward and inverted as the revision history stores them.
+ */
+class MessageDeltaTest {
+
+    @Test
+    void keepsOnlyTheChangedMiddle() {
+        MessageDelta delta = MessageDelta.between("see you at 5 pm today", "see you at 6 pm today");
+
+        assertThat(delta).isEqualTo(new MessageDelta(11, 9, "6"));
+        assertThat(delta.apply("see you at 5 pm today")).isEqualTo("see you at 6 pm today");
+    }
+
+    @Test
+    void appliesInsertionsDeletionsAndReplacements() {
+        assertRoundTrip("hello", "hello world");
+        assertRoundTrip("hello world", "hello");
+        assertRoundTrip("hello world", "world");
+        assertRoundTrip("abc", "xyz");
+        assertRoundTrip("aaa", "aa");
+        assertRoundTrip("abab", "ab");
+        assertRoundTrip("same", "same");
+        assertRoundTrip("", "new");
+        assertRoundTrip("old", "");
+    }
+
+    @Test
+    void treatsNullAsEmpty() {
+        assertThat(MessageDelta.between(null, "text").apply(null)).isEqualTo("text");
+        assertThat(MessageDelta.between("text", null).apply("text")).isEmpty();
+    }
+
+    @Test
+    void reverseDeltasRebuildEveryRevisionFromTheLatest() {
+        List<String> versions = List.of("first draft", "first draft, fixed", "second draft, fixed", "second", "");
+        List<MessageDelta> reverseDeltas = new ArrayList<>();
+        for (int revision = 1; revision < versions.size(); revision++) {
+            reverseDeltas.add(MessageDelta.between(versions.get(revision), versions.get(revision - 1)));
+        }
+
+        String content = versions.getLast();
+        for (int revision = versions.size() - 1; revision > 0; revision--) {
+            content = reverseDeltas.get(revision - 1).apply(content);
+            assertThat(content).isEqualTo(versions.get(revision - 1));
+        }
+    }
+
+    @Test
+    void randomEditsRoundTripBothWays() {
+        Random random = new Random(7);
+        for (int round = 0; round < 2_000; round++) {
+            String base = randomText(random);
+            String target = edit(base, random);
+            assertRoundTrip(base, target);
+        }
+    }
+
+    @Test
+    void rejectsABaseTooShortForTheDelta() {
+        MessageDelta delta = MessageDelta.between("a long message", "a long edited message");
+
+        assertThatThrownBy(() -> delta.apply("short"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static void assertRoundTrip(String base, String target) {
+        MessageDelta forward = MessageDelta.between(base, target);
+        MessageDelta reverse = MessageDelta.between(target, base);
+
+        assertThat(forward.apply(base)).isEqualTo(target);
+        assertThat(reverse.apply(target)).isEqualTo(base);
+        assertThat(forward.text().length()).isLessThanOrEqualTo(target.length());
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(20);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + random.nextInt(3)));
+        }
+        return text.toString();
+    }
+
+    private static String edit(String base, Random random) {
+        int from = random.nextInt(base.length() + 1);
+        int to = from + random.nextInt(base.length() - from + 1);
+        return base.substring(0, from) + randomText(random) + base.substring(to);
+    }
+}
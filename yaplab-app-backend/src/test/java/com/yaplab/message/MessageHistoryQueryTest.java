@@ -0,0 +1,113 @@
+package com.yaplab.message;
+
+import com.yaplab.chatroom.ChatRoom;
+import com.yaplab.enums.MessageStatus;
+import com.yaplab.enums.MessageType;
+import com.yaplab.files.File;
+import com.yaplab.user.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Statement counts of reading a history page and a single message, taken from the Hibernate statistics.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.globally_quoted_identifiers=true",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.yaplab.id.node-id=0"
+})
+class MessageHistoryQueryTest {
+
+    private static final int PAGE_SIZE = 20;
+    private static final Instant START = Instant.parse("2024-01-01T00:00:00Z");
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+    private ChatRoom chatRoom;
+    private Message newest;
+
+    /**
+     * Persists a chat of 50 messages, each replying to the previous one and carrying a file.
+     */
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        User alice = entityManager.persist(new User(null, "alice", "alice@mail.com", "5550001", "secret"));
+        User bob = entityManager.persist(new User(null, "bob", "bob@mail.com", "5550002", "secret"));
+        chatRoom = new ChatRoom("alice_bob", alice, bob);
+        chatRoom.setCreatedAt(START);
+        chatRoom.setLastActivity(START);
+        chatRoom = entityManager.persist(chatRoom);
+        Message previous = null;
+        for (int i = 1; i <= 50; i++) {
+            User sender = i % 2 == 0 ? alice : bob;
+            File file = entityManager.persist(new File("file" + i + ".txt", "text/plain", (long) i, "/files/" + i, sender));
+            Message message = new Message(chatRoom, sender, i % 2 == 0 ? bob : alice, "message " + i,
+                    MessageType.TEXT, MessageStatus.SENT, previous, file);
+            message.setSeq((long) i);
+            message.setTimestamp(START.plusSeconds(i));
+            previous = entityManager.persist(message);
+        }
+        newest = previous;
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+    }
+
+    @Test
+    void historyPageIsReadInOneStatement() {
+        List<MessageResponseDTO> page = messageRepository.findHistoryRows(chatRoom.getChatroomId(), Limit.of(PAGE_SIZE))
+                .stream().map(new MessageMapper()::fromHistoryRow).toList();
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(page).hasSize(PAGE_SIZE);
+        assertThat(page.getFirst().content()).isEqualTo("message 50");
+        assertThat(page.getFirst().repliedToMessage().content()).isEqualTo("message 49");
+        assertThat(page.getFirst().fileName()).isEqualTo("file50.txt");
+    }
+
+    @Test
+    void olderPagesAreReadInOneStatementEach() {
+        List<MessageHistoryRow> first = messageRepository.findHistoryRows(chatRoom.getChatroomId(), Limit.of(PAGE_SIZE));
+        MessageHistoryRow last = first.getLast();
+        List<MessageHistoryRow> second = messageRepository.findHistoryRowsBefore(
+                chatRoom.getChatroomId(), last.timestamp(), last.id(), Limit.of(PAGE_SIZE));
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(2);
+        assertThat(second.getFirst().content()).isEqualTo("message 30");
+    }
+
+    @Test
+    void loadingAMessageLeavesItsAssociationsUnloaded() {
+        Message message = entityManager.find(Message.class, newest.getId());
+
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1);
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(1);
+        assertThat(Hibernate.isInitialized(message.getReplyTo())).isFalse();
+        assertThat(Hibernate.isInitialized(message.getSender())).isFalse();
+        assertThat(Hibernate.isInitialized(message.getFile())).isFalse();
+        assertThat(Hibernate.isInitialized(message.getChatroom())).isFalse();
+    }
+}
@@ -0,0 +1,89 @@
+package com.yaplab.message;
+
+import com.yaplab.enums.MessageStatus;
+import com.yaplab.metrics.MessageSendMetrics.Kind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Group commits of the ingest pipeline: completion order and thread, and the one-by-one retry of a failed batch.
+ */
+class MessageIngestPipelineTest {
+
+    private final MessageService messageService = mock(MessageService.class);
+    private final MessageIngestPipeline pipeline =
+            new MessageIngestPipeline(messageService, new SimpleMeterRegistry(), true, 1024, 64, Duration.ofSeconds(1));
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        pipeline.stop();
+    }
+
+    @Test
+    void sendsCompleteInArrivalOrderOffTheWriterThread() {
+        when(messageService.sendMessages(anyList())).thenAnswer(invocation -> {
+            List<MessageSendRequest> requests = invocation.getArgument(0);
+            return requests.stream().map(request -> sent(request.messageDTO().content())).toList();
+        });
+        pipeline.start();
+        Set<String> callbackThreads = ConcurrentHashMap.newKeySet();
+        List<String> completed = new CopyOnWriteArrayList<>();
+
+        List<CompletableFuture<MessageResponseDTO>> sends = IntStream.range(0, 200)
+                .mapToObj(i -> pipeline.submit(Kind.PERSONAL, message(String.format("%03d", i))).whenComplete((response, error) -> {
+                    callbackThreads.add(Thread.currentThread().getName());
+                    completed.add(response.content());
+                }))
+                .toList();
+        CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).join();
+
+        assertThat(callbackThreads).contains("message-ingest-completer").doesNotContain("message-ingest-writer");
+        assertThat(completed).hasSize(200).isSorted();
+    }
+
+    @Test
+    void aRejectedMessageOnlyFailsItsOwnSend() {
+        when(messageService.sendMessages(anyList())).thenAnswer(invocation -> {
+            List<MessageSendRequest> requests = invocation.getArgument(0);
+            if (requests.stream().anyMatch(request -> request.messageDTO().content().equals("bad"))) {
+                throw new IllegalArgumentException("bad message");
+            }
+            return requests.stream().map(request -> sent(request.messageDTO().content())).toList();
+        });
+        pipeline.start();
+
+        CompletableFuture<MessageResponseDTO> before = pipeline.submit(Kind.PERSONAL, message("before"));
+        CompletableFuture<MessageResponseDTO> bad = pipeline.submit(Kind.PERSONAL, message("bad"));
+        CompletableFuture<MessageResponseDTO> after = pipeline.submit(Kind.PERSONAL, message("after"));
+
+        assertThat(before.join().content()).isEqualTo("before");
+        assertThat(after.join().content()).isEqualTo("after");
+        assertThatThrownBy(bad::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static MessageDTO message(String content) {
+        return new MessageDTO(1L, 2L, content, null, null, null, false, false, null);
+    }
+
+    private static MessageResponseDTO sent(String content) {
+        return new MessageResponseDTO(null, "alice", content, Instant.now(), MessageStatus.SENT, null, null, null,
+                null, null, null, null, "1_2", false, false, null, 0, null);
+    }
+}
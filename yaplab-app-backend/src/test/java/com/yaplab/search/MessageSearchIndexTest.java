@@ -0,0 +1,121 @@
+package com.yaplab.search;
+
+import com.yaplab.chatroom.ChatRoom;
+import com.yaplab.enums.MessageStatus;
+import com.yaplab.enums.MessageType;
+import com.yaplab.message.Message;
+import com.yaplab.user.User;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Search hits carry the chatroom and send time needed to read archived messages back,
+ * and a rebuild replaces the contents in one step without losing the changes made meanwhile.
+ */
+class MessageSearchIndexTest {
+
+    private static final Instant SENT = Instant.parse("2024-01-01T10:00:00Z");
+    private static final List<String> ROOMS = List.of("alice_bob");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void hitsCarryTheChatroomAndSendTime() throws IOException {
+        MessageSearchIndex index = new MessageSearchIndex(dir.toString());
+        Instant older = Instant.parse("2024-01-01T10:00:00Z");
+        Instant newer = Instant.parse("2024-01-02T10:00:00Z");
+        index.addAll(List.of(
+                new MessageIndexRow(1L, "group_1", "alice", "budget review", older),
+                new MessageIndexRow(2L, "group_2", "bob", "budget review", newer),
+                new MessageIndexRow(3L, "group_3", "carol", "budget review", newer)));
+        index.refresh();
+
+        MessageSearchIndex.SearchPage page = index.search("budget", List.of("group_1", "group_2"), 0, 10);
+
+        assertThat(page.totalHits()).isEqualTo(2);
+        assertThat(page.hits()).containsExactly(
+                new MessageSearchIndex.SearchHit(2L, "group_2", newer),
+                new MessageSearchIndex.SearchHit(1L, "group_1", older));
+        assertThat(page.messageIds()).containsExactly(2L, 1L);
+        index.close();
+    }
+
+    @Test
+    void searchesSeeTheOldContentsUntilTheRebuildIsSwappedIn() throws IOException {
+        MessageSearchIndex index = new MessageSearchIndex(dir.resolve("index").toString());
+        index.addAll(List.of(new MessageIndexRow(1L, "alice_bob", "alice", "budget review", SENT)));
+        index.refresh();
+
+        try (MessageSearchIndex.Rebuild rebuild = index.startRebuild()) {
+            rebuild.addAll(List.of(new MessageIndexRow(2L, "alice_bob", "bob", "budget review", SENT)));
+            index.refresh();
+            assertThat(index.search("budget", ROOMS, 0, 10).messageIds()).containsExactly(1L);
+
+            rebuild.swap();
+        }
+
+        assertThat(index.search("budget", ROOMS, 0, 10).messageIds()).containsExactly(2L);
+        assertThat(dir.resolve("index-rebuild")).doesNotExist();
+        index.close();
+    }
+
+    @Test
+    void changesMadeDuringARebuildWinOverTheRowsItReadBefore() throws IOException {
+        MessageSearchIndex index = new MessageSearchIndex(dir.resolve("index").toString());
+        Message edited = message(1L, "budget draft");
+        Message deleted = message(2L, "budget notes");
+        index.indexAfterCommit(edited);
+        index.indexAfterCommit(deleted);
+
+        try (MessageSearchIndex.Rebuild rebuild = index.startRebuild()) {
+            rebuild.addAll(List.of(row(edited), row(deleted)));
+            edited.setContent("final numbers");
+            index.indexAfterCommit(edited);
+            deleted.setSoftDeleted(true);
+            index.indexAfterCommit(deleted);
+
+            rebuild.swap();
+        }
+
+        assertThat(index.search("budget", ROOMS, 0, 10).totalHits()).isZero();
+        assertThat(index.search("final", ROOMS, 0, 10).messageIds()).containsExactly(1L);
+        index.close();
+    }
+
+    @Test
+    void aRebuildClosedWithoutASwapIsDiscarded() throws IOException {
+        MessageSearchIndex index = new MessageSearchIndex(dir.resolve("index").toString());
+        index.addAll(List.of(new MessageIndexRow(1L, "alice_bob", "alice", "budget review", SENT)));
+
+        try (MessageSearchIndex.Rebuild rebuild = index.startRebuild()) {
+            rebuild.addAll(List.of(new MessageIndexRow(2L, "alice_bob", "bob", "budget review", SENT)));
+        }
+        index.refresh();
+
+        assertThat(index.search("budget", ROOMS, 0, 10).messageIds()).containsExactly(1L);
+        index.startRebuild().close();
+        index.close();
+    }
+
+    private static Message message(Long id, String content) {
+        User alice = new User(null, "alice", "alice@mail.com", "5550001", "secret");
+        User bob = new User(null, "bob", "bob@mail.com", "5550002", "secret");
+        Message message = new Message(new ChatRoom("alice_bob", alice, bob), alice, bob, content,
+                MessageType.TEXT, MessageStatus.SENT, null, null);
+        message.setId(id);
+        message.setTimestamp(SENT);
+        return message;
+    }
+
+    private static MessageIndexRow row(Message message) {
+        return new MessageIndexRow(message.getId(), "alice_bob", "alice", message.getContent(), message.getTimestamp());
+    }
+}
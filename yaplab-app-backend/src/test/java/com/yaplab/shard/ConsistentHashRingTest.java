@@ -0,0 +1,63 @@
+package com.yaplab.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Placement of chatroom IDs on the consistent hash ring and the keys moved when a shard is added.
+ */
+class ConsistentHashRingTest {
+
+    private static final List<String> KEYS = IntStream.range(0, 10_000).mapToObj(i -> "group_" + i).toList();
+
+    @Test
+    void aKeyAlwaysGetsTheSameShard() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("0", "1", "2"), 128);
+        ConsistentHashRing sameShards = new ConsistentHashRing(List.of("2", "0", "1"), 128);
+
+        for (String key : KEYS) {
+            assertThat(sameShards.shardFor(key)).isEqualTo(ring.shardFor(key));
+        }
+    }
+
+    @Test
+    void keysAreSpreadOverEveryShard() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("0", "1", "2"), 128);
+
+        Map<String, Long> keysByShard = KEYS.stream().collect(Collectors.groupingBy(ring::shardFor, Collectors.counting()));
+
+        assertThat(keysByShard).containsOnlyKeys("0", "1", "2");
+        assertThat(keysByShard.values()).allSatisfy(count -> assertThat(count).isBetween(2_500L, 4_200L));
+    }
+
+    @Test
+    void anAddedShardOnlyTakesKeysFromTheOthers() {
+        ConsistentHashRing before = new ConsistentHashRing(List.of("0", "1", "2"), 128);
+        ConsistentHashRing after = new ConsistentHashRing(List.of("0", "1", "2", "3"), 128);
+
+        List<String> moved = KEYS.stream().filter(key -> !before.shardFor(key).equals(after.shardFor(key))).toList();
+
+        assertThat(moved).allSatisfy(key -> assertThat(after.shardFor(key)).isEqualTo("3"));
+        assertThat(moved.size()).isBetween(1_800, 3_200);
+    }
+
+    @Test
+    void aSingleShardGetsEveryKey() {
+        ConsistentHashRing ring = new ConsistentHashRing(List.of("0"), 1);
+
+        assertThat(KEYS.stream().map(ring::shardFor).collect(Collectors.toSet())).containsExactly("0");
+    }
+
+    @Test
+    void aRingNeedsAShardAndAPoint() {
+        assertThatThrownBy(() -> new ConsistentHashRing(List.of(), 128)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new ConsistentHashRing(List.of("0"), 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+}
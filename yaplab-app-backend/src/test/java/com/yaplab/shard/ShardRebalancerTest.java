@@ -0,0 +1,172 @@
+package com.yaplab.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Moves of chatrooms between three in-memory H2 shards, with the foreign keys between messages and revisions in place.
+ */
+class ShardRebalancerTest {
+
+    private static final long ALICE = 1;
+    private static final long BOB = 2;
+
+    private final Map<String, HikariDataSource> pools = new LinkedHashMap<>();
+    private ShardRouter router;
+    private String chatroom;
+    private String otherChatroom;
+
+    @BeforeEach
+    void setUp() {
+        for (String shard : List.of("0", "1", "2")) {
+            pools.put(shard, database(shard));
+        }
+        jdbc("0").update("insert into user_details (id, user_name) values (?, 'alice'), (?, 'bob')", ALICE, BOB);
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(
+                new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(new ShardDataSources(pools).dataSources())));
+        router = new ShardRouter(mock(ChatRoomShardRepository.class), transactionManager, List.of("url-1", "url-2"), 128, true);
+        List<String> onShard1 = IntStream.range(0, 1_000).mapToObj(i -> "group_" + i)
+                .filter(chatroomId -> router.ringShardOf(chatroomId).equals("1"))
+                .limit(2)
+                .toList();
+        chatroom = onShard1.get(0);
+        otherChatroom = onShard1.get(1);
+    }
+
+    @AfterEach
+    void close() {
+        pools.values().forEach(HikariDataSource::close);
+    }
+
+    @Test
+    void aChatroomIsMovedInPagesWithItsRevisionsAndReplies() {
+        for (long id = 1; id <= 1_203; id++) {
+            insertMessage("1", id, chatroom, ALICE, id > 1 ? id - 1 : null);
+            if (id % 100 == 0) {
+                jdbc("1").update("insert into message_revision (message_id, revision) values (?, 1)", id);
+            }
+        }
+
+        rebalancer(chatroom + "=2").rebalance();
+
+        assertThat(count("2", "select count(*) from message where chatroom_id = ?", chatroom)).isEqualTo(1_203);
+        assertThat(count("2", "select count(*) from message where reply_to_id = id - 1")).isEqualTo(1_202);
+        assertThat(count("2", "select count(*) from message_revision")).isEqualTo(12);
+        assertThat(count("1", "select count(*) from message")).isZero();
+        assertThat(count("1", "select count(*) from message_revision")).isZero();
+        assertThat(router.shardOf(chatroom)).isEqualTo("2");
+    }
+
+    @Test
+    void forwardsOfMovedMessagesInOtherChatroomsAreLinkedById() {
+        insertMessage("1", 1, chatroom, ALICE, null);
+        insertMessage("1", 2, otherChatroom, BOB, 1L);
+
+        rebalancer(chatroom + "=2").rebalance();
+
+        assertThat(jdbc("1").queryForMap("select reply_to_id, forwarded_from_id, forwarded_from_sender_name from message where id = 2"))
+                .containsEntry("REPLY_TO_ID", null)
+                .containsEntry("FORWARDED_FROM_ID", 1L)
+                .containsEntry("FORWARDED_FROM_SENDER_NAME", "alice");
+        assertThat(count("2", "select count(*) from message where id = 1")).isEqualTo(1);
+    }
+
+    @Test
+    void movedForwardsOfMessagesInOtherChatroomsAreCopiedWithALink() {
+        insertMessage("1", 1, otherChatroom, ALICE, null);
+        insertMessage("1", 2, chatroom, BOB, 1L);
+
+        rebalancer(chatroom + "=2").rebalance();
+
+        assertThat(jdbc("2").queryForMap("select reply_to_id, forwarded_from_id, forwarded_from_sender_name from message where id = 2"))
+                .containsEntry("REPLY_TO_ID", null)
+                .containsEntry("FORWARDED_FROM_ID", 1L)
+                .containsEntry("FORWARDED_FROM_SENDER_NAME", "alice");
+        assertThat(count("1", "select count(*) from message where id = 1")).isEqualTo(1);
+    }
+
+    @Test
+    void anInterruptedMoveIsFinishedWithoutCopyingTwice() {
+        for (long id = 1; id <= 5; id++) {
+            insertMessage("1", id, chatroom, ALICE, null);
+        }
+        insertMessage("2", 1, chatroom, ALICE, null);
+        insertMessage("2", 2, chatroom, ALICE, null);
+
+        rebalancer(chatroom + "=2").rebalance();
+
+        assertThat(jdbc("2").queryForList("select id from message order by id", Long.class)).containsExactly(1L, 2L, 3L, 4L, 5L);
+        assertThat(count("1", "select count(*) from message")).isZero();
+    }
+
+    @Test
+    void aFailedMoveFailsTheStartupAndKeepsTheSource() {
+        insertMessage("1", 1, chatroom, ALICE, null);
+        jdbc("1").update("insert into message_revision (message_id, revision) values (1, 1)");
+        jdbc("2").execute("drop table message_revision");
+
+        assertThatThrownBy(() -> rebalancer(chatroom + "=2").rebalance()).isInstanceOf(IllegalStateException.class);
+
+        assertThat(count("1", "select count(*) from message")).isEqualTo(1);
+        assertThat(count("2", "select count(*) from message")).isZero();
+    }
+
+    @Test
+    void chatroomsOnTheirShardStay() {
+        insertMessage("1", 1, chatroom, ALICE, null);
+
+        rebalancer().rebalance();
+
+        assertThat(count("1", "select count(*) from message")).isEqualTo(1);
+    }
+
+    private ShardRebalancer rebalancer(String... moves) {
+        return new ShardRebalancer(router, new ShardDataSources(pools), true, List.of(moves));
+    }
+
+    private void insertMessage(String shard, long id, String chatroomId, long senderId, Long replyToId) {
+        jdbc(shard).update("insert into message (id, chatroom_id, sender_id, content, reply_to_id, forwarded) values (?, ?, ?, ?, ?, ?)",
+                id, chatroomId, senderId, "message " + id, replyToId, replyToId != null && !chatroomId.equals(chatroom));
+    }
+
+    private int count(String shard, String sql, Object... args) {
+        return jdbc(shard).queryForObject(sql, Integer.class, args);
+    }
+
+    private JdbcTemplate jdbc(String shard) {
+        return new JdbcTemplate(pools.get(shard));
+    }
+
+    private static HikariDataSource database(String shard) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:shard-" + shard + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setMaximumPoolSize(4);
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table user_details (id bigint primary key, user_name varchar(64) not null)");
+        jdbc.execute("""
+                create table message (id bigint primary key, chatroom_id varchar(64) not null, sender_id bigint not null,
+                    content varchar(255), reply_to_id bigint, forwarded boolean not null, forwarded_from_id bigint,
+                    forwarded_from_sender_name varchar(64),
+                    constraint fk_message_reply foreign key (reply_to_id) references message (id))""");
+        jdbc.execute("""
+                create table message_revision (id bigint generated by default as identity primary key, message_id bigint not null,
+                    revision integer not null,
+                    constraint fk_revision_message foreign key (message_id) references message (id))""");
+        return dataSource;
+    }
+}
@@ -0,0 +1,175 @@
+package com.yaplab.shard;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Routing of work over three in-memory H2 shards, each holding a row with its own name.
+ */
+class ShardRouterTest {
+
+    private static final List<String> SHARD_URLS = List.of("jdbc:h2:mem:shard-1", "jdbc:h2:mem:shard-2");
+
+    private final ChatRoomShardRepository chatRoomShardRepository = mock(ChatRoomShardRepository.class);
+    private ShardRouter router;
+    private JdbcTemplate jdbc;
+    private TransactionTemplate transaction;
+
+    @BeforeEach
+    void setUp() {
+        Map<String, DataSource> shards = new LinkedHashMap<>();
+        for (String shard : List.of("0", "1", "2")) {
+            shards.put(shard, database(shard));
+        }
+        DataSource routing = new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(shards));
+        DataSourceTransactionManager transactionManager = new DataSourceTransactionManager(routing);
+        router = new ShardRouter(chatRoomShardRepository, transactionManager, SHARD_URLS, 128, true);
+        jdbc = new JdbcTemplate(routing);
+        transaction = new TransactionTemplate(transactionManager);
+    }
+
+    @Test
+    void workRunsOnTheShardOfItsChatroom() {
+        for (String chatroomId : chatroomsOnEveryShard().values()) {
+            String database = router.onChatroom(chatroomId, () -> transaction.execute(status -> database()));
+            assertThat(database).isEqualTo(router.shardOf(chatroomId));
+        }
+    }
+
+    @Test
+    void workWithoutAShardRunsOnTheDefaultShard() {
+        String database = transaction.execute(status -> database());
+
+        assertThat(database).isEqualTo(ShardRouter.DEFAULT_SHARD);
+    }
+
+    @Test
+    void readsAndWritesRunInTransactionsOfTheirOwnOnTheirShard() {
+        String chatroomId = chatroomsOnEveryShard().get("2");
+
+        List<String> databases = transaction.execute(status -> List.of(
+                database(),
+                router.readOnChatroom(chatroomId, this::database),
+                router.writeOnShard("1", this::database),
+                database()));
+
+        assertThat(databases).containsExactly("0", "2", "1", "0");
+    }
+
+    @Test
+    void readsOnEveryShardAreConcatenatedInShardOrder() {
+        assertThat(router.readOnEveryShard(() -> List.of(database()))).containsExactly("0", "1", "2");
+    }
+
+    @Test
+    void messagesAreFoundOnTheShardOfTheirChatroom() {
+        String database = router.readOnMessage(7L, chatroomsOnEveryShard().get("1"), this::database);
+
+        assertThat(database).isEqualTo("1");
+    }
+
+    @Test
+    void messagesNeedTheirChatroomWhenSharded() {
+        assertThatThrownBy(() -> router.onMessage(7L, null, this::database))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("7");
+        assertThatThrownBy(() -> router.readOnMessage(7L, null, this::database))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void aSingleShardNeedsNoChatroom() {
+        ShardRouter single = new ShardRouter(chatRoomShardRepository, new DataSourceTransactionManager(database("0")), List.of(), 128, false);
+        single.start();
+
+        assertThat(single.isSharded()).isFalse();
+        assertThat(single.shardOf("group_1")).isEqualTo(ShardRouter.DEFAULT_SHARD);
+        String result = single.onMessage(7L, null, () -> "ran");
+        assertThat(result).isEqualTo("ran");
+    }
+
+    @Test
+    void pinsOverrideTheRingUntilThePinIsOnTheRingShard() {
+        String chatroomId = chatroomsOnEveryShard().get("1");
+
+        router.pin(chatroomId, "2");
+        assertThat(router.shardOf(chatroomId)).isEqualTo("2");
+        verify(chatRoomShardRepository).save(argThat(pin -> pin.getShard().equals("2")));
+
+        router.pin(chatroomId, "1");
+        assertThat(router.shardOf(chatroomId)).isEqualTo("1");
+        verify(chatRoomShardRepository).deleteById(chatroomId);
+    }
+
+    @Test
+    void pinsAreLoadedOnStart() {
+        String chatroomId = chatroomsOnEveryShard().get("0");
+        when(chatRoomShardRepository.findAll()).thenReturn(List.of(new ChatRoomShard(chatroomId, "2")));
+
+        router.start();
+
+        assertThat(router.shardOf(chatroomId)).isEqualTo("2");
+    }
+
+    @Test
+    void unknownShardsCannotBePinned() {
+        assertThatThrownBy(() -> router.pin("group_1", "3")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shardsRequireTheJournal() {
+        ShardRouter withoutJournal = new ShardRouter(chatRoomShardRepository, new DataSourceTransactionManager(database("0")), SHARD_URLS, 128, false);
+
+        assertThatThrownBy(withoutJournal::start).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void itemsAreGroupedByTheShardOfTheirChatroom() {
+        Map<String, String> chatrooms = chatroomsOnEveryShard();
+        List<String> items = List.of(chatrooms.get("2"), chatrooms.get("0"), chatrooms.get("2"));
+
+        assertThat(router.groupByShard(items, item -> item))
+                .containsExactly(Map.entry("2", List.of(chatrooms.get("2"), chatrooms.get("2"))), Map.entry("0", List.of(chatrooms.get("0"))));
+    }
+
+    /**
+     * Finds a chatroom ID the ring puts on every shard, by shard.
+     */
+    private Map<String, String> chatroomsOnEveryShard() {
+        Map<String, String> chatrooms = new LinkedHashMap<>();
+        IntStream.range(0, 1_000).mapToObj(i -> "group_" + i).forEach(chatroomId -> chatrooms.putIfAbsent(router.ringShardOf(chatroomId), chatroomId));
+        assertThat(chatrooms).containsOnlyKeys("0", "1", "2");
+        return chatrooms;
+    }
+
+    private String database() {
+        return jdbc.queryForObject("select name from marker", String.class);
+    }
+
+    private static DataSource database(String name) {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:shard-" + name + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        new JdbcTemplate(dataSource).execute("create table marker (name varchar(16))");
+        new JdbcTemplate(dataSource).update("insert into marker values (?)", name);
+        return dataSource;
+    }
+}
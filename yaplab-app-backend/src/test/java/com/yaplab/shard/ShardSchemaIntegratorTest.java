@@ -0,0 +1,80 @@
+package com.yaplab.shard;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.jpa.boot.internal.EntityManagerFactoryBuilderImpl;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+
+import javax.sql.DataSource;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Schema provisioning of two in-memory H2 shards while the entity manager factory is built, as on application startup.
+ */
+class ShardSchemaIntegratorTest {
+
+    private final Map<String, DataSource> shards = new LinkedHashMap<>();
+
+    @BeforeEach
+    void setUp() {
+        for (String shard : List.of("0", "1")) {
+            JdbcDataSource dataSource = new JdbcDataSource();
+            dataSource.setURL("jdbc:h2:mem:shard-" + shard + "-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+            shards.put(shard, dataSource);
+        }
+    }
+
+    @Test
+    void everyShardGetsTheSchemaWithoutKeysToReplicatedTables() {
+        start().close();
+
+        assertThat(count("1", "select count(*) from \"message\"")).isZero();
+        assertThat(count("1", "select count(*) from \"message_revision\"")).isZero();
+        assertThat(count("1", "select count(*) from \"chat_room\"")).isZero();
+        assertThat(ShardSchema.dropForeignKeysToDefaultShard("1", shards.get("1"))).isZero();
+        assertThat(ShardSchema.dropForeignKeysToDefaultShard("0", shards.get("0"))).isPositive();
+    }
+
+    @Test
+    void keysAddedBackByTheUpdateOfARestartAreDroppedAgain() {
+        start().close();
+        start().close();
+
+        assertThat(ShardSchema.dropForeignKeysToDefaultShard("1", shards.get("1"))).isZero();
+    }
+
+    /**
+     * Builds an entity manager factory over the shards with the settings Spring Boot and ShardConfig give it.
+     */
+    private EntityManagerFactory start() {
+        LocalContainerEntityManagerFactoryBean factory = new LocalContainerEntityManagerFactoryBean();
+        factory.setDataSource(new LazyConnectionDataSourceProxy(new ShardRoutingDataSource(shards)));
+        factory.setPackagesToScan("com.yaplab");
+        factory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+        IntegratorProvider integrators = () -> List.of(new ShardSchemaIntegrator(shards));
+        factory.setJpaPropertyMap(Map.of(
+                "hibernate.hbm2ddl.auto", "update",
+                "hibernate.globally_quoted_identifiers", "true",
+                "hibernate.physical_naming_strategy", "org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy",
+                "hibernate.implicit_naming_strategy", "org.springframework.boot.orm.jpa.hibernate.SpringImplicitNamingStrategy",
+                "yaplab.id.node-id", "0",
+                EntityManagerFactoryBuilderImpl.INTEGRATOR_PROVIDER, integrators));
+        factory.afterPropertiesSet();
+        return factory.getObject();
+    }
+
+    private int count(String shard, String sql) {
+        return new JdbcTemplate(shards.get(shard)).queryForObject(sql, Integer.class);
+    }
+}
@@ -0,0 +1,64 @@
+package com.yaplab.shard;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Foreign keys dropped on a shard after the default one, on an in-memory H2 database.
+ */
+class ShardSchemaTest {
+
+    private JdbcDataSource dataSource;
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:shard-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("create table chat_room (chatroom_id varchar(64) primary key)");
+        jdbc.execute("""
+                create table message (id bigint primary key, chatroom_id varchar(64) not null, reply_to_id bigint,
+                    constraint fk_message_chatroom foreign key (chatroom_id) references chat_room (chatroom_id),
+                    constraint fk_message_reply foreign key (reply_to_id) references message (id))""");
+        jdbc.execute("""
+                create table message_revision (id bigint primary key, message_id bigint not null,
+                    constraint fk_revision_message foreign key (message_id) references message (id))""");
+    }
+
+    @Test
+    void messagesOfChatroomsNotReplicatedYetAreAccepted() {
+        assertThatThrownBy(() -> jdbc.update("insert into message (id, chatroom_id) values (1, 'group_1')"))
+                .isInstanceOf(DataIntegrityViolationException.class);
+
+        assertThat(ShardSchema.dropForeignKeysToDefaultShard("1", dataSource)).isEqualTo(1);
+
+        jdbc.update("insert into message (id, chatroom_id) values (1, 'group_1')");
+        assertThat(jdbc.queryForObject("select count(*) from message", Integer.class)).isEqualTo(1);
+    }
+
+    @Test
+    void keysBetweenShardedTablesStay() {
+        ShardSchema.dropForeignKeysToDefaultShard("1", dataSource);
+
+        assertThatThrownBy(() -> jdbc.update("insert into message (id, chatroom_id, reply_to_id) values (2, 'group_1', 99)"))
+                .isInstanceOf(DataIntegrityViolationException.class);
+        assertThatThrownBy(() -> jdbc.update("insert into message_revision (id, message_id) values (1, 99)"))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    void droppingAgainChangesNothing() {
+        ShardSchema.dropForeignKeysToDefaultShard("1", dataSource);
+
+        assertThat(ShardSchema.dropForeignKeysToDefaultShard("1", dataSource)).isZero();
+    }
+}
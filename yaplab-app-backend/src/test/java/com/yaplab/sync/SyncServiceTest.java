@@ -0,0 +1,128 @@
+package com.yaplab.sync;
+
+import com.yaplab.chatroom.ChatRoom;
+import com.yaplab.chatroom.ChatRoomRepository;
+import com.yaplab.enums.MessageStatus;
+import com.yaplab.enums.MessageType;
+import com.yaplab.message.Message;
+import com.yaplab.message.MessageMapper;
+import com.yaplab.message.MessageRepository;
+import com.yaplab.message.MessageResponseDTO;
+import com.yaplab.shard.ShardRouter;
+import com.yaplab.user.User;
+import com.yaplab.user.UserRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Cursors of the catch-up sync against an H2 database, with changes written inside and before the commit grace window.
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.globally_quoted_identifiers=true",
+        "spring.jpa.properties.yaplab.id.node-id=0",
+        "message.sync.commit-grace=PT10S"
+})
+@Import({SyncService.class, MessageMapper.class, ShardRouter.class})
+class SyncServiceTest {
+
+    @Autowired
+    private SyncService syncService;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ChatRoomRepository chatRoomRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    private User alice;
+    private User bob;
+    private ChatRoom chatRoom;
+
+    @BeforeEach
+    void setUp() {
+        alice = userRepository.save(new User(null, "alice", "alice@mail.com", "5550001", "secret"));
+        bob = userRepository.save(new User(null, "bob", "bob@mail.com", "5550002", "secret"));
+        chatRoom = new ChatRoom("alice_bob", alice, bob);
+        chatRoom.setCreatedAt(Instant.now().minus(1, ChronoUnit.HOURS));
+        chatRoom.setLastActivity(chatRoom.getCreatedAt());
+        chatRoom = chatRoomRepository.save(chatRoom);
+    }
+
+    @Test
+    void settledChangesMoveTheCursorToTheLastOne() {
+        Instant written = Instant.now().minus(1, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MILLIS);
+        Message old = send("old", written);
+
+        RoomSyncDTO room = syncSince(written.minusSeconds(1)).rooms().getFirst();
+
+        assertThat(room.messages()).extracting(MessageResponseDTO::id).containsExactly(old.getId());
+        assertThat(room.nextCursor()).isEqualTo(new SyncCursor(written, old.getId()));
+    }
+
+    @Test
+    void aSendCommittingLateBehindASyncedChangeIsReturnedByTheNextSync() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        Message synced = send("synced", now.minusSeconds(1));
+        SyncResponseDTO first = syncSince(now.minusSeconds(60));
+        SyncCursor cursor = first.rooms().getFirst().nextCursor();
+
+        Message late = send("late", now.minusSeconds(2));
+        SyncResponseDTO second = syncService.sync(alice.getId(), new SyncRequestDTO(null, Map.of("alice_bob", cursor), null));
+
+        assertThat(cursor.updatedAt()).isBefore(now.minusSeconds(2));
+        assertThat(first.serverTime()).isEqualTo(cursor.updatedAt());
+        assertThat(second.rooms().getFirst().messages()).extracting(MessageResponseDTO::id)
+                .containsExactly(late.getId(), synced.getId());
+    }
+
+    @Test
+    void pagesBeforeTheLastMovePastTheirChanges() {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        Message first = send("first", now.minusSeconds(2));
+        Message second = send("second", now.minusSeconds(1));
+
+        RoomSyncDTO page = syncService.sync(alice.getId(), new SyncRequestDTO(now.minusSeconds(60), null, 1)).rooms().getFirst();
+        RoomSyncDTO last = syncService.sync(alice.getId(), new SyncRequestDTO(null, Map.of("alice_bob", page.nextCursor()), 1)).rooms().getFirst();
+
+        assertThat(page.hasMore()).isTrue();
+        assertThat(page.nextCursor()).isEqualTo(new SyncCursor(now.minusSeconds(2), first.getId()));
+        assertThat(last.messages()).extracting(MessageResponseDTO::id).containsExactly(second.getId());
+        assertThat(last.hasMore()).isFalse();
+        assertThat(last.nextCursor().updatedAt()).isBefore(now.minusSeconds(2));
+    }
+
+    private SyncResponseDTO syncSince(Instant since) {
+        return syncService.sync(alice.getId(), new SyncRequestDTO(since, null, null));
+    }
+
+    /**
+     * Stores a message with the given change time, as if its transaction wrote it then.
+     */
+    private Message send(String content, Instant updatedAt) {
+        Message message = new Message(chatRoom, alice, bob, content, MessageType.TEXT, MessageStatus.SENT, null, null);
+        message.setTimestamp(updatedAt);
+        message = messageRepository.saveAndFlush(message);
+        entityManager.createNativeQuery("update \"message\" set \"updated_at\" = ?1 where \"id\" = ?2")
+                .setParameter(1, updatedAt)
+                .setParameter(2, message.getId())
+                .executeUpdate();
+        entityManager.clear();
+        return message;
+    }
+}
@@ -0,0 +1,31 @@
+package com.yaplab.tracing;
+
+import com.yaplab.enums.MessageStatus;
+import com.yaplab.security.authentication.RegisterRequestDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Arguments of slow calls written to the log: IDs and flags as they are, everything else only by its type.
+ */
+class TracingAspectTest {
+
+    @Test
+    void passwordsInRequestsAreNotLogged() {
+        RegisterRequestDTO request = new RegisterRequestDTO("alice", "alice@mail.com", "5550001111", "hunter22");
+
+        assertThat(TracingAspect.describe(new Object[]{request, "hunter22"}))
+                .isEqualTo("RegisterRequestDTO, String")
+                .doesNotContain("hunter22");
+    }
+
+    @Test
+    void idsFlagsAndEnumsAreLoggedAsTheyAre() {
+        assertThat(TracingAspect.describe(new Object[]{42L, 7, true, MessageStatus.READ, null, new ArrayList<>(List.of(1L))}))
+                .isEqualTo("42, 7, true, READ, null, ArrayList");
+    }
+}
@@ -0,0 +1,91 @@
+package com.yaplab.user;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Ranking and updates of the in-memory user directory, and changes made while it loads.
+ */
+class UserDirectoryIndexTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+    private final UserDirectoryIndex index = new UserDirectoryIndex(userRepository);
+
+    @Test
+    void exactMatchesRankAboveNamesAboveEmails() {
+        index.putAfterCommit(new User(1L, "Annabel", "x@mail.com", null, null));
+        index.putAfterCommit(new User(2L, "Zed", "ann@mail.com", null, null));
+        index.putAfterCommit(new User(3L, "Ann", "y@mail.com", null, null));
+        index.putAfterCommit(new User(4L, "Bob", "z@mail.com", null, null));
+
+        assertThat(index.search("ann", 10)).containsExactly(3L, 1L, 2L);
+        assertThat(index.search("ann", 1)).containsExactly(3L);
+    }
+
+    @Test
+    void searchesMatchEveryWordOfTheName() {
+        index.putAfterCommit(new User(1L, "Mary Jane Watson", "mj@mail.com", "5550100", null));
+
+        assertThat(index.search("wat", 10)).containsExactly(1L);
+        assertThat(index.search("555", 10)).containsExactly(1L);
+    }
+
+    @Test
+    void usersWithTheSameScoreAreRankedByIdAndEachOnlyOnce() {
+        for (long id = 100; id >= 1; id--) {
+            index.putAfterCommit(new User(id, "Sam Smith", "sam" + id + "@mail.com", null, null));
+        }
+        index.putAfterCommit(new User(200L, "Sam", "sam200@mail.com", null, null));
+        index.removeAfterCommit(2L);
+
+        assertThat(index.search("sam", 4)).containsExactly(200L, 1L, 3L, 4L);
+        assertThat(index.search("smith", 100)).hasSize(99).doesNotHaveDuplicates().doesNotContain(2L);
+    }
+
+    @Test
+    void updatesReplaceTheOldTerms() {
+        index.putAfterCommit(new User(1L, "Alice", "alice@mail.com", null, null));
+        index.putAfterCommit(new User(2L, "Alicia", "alicia@mail.com", null, null));
+        index.putAfterCommit(new User(1L, "Carol", "carol@mail.com", null, null));
+
+        assertThat(index.search("ali", 10)).containsExactly(2L);
+        assertThat(index.search("car", 10)).containsExactly(1L);
+    }
+
+    @Test
+    void removedUsersAreNotFound() {
+        index.putAfterCommit(new User(1L, "Alice", "alice@mail.com", null, null));
+        index.putAfterCommit(new User(2L, "Alice", "alice2@mail.com", null, null));
+        index.removeAfterCommit(1L);
+
+        assertThat(index.search("alice", 10)).containsExactly(2L);
+    }
+
+    @Test
+    void changesMadeWhileLoadingAreNotOverwrittenByTheLoad() {
+        when(userRepository.findDirectoryEntriesAfter(anyLong(), any(Limit.class))).thenAnswer(invocation -> {
+            index.putAfterCommit(new User(1L, "Renamed", "renamed@mail.com", null, null));
+            index.removeAfterCommit(2L);
+            return List.of(
+                    new UserDirectoryEntry(1L, "Original", "original@mail.com", null),
+                    new UserDirectoryEntry(2L, "Deleted", "deleted@mail.com", null),
+                    new UserDirectoryEntry(3L, "Other", "other@mail.com", null));
+        });
+
+        index.load();
+
+        assertThat(index.isReady()).isTrue();
+        assertThat(index.search("renamed", 10)).containsExactly(1L);
+        assertThat(index.search("original", 10)).isEmpty();
+        assertThat(index.search("deleted", 10)).isEmpty();
+        assertThat(index.search("other", 10)).containsExactly(3L);
+    }
+}
@@ -0,0 +1,122 @@
+package com.yaplab.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Frames of the broadcast encoder decode to the same command, headers and body as the frames of the stock StompEncoder.
+ */
+class BroadcastFrameEncoderTest {
+
+    private final BroadcastFrameEncoder encoder = new BroadcastFrameEncoder();
+    private final StompEncoder stockEncoder = new StompEncoder();
+    private final StompDecoder decoder = new StompDecoder();
+
+    private final byte[] payload = ("{\"content\":\"" + "a".repeat(400) + "\"}").getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void recipientsOfOneBroadcastGetTheirOwnSubscriptionAndMessageId() {
+        for (int recipient = 0; recipient < 3; recipient++) {
+            String subscription = "sub-" + recipient;
+            String messageId = "message-" + recipient;
+            assertSameFrame(headers(accessor -> {
+                accessor.setSubscriptionId(subscription);
+                accessor.setMessageId(messageId);
+            }), payload);
+        }
+    }
+
+    @Test
+    void headerNamesAndValuesAreEscaped() {
+        assertSameFrame(headers(accessor -> {
+            accessor.setDestination("/topic/chat/alice:bob");
+            accessor.setNativeHeader("trace\\id", "a:b\\c\nd\re");
+            accessor.setSubscriptionId("sub:0\n");
+        }), payload);
+    }
+
+    @Test
+    void everyValueOfAMultiValueHeaderIsKept() {
+        assertSameFrame(headers(accessor -> {
+            accessor.addNativeHeader("tag", "first");
+            accessor.addNativeHeader("tag", "second");
+            accessor.addNativeHeader("tag", "third:value");
+        }), payload);
+    }
+
+    @Test
+    void aSharedPayloadWithOtherHeadersIsNotServedFromTheCache() {
+        assertSameFrame(headers(accessor -> accessor.setNativeHeader("tag", "first")), payload);
+        assertSameFrame(headers(accessor -> accessor.setNativeHeader("tag", "second")), payload);
+        assertSameFrame(headers(accessor -> accessor.addNativeHeader("extra", "header")), payload);
+        assertSameFrame(headers(accessor -> accessor.setDestination("/topic/chat/other")), payload);
+        assertSameFrame(headers(accessor -> { }), payload);
+    }
+
+    @Test
+    void anotherPayloadInTheSameCacheSlotIsNotServedFromTheCache() {
+        byte[] other;
+        do {
+            other = ("{\"content\":\"" + "b".repeat(400) + "\"}").getBytes(StandardCharsets.UTF_8);
+        } while (slot(other) != slot(payload));
+
+        assertSameFrame(headers(accessor -> { }), payload);
+        assertSameFrame(headers(accessor -> { }), other);
+        assertSameFrame(headers(accessor -> accessor.setSubscriptionId("sub-1")), payload);
+    }
+
+    @Test
+    void bodiesBelowTheCutoffAreEncodedAsUsual() {
+        byte[] small = "{\"content\":\"hi\"}".getBytes(StandardCharsets.UTF_8);
+
+        assertSameFrame(headers(accessor -> accessor.setNativeHeader("tag", "a:b")), small);
+        assertThat(encoder.encode(headers(accessor -> { }), small)).isEqualTo(stockEncoder.encode(headers(accessor -> { }), small));
+    }
+
+    /**
+     * Headers of a MESSAGE frame as the simple broker sends it to a subscriber, adjusted by the given customizer.
+     */
+    private static Map<String, Object> headers(Consumer<StompHeaderAccessor> customizer) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination("/topic/chat/alice_bob");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setMessageId("message-0");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        customizer.accept(accessor);
+        return accessor.getMessageHeaders();
+    }
+
+    private void assertSameFrame(Map<String, Object> headers, byte[] body) {
+        Message<byte[]> actual = decode(encoder.encode(headers, body));
+        Message<byte[]> expected = decode(stockEncoder.encode(headers, body));
+
+        StompHeaderAccessor actualHeaders = StompHeaderAccessor.wrap(actual);
+        StompHeaderAccessor expectedHeaders = StompHeaderAccessor.wrap(expected);
+        assertThat(actualHeaders.getCommand()).isEqualTo(expectedHeaders.getCommand());
+        assertThat(actualHeaders.toNativeHeaderMap()).isEqualTo(expectedHeaders.toNativeHeaderMap());
+        assertThat(actual.getPayload()).isEqualTo(expected.getPayload());
+    }
+
+    private static int slot(byte[] payload) {
+        return System.identityHashCode(payload) & (BroadcastFrameEncoder.CACHE_SLOTS - 1);
+    }
+
+    private Message<byte[]> decode(byte[] frame) {
+        List<Message<byte[]>> messages = decoder.decode(ByteBuffer.wrap(frame));
+        assertThat(messages).hasSize(1);
+        return messages.getFirst();
+    }
+}
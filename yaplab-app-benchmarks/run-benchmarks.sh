@@ -0,0 +1,11 @@
+#!/usr/bin/env sh
+# Builds the backend and the benchmarks, then runs JMH and writes the results to results/<commit>.json.
+# Extra arguments are passed to JMH, e.g. ./run-benchmarks.sh SendPersonalMessage -prof gc
+# Compare two runs by loading both files into https://jmh.morethan.io or any JMH JSON tool.
+set -e
+cd "$(dirname "$0")"
+../yaplab-app-backend/mvnw -q -f ../yaplab-app-backend/pom.xml install -DskipTests
+../yaplab-app-backend/mvnw -q -f pom.xml package
+mkdir -p results
+commit="$(git rev-parse --short HEAD)$(git diff --quiet HEAD -- ../yaplab-app-backend || echo '-dirty')"
+java -jar target/benchmarks.jar -rf json -rff "results/${commit}.json" "$@"
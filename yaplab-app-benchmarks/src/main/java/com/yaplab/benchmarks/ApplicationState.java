@@ -0,0 +1,67 @@
+package com.yaplab.benchmarks;
+
+import com.yaplab.user.User;
+import com.yaplab.user.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+/**
+ * The running application shared by the benchmarks of one fork, with two registered users.
+ */
+@State(Scope.Benchmark)
+public class ApplicationState {
+
+    /**
+     * The database, memory or durable. Benchmarks of commits compare both with -p database=memory,durable.
+     */
+    @Param("memory")
+    public String database;
+
+    ConfigurableApplicationContext context;
+    Statistics statistics;
+    Long senderId;
+    Long receiverId;
+    private Path workDir;
+
+    @Setup
+    public void start() throws IOException {
+        workDir = Files.createTempDirectory("yaplab-benchmark");
+        context = EmbeddedApplication.start(workDir, database.equals("durable"));
+        statistics = context.getBean(EntityManagerFactory.class).unwrap(SessionFactory.class).getStatistics();
+        UserRepository userRepository = context.getBean(UserRepository.class);
+        senderId = userRepository.save(newUser(1)).getId();
+        receiverId = userRepository.save(newUser(2)).getId();
+    }
+
+    @TearDown
+    public void stop() throws IOException {
+        context.close();
+        try (var files = Files.walk(workDir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    <T> T bean(Class<T> type) {
+        return context.getBean(type);
+    }
+
+    private static User newUser(long number) {
+        User user = BenchmarkFixtures.user(number);
+        user.setId(null);
+        user.setEmailVerified(true);
+        user.setCreatedAt(Instant.now());
+        return user;
+    }
+}
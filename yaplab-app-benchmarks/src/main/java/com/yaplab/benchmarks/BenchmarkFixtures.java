@@ -0,0 +1,84 @@
+package com.yaplab.benchmarks;
+
+import com.yaplab.chatroom.ChatRoom;
+import com.yaplab.enums.MessageStatus;
+import com.yaplab.enums.MessageType;
+import com.yaplab.enums.UserStatus;
+import com.yaplab.files.File;
+import com.yaplab.group.Group;
+import com.yaplab.message.Message;
+import com.yaplab.message.MessageHistoryRow;
+import com.yaplab.user.User;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Builds detached entities and rows shaped like production data for the benchmarks.
+ */
+final class BenchmarkFixtures {
+
+    /**
+     * A Base64 encoded 256 bit HMAC key, only used by the benchmarks.
+     */
+    static final String JWT_SECRET = "eWFwbGFiLWJlbmNobWFyay1zZWNyZXQta2V5LTI1Ni1iaXRzLWxvbmc=";
+
+    private BenchmarkFixtures() {
+    }
+
+    static User user(long id) {
+        User user = new User(id, "user" + id, "user" + id + "@example.com", String.format("9%09d", id), "password");
+        user.setStatus(UserStatus.ONLINE);
+        user.setProfilePictureUrl("https://cdn.example.com/profile/" + id + ".png");
+        return user;
+    }
+
+    /**
+     * A personal message with an image attachment that replies to another message, the most expensive shape to map.
+     */
+    static Message messageWithFileAndReply() {
+        User sender = user(1);
+        User receiver = user(2);
+        ChatRoom chatRoom = new ChatRoom("1_2", sender, receiver);
+
+        Message original = new Message(chatRoom, receiver, sender, "Are we still on for tomorrow?",
+                MessageType.TEXT, MessageStatus.READ, null, null);
+        original.setId(41L);
+        original.setSeq(6L);
+        original.setTimestamp(Instant.parse("2025-01-01T10:00:00Z"));
+
+        File file = new File("photo.png", "image/png", 482_133L, "https://cdn.example.com/files/photo.png", sender);
+        file.setId(7L);
+        Message reply = new Message(chatRoom, sender, receiver, "Yes, see the photo of the place",
+                MessageType.IMAGE, MessageStatus.SENT, original, file);
+        reply.setId(42L);
+        reply.setSeq(7L);
+        reply.setTimestamp(Instant.parse("2025-01-01T10:01:00Z"));
+        return reply;
+    }
+
+    /**
+     * The flat row the history query returns for {@link #messageWithFileAndReply()}.
+     */
+    static MessageHistoryRow historyRowWithFileAndReply() {
+        return new MessageHistoryRow(42L, "user1", "Yes, see the photo of the place", Instant.parse("2025-01-01T10:01:00Z"),
+                MessageStatus.SENT, "https://cdn.example.com/files/photo.png", "photo.png", 482_133L, 1L, "user1", "image/png",
+                41L, "user2", "Are we still on for tomorrow?", false, null, null, "1_2", false, false, null, 0, 7L);
+    }
+
+    /**
+     * A group chatroom with the given number of participants, all of them members of the group.
+     */
+    static ChatRoom groupChatRoom(int participants) {
+        Set<User> users = new HashSet<>();
+        for (long id = 1; id <= participants; id++) {
+            users.add(user(id));
+        }
+        Group group = new Group(1L, "benchmark group", user(1), users, LocalDateTime.parse("2025-01-01T00:00:00"));
+        ChatRoom chatRoom = new ChatRoom("group_1", group, users);
+        chatRoom.setLastActivity(Instant.parse("2025-01-01T10:00:00Z"));
+        return chatRoom;
+    }
+}
@@ -0,0 +1,111 @@
+package com.yaplab.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yaplab.message.MessageMapper;
+import com.yaplab.message.MessageResponseDTO;
+import com.yaplab.websocket.BroadcastFrameEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU per delivered message when a message is broadcast to a 1,000 member room.
+ * One operation is one delivery: the message is serialized once per broadcast, then for every member the frame is built
+ * the way the simple broker builds it and handed to the STOMP handler, which encodes it and writes it to the session.
+ * Sessions discard what is written, so the result is the cost of the fan-out itself without any network.
+ * Compares the default STOMP encoder with the {@link BroadcastFrameEncoder} the application installs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BroadcastFanOutBenchmark {
+
+    private static final int MEMBERS = 1_000;
+    private static final String DESTINATION = "/topic/chat/group_1";
+
+    @Param({"default", "broadcast"})
+    public String encoder;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final StompSubProtocolHandler stompHandler = new StompSubProtocolHandler();
+    private final WebSocketSession[] sessions = new WebSocketSession[MEMBERS];
+    private MessageResponseDTO message;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        stompHandler.setEncoder("broadcast".equals(encoder) ? new BroadcastFrameEncoder() : new StompEncoder());
+        message = new MessageMapper().fromHistoryRow(BenchmarkFixtures.historyRowWithFileAndReply());
+        for (int i = 0; i < MEMBERS; i++) {
+            sessions[i] = discardingSession("session-" + i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MEMBERS)
+    public void broadcastToRoom() throws Exception {
+        byte[] payload = objectMapper.writeValueAsBytes(message);
+        for (WebSocketSession session : sessions) {
+            SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            headers.setSessionId(session.getId());
+            headers.setSubscriptionId("sub-0");
+            headers.setDestination(DESTINATION);
+            headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            headers.setLeaveMutable(true);
+            Message<byte[]> frame = MessageBuilder.createMessage(payload, headers.getMessageHeaders());
+            stompHandler.handleMessageToClient(session, frame);
+        }
+    }
+
+    /**
+     * Returns a session that consumes what is written to it and throws away the rest.
+     */
+    private WebSocketSession discardingSession(String id) {
+        Map<String, Object> attributes = new HashMap<>();
+        return (WebSocketSession) Proxy.newProxyInstance(
+                WebSocketSession.class.getClassLoader(),
+                new Class<?>[]{WebSocketSession.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getId" -> id;
+                    case "getAttributes" -> attributes;
+                    case "isOpen" -> true;
+                    case "sendMessage" -> {
+                        blackhole.consume(((WebSocketMessage<?>) args[0]).getPayload());
+                        yield null;
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> id;
+                    default -> null;
+                });
+    }
+}
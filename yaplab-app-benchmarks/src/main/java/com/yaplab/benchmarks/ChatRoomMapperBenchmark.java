@@ -0,0 +1,46 @@
+package com.yaplab.benchmarks;
+
+import com.yaplab.chatroom.ChatRoom;
+import com.yaplab.chatroom.ChatRoomMapper;
+import com.yaplab.chatroom.ChatRoomResponseDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of mapping a group chatroom, which copies every participant and every group member, by group size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatRoomMapperBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int participants;
+
+    private final ChatRoomMapper chatRoomMapper = new ChatRoomMapper();
+    private ChatRoom chatRoom;
+
+    @Setup
+    public void setUp() {
+        chatRoom = BenchmarkFixtures.groupChatRoom(participants);
+    }
+
+    @Benchmark
+    public ChatRoomResponseDTO chatRoomResponseDTO() {
+        return chatRoomMapper.chatRoomResponseDTO(chatRoom);
+    }
+}
@@ -0,0 +1,107 @@
+package com.yaplab.benchmarks;
+
+import com.yaplab.datasource.Workload;
+import com.yaplab.datasource.WorkloadBulkheadDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a realtime query while 30 background threads keep running 50 ms queries on a pool of 10 connections,
+ * straight on the pool (off) or behind the workload bulkheads with the default limits (on).
+ * Sample time mode reports the percentiles, the p99 shows how long a message send waits behind a burst of jobs.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConnectionBulkheadBenchmark {
+
+    private static final int POOL_SIZE = 10;
+    private static final int BACKGROUND_THREADS = 30;
+
+    @Param({"off", "on"})
+    public String bulkhead;
+
+    private HikariDataSource pool;
+    private DataSource dataSource;
+    private ExecutorService background;
+    private volatile boolean running = true;
+
+    @Setup
+    public void setUp() throws SQLException {
+        pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:bulkhead-" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+        pool.setMaximumPoolSize(POOL_SIZE);
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("create alias sleep for '" + ConnectionBulkheadBenchmark.class.getName() + ".sleep'");
+        }
+        dataSource = bulkhead.equals("on")
+                ? new WorkloadBulkheadDataSource(pool,
+                        Map.of(Workload.REALTIME, 0, Workload.INTERACTIVE, 12, Workload.BACKGROUND, 4),
+                        Map.of(Workload.REALTIME, Duration.ofSeconds(2), Workload.INTERACTIVE, Duration.ofSeconds(5),
+                                Workload.BACKGROUND, Duration.ofSeconds(30)),
+                        new SimpleMeterRegistry())
+                : pool;
+        background = Executors.newFixedThreadPool(BACKGROUND_THREADS);
+        for (int i = 0; i < BACKGROUND_THREADS; i++) {
+            background.submit(() -> Workload.BACKGROUND.run(() -> {
+                while (running) {
+                    execute("call sleep(50)");
+                }
+            }));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        running = false;
+        background.shutdown();
+        background.awaitTermination(30, TimeUnit.SECONDS);
+        pool.close();
+    }
+
+    @Benchmark
+    public boolean realtimeQuery() {
+        return Workload.REALTIME.run(() -> execute("select 1"));
+    }
+
+    private boolean execute(String sql) {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            return statement.execute(sql);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Called by the sleep alias, standing in for a slow history scan or job query.
+     */
+    public static void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+}
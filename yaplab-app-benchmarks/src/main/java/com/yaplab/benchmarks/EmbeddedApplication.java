@@ -0,0 +1,54 @@
+package com.yaplab.benchmarks;
+
+import com.YapLabAppApplication;
+import org.h2.store.fs.FilePath;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+
+/**
+ * Starts the whole application against an H2 database, for benchmarks of the service layer.
+ * The database is in memory, or a durable file database whose commits wait for the disk like MySQL's, see {@link SyncFilePath}.
+ * Settings are passed as command line arguments so they take precedence over a local application.properties.
+ */
+final class EmbeddedApplication {
+
+    private EmbeddedApplication() {
+    }
+
+    static ConfigurableApplicationContext start(Path workDir) {
+        return start(workDir, false);
+    }
+
+    static ConfigurableApplicationContext start(Path workDir, boolean durable) {
+        String database = "mem:yaplab";
+        if (durable) {
+            FilePath.register(new SyncFilePath());
+            database = "sync:" + workDir.resolve("database").toAbsolutePath() + ";WRITE_DELAY=0";
+        }
+        return new SpringApplicationBuilder(YapLabAppApplication.class)
+                .logStartupInfo(false)
+                .run(
+                        "--spring.main.banner-mode=off",
+                        "--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:" + database + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.username=sa",
+                        "--spring.datasource.password=",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.open-in-view=false",
+                        "--spring.jpa.properties.hibernate.globally_quoted_identifiers=true",
+                        "--spring.jpa.properties.hibernate.generate_statistics=true",
+                        "--spring.jpa.properties.yaplab.id.node-id=0",
+                        "--jwt.secret=" + BenchmarkFixtures.JWT_SECRET,
+                        "--jwt.access.expiration=900000",
+                        "--jwt.refresh.expiration=604800000",
+                        "--testmail.api.key=benchmark",
+                        "--testmail.namespace=benchmark",
+                        "--file.storage.type=memory",
+                        "--search.index-dir=" + workDir.resolve("search-index"),
+                        "--message.archive.dir=" + workDir.resolve("message-archive"),
+                        "--logging.level.root=WARN"
+                );
+    }
+}
@@ -0,0 +1,73 @@
+package com.yaplab.benchmarks;
+
+import com.yaplab.message.MessageDTO;
+import com.yaplab.message.MessageIngestPipeline;
+import com.yaplab.message.MessageResponseDTO;
+import com.yaplab.message.MessageService;
+import com.yaplab.metrics.MessageSendMetrics.Kind;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages per second sent by 32 concurrent senders, each send in a transaction of its own (direct)
+ * or queued and written in group commits by the ingest pipeline (batched).
+ * Run it with -p database=memory,durable: in memory a commit costs no disk write, so only the saved per-transaction work shows,
+ * the durable H2 file database waits for the disk on every commit like MySQL with a durable redo log.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class GroupCommitBenchmark {
+
+    @Param({"direct", "batched"})
+    public String path;
+
+    private MessageService messageService;
+    private MessageIngestPipeline pipeline;
+    private MessageDTO messageDTO;
+
+    @Setup
+    public void setUp(ApplicationState application) {
+        messageService = application.bean(MessageService.class);
+        messageDTO = new MessageDTO(application.senderId, application.receiverId,
+                "Benchmark message with a typical length of a chat line", null, null, null, false, false, null);
+        if (path.equals("batched")) {
+            pipeline = new MessageIngestPipeline(messageService, new SimpleMeterRegistry(), true, 4096, 256, Duration.ofSeconds(5));
+            pipeline.start();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        if (pipeline != null) {
+            pipeline.stop();
+        }
+    }
+
+    @Benchmark
+    public MessageResponseDTO sendMessage() {
+        if (pipeline == null) {
+            return messageService.sendPersonalMessage(messageDTO);
+        }
+        return pipeline.submit(Kind.PERSONAL, messageDTO).join();
+    }
+}
@@ -0,0 +1,85 @@
+package com.yaplab.benchmarks;
+
+import com.yaplab.chatroom.ChatRoomService;
+import com.yaplab.message.MessageDTO;
+import com.yaplab.message.MessageResponseDTO;
+import com.yaplab.message.MessageService;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading one page of chatroom history, with the number of SQL statements it takes.
+ * The statements and pages counters are reported next to the score, their ratio is the statements per page.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HistoryPageBenchmark {
+
+    private static final int MESSAGES = 500;
+    private static final int PAGE_SIZE = 50;
+
+    private ChatRoomService chatRoomService;
+    private Statistics statistics;
+    private String chatroomId;
+
+    @Setup
+    public void setUp(ApplicationState application) {
+        MessageService messageService = application.bean(MessageService.class);
+        MessageResponseDTO first = null;
+        for (int i = 0; i < MESSAGES; i++) {
+            MessageResponseDTO sent = messageService.sendPersonalMessage(new MessageDTO(
+                    i % 2 == 0 ? application.senderId : application.receiverId,
+                    i % 2 == 0 ? application.receiverId : application.senderId,
+                    "History message " + i, null, null, null, false, false, null));
+            if (first == null) {
+                first = sent;
+            }
+        }
+        chatRoomService = application.bean(ChatRoomService.class);
+        statistics = application.statistics;
+        chatroomId = first.chatRoomId();
+    }
+
+    /**
+     * Counts the SQL statements of the measured calls.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class QueryCounters {
+        public long statements;
+        public long pages;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            statements = 0;
+            pages = 0;
+        }
+    }
+
+    @Benchmark
+    public List<MessageResponseDTO> latestPage(QueryCounters counters) {
+        long before = statistics.getPrepareStatementCount();
+        List<MessageResponseDTO> page = chatRoomService.getMessagesFromChatRoom(chatroomId, null, null, PAGE_SIZE);
+        counters.statements += statistics.getPrepareStatementCount() - before;
+        counters.pages++;
+        return page;
+    }
+}
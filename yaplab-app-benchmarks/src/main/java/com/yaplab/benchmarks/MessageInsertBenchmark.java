@@ -0,0 +1,115 @@
+package com.yaplab.benchmarks;
+
+import com.yaplab.chatroom.ChatRoom;
+import com.yaplab.message.Message;
+import com.yaplab.message.MessageDTO;
+import com.yaplab.message.MessageMapper;
+import com.yaplab.message.MessageRepository;
+import com.yaplab.message.MessageService;
+import com.yaplab.user.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.Session;
+import org.hibernate.stat.Statistics;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.orm.jpa.SharedEntityManagerCreator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert throughput of messages written in bulk, as an import or a forward to many chat rooms does:
+ * 500 messages persisted in one transaction, with JDBC batching off (batch size 1) and on.
+ * One operation is one inserted message. The statements counter shows how many statements the inserts took,
+ * with in-memory IDs and a batch size of 50 it is one per 50 messages.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageInsertBenchmark {
+
+    private static final int ROWS = 500;
+
+    @Param({"1", "50"})
+    public int jdbcBatchSize;
+
+    private TransactionTemplate transactionTemplate;
+    private EntityManager entityManager;
+    private MessageRepository messageRepository;
+    private final MessageMapper messageMapper = new MessageMapper();
+    private Statistics statistics;
+    private String chatroomId;
+    private Long senderId;
+    private Long receiverId;
+
+    @Setup
+    public void setUp(ApplicationState application) {
+        transactionTemplate = application.bean(TransactionTemplate.class);
+        entityManager = SharedEntityManagerCreator.createSharedEntityManager(application.bean(EntityManagerFactory.class));
+        messageRepository = application.bean(MessageRepository.class);
+        statistics = application.statistics;
+        senderId = application.senderId;
+        receiverId = application.receiverId;
+        chatroomId = application.bean(MessageService.class).sendPersonalMessage(new MessageDTO(
+                senderId, receiverId, "First message", null, null, null, false, false, null)).chatRoomId();
+    }
+
+    /**
+     * Removes the inserted messages, so every iteration starts with the same table.
+     */
+    @TearDown(Level.Iteration)
+    public void clear() {
+        messageRepository.deleteAllInBatch();
+    }
+
+    /**
+     * Counts the SQL statements of the measured inserts.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class InsertCounters {
+        public long statements;
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            statements = 0;
+            rows = 0;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROWS)
+    public void insertMessages(InsertCounters counters) {
+        long before = statistics.getPrepareStatementCount();
+        transactionTemplate.executeWithoutResult(status -> {
+            entityManager.unwrap(Session.class).setJdbcBatchSize(jdbcBatchSize);
+            ChatRoom chatRoom = entityManager.getReference(ChatRoom.class, chatroomId);
+            User sender = entityManager.getReference(User.class, senderId);
+            User receiver = entityManager.getReference(User.class, receiverId);
+            for (int i = 0; i < ROWS; i++) {
+                Message message = messageMapper.createPersonalMessage(chatRoom, sender, receiver, "Imported message " + i, null);
+                entityManager.persist(message);
+            }
+        });
+        counters.statements += statistics.getPrepareStatementCount() - before;
+        counters.rows += ROWS;
+    }
+}
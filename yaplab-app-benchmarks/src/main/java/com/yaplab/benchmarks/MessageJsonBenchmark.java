@@ -0,0 +1,57 @@
+package com.yaplab.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yaplab.message.MessageMapper;
+import com.yaplab.message.MessageResponseDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serializing messages to JSON the way they are sent over STOMP and REST:
+ * one message as pushed to a chatroom topic and a page of 50 as returned by the history endpoint.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageJsonBenchmark {
+
+    /**
+     * Configured like the ObjectMapper Spring Boot creates for the application.
+     */
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private MessageResponseDTO message;
+    private List<MessageResponseDTO> page;
+
+    @Setup
+    public void setUp() {
+        message = new MessageMapper().fromHistoryRow(BenchmarkFixtures.historyRowWithFileAndReply());
+        page = Collections.nCopies(50, message);
+    }
+
+    @Benchmark
+    public byte[] serializeMessage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] serializeHistoryPage() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
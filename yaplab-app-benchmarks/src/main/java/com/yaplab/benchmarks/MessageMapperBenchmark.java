@@ -0,0 +1,50 @@
+package com.yaplab.benchmarks;
+
+import com.yaplab.message.Message;
+import com.yaplab.message.MessageHistoryRow;
+import com.yaplab.message.MessageMapper;
+import com.yaplab.message.MessageResponseDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building a MessageResponseDTO from a loaded entity graph and from a flat history row.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageMapperBenchmark {
+
+    private final MessageMapper messageMapper = new MessageMapper();
+    private Message message;
+    private MessageHistoryRow historyRow;
+
+    @Setup
+    public void setUp() {
+        message = BenchmarkFixtures.messageWithFileAndReply();
+        historyRow = BenchmarkFixtures.historyRowWithFileAndReply();
+    }
+
+    @Benchmark
+    public MessageResponseDTO toResponseDTO() {
+        return messageMapper.toResponseDTO(message);
+    }
+
+    @Benchmark
+    public MessageResponseDTO fromHistoryRow() {
+        return messageMapper.fromHistoryRow(historyRow);
+    }
+}
@@ -0,0 +1,95 @@
+package com.yaplab.benchmarks;
+
+import com.yaplab.search.MessageIndexRow;
+import com.yaplab.search.MessageSearchIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a message search over 10M indexed messages in 1000 chatrooms, for a user in 20 of them.
+ * Building the index takes several minutes at that size, pass -p messages=200000 for a quick run.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageSearchBenchmark {
+
+    private static final int CHATROOMS = 1_000;
+    private static final String[] WORDS = {
+            "meeting", "tomorrow", "lunch", "deploy", "release", "photo", "ticket", "review", "budget", "holiday",
+            "coffee", "report", "server", "invoice", "launch", "design", "weekend", "flight", "hotel", "deadline"
+    };
+
+    @Param("10000000")
+    public int messages;
+
+    private Path indexDir;
+    private MessageSearchIndex index;
+    private List<String> userChatrooms;
+
+    @Setup
+    public void setUp() throws IOException {
+        indexDir = Files.createTempDirectory("yaplab-search-benchmark");
+        index = new MessageSearchIndex(indexDir.toString());
+        Random random = new Random(42);
+        List<MessageIndexRow> batch = new ArrayList<>(10_000);
+        for (long id = 1; id <= messages; id++) {
+            StringBuilder content = new StringBuilder();
+            for (int word = 0; word < 8; word++) {
+                content.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+            }
+            batch.add(new MessageIndexRow(id, "group_" + random.nextInt(CHATROOMS), "user" + random.nextInt(500),
+                    content.toString(), Instant.ofEpochSecond(1_700_000_000L + id)));
+            if (batch.size() == 10_000) {
+                index.addAll(batch);
+                batch.clear();
+            }
+        }
+        index.commit();
+        index.refresh();
+        userChatrooms = new ArrayList<>();
+        for (int room = 0; room < 20; room++) {
+            userChatrooms.add("group_" + room * 50);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        index.close();
+        try (var files = Files.walk(indexDir)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public MessageSearchIndex.SearchPage searchTerm() {
+        return index.search("deadline", userChatrooms, 0, 20);
+    }
+
+    @Benchmark
+    public MessageSearchIndex.SearchPage searchPhrase() {
+        return index.search("\"coffee meeting\"", userChatrooms, 0, 20);
+    }
+}
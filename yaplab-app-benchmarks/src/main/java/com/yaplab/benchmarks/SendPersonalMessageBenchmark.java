@@ -0,0 +1,45 @@
+package com.yaplab.benchmarks;
+
+import com.yaplab.message.MessageDTO;
+import com.yaplab.message.MessageResponseDTO;
+import com.yaplab.message.MessageService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end cost of sending a personal message through MessageService against an embedded database:
+ * chatroom lookup, user lookups, the insert, the DTO and the search index hook.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SendPersonalMessageBenchmark {
+
+    private MessageService messageService;
+    private MessageDTO messageDTO;
+
+    @Setup
+    public void setUp(ApplicationState application) {
+        messageService = application.bean(MessageService.class);
+        messageDTO = new MessageDTO(application.senderId, application.receiverId,
+                "Benchmark message with a typical length of a chat line", null, null, null, false, false, null);
+    }
+
+    @Benchmark
+    public MessageResponseDTO sendPersonalMessage() {
+        return messageService.sendPersonalMessage(messageDTO);
+    }
+}
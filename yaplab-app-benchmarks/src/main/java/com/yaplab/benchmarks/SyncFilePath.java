@@ -0,0 +1,25 @@
+package com.yaplab.benchmarks;
+
+import org.h2.store.fs.FilePathWrapper;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * H2 file system that opens database files for synchronous writes, used as sync:/path in a database URL.
+ * H2 never forces its file to disk on commit, with this every write returns only once it is on the device,
+ * so together with WRITE_DELAY=0 each commit pays for a durable write like a MySQL commit with a durable redo log.
+ * Registered with FilePath.register, H2 creates further instances by reflection, so the class is public.
+ */
+public class SyncFilePath extends FilePathWrapper {
+
+    @Override
+    public String getScheme() {
+        return "sync";
+    }
+
+    @Override
+    public FileChannel open(String mode) throws IOException {
+        return getBase().open("rw".equals(mode) ? "rwd" : mode);
+    }
+}
@@ -0,0 +1,60 @@
+package com.yaplab.benchmarks;
+
+import com.yaplab.user.User;
+import com.yaplab.user.UserDirectoryIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of a user directory search over 1M users, the p99 of the sample is the number to watch.
+ * Inputs range from a single letter, the widest prefix range, to a full name.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class UserDirectorySearchBenchmark {
+
+    private static final String[] FIRST_NAMES = {
+            "james", "mary", "robert", "patricia", "john", "jennifer", "michael", "linda", "david", "elizabeth",
+            "william", "barbara", "richard", "susan", "joseph", "jessica", "thomas", "sarah", "charles", "karen"
+    };
+    private static final String[] INPUTS = {"m", "ma", "mar", "mary", "mary s", "user12", "user123456", "555"};
+
+    @Param("1000000")
+    public int users;
+
+    private UserDirectoryIndex index;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        // Users are added directly, the repository is only read by load()
+        index = new UserDirectoryIndex(null);
+        Random random = new Random(42);
+        for (long id = 1; id <= users; id++) {
+            String name = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)] + " " + Long.toString(random.nextLong(36L * 36 * 36 * 36 * 36), 36);
+            index.putAfterCommit(new User(id, name, "user" + id + "@mail.com", String.valueOf(5_550_000_000L + id), null));
+        }
+    }
+
+    @Benchmark
+    public List<Long> search() {
+        return index.search(INPUTS[next++ & 7], 20);
+    }
+}
@@ -0,0 +1,17 @@
+#!/usr/bin/env sh
+# Runs the load test at increasing session counts against a running backend and writes results/<label>-<sessions>.json.
+# Usage: ./run-ladder.sh <label> --users-file=users.csv [other load test arguments]
+# To compare platform and virtual threads, run it once against a backend started with
+# spring.threads.virtual.enabled=false and once with true, then:
+#   java -cp target/loadtest.jar com.yaplab.loadtest.CompareReports results/platform-*.json results/virtual-*.json
+# Run the backend against MySQL on its own machine. With an in-memory database JDBC calls never block,
+# so both modes measure the same thing, and a load generator on the same cores skews the tail latency.
+set -e
+cd "$(dirname "$0")"
+label="$1"
+shift
+../yaplab-app-backend/mvnw -q -f pom.xml package
+mkdir -p results
+for sessions in ${LADDER:-100 250 500 1000 2000 4000}; do
+  java -jar target/loadtest.jar --sessions="$sessions" --output="results/${label}-${sessions}.json" "$@" || true
+done
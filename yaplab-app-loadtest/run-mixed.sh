@@ -0,0 +1,16 @@
+#!/usr/bin/env sh
+# Runs the load test against a running backend twice, once with messages only and once with REST history reads
+# at REST_RATE requests per second next to them, and writes results/<label>-quiet.json and results/<label>-mixed.json.
+# Usage: ./run-mixed.sh <label> --users-file=users.csv [other load test arguments]
+# To see the effect of the connection bulkheads, run it once against a backend started with
+# spring.datasource.bulkhead.enabled=false and once with true, then:
+#   java -cp target/loadtest.jar com.yaplab.loadtest.CompareReports results/shared-*.json results/bulkhead-*.json
+# With the bulkheads the delivery latency of the mixed run should stay close to the quiet one, the REST latency absorbs the load.
+set -e
+cd "$(dirname "$0")"
+label="$1"
+shift
+../yaplab-app-backend/mvnw -q -f pom.xml package
+mkdir -p results
+java -jar target/loadtest.jar --rest-rate=0 --output="results/${label}-quiet.json" "$@" || true
+java -jar target/loadtest.jar --rest-rate="${REST_RATE:-400}" --output="results/${label}-mixed.json" "$@" || true
@@ -0,0 +1,99 @@
+package com.yaplab.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * REST calls of a run: logging the users in, creating the groups and reading history pages for the REST load.
+ */
+public class BackendClient {
+
+    private final URI baseUrl;
+    private final ObjectMapper objectMapper;
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    public BackendClient(URI baseUrl, ObjectMapper objectMapper) {
+        this.baseUrl = baseUrl;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * Logs a user in.
+     * @param emailId email of a verified account
+     * @param password password of the account
+     * @return the ID and access token of the user
+     */
+    public LoggedInUser login(String emailId, String password) throws IOException, InterruptedException {
+        JsonNode response = post("/auth/login", null, Map.of("emailId", emailId, "password", password));
+        return new LoggedInUser(response.get("id").asLong(), response.get("userName").asText(), response.get("accessToken").asText());
+    }
+
+    /**
+     * Creates a group. Its chatroom ID follows the group_{id} convention of the backend.
+     * @param creator the user creating the group
+     * @param name name of the group
+     * @param memberIds IDs of all members, including the creator
+     * @return the chatroom ID of the group
+     */
+    public String createGroup(LoggedInUser creator, String name, List<Long> memberIds) throws IOException, InterruptedException {
+        JsonNode response = post("/groups/create?createdById=" + creator.id(), creator.accessToken(),
+                Map.of("name", name, "userId", memberIds));
+        return "group_" + response.get("id").asLong();
+    }
+
+    /**
+     * Reads a page of the history of a chatroom. Pages with a before time are read from the database, not the recent message cache.
+     * @param reader a member of the chatroom
+     * @param chatroomId ID of the chatroom
+     * @param before only messages sent before this time
+     * @param limit maximum number of messages
+     */
+    public void historyPage(LoggedInUser reader, String chatroomId, Instant before, int limit) throws IOException, InterruptedException {
+        String path = "/chatrooms/" + chatroomId + "/messages?before=" + before + "&limit=" + limit;
+        HttpRequest request = HttpRequest.newBuilder(baseUrl.resolve(path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", "Bearer " + reader.accessToken())
+                .GET()
+                .build();
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        if (response.statusCode() != 200) {
+            throw new IOException("GET " + path + " failed with status " + response.statusCode());
+        }
+    }
+
+    private JsonNode post(String path, String accessToken, Object body) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(baseUrl.resolve(path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)));
+        if (accessToken != null) {
+            request.header("Authorization", "Bearer " + accessToken);
+        }
+        HttpResponse<byte[]> response = httpClient.send(request.build(), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw new IOException("POST " + path + " failed with status " + response.statusCode() + ": " + new String(response.body()));
+        }
+        return objectMapper.readTree(response.body());
+    }
+
+    /**
+     * A logged-in user of the run.
+     * @param id ID of the user
+     * @param userName name of the user
+     * @param accessToken JWT access token of the user
+     */
+    public record LoggedInUser(long id, String userName, String accessToken) {
+    }
+}
@@ -0,0 +1,60 @@
+package com.yaplab.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prints the reports of session ladders side by side, e.g. a ladder run with platform threads and one with virtual threads,
+ * or the runs of run-mixed.sh with and without REST load, told apart by their REST throughput.
+ * Reports are grouped by the label of their file name, label-sessions.json as written by run-ladder.sh,
+ * and every label gets the largest session count it sustained: all sessions connected and
+ * less than MAX_ERROR_RATE of the deliveries lost.
+ * <p>
+ * Usage: java -cp target/loadtest.jar com.yaplab.loadtest.CompareReports results/*.json
+ */
+public class CompareReports {
+
+    /**
+     * Highest share of lost deliveries a step may have to count as sustained.
+     */
+    private static final double MAX_ERROR_RATE = 0.01;
+
+    public static void main(String[] args) throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        Map<String, List<JsonNode>> reportsByLabel = new LinkedHashMap<>();
+        for (String file : args) {
+            String name = Path.of(file).getFileName().toString().replace(".json", "");
+            String label = name.contains("-") ? name.substring(0, name.lastIndexOf('-')) : name;
+            reportsByLabel.computeIfAbsent(label, key -> new ArrayList<>()).add(objectMapper.readTree(Path.of(file).toFile()));
+        }
+        System.out.printf("%-12s %8s %10s %12s %10s %10s %10s %10s %10s %12s%n",
+                "label", "sessions", "sent/s", "delivered/s", "errors", "p50 ms", "p99 ms", "p99.9 ms", "rest/s", "rest p99 ms");
+        for (Map.Entry<String, List<JsonNode>> entry : reportsByLabel.entrySet()) {
+            List<JsonNode> reports = entry.getValue();
+            reports.sort(Comparator.comparingInt(report -> report.path("config").path("sessions").asInt()));
+            int sustained = 0;
+            for (JsonNode report : reports) {
+                int sessions = report.path("config").path("sessions").asInt();
+                double errorRate = report.path("deliveryErrorRate").asDouble();
+                JsonNode latency = report.path("deliveryLatency");
+                System.out.printf("%-12s %8d %10.1f %12.1f %10.4f %10.2f %10.2f %10.2f %10.1f %12.2f%n",
+                        entry.getKey(), sessions,
+                        report.path("sendThroughput").asDouble(), report.path("deliveryThroughput").asDouble(), errorRate,
+                        latency.path("p50").asDouble(), latency.path("p99").asDouble(), latency.path("p999").asDouble(),
+                        report.path("restThroughput").asDouble(), report.path("restLatency").path("p99").asDouble());
+                if (report.path("connectFailures").asLong() == 0 && errorRate < MAX_ERROR_RATE) {
+                    sustained = Math.max(sustained, sessions);
+                }
+            }
+            System.out.printf("%-12s sustained up to %d sessions%n%n", entry.getKey(), sustained);
+        }
+    }
+}
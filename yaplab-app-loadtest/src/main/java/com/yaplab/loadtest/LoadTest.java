@@ -0,0 +1,342 @@
+package com.yaplab.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import org.springframework.web.socket.sockjs.client.SockJsClient;
+import org.springframework.web.socket.sockjs.client.WebSocketTransport;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test of the STOMP endpoint.
+ * Logs in the users of the users file, pairs them for personal chats and puts them into groups,
+ * opens one SockJS/STOMP session per user and sends messages through /app/personal and /app/group
+ * at a fixed total rate. Every delivery on /topic/chat/{chatroomId} is timed against the time the
+ * message was scheduled for, the report holds the latency percentiles, throughput and error rates.
+ * With a REST rate the users also read history pages of their chatrooms over REST at that rate,
+ * a mixed workload showing whether REST traffic slows the message sends down.
+ * <p>
+ * Usage: java -jar target/loadtest.jar --users-file=users.csv [--base-url=http://localhost:8080]
+ * [--sessions=100] [--group-size=10] [--rate=200] [--group-ratio=0.3] [--warmup=PT30S]
+ * [--duration=PT2M] [--sender-threads=4] [--rest-rate=0] [--rest-threads=32] [--rest-page-size=200]
+ * [--output=results/run.json]
+ */
+public class LoadTest {
+
+    /**
+     * Logger for LoadTest
+     * This logger is used to log various events and errors in the LoadTest class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+
+    /**
+     * Logins and connects are done this many at a time, so the run does not start with a connection storm.
+     */
+    private static final int SETUP_PARALLELISM = 16;
+
+    /**
+     * Time deliveries of the last messages of the window are waited for.
+     */
+    private static final long DRAIN_MILLIS = 5_000;
+
+    public static void main(String[] args) throws Exception {
+        LoadTestConfig config = LoadTestConfig.fromArgs(args);
+        LoadTestReport report = new LoadTest().run(config);
+        System.out.println(report.summary());
+        System.exit(report.sessionsConnected() > 0 ? 0 : 1);
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            .enable(SerializationFeature.INDENT_OUTPUT);
+
+    /**
+     * Runs the load test.
+     * @param config settings of the run
+     * @return the result, also written to the output file of the config
+     */
+    public LoadTestReport run(LoadTestConfig config) throws Exception {
+        String runId = UUID.randomUUID().toString().substring(0, 8);
+        LoadTestMetrics metrics = new LoadTestMetrics();
+        BackendClient backend = new BackendClient(config.baseUrl(), objectMapper);
+
+        List<VirtualUser> users = login(config, backend, runId, metrics);
+        assignChatrooms(config, backend, users, runId);
+
+        ThreadPoolTaskScheduler heartbeatScheduler = new ThreadPoolTaskScheduler();
+        heartbeatScheduler.setPoolSize(2);
+        heartbeatScheduler.setThreadNamePrefix("loadtest-heartbeat-");
+        heartbeatScheduler.initialize();
+        WebSocketStompClient stompClient = new WebSocketStompClient(
+                new SockJsClient(List.of(new WebSocketTransport(new StandardWebSocketClient()))));
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        stompClient.setTaskScheduler(heartbeatScheduler);
+
+        int connected = connect(users, stompClient, config);
+        LoadTestReport.Latency connectLatency = LoadTestReport.Latency.of(metrics.takeConnectLatency());
+
+        logger.info("Run {}: {} sessions connected, warming up for {}", runId, connected, config.warmup());
+        List<Thread> senders = startSenders(config, users, metrics);
+        RestLoad restLoad = startRestLoad(config, backend, users, metrics);
+        TimeUnit.MILLISECONDS.sleep(config.warmup().toMillis());
+        metrics.takeDeliveryLatency();
+        metrics.takeRestLatency();
+        metrics.startWindow();
+        Instant startedAt = Instant.now();
+        logger.info("Run {}: measuring for {}", runId, config.duration());
+        TimeUnit.MILLISECONDS.sleep(config.duration().toMillis());
+        metrics.endWindow();
+        senders.forEach(Thread::interrupt);
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        restLoad.stop();
+        TimeUnit.MILLISECONDS.sleep(DRAIN_MILLIS);
+
+        users.forEach(VirtualUser::disconnect);
+        stompClient.stop();
+        heartbeatScheduler.shutdown();
+
+        LoadTestReport report = report(runId, startedAt, config, connected, metrics, connectLatency);
+        Path output = config.output();
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+        objectMapper.writeValue(output.toFile(), report);
+        logger.info("Run {}: report written to {}", runId, output);
+        return report;
+    }
+
+    /**
+     * Logs in the first configured number of users of the users file.
+     */
+    private List<VirtualUser> login(LoadTestConfig config, BackendClient backend, String runId, LoadTestMetrics metrics)
+            throws IOException, InterruptedException {
+        List<String[]> credentials = Files.readAllLines(config.usersFile()).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .map(line -> line.split(",", 2))
+                .limit(config.sessions())
+                .toList();
+        if (credentials.size() < config.sessions()) {
+            throw new IllegalArgumentException("The users file has " + credentials.size()
+                    + " users, " + config.sessions() + " sessions need one each");
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(SETUP_PARALLELISM);
+        try {
+            List<Future<BackendClient.LoggedInUser>> logins = new ArrayList<>();
+            for (String[] credential : credentials) {
+                logins.add(executor.submit(() -> backend.login(credential[0].trim(), credential[1].trim())));
+            }
+            List<VirtualUser> users = new ArrayList<>(logins.size());
+            for (Future<BackendClient.LoggedInUser> login : logins) {
+                try {
+                    users.add(new VirtualUser(login.get(), runId, metrics));
+                } catch (Exception e) {
+                    throw new IllegalStateException("Login failed, users must be registered with a verified email", e);
+                }
+            }
+            logger.info("Run {}: {} users logged in", runId, users.size());
+            return users;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Pairs neighbouring users for personal chats and splits the users into groups of the configured size.
+     * Users left over after the last full group stay without a group and only send personal messages.
+     */
+    private void assignChatrooms(LoadTestConfig config, BackendClient backend, List<VirtualUser> users, String runId)
+            throws IOException, InterruptedException {
+        for (int i = 0; i + 1 < users.size(); i += 2) {
+            users.get(i).setPartner(users.get(i + 1).user());
+            users.get(i + 1).setPartner(users.get(i).user());
+        }
+        if (config.groupSize() == 0 || config.groupRatio() == 0) {
+            return;
+        }
+        for (int first = 0; first + config.groupSize() <= users.size(); first += config.groupSize()) {
+            List<VirtualUser> members = users.subList(first, first + config.groupSize());
+            List<Long> memberIds = members.stream().map(member -> member.user().id()).toList();
+            String chatroomId = backend.createGroup(members.get(0).user(), "loadtest-" + runId + "-" + first, memberIds);
+            members.forEach(member -> member.setGroup(chatroomId, memberIds.size()));
+        }
+    }
+
+    /**
+     * Opens the sessions of all users.
+     * @return number of sessions connected
+     */
+    private int connect(List<VirtualUser> users, WebSocketStompClient stompClient, LoadTestConfig config) throws InterruptedException {
+        URI wsUrl = config.baseUrl().resolve("/ws");
+        int connected = 0;
+        for (int first = 0; first < users.size(); first += SETUP_PARALLELISM) {
+            List<CompletableFuture<?>> batch = users.subList(first, Math.min(first + SETUP_PARALLELISM, users.size())).stream()
+                    .<CompletableFuture<?>>map(user -> user.connect(stompClient, wsUrl))
+                    .toList();
+            for (CompletableFuture<?> future : batch) {
+                try {
+                    future.get(30, TimeUnit.SECONDS);
+                    connected++;
+                } catch (Exception e) {
+                    // Counted as a connect failure by the virtual user
+                }
+            }
+        }
+        return connected;
+    }
+
+    /**
+     * Starts the sender threads. Every thread owns every n-th user and sends at its share of the total rate.
+     * Send times follow a fixed schedule; a thread falling behind catches up instead of skipping,
+     * and the latency of the late messages includes the time they were late.
+     */
+    private List<Thread> startSenders(LoadTestConfig config, List<VirtualUser> users, LoadTestMetrics metrics) {
+        int threads = Math.min(config.senderThreads(), users.size());
+        long intervalNanos = (long) (1_000_000_000L * threads / config.rate());
+        List<Thread> senders = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            List<VirtualUser> owned = new ArrayList<>();
+            for (int i = t; i < users.size(); i += threads) {
+                if (users.get(i).hasPartner() || users.get(i).hasGroup()) {
+                    owned.add(users.get(i));
+                }
+            }
+            if (owned.isEmpty()) {
+                continue;
+            }
+            long offset = intervalNanos * t / threads;
+            Thread sender = new Thread(() -> {
+                long next = System.nanoTime() + offset;
+                int index = 0;
+                while (!Thread.currentThread().isInterrupted()) {
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                        continue;
+                    }
+                    VirtualUser user = owned.get(index++ % owned.size());
+                    boolean toGroup = user.hasGroup()
+                            && (!user.hasPartner() || ThreadLocalRandom.current().nextDouble() < config.groupRatio());
+                    user.send(toGroup, next);
+                    next += intervalNanos;
+                }
+            }, "loadtest-sender-" + t);
+            sender.start();
+            senders.add(sender);
+        }
+        return senders;
+    }
+
+    /**
+     * Starts the REST load: a scheduler thread hands history page reads to a pool of REST threads at a fixed rate.
+     * Like the messages, requests are timed from the time they were scheduled for, so requests waiting for a free
+     * thread show up in the latencies. Returns a load that does nothing if the REST rate is 0.
+     */
+    private RestLoad startRestLoad(LoadTestConfig config, BackendClient backend, List<VirtualUser> users, LoadTestMetrics metrics) {
+        List<VirtualUser> readers = users.stream().filter(user -> !user.chatroomIds().isEmpty()).toList();
+        if (config.restRate() == 0 || readers.isEmpty()) {
+            return new RestLoad(null, null);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(config.restThreads());
+        long intervalNanos = (long) (1_000_000_000L / config.restRate());
+        Thread scheduler = new Thread(() -> {
+            long next = System.nanoTime();
+            while (!Thread.currentThread().isInterrupted()) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                    continue;
+                }
+                long scheduled = next;
+                VirtualUser reader = readers.get(ThreadLocalRandom.current().nextInt(readers.size()));
+                List<String> chatroomIds = reader.chatroomIds();
+                String chatroomId = chatroomIds.get(ThreadLocalRandom.current().nextInt(chatroomIds.size()));
+                executor.execute(() -> {
+                    boolean failed = false;
+                    try {
+                        backend.historyPage(reader.user(), chatroomId, Instant.now(), config.restPageSize());
+                    } catch (IOException e) {
+                        failed = true;
+                        logger.debug("History page of chatroom {} failed: {}", chatroomId, e.getMessage());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    metrics.recordRest(scheduled, System.nanoTime(), failed);
+                });
+                next += intervalNanos;
+            }
+        }, "loadtest-rest-scheduler");
+        scheduler.start();
+        return new RestLoad(scheduler, executor);
+    }
+
+    /**
+     * The running REST load, both parts null if there is none.
+     */
+    private record RestLoad(Thread scheduler, ExecutorService executor) {
+
+        void stop() throws InterruptedException {
+            if (scheduler == null) {
+                return;
+            }
+            scheduler.interrupt();
+            scheduler.join();
+            executor.shutdownNow();
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private LoadTestReport report(String runId, Instant startedAt, LoadTestConfig config, int connected,
+                                  LoadTestMetrics metrics, LoadTestReport.Latency connectLatency) {
+        double seconds = config.duration().toMillis() / 1000.0;
+        long expected = metrics.expectedDeliveries.sum();
+        long restRequests = metrics.restRequests.sum();
+        long delivered = metrics.delivered.sum();
+        return new LoadTestReport(
+                runId,
+                startedAt,
+                config,
+                connected,
+                metrics.connectFailures.sum(),
+                metrics.sent.sum(),
+                metrics.sendErrors.sum(),
+                expected,
+                delivered,
+                expected == 0 ? 0 : Math.max(expected - delivered, 0) / (double) expected,
+                metrics.stompErrors.sum(),
+                metrics.transportErrors.sum(),
+                metrics.sent.sum() / seconds,
+                delivered / seconds,
+                LoadTestReport.Latency.of(metrics.takeDeliveryLatency()),
+                connectLatency,
+                restRequests,
+                metrics.restErrors.sum(),
+                restRequests / seconds,
+                LoadTestReport.Latency.of(metrics.takeRestLatency()));
+    }
+}
@@ -0,0 +1,80 @@
+package com.yaplab.loadtest;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings of a load test run, read from --name=value command line arguments.
+ * @param baseUrl URL of the backend, e.g. http://localhost:8080
+ * @param usersFile CSV file with one emailId,password line per verified user account
+ * @param sessions number of STOMP sessions to open, at most one per user in the file
+ * @param groupSize number of members of each group created for the run, 0 for personal messages only
+ * @param rate messages sent per second across all sessions
+ * @param groupRatio share of messages sent to groups instead of personal chats, between 0 and 1
+ * @param warmup time to send messages before latencies are recorded
+ * @param duration time latencies are recorded for
+ * @param senderThreads number of threads sending messages, every session is owned by exactly one
+ * @param restRate history page requests per second sent over REST next to the messages, 0 for messages only
+ * @param restThreads number of REST requests in flight at most
+ * @param restPageSize messages per requested history page
+ * @param output file the JSON report is written to
+ */
+public record LoadTestConfig(
+        URI baseUrl,
+        Path usersFile,
+        int sessions,
+        int groupSize,
+        double rate,
+        double groupRatio,
+        Duration warmup,
+        Duration duration,
+        int senderThreads,
+        double restRate,
+        int restThreads,
+        int restPageSize,
+        Path output
+) {
+
+    /**
+     * Parses the command line arguments, falling back to defaults for missing ones.
+     * @param args arguments in --name=value form
+     * @return the settings of the run
+     */
+    public static LoadTestConfig fromArgs(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Arguments must look like --name=value: " + arg);
+            }
+            int separator = arg.indexOf('=');
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        if (!values.containsKey("users-file")) {
+            throw new IllegalArgumentException("--users-file is required");
+        }
+        LoadTestConfig config = new LoadTestConfig(
+                URI.create(values.getOrDefault("base-url", "http://localhost:8080")),
+                Path.of(values.get("users-file")),
+                Integer.parseInt(values.getOrDefault("sessions", "100")),
+                Integer.parseInt(values.getOrDefault("group-size", "10")),
+                Double.parseDouble(values.getOrDefault("rate", "200")),
+                Double.parseDouble(values.getOrDefault("group-ratio", "0.3")),
+                Duration.parse(values.getOrDefault("warmup", "PT30S")),
+                Duration.parse(values.getOrDefault("duration", "PT2M")),
+                Integer.parseInt(values.getOrDefault("sender-threads", "4")),
+                Double.parseDouble(values.getOrDefault("rest-rate", "0")),
+                Integer.parseInt(values.getOrDefault("rest-threads", "32")),
+                Integer.parseInt(values.getOrDefault("rest-page-size", "200")),
+                Path.of(values.getOrDefault("output", "results/loadtest-" + System.currentTimeMillis() + ".json"))
+        );
+        if (config.sessions < 2 || config.rate <= 0 || config.senderThreads < 1
+                || config.groupRatio < 0 || config.groupRatio > 1 || config.groupSize == 1
+                || config.restRate < 0 || config.restThreads < 1 || config.restPageSize < 1) {
+            throw new IllegalArgumentException("Invalid settings: " + config);
+        }
+        return config;
+    }
+}
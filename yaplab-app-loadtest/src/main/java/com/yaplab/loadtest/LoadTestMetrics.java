@@ -0,0 +1,140 @@
+package com.yaplab.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and counters shared by every virtual user of a run.
+ * Only messages sent inside the measurement window are counted, messages of the warmup
+ * and the ones still in flight when the window closes are delivered but ignored.
+ * Latencies are measured from the time a message was scheduled to be sent, not from the time it was sent,
+ * so a stalled sender still shows up in the latencies instead of silently lowering the rate.
+ */
+public class LoadTestMetrics {
+
+    /**
+     * Highest latency tracked by the histograms, slower deliveries are clamped to it.
+     */
+    private static final long MAX_TRACKED_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private final Recorder deliveryLatency = new Recorder(MAX_TRACKED_NANOS, 3);
+    private final Recorder connectLatency = new Recorder(MAX_TRACKED_NANOS, 3);
+    private final Recorder restLatency = new Recorder(MAX_TRACKED_NANOS, 3);
+
+    final LongAdder sent = new LongAdder();
+    final LongAdder sendErrors = new LongAdder();
+    final LongAdder expectedDeliveries = new LongAdder();
+    final LongAdder delivered = new LongAdder();
+    final LongAdder stompErrors = new LongAdder();
+    final LongAdder transportErrors = new LongAdder();
+    final LongAdder connectFailures = new LongAdder();
+    final LongAdder restRequests = new LongAdder();
+    final LongAdder restErrors = new LongAdder();
+
+    private volatile long windowStart = Long.MAX_VALUE;
+    private volatile long windowEnd = Long.MAX_VALUE;
+
+    /**
+     * Opens the measurement window. Messages scheduled from now on are counted.
+     */
+    public void startWindow() {
+        windowStart = System.nanoTime();
+    }
+
+    /**
+     * Closes the measurement window. Messages scheduled from now on are ignored.
+     */
+    public void endWindow() {
+        windowEnd = System.nanoTime();
+    }
+
+    /**
+     * Returns true if a message scheduled at the given time is part of the measurement.
+     * @param scheduledNanos System.nanoTime() the message was scheduled for
+     */
+    public boolean inWindow(long scheduledNanos) {
+        return scheduledNanos >= windowStart && scheduledNanos < windowEnd;
+    }
+
+    /**
+     * Records a message handed to a session.
+     * @param scheduledNanos time the message was scheduled for
+     * @param recipients number of subscriptions the message is expected to be delivered to
+     */
+    public void recordSent(long scheduledNanos, int recipients) {
+        if (inWindow(scheduledNanos)) {
+            sent.increment();
+            expectedDeliveries.add(recipients);
+        }
+    }
+
+    /**
+     * Records a message that could not be handed to a session.
+     * @param scheduledNanos time the message was scheduled for
+     */
+    public void recordSendError(long scheduledNanos) {
+        if (inWindow(scheduledNanos)) {
+            sendErrors.increment();
+        }
+    }
+
+    /**
+     * Records a message received by one subscription.
+     * @param scheduledNanos time the message was scheduled for
+     * @param receivedNanos time the message was received
+     */
+    public void recordDelivered(long scheduledNanos, long receivedNanos) {
+        if (inWindow(scheduledNanos)) {
+            delivered.increment();
+            deliveryLatency.recordValue(Math.min(Math.max(receivedNanos - scheduledNanos, 0), MAX_TRACKED_NANOS));
+        }
+    }
+
+    /**
+     * Records the time it took to open a session, from the SockJS handshake to the STOMP CONNECTED frame.
+     * @param nanos time to connect
+     */
+    public void recordConnected(long nanos) {
+        connectLatency.recordValue(Math.min(nanos, MAX_TRACKED_NANOS));
+    }
+
+    /**
+     * Records a finished REST request of the background load.
+     * @param scheduledNanos time the request was scheduled for
+     * @param finishedNanos time the response was received or the request failed
+     * @param failed true if the request failed or got an error status
+     */
+    public void recordRest(long scheduledNanos, long finishedNanos, boolean failed) {
+        if (inWindow(scheduledNanos)) {
+            restRequests.increment();
+            if (failed) {
+                restErrors.increment();
+            }
+            restLatency.recordValue(Math.min(Math.max(finishedNanos - scheduledNanos, 0), MAX_TRACKED_NANOS));
+        }
+    }
+
+    /**
+     * Returns the delivery latencies recorded since the last call.
+     */
+    public Histogram takeDeliveryLatency() {
+        return deliveryLatency.getIntervalHistogram();
+    }
+
+    /**
+     * Returns the connect latencies recorded since the last call.
+     */
+    public Histogram takeConnectLatency() {
+        return connectLatency.getIntervalHistogram();
+    }
+
+    /**
+     * Returns the REST latencies recorded since the last call.
+     */
+    public Histogram takeRestLatency() {
+        return restLatency.getIntervalHistogram();
+    }
+}
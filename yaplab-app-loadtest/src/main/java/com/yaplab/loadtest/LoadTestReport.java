@@ -0,0 +1,96 @@
+package com.yaplab.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+import java.time.Instant;
+
+/**
+ * Result of a load test run, printed and written as JSON.
+ * Latencies are in milliseconds, throughputs in messages per second.
+ * @param runId ID of the run, part of the content of every message it sent
+ * @param startedAt time the measurement window opened
+ * @param config settings of the run
+ * @param sessionsConnected sessions connected when the measurement started
+ * @param connectFailures sessions that failed to connect
+ * @param sent messages sent in the measurement window
+ * @param sendErrors messages that could not be sent because the session was closed or the send failed
+ * @param expectedDeliveries deliveries expected for the sent messages, one per subscribed chatroom member
+ * @param delivered deliveries received
+ * @param deliveryErrorRate share of expected deliveries that were never received
+ * @param stompErrors STOMP ERROR frames and frame handling errors
+ * @param transportErrors WebSocket/SockJS transport errors
+ * @param sendThroughput messages sent per second
+ * @param deliveryThroughput deliveries received per second
+ * @param deliveryLatency end-to-end latency from the scheduled send time to the delivery
+ * @param connectLatency time to open a session
+ * @param restRequests history page requests sent over REST in the measurement window
+ * @param restErrors REST requests that failed or got an error status
+ * @param restThroughput REST requests per second
+ * @param restLatency latency of the REST requests from their scheduled time to the response
+ */
+public record LoadTestReport(
+        String runId,
+        Instant startedAt,
+        LoadTestConfig config,
+        int sessionsConnected,
+        long connectFailures,
+        long sent,
+        long sendErrors,
+        long expectedDeliveries,
+        long delivered,
+        double deliveryErrorRate,
+        long stompErrors,
+        long transportErrors,
+        double sendThroughput,
+        double deliveryThroughput,
+        Latency deliveryLatency,
+        Latency connectLatency,
+        long restRequests,
+        long restErrors,
+        double restThroughput,
+        Latency restLatency
+) {
+
+    /**
+     * Percentiles of a latency histogram in milliseconds.
+     * @param count number of recorded values
+     */
+    public record Latency(long count, double mean, double p50, double p90, double p99, double p999, double max) {
+
+        static Latency of(Histogram histogram) {
+            return new Latency(
+                    histogram.getTotalCount(),
+                    millis(histogram.getMean()),
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+        }
+
+        private static double millis(double nanos) {
+            return Math.round(nanos / 1_000) / 1_000.0;
+        }
+    }
+
+    /**
+     * Returns a short human-readable summary of the run.
+     */
+    public String summary() {
+        return String.format("""
+                        Run %s: %d sessions connected, %d failed
+                        Sent %d messages (%.1f/s), %d send errors
+                        Delivered %d of %d expected (%.1f/s), delivery error rate %.4f
+                        STOMP errors %d, transport errors %d
+                        Delivery latency ms: p50 %.2f, p90 %.2f, p99 %.2f, p99.9 %.2f, max %.2f
+                        Connect latency ms: p50 %.2f, p99 %.2f, max %.2f
+                        REST requests %d (%.1f/s), %d errors, latency ms: p50 %.2f, p99 %.2f, max %.2f""",
+                runId, sessionsConnected, connectFailures,
+                sent, sendThroughput, sendErrors,
+                delivered, expectedDeliveries, deliveryThroughput, deliveryErrorRate,
+                stompErrors, transportErrors,
+                deliveryLatency.p50(), deliveryLatency.p90(), deliveryLatency.p99(), deliveryLatency.p999(), deliveryLatency.max(),
+                connectLatency.p50(), connectLatency.p99(), connectLatency.max(),
+                restRequests, restThroughput, restErrors, restLatency.p50(), restLatency.p99(), restLatency.max());
+    }
+}
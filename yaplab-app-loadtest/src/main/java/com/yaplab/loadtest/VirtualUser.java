@@ -0,0 +1,232 @@
+package com.yaplab.loadtest;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * One simulated client: a logged-in user with its own SockJS/STOMP session,
+ * subscribed to the chatrooms it takes part in.
+ * Messages carry the run ID and the time they were scheduled for in their content,
+ * so every subscriber can compute the end-to-end latency without any clock other than the local one.
+ */
+public class VirtualUser extends StompSessionHandlerAdapter {
+
+    /**
+     * Logger for VirtualUser
+     * This logger is used to log various events and errors in the VirtualUser class.
+     */
+    private static final Logger logger = LoggerFactory.getLogger(VirtualUser.class);
+
+    private final BackendClient.LoggedInUser user;
+    private final String contentPrefix;
+    private final LoadTestMetrics metrics;
+
+    /**
+     * Personal chat partner of the user, null if there is none.
+     */
+    private BackendClient.LoggedInUser partner;
+
+    /**
+     * Group chatroom of the user with its member count, null if there is none.
+     */
+    private String groupChatroomId;
+    private int groupMembers;
+
+    private volatile StompSession session;
+    private long sequence = 0;
+
+    public VirtualUser(BackendClient.LoggedInUser user, String runId, LoadTestMetrics metrics) {
+        this.user = user;
+        this.contentPrefix = "lt|" + runId + "|";
+        this.metrics = metrics;
+    }
+
+    public BackendClient.LoggedInUser user() {
+        return user;
+    }
+
+    public void setPartner(BackendClient.LoggedInUser partner) {
+        this.partner = partner;
+    }
+
+    public void setGroup(String groupChatroomId, int groupMembers) {
+        this.groupChatroomId = groupChatroomId;
+        this.groupMembers = groupMembers;
+    }
+
+    public boolean hasPartner() {
+        return partner != null;
+    }
+
+    public boolean hasGroup() {
+        return groupChatroomId != null;
+    }
+
+    /**
+     * Opens the session. The access token is sent with the SockJS handshake, which is where the backend checks it.
+     * @param stompClient client shared by every virtual user
+     * @param wsUrl URL of the /ws endpoint
+     * @return completes once the session is connected
+     */
+    public CompletableFuture<StompSession> connect(WebSocketStompClient stompClient, URI wsUrl) {
+        WebSocketHttpHeaders handshakeHeaders = new WebSocketHttpHeaders();
+        handshakeHeaders.setBearerAuth(user.accessToken());
+        long started = System.nanoTime();
+        return stompClient.connectAsync(wsUrl, handshakeHeaders, new StompHeaders(), this)
+                .whenComplete((connected, error) -> {
+                    if (error != null) {
+                        metrics.connectFailures.increment();
+                        logger.warn("User {} failed to connect: {}", user.id(), error.getMessage());
+                    } else {
+                        metrics.recordConnected(System.nanoTime() - started);
+                    }
+                });
+    }
+
+    /**
+     * Subscribes to the personal and group chatrooms of the user.
+     */
+    @Override
+    public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+        this.session = session;
+        if (partner != null) {
+            session.subscribe("/topic/chat/" + personalChatroomId(), new DeliveryHandler());
+        }
+        if (groupChatroomId != null) {
+            session.subscribe("/topic/chat/" + groupChatroomId, new DeliveryHandler());
+        }
+    }
+
+    /**
+     * Sends one message. Called only by the sender thread owning this user.
+     * @param toGroup true to send to the group of the user, false to send to the partner
+     * @param scheduledNanos time the message was scheduled for
+     */
+    public void send(boolean toGroup, long scheduledNanos) {
+        StompSession current = session;
+        if (current == null || !current.isConnected()) {
+            metrics.recordSendError(scheduledNanos);
+            return;
+        }
+        Map<String, Object> message = new HashMap<>();
+        message.put("senderId", user.id());
+        message.put("content", contentPrefix + scheduledNanos + "|" + sequence++);
+        String destination;
+        int recipients;
+        if (toGroup) {
+            message.put("groupId", Long.parseLong(groupChatroomId.substring("group_".length())));
+            destination = "/app/group";
+            recipients = groupMembers;
+        } else {
+            message.put("receiverId", partner.id());
+            destination = "/app/personal";
+            recipients = 2;
+        }
+        try {
+            current.send(destination, message);
+            metrics.recordSent(scheduledNanos, recipients);
+        } catch (RuntimeException e) {
+            metrics.recordSendError(scheduledNanos);
+            logger.debug("User {} failed to send to {}", user.id(), destination, e);
+        }
+    }
+
+    /**
+     * Closes the session.
+     */
+    public void disconnect() {
+        StompSession current = session;
+        if (current != null && current.isConnected()) {
+            current.disconnect();
+        }
+    }
+
+    @Override
+    public void handleException(StompSession session, StompCommand command, StompHeaders headers, byte[] payload, Throwable exception) {
+        metrics.stompErrors.increment();
+        logger.debug("STOMP error in the session of user {}", user.id(), exception);
+    }
+
+    @Override
+    public void handleTransportError(StompSession session, Throwable exception) {
+        metrics.transportErrors.increment();
+        logger.debug("Transport error in the session of user {}", user.id(), exception);
+    }
+
+    /**
+     * Handles ERROR frames sent by the server, e.g. when a message could not be processed.
+     */
+    @Override
+    public void handleFrame(StompHeaders headers, Object payload) {
+        metrics.stompErrors.increment();
+        logger.debug("ERROR frame in the session of user {}: {}", user.id(), headers.getFirst("message"));
+    }
+
+    /**
+     * Returns the IDs of the chatrooms the user takes part in.
+     */
+    public List<String> chatroomIds() {
+        List<String> chatroomIds = new ArrayList<>(2);
+        if (partner != null) {
+            chatroomIds.add(personalChatroomId());
+        }
+        if (groupChatroomId != null) {
+            chatroomIds.add(groupChatroomId);
+        }
+        return chatroomIds;
+    }
+
+    private String personalChatroomId() {
+        long a = Math.min(user.id(), partner.id());
+        long b = Math.max(user.id(), partner.id());
+        return a + "_" + b;
+    }
+
+    /**
+     * Measures the latency of every load test message of this run received on a subscription.
+     */
+    private class DeliveryHandler implements StompFrameHandler {
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return DeliveredMessage.class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            long received = System.nanoTime();
+            String content = ((DeliveredMessage) payload).content();
+            if (content == null || !content.startsWith(contentPrefix)) {
+                return;
+            }
+            int end = content.indexOf('|', contentPrefix.length());
+            metrics.recordDelivered(Long.parseLong(content.substring(contentPrefix.length(), end)), received);
+        }
+    }
+
+    /**
+     * The part of MessageResponseDTO the load test needs.
+     * @param id ID of the message
+     * @param chatRoomId chatroom the message was sent to
+     * @param content content of the message
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record DeliveredMessage(Long id, String chatRoomId, String content) {
+    }
+}